@@ -0,0 +1,86 @@
+package bench;
+
+import container.impl.SimpleFileContainer;
+import io.LongSerializer;
+import util.ChecksumMode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Measures the throughput of {@link SimpleFileContainer} operations for every {@link ChecksumMode}.
+ * <p>
+ * Usage: <code>java bench.ChecksumBenchmark [records] [operations]</code>
+ */
+public class ChecksumBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+
+        System.out.printf("%-18s %14s %14s %14s%n", "mode", "insert ops/s", "get ops/s", "update ops/s");
+        for (int round = 0; round < 2; round++) { // the first round warms up the JIT
+            for (ChecksumMode mode : ChecksumMode.values()) {
+                Path directory = Files.createTempDirectory("ChecksumBenchmark");
+                try {
+                    double[] result = run(directory, mode, records, operations);
+                    if (round == 1) {
+                        System.out.printf("%-18s %,14.0f %,14.0f %,14.0f%n", mode, result[0], result[1], result[2]);
+                    }
+                } finally {
+                    delete(directory);
+                }
+            }
+        }
+    }
+
+    private static double[] run(Path directory, ChecksumMode mode, int records, int operations) {
+        SimpleFileContainer<Long> container = new SimpleFileContainer<>(directory, "bench", new LongSerializer());
+        container.setChecksumMode(mode);
+        container.open();
+        Random random = new Random(1);
+        try {
+            long start = System.nanoTime();
+            for (long i = 0; i < records; i++) {
+                container.insert(i);
+            }
+            double insert = records / seconds(start);
+
+            // reopen, so verify-on-read has to check every page again
+            container.close();
+            container.open();
+
+            start = System.nanoTime();
+            long sum = 0;
+            for (int i = 0; i < operations; i++) {
+                sum += container.getLong(random.nextInt(records));
+            }
+            double get = operations / seconds(start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                container.updateLong(random.nextInt(records), sum + i);
+            }
+            double update = operations / seconds(start);
+            return new double[]{insert, get, update};
+        } finally {
+            container.close();
+        }
+    }
+
+    private static double seconds(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package bench;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void percentilesHaveBoundedError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMean());
+        for (long nanos = 1; nanos <= 100_000; nanos++) {
+            histogram.record(nanos);
+        }
+        histogram.record(-5);
+        assertEquals(100_001, histogram.getCount());
+        assertEquals(100_000, histogram.getMax());
+        assertEquals(50_000, histogram.getMean(), 1e-9);
+
+        for (double percentile : new double[]{1, 10, 50, 90, 99, 99.9}) {
+            long exact = (long) Math.ceil(100_001 * percentile / 100) - 1;
+            long bound = histogram.getPercentile(percentile);
+            assertTrue(bound >= exact && bound <= exact + exact / 32, percentile + ": " + bound + " for " + exact);
+        }
+        assertEquals(100_000, histogram.getPercentile(100));
+        // values below the number of sub-buckets are exact
+        assertEquals(0, histogram.getPercentile(0));
+        assertEquals(20, histogram.getPercentile(0.02));
+    }
+
+    @Test
+    void mergedHistogramEqualsCombinedRecording() {
+        LatencyHistogram combined = new LatencyHistogram();
+        LatencyHistogram even = new LatencyHistogram();
+        LatencyHistogram odd = new LatencyHistogram();
+        for (long nanos = 0; nanos < 50_000; nanos++) {
+            long value = nanos * nanos % 9_999_991;
+            combined.record(value);
+            (nanos % 2 == 0 ? even : odd).record(value);
+        }
+        LatencyHistogram merged = new LatencyHistogram();
+        merged.add(even);
+        merged.add(odd);
+        merged.add(new LatencyHistogram());
+
+        assertEquals(combined.getCount(), merged.getCount());
+        assertEquals(combined.getMax(), merged.getMax());
+        assertEquals(combined.getMean(), merged.getMean(), 1e-9);
+        for (double percentile : new double[]{0, 25, 50, 75, 99, 99.99, 100}) {
+            assertEquals(combined.getPercentile(percentile), merged.getPercentile(percentile));
+        }
+        assertEquals(25_000, even.getCount());
+    }
+}
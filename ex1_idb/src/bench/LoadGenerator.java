@@ -0,0 +1,705 @@
+package bench;
+
+import container.Container;
+import container.impl.SimpleFileContainer;
+import io.FixedSizeSerializer;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * Runs a configurable multithreaded workload against a container of fixed-size byte records and reports
+ * throughput, latency percentiles per operation and the size of the container's files over time.
+ * <pre>
+ * LoadGenerator.Report report = new LoadGenerator()
+ *     .threads(8)
+ *     .mix(80, 15, 3, 2)
+ *     .keys(LoadGenerator.KeyDistribution.ZIPFIAN)
+ *     .datasetSize(1_000_000)
+ *     .duration(Duration.ofMinutes(5))
+ *     .run(container, directory);
+ * </pre>
+ * Every record holds its key, a version and filler bytes derived from both, so every read checks that it got
+ * the record of the requested key and that the record was not torn by a concurrent write. Updates and removals
+ * of a preloaded key are only issued by the thread owning it (<code>key % threads</code>), which tracks the
+ * expected version. A removed key is brought back by the next update of its owner, which inserts the record with
+ * a new version under a new key of the container, so that hot keys do not vanish from skewed workloads. After the
+ * run all records are compared with the expected state, and with {@link #reopenAndVerify(boolean)} once more
+ * after the container has been closed and reopened. Together with a long duration this makes the generator a
+ * soak test for concurrency and recovery bugs; violations are counted as errors in the report.
+ * <p>
+ * The container must be thread-safe. Usage as a program:
+ * <code>java bench.LoadGenerator [threads] [seconds] [distribution] [datasetSize] [recordSize]</code>
+ */
+public class LoadGenerator {
+
+    /**
+     * How the keys of operations are chosen from the preloaded records.
+     */
+    public enum KeyDistribution {
+        /** Every key is equally likely */
+        UNIFORM,
+        /** Few keys are hot, following a Zipf distribution with exponent 0.99 */
+        ZIPFIAN,
+        /** Every thread walks through all keys in order */
+        SEQUENTIAL
+    }
+
+    /**
+     * The operations of the workload.
+     */
+    public enum Operation {
+        READ, UPDATE, INSERT, REMOVE
+    }
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private final int[] mix = {90, 8, 1, 1};
+    private KeyDistribution distribution = KeyDistribution.UNIFORM;
+    private int recordSize = 64;
+    private long datasetSize = 100_000;
+    private long operations = Long.MAX_VALUE;
+    private Duration duration = Duration.ofSeconds(10);
+    private Duration sampleInterval = Duration.ofSeconds(1);
+    private boolean reopenAndVerify;
+    private long seed = 1;
+
+    /**
+     * @param threads the number of threads issuing operations
+     * @return this generator
+     */
+    public LoadGenerator threads(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Sets the relative frequencies of the operations.
+     *
+     * @param reads the weight of reads
+     * @param updates the weight of updates of existing records
+     * @param inserts the weight of inserts of new records
+     * @param removals the weight of removals
+     * @return this generator
+     */
+    public LoadGenerator mix(int reads, int updates, int inserts, int removals) {
+        if (reads < 0 || updates < 0 || inserts < 0 || removals < 0 || reads + updates + inserts + removals == 0) {
+            throw new IllegalArgumentException("Weights must not be negative and not all zero");
+        }
+        mix[0] = reads;
+        mix[1] = updates;
+        mix[2] = inserts;
+        mix[3] = removals;
+        return this;
+    }
+
+    /**
+     * @param distribution how keys are chosen
+     * @return this generator
+     */
+    public LoadGenerator keys(KeyDistribution distribution) {
+        this.distribution = distribution;
+        return this;
+    }
+
+    /**
+     * @param bytes the size of a record, at least 16
+     * @return this generator
+     */
+    public LoadGenerator recordSize(int bytes) {
+        if (bytes < 2 * Long.BYTES) {
+            throw new IllegalArgumentException("Records must have at least 16 bytes");
+        }
+        this.recordSize = bytes;
+        return this;
+    }
+
+    /**
+     * @param records the number of records inserted before the workload starts
+     * @return this generator
+     */
+    public LoadGenerator datasetSize(long records) {
+        if (records <= 0) {
+            throw new IllegalArgumentException("Dataset size must be positive");
+        }
+        this.datasetSize = records;
+        return this;
+    }
+
+    /**
+     * @param total the number of operations after which the workload stops, unless its duration ends first
+     * @return this generator
+     */
+    public LoadGenerator operations(long total) {
+        this.operations = total;
+        return this;
+    }
+
+    /**
+     * @param duration the time after which the workload stops, unless all operations have been issued first
+     * @return this generator
+     */
+    public LoadGenerator duration(Duration duration) {
+        this.duration = duration;
+        return this;
+    }
+
+    /**
+     * @param interval the interval at which throughput and file size are sampled
+     * @return this generator
+     */
+    public LoadGenerator sampleInterval(Duration interval) {
+        this.sampleInterval = interval;
+        return this;
+    }
+
+    /**
+     * @param reopen whether to close and reopen the container after the run and verify all records again
+     * @return this generator
+     */
+    public LoadGenerator reopenAndVerify(boolean reopen) {
+        this.reopenAndVerify = reopen;
+        return this;
+    }
+
+    /**
+     * @param seed the seed of the random choices, so runs can be repeated
+     * @return this generator
+     */
+    public LoadGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * @param recordSize the size of the records
+     * @return a serializer for the records of the given size
+     */
+    public static FixedSizeSerializer<byte[]> serializer(int recordSize) {
+        return new FixedSizeSerializer<>() {
+            @Override
+            public int getSerializedSize() {
+                return recordSize;
+            }
+
+            @Override
+            public void serialize(byte[] value, ByteBuffer buffer) {
+                buffer.put(value, 0, recordSize);
+            }
+
+            @Override
+            public byte[] deserialize(ByteBuffer buffer) {
+                byte[] value = new byte[recordSize];
+                buffer.get(value);
+                return value;
+            }
+        };
+    }
+
+    /**
+     * Throughput and size of the container's files at one point of the run.
+     *
+     * @param elapsed the time since the workload started
+     * @param operations the operations completed so far
+     * @param operationsPerSecond the throughput since the previous sample
+     * @param fileBytes the total size of the files in the container's directory, -1 if there is none
+     */
+    public record Sample(Duration elapsed, long operations, double operationsPerSecond, long fileBytes) {
+    }
+
+    /**
+     * The result of a run.
+     */
+    public static class Report {
+
+        private final Map<Operation, LatencyHistogram> latencies;
+        private final Duration elapsed;
+        private final List<Sample> samples;
+        private final long notFound;
+        private final List<String> errors;
+
+        private Report(Map<Operation, LatencyHistogram> latencies, Duration elapsed, List<Sample> samples,
+                       long notFound, List<String> errors) {
+            this.latencies = latencies;
+            this.elapsed = elapsed;
+            this.samples = samples;
+            this.notFound = notFound;
+            this.errors = errors;
+        }
+
+        /**
+         * @return the number of completed operations
+         */
+        public long getOperations() {
+            return latencies.values().stream().mapToLong(LatencyHistogram::getCount).sum();
+        }
+
+        /**
+         * @return the duration of the workload
+         */
+        public Duration getElapsed() {
+            return elapsed;
+        }
+
+        /**
+         * @return the completed operations per second
+         */
+        public double getThroughput() {
+            return getOperations() / Math.max(1e-9, elapsed.toNanos() / 1e9);
+        }
+
+        /**
+         * @param operation an operation
+         * @return the latencies of the operation
+         */
+        public LatencyHistogram getLatencies(Operation operation) {
+            return latencies.get(operation);
+        }
+
+        /**
+         * @return the throughput and file size sampled during the run
+         */
+        public List<Sample> getSamples() {
+            return samples;
+        }
+
+        /**
+         * @return the number of reads of keys that were removed at the time
+         */
+        public long getNotFound() {
+            return notFound;
+        }
+
+        /**
+         * @return the consistency violations and unexpected exceptions, at most 100
+         */
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        /**
+         * Prints the report as a table.
+         *
+         * @param out the stream to print to
+         */
+        public void print(PrintStream out) {
+            out.printf("%,d operations in %.1f s: %,.0f ops/s, %,d not found, %d errors%n",
+                    getOperations(), elapsed.toNanos() / 1e9, getThroughput(), notFound, errors.size());
+            out.printf("%-8s %12s %10s %10s %10s %10s %10s%n", "op", "count", "mean us", "p50 us", "p99 us", "p99.9 us", "max us");
+            for (Operation operation : Operation.values()) {
+                LatencyHistogram h = latencies.get(operation);
+                out.printf("%-8s %,12d %10.1f %10.1f %10.1f %10.1f %10.1f%n", operation, h.getCount(), h.getMean() / 1e3,
+                        h.getPercentile(50) / 1e3, h.getPercentile(99) / 1e3, h.getPercentile(99.9) / 1e3, h.getMax() / 1e3);
+            }
+            out.printf("%10s %14s %14s %16s%n", "elapsed s", "operations", "ops/s", "file bytes");
+            for (Sample sample : samples) {
+                out.printf("%10.1f %,14d %,14.0f %,16d%n", sample.elapsed().toMillis() / 1e3, sample.operations(),
+                        sample.operationsPerSecond(), sample.fileBytes());
+            }
+            for (String error : errors) {
+                out.println("ERROR " + error);
+            }
+        }
+    }
+
+    /**
+     * Loads the dataset into the opened container, runs the workload and verifies all records.
+     *
+     * @param container the container, open and empty
+     * @param directory the directory of the container's files for sampling their size, or null
+     * @return the report
+     */
+    public Report run(Container<Long, byte[]> container, Path directory) {
+        ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>();
+        // the container key of every preloaded record, changed by its owner when re-inserting a removed record
+        AtomicLongArray keys = new AtomicLongArray((int) datasetSize);
+        for (int i = 0; i < keys.length(); i++) {
+            keys.set(i, container.insert(record(i, 0)));
+        }
+        // version of every preloaded record and whether it is removed, as written by its owner
+        long[] versions = new long[keys.length()];
+        boolean[] removed = new boolean[keys.length()];
+
+        AtomicLong completed = new AtomicLong();
+        AtomicLong issued = new AtomicLong();
+        AtomicLong notFound = new AtomicLong();
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<Worker> workers = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            workers.add(new Worker(t, container, keys, versions, removed, completed, issued, notFound, deadline, errors,
+                    done));
+        }
+
+        long start = System.nanoTime();
+        List<Thread> running = new ArrayList<>();
+        for (Worker worker : workers) {
+            Thread thread = new Thread(worker, "load-" + worker.index);
+            thread.start();
+            running.add(thread);
+        }
+        List<Sample> samples = sample(directory, start, completed, done);
+        for (Thread thread : running) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                errors.add("Interrupted while waiting for the workers");
+            }
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram total = new LatencyHistogram();
+            for (Worker worker : workers) {
+                total.add(worker.latencies.get(operation));
+            }
+            latencies.put(operation, total);
+        }
+        verify(container, keys, versions, removed, workers, errors);
+        if (reopenAndVerify) {
+            container.close();
+            container.open();
+            verify(container, keys, versions, removed, workers, errors);
+        }
+        List<String> reported = new ArrayList<>(errors);
+        return new Report(latencies, elapsed, samples, notFound.get(), reported.subList(0, Math.min(100, reported.size())));
+    }
+
+    /**
+     * Samples throughput and file size until all workers are done.
+     */
+    private List<Sample> sample(Path directory, long start, AtomicLong completed, CountDownLatch done) {
+        List<Sample> samples = new ArrayList<>();
+        long previousOperations = 0;
+        long previousTime = start;
+        boolean finished = false;
+        while (!finished) {
+            try {
+                finished = done.await(Math.max(1, sampleInterval.toMillis()), java.util.concurrent.TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                finished = true;
+            }
+            long now = System.nanoTime();
+            long operations = completed.get();
+            double rate = (operations - previousOperations) / Math.max(1e-9, (now - previousTime) / 1e9);
+            samples.add(new Sample(Duration.ofNanos(now - start), operations, rate, directorySize(directory)));
+            previousOperations = operations;
+            previousTime = now;
+        }
+        return samples;
+    }
+
+    /**
+     * Compares all records with the state expected from the writes of the workers.
+     */
+    private void verify(Container<Long, byte[]> container, AtomicLongArray keys, long[] versions, boolean[] removed,
+                        List<Worker> workers, ConcurrentLinkedQueue<String> errors) {
+        for (int i = 0; i < keys.length(); i++) {
+            long key = keys.get(i);
+            try {
+                byte[] value = container.get(key);
+                if (removed[i]) {
+                    errors.add("Removed key " + key + " is readable");
+                } else {
+                    check(value, i, versions[i], errors);
+                }
+            } catch (NoSuchElementException e) {
+                if (!removed[i]) {
+                    errors.add("Key " + key + " is missing");
+                }
+            } catch (RuntimeException e) {
+                errors.add("Verifying key " + key + ": " + e);
+            }
+        }
+        for (Worker worker : workers) {
+            for (long[] inserted : worker.inserted) {
+                try {
+                    check(container.get(inserted[0]), inserted[1], 0, errors);
+                } catch (RuntimeException e) {
+                    errors.add("Verifying inserted key " + inserted[0] + ": " + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that the record holds the given id and, unless the version is negative, the given version.
+     *
+     * @return the version of the record
+     */
+    private long check(byte[] value, long id, long version, ConcurrentLinkedQueue<String> errors) {
+        ByteBuffer buffer = ByteBuffer.wrap(value);
+        long storedId = buffer.getLong(0);
+        long storedVersion = buffer.getLong(Long.BYTES);
+        if (storedId != id) {
+            errors.add("Record " + id + " holds the record of " + storedId);
+        } else if (version >= 0 && storedVersion != version) {
+            errors.add("Record " + id + " has version " + storedVersion + " instead of " + version);
+        } else {
+            for (int i = 2 * Long.BYTES; i < value.length; i++) {
+                if (value[i] != filler(id, storedVersion, i)) {
+                    errors.add("Record " + id + " version " + storedVersion + " is torn at byte " + i);
+                    break;
+                }
+            }
+        }
+        return storedVersion;
+    }
+
+    private byte[] record(long id, long version) {
+        byte[] value = new byte[recordSize];
+        ByteBuffer.wrap(value).putLong(id).putLong(version);
+        for (int i = 2 * Long.BYTES; i < value.length; i++) {
+            value[i] = filler(id, version, i);
+        }
+        return value;
+    }
+
+    private static byte filler(long id, long version, int index) {
+        return (byte) (id * 31 + version * 17 + index);
+    }
+
+    private static long directorySize(Path directory) {
+        if (directory == null) {
+            return -1;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> {
+                try {
+                    return Files.size(file);
+                } catch (IOException e) {
+                    return 0; // deleted meanwhile
+                }
+            }).sum();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Issues operations until the deadline or the operation count is reached.
+     */
+    private final class Worker implements Runnable {
+
+        private final int index;
+        private final Container<Long, byte[]> container;
+        private final AtomicLongArray keys;
+        private final long[] versions;
+        private final boolean[] removed;
+        private final AtomicLong completed;
+        private final AtomicLong issued;
+        private final AtomicLong notFound;
+        private final long deadline;
+        private final ConcurrentLinkedQueue<String> errors;
+        private final CountDownLatch done;
+        private final Random random;
+        private final KeyChooser chooser;
+        private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+        /** Pairs of key and id of the records inserted by this worker */
+        private final List<long[]> inserted = new ArrayList<>();
+
+        private Worker(int index, Container<Long, byte[]> container, AtomicLongArray keys, long[] versions,
+                       boolean[] removed, AtomicLong completed, AtomicLong issued, AtomicLong notFound, long deadline,
+                       ConcurrentLinkedQueue<String> errors, CountDownLatch done) {
+            this.index = index;
+            this.container = container;
+            this.keys = keys;
+            this.versions = versions;
+            this.removed = removed;
+            this.completed = completed;
+            this.issued = issued;
+            this.notFound = notFound;
+            this.deadline = deadline;
+            this.errors = errors;
+            this.done = done;
+            this.random = new Random(seed + index);
+            this.chooser = new KeyChooser(distribution, keys.length(), random, (long) index * keys.length() / threads);
+            for (Operation operation : Operation.values()) {
+                latencies.put(operation, new LatencyHistogram());
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                int total = mix[0] + mix[1] + mix[2] + mix[3];
+                while (issued.getAndIncrement() < operations && System.nanoTime() < deadline) {
+                    int pick = random.nextInt(total);
+                    Operation operation = pick < mix[0] ? Operation.READ : pick < mix[0] + mix[1] ? Operation.UPDATE
+                            : pick < mix[0] + mix[1] + mix[2] ? Operation.INSERT : Operation.REMOVE;
+                    long start = System.nanoTime();
+                    boolean executed = true;
+                    try {
+                        executed = execute(operation);
+                    } catch (NoSuchElementException e) {
+                        notFound.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        errors.add(operation + " failed: " + e);
+                    }
+                    if (executed) {
+                        latencies.get(operation).record(System.nanoTime() - start);
+                        completed.incrementAndGet();
+                    } else {
+                        // not sent to the container, so it does not count towards the operations either
+                        issued.decrementAndGet();
+                    }
+                }
+            } finally {
+                done.countDown();
+            }
+        }
+
+        /**
+         * @return false if the operation was skipped without calling the container
+         */
+        private boolean execute(Operation operation) {
+            switch (operation) {
+                case READ -> {
+                    int i = chooser.next();
+                    check(container.get(keys.get(i)), i, -1, errors);
+                }
+                case UPDATE -> {
+                    int i = owned(chooser.next());
+                    if (i < 0) {
+                        return false;
+                    }
+                    if (removed[i]) {
+                        keys.set(i, container.insert(record(i, versions[i] + 1)));
+                        removed[i] = false;
+                    } else {
+                        container.update(keys.get(i), record(i, versions[i] + 1));
+                    }
+                    versions[i]++;
+                }
+                case INSERT -> {
+                    long id = keys.length() + (long) index * (1L << 40) + inserted.size();
+                    inserted.add(new long[]{container.insert(record(id, 0)), id});
+                }
+                case REMOVE -> {
+                    int i = owned(chooser.next());
+                    if (i < 0 || removed[i]) {
+                        return false;
+                    }
+                    container.remove(keys.get(i));
+                    removed[i] = true;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the nearest key index owned by this worker, -1 if there is none
+         */
+        private int owned(int i) {
+            int owned = i - i % threads + index;
+            if (owned >= keys.length()) {
+                owned -= threads;
+            }
+            return owned;
+        }
+    }
+
+    /**
+     * Chooses key indexes following a distribution.
+     */
+    private static final class KeyChooser {
+
+        private static final double THETA = 0.99;
+
+        private final KeyDistribution distribution;
+        private final int n;
+        private final Random random;
+        private long next;
+        private double alpha;
+        private double zetaN;
+        private double eta;
+
+        private KeyChooser(KeyDistribution distribution, int n, Random random, long start) {
+            this.distribution = distribution;
+            this.n = n;
+            this.random = random;
+            this.next = start;
+            if (distribution == KeyDistribution.ZIPFIAN) {
+                // the rejection-free generator of Gray et al., "Quickly generating billion-record synthetic databases"
+                zetaN = zeta(n);
+                alpha = 1 / (1 - THETA);
+                eta = (1 - Math.pow(2.0 / n, 1 - THETA)) / (1 - zeta(2) / zetaN);
+            }
+        }
+
+        private int next() {
+            return switch (distribution) {
+                case UNIFORM -> random.nextInt(n);
+                case SEQUENTIAL -> (int) (next++ % n);
+                case ZIPFIAN -> {
+                    double u = random.nextDouble();
+                    double uz = u * zetaN;
+                    if (uz < 1) {
+                        yield 0;
+                    }
+                    if (uz < 1 + Math.pow(0.5, THETA)) {
+                        yield Math.min(1, n - 1);
+                    }
+                    yield (int) Math.min(n - 1, (long) (n * Math.pow(eta * u - eta + 1, alpha)));
+                }
+            };
+        }
+
+        private static double zeta(long n) {
+            double sum = 0;
+            for (long i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, THETA);
+            }
+            return sum;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        KeyDistribution distribution = args.length > 2 ? KeyDistribution.valueOf(args[2].toUpperCase()) : KeyDistribution.ZIPFIAN;
+        long datasetSize = args.length > 3 ? Long.parseLong(args[3]) : 100_000;
+        int recordSize = args.length > 4 ? Integer.parseInt(args[4]) : 64;
+
+        Path directory = Files.createTempDirectory("LoadGenerator");
+        try {
+            SimpleFileContainer<byte[]> container = new SimpleFileContainer<>(directory, "load", serializer(recordSize));
+            container.open();
+            Report report = new LoadGenerator()
+                    .threads(threads)
+                    .duration(Duration.ofSeconds(seconds))
+                    .keys(distribution)
+                    .datasetSize(datasetSize)
+                    .recordSize(recordSize)
+                    .reopenAndVerify(true)
+                    .run(container, directory);
+            container.close();
+            report.print(System.out);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+}
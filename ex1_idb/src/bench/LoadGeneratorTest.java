@@ -0,0 +1,55 @@
+package bench;
+
+import container.impl.SimpleFileContainer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadGeneratorTest {
+
+    private Path tempDirectory;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tempDirectory = Files.createTempDirectory("LoadGeneratorTest");
+    }
+
+    @AfterEach
+    void tearDown() {
+        tempDirectory.toFile().deleteOnExit();
+    }
+
+    @Test
+    void shortRunVerifiesAfterReopen() {
+        SimpleFileContainer<byte[]> container = new SimpleFileContainer<>(tempDirectory, "load",
+                LoadGenerator.serializer(48));
+        container.open();
+        LoadGenerator.Report report = new LoadGenerator()
+                .threads(4)
+                .mix(50, 30, 5, 15)
+                .keys(LoadGenerator.KeyDistribution.ZIPFIAN)
+                .datasetSize(2_000)
+                .recordSize(48)
+                .operations(20_000)
+                .duration(Duration.ofMinutes(1))
+                .sampleInterval(Duration.ofMillis(50))
+                .reopenAndVerify(true)
+                .run(container, tempDirectory);
+        container.close();
+
+        assertEquals(List.of(), report.getErrors());
+        assertTrue(report.getOperations() > 19_000 && report.getOperations() <= 20_000, report.getOperations() + "");
+        for (LoadGenerator.Operation operation : LoadGenerator.Operation.values()) {
+            assertTrue(report.getLatencies(operation).getCount() > 0, operation.toString());
+        }
+        assertFalse(report.getSamples().isEmpty());
+        assertTrue(report.getSamples().get(report.getSamples().size() - 1).fileBytes() > 2_000 * 48);
+    }
+}
@@ -0,0 +1,21 @@
+package container.impl;
+
+/**
+ * Counters of a {@link CachingContainer}.
+ * @param hits reads served from the cache
+ * @param misses reads that went to the backing container
+ * @param evictions entries dropped to stay within the capacity
+ * @param invalidations entries dropped because their key was updated or removed
+ * @param size the number of cached entries
+ * @param weight the total weight of the cached entries
+ */
+public record CacheStats(long hits, long misses, long evictions, long invalidations, long size, long weight) {
+
+    /**
+     * @return the fraction of reads served from the cache, 0 if there were no reads
+     */
+    public double hitRate() {
+        long reads = hits + misses;
+        return reads == 0 ? 0 : (double) hits / reads;
+    }
+}
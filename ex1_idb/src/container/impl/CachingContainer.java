@@ -0,0 +1,317 @@
+package container.impl;
+
+import container.Container;
+import util.ContainerRuntimeException;
+import util.MetaData;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * A read cache of deserialized values in front of any container, so hot keys are neither read nor
+ * deserialized again.
+ * <p>
+ * The cache is bounded by the total weight of its entries (by default every entry weighs 1) and divided into
+ * independently locked stripes by key hash. Every stripe is a segmented LRU: new entries enter a probationary
+ * segment and move to the protected segment, which holds up to 80% of the stripe's capacity, on their second
+ * hit. Entries demoted from the protected segment return to probation, and evictions take the least recently
+ * used probationary entry. A burst of keys read only once therefore cannot displace the frequently read keys
+ * of a skewed workload.
+ * <p>
+ * Updates and removals invalidate the cached entry after writing to the backing container. A value read from
+ * the backing container is only cached if no key of its stripe has been invalidated meanwhile, so a concurrent
+ * update is never hidden by the value it replaced. Cached values are returned to all readers and must not be
+ * modified.
+ *
+ * @param <Key> The key type
+ * @param <Value> The value type
+ */
+public class CachingContainer<Key, Value> implements Container<Key, Value> {
+
+    /** The default number of stripes */
+    public static final int DEFAULT_STRIPES = 16;
+    private static final double PROTECTED_SHARE = 0.8;
+
+    private final Container<Key, Value> backing;
+    private final ToLongFunction<? super Value> weigher;
+    private final Stripe<Key, Value>[] stripes;
+    private final int stripeMask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private volatile boolean isOpen = false;
+
+    /**
+     * Creates a cache holding up to the given number of values.
+     * @param backing The container to cache; opened and closed by this container.
+     * @param maximumSize The maximum number of cached values.
+     */
+    public CachingContainer(Container<Key, Value> backing, long maximumSize) {
+        this(backing, maximumSize, value -> 1, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Creates a cache bounded by the total weight of its values.
+     * @param backing The container to cache; opened and closed by this container.
+     * @param maximumWeight The maximum total weight of the cached values.
+     * @param weigher The weight of a value, e.g. its size in bytes; must not change while it is cached.
+     * @param stripes The number of independently locked stripes, a power of two. Each holds an equal share of
+     *            the maximum weight.
+     */
+    @SuppressWarnings("unchecked")
+    public CachingContainer(Container<Key, Value> backing, long maximumWeight, ToLongFunction<? super Value> weigher, int stripes) {
+        if (backing == null) {
+            throw new IllegalArgumentException("Backing container cannot be null");
+        }
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("Maximum weight must be positive");
+        }
+        if (stripes <= 0 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("Stripe count must be a power of two");
+        }
+        this.backing = backing;
+        this.weigher = weigher;
+        this.stripes = (Stripe<Key, Value>[]) new Stripe<?, ?>[stripes];
+        long capacity = Math.max(1, maximumWeight / stripes);
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe<>(capacity);
+        }
+        this.stripeMask = stripes - 1;
+    }
+
+    @Override
+    public MetaData getMetaData() throws IllegalStateException {
+        return backing.getMetaData();
+    }
+
+    @Override
+    public synchronized void open() throws ContainerRuntimeException {
+        if (isOpen) {
+            throw new IllegalStateException("Container is already open");
+        }
+        backing.open();
+        isOpen = true;
+    }
+
+    @Override
+    public synchronized void close() throws ContainerRuntimeException {
+        checkOpen();
+        isOpen = false;
+        for (Stripe<Key, Value> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.generation++;
+                stripe.clear();
+            }
+        }
+        backing.close();
+    }
+
+    @Override
+    public Key reserve() throws IllegalStateException {
+        checkOpen();
+        return backing.reserve();
+    }
+
+    @Override
+    public void update(Key key, Value value) throws NoSuchElementException, IllegalStateException {
+        checkOpen();
+        try {
+            backing.update(key, value);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public Value get(Key key) throws NoSuchElementException, IllegalStateException {
+        checkOpen();
+        Stripe<Key, Value> stripe = stripeFor(key);
+        long generation;
+        synchronized (stripe) {
+            Value cached = stripe.get(key);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+            generation = stripe.generation;
+        }
+        misses.increment();
+        Value value = backing.get(key);
+        if (value != null) {
+            long weight = weigher.applyAsLong(value);
+            synchronized (stripe) {
+                if (stripe.generation == generation) {
+                    evictions.add(stripe.add(key, value, weight));
+                }
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public void remove(Key key) throws NoSuchElementException, IllegalStateException {
+        checkOpen();
+        try {
+            backing.remove(key);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    /**
+     * Drops the cached value of the given key, e.g. after it has been written directly to the backing container.
+     * @param key The key.
+     */
+    public void invalidate(Key key) {
+        Stripe<Key, Value> stripe = stripeFor(key);
+        synchronized (stripe) {
+            stripe.generation++;
+            if (stripe.remove(key)) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Drops all cached values.
+     */
+    public void invalidateAll() {
+        for (Stripe<Key, Value> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.generation++;
+                invalidations.add(stripe.clear());
+            }
+        }
+    }
+
+    /**
+     * @return the counters since the container was created and the current fill of the cache
+     */
+    public CacheStats getStats() {
+        long size = 0;
+        long weight = 0;
+        for (Stripe<Key, Value> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.probation.size() + stripe.protectedEntries.size();
+                weight += stripe.probationWeight + stripe.protectedWeight;
+            }
+        }
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum(), size, weight);
+    }
+
+    private Stripe<Key, Value> stripeFor(Key key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return stripes[(h ^ (h >>> 16)) & stripeMask];
+    }
+
+    private void checkOpen() throws IllegalStateException {
+        if (!isOpen) {
+            throw new IllegalStateException("Container is not open");
+        }
+    }
+
+    private record Cached<Value>(Value value, long weight) {
+    }
+
+    /**
+     * One segmented LRU. Both segments are insertion-ordered maps whose first entry is the least recently used.
+     * Guarded by its own monitor.
+     */
+    private static final class Stripe<Key, Value> {
+
+        private final long capacity;
+        private final long protectedCapacity;
+        private final LinkedHashMap<Key, Cached<Value>> probation = new LinkedHashMap<>();
+        private final LinkedHashMap<Key, Cached<Value>> protectedEntries = new LinkedHashMap<>();
+        private long probationWeight;
+        private long protectedWeight;
+        /** Incremented on every invalidation, so reads racing with a write do not cache a stale value */
+        private long generation;
+
+        Stripe(long capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = (long) (capacity * PROTECTED_SHARE);
+        }
+
+        Value get(Key key) {
+            Cached<Value> entry = protectedEntries.remove(key);
+            if (entry != null) {
+                protectedEntries.put(key, entry);
+                return entry.value();
+            }
+            entry = probation.remove(key);
+            if (entry == null) {
+                return null;
+            }
+            // second hit: promote, demoting the least recently used protected entries if necessary
+            probationWeight -= entry.weight();
+            protectedEntries.put(key, entry);
+            protectedWeight += entry.weight();
+            Iterator<Map.Entry<Key, Cached<Value>>> lru = protectedEntries.entrySet().iterator();
+            while (protectedWeight > protectedCapacity && protectedEntries.size() > 1) {
+                Map.Entry<Key, Cached<Value>> demoted = lru.next();
+                lru.remove();
+                protectedWeight -= demoted.getValue().weight();
+                probation.put(demoted.getKey(), demoted.getValue());
+                probationWeight += demoted.getValue().weight();
+            }
+            return entry.value();
+        }
+
+        /**
+         * @return the number of entries evicted to make room
+         */
+        int add(Key key, Value value, long weight) {
+            if (weight > capacity || probation.containsKey(key) || protectedEntries.containsKey(key)) {
+                return 0;
+            }
+            probation.put(key, new Cached<>(value, weight));
+            probationWeight += weight;
+            int evicted = 0;
+            while (probationWeight + protectedWeight > capacity) {
+                // the new entry is the most recent one, it is only left when probation holds nothing else
+                boolean fromProbation = probation.size() > 1 || protectedEntries.isEmpty();
+                Iterator<Map.Entry<Key, Cached<Value>>> lru = (fromProbation ? probation : protectedEntries).entrySet().iterator();
+                long victimWeight = lru.next().getValue().weight();
+                lru.remove();
+                if (fromProbation) {
+                    probationWeight -= victimWeight;
+                } else {
+                    protectedWeight -= victimWeight;
+                }
+                evicted++;
+            }
+            return evicted;
+        }
+
+        boolean remove(Key key) {
+            Cached<Value> entry = probation.remove(key);
+            if (entry != null) {
+                probationWeight -= entry.weight();
+                return true;
+            }
+            entry = protectedEntries.remove(key);
+            if (entry != null) {
+                protectedWeight -= entry.weight();
+                return true;
+            }
+            return false;
+        }
+
+        int clear() {
+            int cleared = probation.size() + protectedEntries.size();
+            probation.clear();
+            protectedEntries.clear();
+            probationWeight = 0;
+            protectedWeight = 0;
+            return cleared;
+        }
+    }
+}
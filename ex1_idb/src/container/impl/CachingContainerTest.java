@@ -0,0 +1,130 @@
+package container.impl;
+
+import io.LongSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingContainerTest {
+
+    private Path tempDirectory;
+    private SimpleFileContainer<Long> backing;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tempDirectory = Files.createTempDirectory("CachingContainerTest");
+        backing = new SimpleFileContainer<>(tempDirectory, "cached", new LongSerializer());
+    }
+
+    @AfterEach
+    void tearDown() {
+        tempDirectory.toFile().deleteOnExit();
+    }
+
+    @Test
+    void testHitsAndInvalidation() {
+        CachingContainer<Long, Long> container = new CachingContainer<>(backing, 100);
+        container.open();
+        long key = container.insert(42L);
+        assertEquals(42L, container.get(key));
+        assertEquals(42L, container.get(key));
+        CacheStats stats = container.getStats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(0.5, stats.hitRate());
+
+        container.update(key, 43L);
+        assertEquals(43L, container.get(key));
+        container.remove(key);
+        assertThrows(NoSuchElementException.class, () -> container.get(key));
+        assertEquals(2, container.getStats().invalidations());
+        container.close();
+    }
+
+    @Test
+    void testSizeBoundAndScanResistance() {
+        CachingContainer<Long, Long> container = new CachingContainer<>(backing, 100, value -> 1, 1);
+        container.open();
+        for (long i = 0; i < 1000; i++) {
+            container.insert(i);
+        }
+        // hot keys are read twice and become protected
+        for (int round = 0; round < 2; round++) {
+            for (long key = 0; key < 50; key++) {
+                container.get(key);
+            }
+        }
+        // a scan of keys read only once
+        for (long key = 100; key < 1000; key++) {
+            container.get(key);
+        }
+        CacheStats stats = container.getStats();
+        assertEquals(100, stats.size());
+        assertEquals(100, stats.weight());
+        assertTrue(stats.evictions() >= 850);
+
+        long hitsBefore = stats.hits();
+        for (long key = 0; key < 50; key++) {
+            assertEquals(key, container.get(key));
+        }
+        assertEquals(hitsBefore + 50, container.getStats().hits());
+        container.close();
+    }
+
+    @Test
+    void testWeightBound() {
+        CachingContainer<Long, Long> container = new CachingContainer<>(backing, 1000, value -> value, 4);
+        container.open();
+        for (long i = 0; i < 100; i++) {
+            container.insert(i);
+        }
+        for (long i = 0; i < 100; i++) {
+            container.get(i);
+        }
+        assertTrue(container.getStats().weight() <= 1000);
+        container.close();
+    }
+
+    @Test
+    void testConcurrentReadersSeeUpdates() throws Exception {
+        CachingContainer<Long, Long> container = new CachingContainer<>(backing, 64);
+        container.open();
+        for (long i = 0; i < 16; i++) {
+            container.insert(0L);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> readers = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                readers.add(executor.submit(() -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        container.get((long) (i % 16));
+                    }
+                }));
+            }
+            for (long value = 1; value <= 200; value++) {
+                container.update(value % 16, value);
+            }
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        for (long key = 0; key < 16; key++) {
+            assertEquals(backing.get(key), container.get(key));
+        }
+        container.close();
+    }
+}
@@ -0,0 +1,145 @@
+package container.impl;
+
+import io.FixedSizeSerializer;
+import io.LongSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.LongConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Budgets for the heap bytes allocated per container operation, measured with the allocation counter of the
+ * current thread. Operations on boxed keys and values may allocate the boxes; primitive and raw operations
+ * must not allocate at all.
+ */
+class ContainerAllocationTest {
+
+    private static final int OPERATIONS = 20_000;
+    /** Room for a boxed key and a boxed result */
+    private static final long BOXED_BUDGET = 48;
+    /** Less than the smallest object, so any allocation per operation fails */
+    private static final long FREE_BUDGET = 8;
+
+    private Path tempDirectory;
+
+    // Serializer for byte arrays of a fixed size, large enough to make a copy of the record visible
+    private record BlobSerializer(int size) implements FixedSizeSerializer<byte[]> {
+
+        @Override
+        public int getSerializedSize() {
+            return size;
+        }
+
+        @Override
+        public void serialize(byte[] value, ByteBuffer buffer) {
+            buffer.put(value, 0, size);
+        }
+
+        @Override
+        public byte[] deserialize(ByteBuffer buffer) {
+            byte[] value = new byte[size];
+            buffer.get(value);
+            return value;
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        assumeTrue(allocationCounter().isThreadAllocatedMemorySupported());
+        allocationCounter().setThreadAllocatedMemoryEnabled(true);
+        tempDirectory = Files.createTempDirectory("ContainerAllocationTest");
+    }
+
+    @AfterEach
+    void tearDown() {
+        tempDirectory.toFile().deleteOnExit();
+    }
+
+    @Test
+    void testPackedSimpleFileContainer() {
+        checkSimpleFileContainer(FileLayout.PACKED);
+    }
+
+    @Test
+    void testPagedSimpleFileContainer() {
+        checkSimpleFileContainer(FileLayout.PAGED);
+    }
+
+    private void checkSimpleFileContainer(FileLayout layout) {
+        SimpleFileContainer<Long> container = new SimpleFileContainer<>(tempDirectory, "longs" + layout, new LongSerializer());
+        container.setLayout(layout);
+        container.open();
+        Long value = 1L << 40;
+
+        assertBudget("reserve", BOXED_BUDGET, key -> container.reserve());
+        assertBudget("update", BOXED_BUDGET, key -> container.update(key, value));
+        assertBudget("get", BOXED_BUDGET, key -> container.get(key));
+        assertBudget("getLong", FREE_BUDGET, container::getLong);
+        assertBudget("updateLong", FREE_BUDGET, key -> container.updateLong(key, key));
+        assertBudget("contains", FREE_BUDGET, container::contains);
+        ByteBuffer raw = ByteBuffer.allocate(Long.BYTES);
+        assertBudget("getRaw", FREE_BUDGET, key -> container.getRaw(key, raw.clear()));
+        assertBudget("updateRaw", FREE_BUDGET, key -> container.updateRaw(key, raw.flip()));
+        assertBudget("remove", BOXED_BUDGET, key -> container.remove(key));
+        container.close();
+    }
+
+    @Test
+    void testWideRecordsAreNotCopied() {
+        for (FileLayout layout : FileLayout.values()) {
+            SimpleFileContainer<byte[]> container = new SimpleFileContainer<>(tempDirectory, "blobs" + layout, new BlobSerializer(1024));
+            container.setLayout(layout);
+            container.open();
+            assertBudget("reserve", BOXED_BUDGET, key -> container.reserve());
+            ByteBuffer raw = ByteBuffer.allocate(1024);
+            assertBudget("getRaw", FREE_BUDGET, key -> container.getRaw(key, raw.clear()));
+            assertBudget("updateRaw", FREE_BUDGET, key -> container.updateRaw(key, raw.flip()));
+            container.close();
+        }
+    }
+
+    @Test
+    void testMapContainer() {
+        MapContainer<Long> map = new MapContainer<>();
+        map.open();
+        Long value = 1L << 40;
+        // a map entry and the boxed key, plus the amortized growth of the table
+        assertBudget("reserve", 128, key -> map.reserve());
+        assertBudget("update", BOXED_BUDGET, key -> map.update(key, value));
+        assertBudget("get", BOXED_BUDGET, key -> map.get(key));
+        assertBudget("remove", BOXED_BUDGET, key -> map.remove(key));
+        map.close();
+    }
+
+    private static void assertBudget(String operation, long budget, LongConsumer action) {
+        long bytes = bytesPerOperation(action);
+        assertTrue(bytes <= budget, operation + " allocated " + bytes + " bytes per call, budget is " + budget);
+    }
+
+    /**
+     * Runs the action once for each key from <code>0</code> to <code>2 * OPERATIONS - 1</code> and returns the
+     * average number of bytes allocated by the second half; the first half warms up the code paths.
+     */
+    private static long bytesPerOperation(LongConsumer action) {
+        for (long key = 0; key < OPERATIONS; key++) {
+            action.accept(key);
+        }
+        long before = allocationCounter().getCurrentThreadAllocatedBytes();
+        for (long key = OPERATIONS; key < 2 * OPERATIONS; key++) {
+            action.accept(key);
+        }
+        return (allocationCounter().getCurrentThreadAllocatedBytes() - before) / OPERATIONS;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        return (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    }
+}
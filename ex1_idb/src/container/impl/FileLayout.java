@@ -0,0 +1,23 @@
+package container.impl;
+
+/**
+ * How a {@link SimpleFileContainer} arranges its records in the data file. The layout is recorded in the
+ * container's metadata when the data file is created and cannot be changed afterwards.
+ */
+public enum FileLayout {
+
+    /**
+     * Records of <code>serializedSize + 1</code> bytes, each preceded by its deletion marker byte, are stored
+     * back to back: the record of key <code>k</code> starts at <code>k * (serializedSize + 1)</code>. Records
+     * may straddle page boundaries.
+     */
+    PACKED,
+
+    /**
+     * The file is divided into pages of {@link util.PageChecksums#DEFAULT_PAGE_SIZE} bytes that each start with
+     * a header holding one liveness bit per slot, followed by as many slots of <code>serializedSize</code> bytes
+     * as fit into the rest of the page. The record of key <code>k</code> occupies slot <code>k % slots</code> of
+     * page <code>k / slots</code>, so a record never crosses a page and reading it touches a single page.
+     */
+    PAGED
+}
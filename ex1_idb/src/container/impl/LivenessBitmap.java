@@ -0,0 +1,171 @@
+package container.impl;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * One bit per key telling whether the record of the key is active, kept in memory so that existence checks
+ * do not read the deletion marker from the data file.
+ * <p>
+ * The bits are stored in segments of {@value #SEGMENT_BITS} bits that are allocated as the key range grows.
+ * Distinct threads may set the bits of disjoint ranges of whole words (multiples of 64 keys) concurrently once
+ * the bitmap has been sized with {@link #ensureCapacity(long)}; otherwise not thread-safe.
+ */
+class LivenessBitmap {
+
+    private static final int SEGMENT_SHIFT = 22;
+    /** The number of bits per segment */
+    static final int SEGMENT_BITS = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_WORDS = SEGMENT_BITS / Long.SIZE;
+
+    private long[][] segments = new long[0][];
+    private long liveCount;
+
+    /**
+     * Allocates the segments for all keys below the given one.
+     * @param keys the number of keys
+     */
+    void ensureCapacity(long keys) {
+        int needed = (int) ((keys + SEGMENT_BITS - 1) >>> SEGMENT_SHIFT);
+        if (needed > segments.length) {
+            int old = segments.length;
+            segments = Arrays.copyOf(segments, Math.max(needed, old + (old >> 1)));
+            for (int i = old; i < segments.length; i++) {
+                segments[i] = new long[SEGMENT_WORDS];
+            }
+        }
+    }
+
+    /**
+     * @param key the key
+     * @return true if the record of the key is active
+     */
+    boolean get(long key) {
+        int segment = (int) (key >>> SEGMENT_SHIFT);
+        if (key < 0 || segment >= segments.length) {
+            return false;
+        }
+        return (segments[segment][(int) (key & (SEGMENT_BITS - 1)) >>> 6] & (1L << key)) != 0;
+    }
+
+    /**
+     * Marks the record of the key active.
+     * @param key the key
+     */
+    void set(long key) {
+        ensureCapacity(key + 1);
+        long[] words = segments[(int) (key >>> SEGMENT_SHIFT)];
+        int word = (int) (key & (SEGMENT_BITS - 1)) >>> 6;
+        if ((words[word] & (1L << key)) == 0) {
+            words[word] |= 1L << key;
+            liveCount++;
+        }
+    }
+
+    /**
+     * Marks the record of the key deleted.
+     * @param key the key
+     */
+    void clear(long key) {
+        if (get(key)) {
+            segments[(int) (key >>> SEGMENT_SHIFT)][(int) (key & (SEGMENT_BITS - 1)) >>> 6] &= ~(1L << key);
+            liveCount--;
+        }
+    }
+
+    /**
+     * Marks the records of all keys in the given range deleted, a word at a time.
+     * @param fromKey the first key
+     * @param toKey the end (exclusive) of the range
+     * @return the number of records that were active
+     */
+    long clearRange(long fromKey, long toKey) {
+        long end = Math.min(toKey, (long) segments.length << SEGMENT_SHIFT);
+        long cleared = 0;
+        for (long key = Math.max(fromKey, 0); key < end; key = (key | 63) + 1) {
+            long mask = -1L << key;
+            if (end - (key & -64L) < Long.SIZE) {
+                mask &= -1L >>> (Long.SIZE - (end & 63));
+            }
+            long[] words = segments[(int) (key >>> SEGMENT_SHIFT)];
+            int word = (int) (key & (SEGMENT_BITS - 1)) >>> 6;
+            cleared += Long.bitCount(words[word] & mask);
+            words[word] &= ~mask;
+        }
+        liveCount -= cleared;
+        return cleared;
+    }
+
+    /**
+     * Sets the 64 bits of the keys <code>64 * wordIndex</code> to <code>64 * wordIndex + 63</code> at once,
+     * for rebuilding the bitmap. The live count must be recomputed with {@link #recount()} afterwards.
+     * @param wordIndex the index of the word
+     * @param bits the bits, the lowest for the first key
+     */
+    void setWord(long wordIndex, long bits) {
+        segments[(int) (wordIndex >>> (SEGMENT_SHIFT - 6))][(int) (wordIndex & (SEGMENT_WORDS - 1))] = bits;
+    }
+
+    /**
+     * Recomputes the number of active records after bulk changes.
+     */
+    void recount() {
+        long count = 0;
+        for (long[] words : segments) {
+            for (long word : words) {
+                count += Long.bitCount(word);
+            }
+        }
+        liveCount = count;
+    }
+
+    /**
+     * @return the number of active records
+     */
+    long getLiveCount() {
+        return liveCount;
+    }
+
+    /**
+     * Drops all bits.
+     */
+    void reset() {
+        segments = new long[0][];
+        liveCount = 0;
+    }
+
+    /**
+     * Writes the bits of the keys below the given one.
+     * @param out the stream to write to
+     * @param keys the number of keys
+     * @throws IOException on any error while writing
+     */
+    void writeTo(DataOutputStream out, long keys) throws IOException {
+        out.writeLong(keys);
+        long words = (keys + 63) >>> 6;
+        for (long w = 0; w < words; w++) {
+            int segment = (int) (w >>> (SEGMENT_SHIFT - 6));
+            out.writeLong(segment < segments.length ? segments[segment][(int) (w & (SEGMENT_WORDS - 1))] : 0);
+        }
+    }
+
+    /**
+     * Replaces the bits with those written by {@link #writeTo(DataOutputStream, long)}.
+     * @param in the stream to read from
+     * @return the number of keys read
+     * @throws IOException on any error while reading
+     */
+    long readFrom(DataInputStream in) throws IOException {
+        reset();
+        long keys = in.readLong();
+        ensureCapacity(keys);
+        long words = (keys + 63) >>> 6;
+        for (long w = 0; w < words; w++) {
+            setWord(w, in.readLong());
+        }
+        recount();
+        return keys;
+    }
+}
@@ -0,0 +1,253 @@
+package container.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Detects sequential and strided key access of a file container and prefetches the following records.
+ * <p>
+ * Once three consecutive reads have the same key distance (the stride), the records of the next
+ * <code>window</code> keys along the stride are read asynchronously with a single positional read of the
+ * key range covering them. When half of a window has been read, the following window is prefetched, and
+ * every continued window doubles in size up to the maximum. Any other access pattern resets the window and
+ * stops prefetching. Windows overlapping a written range are dropped, so prefetched records are never stale.
+ * Not thread-safe; callers synchronize on the owning container.
+ */
+class ReadAhead implements AutoCloseable {
+
+    private static final int INITIAL_WINDOW = 4;
+    /** Streak of equal distances required before prefetching */
+    private static final int MIN_STREAK = 2;
+    /** Maximum number of bytes read by one prefetch, limiting the span of wide strides */
+    private static final int MAX_SPAN_BYTES = 1 << 20;
+
+    private final FileChannel channel;
+    private final int recordSize;
+    private final int maxWindow;
+    private final ExecutorService executor;
+
+    private long lastKey = -1;
+    private long stride;
+    private int streak;
+    private int window = INITIAL_WINDOW;
+
+    private Window current;
+    private Window next;
+
+    private long hits;
+    private long misses;
+    private long prefetched;
+    private long wasted;
+
+    /**
+     * @param channel The data file, read with positional reads only.
+     * @param recordSize The size of a record in the file, including its deletion marker.
+     * @param maxWindow The maximum number of records per prefetch.
+     */
+    ReadAhead(FileChannel channel, int recordSize, int maxWindow) {
+        this.channel = channel;
+        this.recordSize = recordSize;
+        this.maxWindow = maxWindow;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "readahead");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Records a read of the given key and serves it from a prefetched window if possible.
+     * @param key The key read.
+     * @param keyLimit The number of reserved keys; no key beyond is prefetched.
+     * @param value Receives the serialized value on a hit, starting at index 0 of its backing array.
+     * @return the deletion marker of the record on a hit, -1 on a miss
+     */
+    int read(long key, long keyLimit, ByteBuffer value) {
+        long delta = key - lastKey;
+        if (lastKey >= 0 && delta != 0 && delta == stride) {
+            streak++;
+        } else {
+            stride = delta;
+            streak = lastKey >= 0 && delta != 0 ? 1 : 0;
+            window = INITIAL_WINDOW;
+        }
+        lastKey = key;
+
+        if (current != null && !current.contains(key) && next != null && next.contains(key)) {
+            discard(current);
+            current = next;
+            next = null;
+        }
+        if (current != null && current.contains(key)) {
+            ByteBuffer data = current.await();
+            int offset = current.offsetOf(key);
+            if (data != null && offset + recordSize <= data.limit()) {
+                hits++;
+                current.served++;
+                data.get(offset + 1, value.array(), 0, recordSize - 1);
+                if (next == null && streak >= MIN_STREAK && current.stride == stride
+                        && current.indexOf(key) >= current.count / 2) {
+                    window = Math.min(window * 2, maxWindow);
+                    next = launch(current.lastKey() + stride, keyLimit);
+                }
+                return data.get(offset);
+            }
+            discard(current);
+            current = null;
+        }
+
+        misses++;
+        if (streak >= MIN_STREAK) {
+            discardAll();
+            current = launch(key + stride, keyLimit);
+        }
+        return -1;
+    }
+
+    /**
+     * Drops all windows overlapping the given byte range of the data file, to be called after every write.
+     * @param position The first byte written.
+     * @param length The number of bytes written.
+     */
+    void invalidate(long position, long length) {
+        if (next != null && next.overlaps(position, position + length)) {
+            discard(next);
+            next = null;
+        }
+        if (current != null && current.overlaps(position, position + length)) {
+            discard(current);
+            current = next;
+            next = null;
+        }
+    }
+
+    /**
+     * @return the counters since the readahead was created
+     */
+    ReadAheadStats stats() {
+        return new ReadAheadStats(hits, misses, prefetched, wasted);
+    }
+
+    /**
+     * Discards all windows and stops the prefetch thread. Pending reads are not interrupted, as an interrupt
+     * would close the channel.
+     */
+    @Override
+    public void close() {
+        discardAll();
+        executor.shutdown();
+    }
+
+    private Window launch(long firstKey, long keyLimit) {
+        long span = Math.abs(stride);
+        int count = (int) Math.min(window, ((long) MAX_SPAN_BYTES / recordSize - 1) / span + 1);
+        // clip to the reserved keys in walking direction
+        long available = stride > 0 ? (keyLimit - 1 - firstKey) / span + 1 : firstKey / span + 1;
+        if (firstKey < 0 || firstKey >= keyLimit || available <= 0) {
+            return null;
+        }
+        count = (int) Math.min(count, available);
+        if (count <= 0) {
+            return null;
+        }
+        Window w = new Window(firstKey, stride, count);
+        long start = w.lowKey * recordSize;
+        int bytes = (int) ((w.highKey - w.lowKey + 1) * recordSize);
+        w.data = CompletableFuture.supplyAsync(() -> {
+            ByteBuffer buffer = ByteBuffer.allocate(bytes);
+            try {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, start + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return buffer.flip();
+        }, executor);
+        prefetched += count;
+        return w;
+    }
+
+    private void discardAll() {
+        if (current != null) {
+            discard(current);
+            current = null;
+        }
+        if (next != null) {
+            discard(next);
+            next = null;
+        }
+    }
+
+    private void discard(Window w) {
+        wasted += Math.max(0, w.count - w.served);
+    }
+
+    /**
+     * The records of <code>count</code> keys <code>firstKey, firstKey + stride, ...</code>, read as one
+     * contiguous range of keys.
+     */
+    private final class Window {
+
+        private final long firstKey;
+        private final long stride;
+        private final int count;
+        private final long lowKey;
+        private final long highKey;
+        private CompletableFuture<ByteBuffer> data;
+        private int served;
+
+        private Window(long firstKey, long stride, int count) {
+            this.firstKey = firstKey;
+            this.stride = stride;
+            this.count = count;
+            long last = firstKey + (count - 1) * stride;
+            this.lowKey = Math.min(firstKey, last);
+            this.highKey = Math.max(firstKey, last);
+        }
+
+        private boolean contains(long key) {
+            long distance = key - firstKey;
+            if (distance % stride != 0) {
+                return false;
+            }
+            long index = distance / stride;
+            return index >= 0 && index < count;
+        }
+
+        private long indexOf(long key) {
+            return (key - firstKey) / stride;
+        }
+
+        private long lastKey() {
+            return firstKey + (count - 1) * stride;
+        }
+
+        private int offsetOf(long key) {
+            return (int) ((key - lowKey) * recordSize);
+        }
+
+        private boolean overlaps(long from, long to) {
+            return from < (highKey + 1) * recordSize && to > lowKey * recordSize;
+        }
+
+        /**
+         * @return the prefetched records, or null if the prefetch failed
+         */
+        private ByteBuffer await() {
+            try {
+                return data.join();
+            } catch (CompletionException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package container.impl;
+
+/**
+ * Counters of the sequential readahead of a {@link SimpleFileContainer}.
+ * @param hits reads served from prefetched records
+ * @param misses reads that had to go to the file
+ * @param prefetched records read ahead
+ * @param wasted prefetched records discarded without being read
+ */
+public record ReadAheadStats(long hits, long misses, long prefetched, long wasted) {
+
+    /**
+     * @return the fraction of reads served from prefetched records, 0 if there were no reads
+     */
+    public double hitRate() {
+        long reads = hits + misses;
+        return reads == 0 ? 0 : (double) hits / reads;
+    }
+}
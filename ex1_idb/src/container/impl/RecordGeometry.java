@@ -0,0 +1,128 @@
+package container.impl;
+
+/**
+ * Maps keys to the positions of their records and liveness markers in a data file of the given
+ * {@link FileLayout}. All mappings are constant-time arithmetic.
+ */
+final class RecordGeometry {
+
+    private final FileLayout layout;
+    private final int valueSize;
+    private final int pageSize;
+    private final int slotsPerPage;
+    private final int headerSize;
+
+    /**
+     * @param layout the layout of the data file
+     * @param valueSize the size of a serialized value
+     * @param pageSize the size of a page of the paged layout
+     */
+    RecordGeometry(FileLayout layout, int valueSize, int pageSize) {
+        this.layout = layout;
+        this.valueSize = valueSize;
+        this.pageSize = pageSize;
+        if (layout == FileLayout.PAGED) {
+            // the largest slot count whose values and header bits fit into a page
+            int slots = (int) (8L * pageSize / (8L * valueSize + 1));
+            while (slots > 0 && (slots + 7) / 8 + (long) slots * valueSize > pageSize) {
+                slots--;
+            }
+            if (slots == 0) {
+                throw new IllegalArgumentException("Records of " + valueSize + " bytes do not fit into a page of " + pageSize + " bytes");
+            }
+            this.slotsPerPage = slots;
+            this.headerSize = (slots + 7) / 8;
+        } else {
+            this.slotsPerPage = 0;
+            this.headerSize = 0;
+        }
+    }
+
+    FileLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * @return true if every record is preceded by a marker byte of its own, false if its liveness is a bit of
+     *          a page header
+     */
+    boolean hasMarkerByte() {
+        return layout == FileLayout.PACKED;
+    }
+
+    /**
+     * @return the number of records per page of the paged layout
+     */
+    int getSlotsPerPage() {
+        return slotsPerPage;
+    }
+
+    int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return the first byte of the record of the key: its marker byte in the packed layout, its value in the
+     *          paged layout
+     */
+    long recordStart(long key) {
+        return hasMarkerByte() ? key * (valueSize + 1) : valuePosition(key);
+    }
+
+    /**
+     * @return the number of bytes from {@link #recordStart(long)} to the end of the record
+     */
+    int recordLength() {
+        return hasMarkerByte() ? valueSize + 1 : valueSize;
+    }
+
+    long valuePosition(long key) {
+        if (hasMarkerByte()) {
+            return key * (valueSize + 1) + 1;
+        }
+        return key / slotsPerPage * pageSize + headerSize + key % slotsPerPage * valueSize;
+    }
+
+    /**
+     * @return the position of the byte holding the liveness of the key
+     */
+    long markerPosition(long key) {
+        if (hasMarkerByte()) {
+            return key * (valueSize + 1);
+        }
+        return key / slotsPerPage * pageSize + (key % slotsPerPage >>> 3);
+    }
+
+    /**
+     * @return the first key whose liveness is stored in the same header byte as the given key's
+     */
+    long markerGroupStart(long key) {
+        return key - (key % slotsPerPage & 7);
+    }
+
+    /**
+     * @return the number of keys whose liveness is stored in the header byte starting at the given key
+     */
+    int markerGroupSize(long groupStart) {
+        return (int) Math.min(8, slotsPerPage - groupStart % slotsPerPage);
+    }
+
+    /**
+     * @return the length of a data file holding the given number of records
+     */
+    long fileLength(long records) {
+        return records == 0 ? 0 : recordStart(records - 1) + recordLength();
+    }
+
+    /**
+     * @return the number of complete records in a data file of the given length
+     */
+    long records(long fileLength) {
+        if (hasMarkerByte()) {
+            return fileLength / (valueSize + 1);
+        }
+        long pages = fileLength / pageSize;
+        long rest = fileLength % pageSize;
+        return pages * slotsPerPage + (rest <= headerSize ? 0 : (rest - headerSize) / valueSize);
+    }
+}
@@ -0,0 +1,25 @@
+package container.impl;
+
+import java.time.Duration;
+
+/**
+ * What {@link SimpleFileContainer#open()} did to restore the state of the container.
+ *
+ * @param cleanShutdown whether the container had been closed properly, so the stored state could be loaded
+ * @param storedRecentKey the key counter found in the metadata
+ * @param recentKey the key counter after recovery, at least the number of records in the data file
+ * @param truncatedBytes the length of a partially written record removed from the end of the data file
+ * @param scannedBytes the number of bytes of the data file read to rebuild the liveness of the records
+ * @param liveRecords the number of active records
+ * @param elapsed the time spent on recovery
+ */
+public record RecoveryReport(boolean cleanShutdown, long storedRecentKey, long recentKey, long truncatedBytes,
+                             long scannedBytes, long liveRecords, Duration elapsed) {
+
+    /**
+     * @return the number of keys reserved after the metadata was last written, lost by the key counter
+     */
+    public long recoveredKeys() {
+        return recentKey - storedRecentKey;
+    }
+}
@@ -0,0 +1,343 @@
+package container.impl;
+
+import container.Container;
+import io.FixedSizeSerializer;
+import util.ContainerRuntimeException;
+import util.MetaData;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * A container spreading its records across several {@link SimpleFileContainer} shards, each with its own
+ * data and metadata files. The lowest bits of a key select the shard, the remaining bits are the key within
+ * the shard. Shards may live in different directories (e.g. on different devices).
+ * <p>
+ * Every shard is locked independently, so operations on different shards proceed in parallel. The batch
+ * operations ({@link #getAll(Collection)}, {@link #updateAll(Map)}, {@link #insertAll(List)} and
+ * {@link #removeAll(Collection)}) group their keys by shard and process all shards concurrently.
+ *
+ * @param <Value> The value type
+ */
+public class ShardedContainer<Value> implements Container<Long, Value> {
+
+    private final List<SimpleFileContainer<Value>> shards;
+    private final int shardBits;
+    private final long shardMask;
+    private final Path metaFilePath;
+    private final MetaData metaData;
+    private final AtomicLong nextShard = new AtomicLong();
+
+    private volatile boolean isOpen = false;
+    private ExecutorService executor;
+
+    /**
+     * Creates a sharded container with all shards in the same directory.
+     * @param directory The directory to store all files in.
+     * @param filenamePrefix The prefix of all files; shard <code>i</code> uses <code>prefix_shard{i}</code>.
+     * @param serializer The serializer for the values.
+     * @param shardCount The number of shards, a power of two.
+     */
+    public ShardedContainer(Path directory, String filenamePrefix, FixedSizeSerializer<Value> serializer, int shardCount) {
+        this(List.of(directory), filenamePrefix, serializer, shardCount);
+    }
+
+    /**
+     * Creates a sharded container distributing its shards round-robin across the given directories.
+     * The container's own metadata is stored in the first directory.
+     * @param directories The directories to store the shards in.
+     * @param filenamePrefix The prefix of all files; shard <code>i</code> uses <code>prefix_shard{i}</code>.
+     * @param serializer The serializer for the values.
+     * @param shardCount The number of shards, a power of two.
+     */
+    public ShardedContainer(List<Path> directories, String filenamePrefix, FixedSizeSerializer<Value> serializer, int shardCount) {
+        if (shardCount <= 0 || Integer.bitCount(shardCount) != 1) {
+            throw new IllegalArgumentException("Shard count must be a power of two");
+        }
+        if (directories.isEmpty()) {
+            throw new IllegalArgumentException("At least one directory is required");
+        }
+        this.shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            Path directory = directories.get(i % directories.size());
+            shards.add(new SimpleFileContainer<>(directory, filenamePrefix + "_shard" + i, serializer));
+        }
+        this.shardBits = Integer.numberOfTrailingZeros(shardCount);
+        this.shardMask = shardCount - 1;
+        this.metaFilePath = directories.get(0).resolve(filenamePrefix + "_meta.dat");
+        this.metaData = new MetaData();
+    }
+
+    @Override
+    public MetaData getMetaData() {
+        return metaData;
+    }
+
+    /**
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * @param key A key of this container.
+     * @return the index of the shard storing the given key
+     */
+    public int shardOf(long key) {
+        return (int) (key & shardMask);
+    }
+
+    @Override
+    public synchronized void open() throws ContainerRuntimeException {
+        if (isOpen) {
+            throw new IllegalStateException("Container is already open");
+        }
+        try {
+            Files.createDirectories(metaFilePath.getParent());
+            if (Files.exists(metaFilePath)) {
+                metaData.readFrom(metaFilePath);
+                if (metaData.getIntProperty("shards", -1) != shards.size()) {
+                    throw new IllegalStateException("Stored shard count does not match");
+                }
+            } else {
+                metaData.setIntProperty("shards", shards.size());
+                metaData.writeTo(metaFilePath);
+            }
+        } catch (IOException e) {
+            throw new ContainerRuntimeException("Failed to open container: " + e.getMessage(), e);
+        }
+
+        executor = Executors.newFixedThreadPool(Math.min(shards.size(), Runtime.getRuntime().availableProcessors()), r -> {
+            Thread thread = new Thread(r, "shard-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        isOpen = true;
+        // written by the workers, read after forEachShard has waited for all of them
+        boolean[] opened = new boolean[shards.size()];
+        try {
+            forEachShard((index, shard) -> {
+                shard.open();
+                opened[index] = true;
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // do not leave the files of the shards that did open behind
+            for (int i = 0; i < opened.length; i++) {
+                if (opened[i]) {
+                    try {
+                        shards.get(i).close();
+                    } catch (RuntimeException closeFailure) {
+                        e.addSuppressed(closeFailure);
+                    }
+                }
+            }
+            isOpen = false;
+            executor.shutdown();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws ContainerRuntimeException {
+        checkOpen();
+        try {
+            metaData.writeTo(metaFilePath);
+            forEachShard((index, shard) -> {
+                shard.close();
+                return null;
+            });
+        } catch (IOException e) {
+            throw new ContainerRuntimeException("Failed to close container: " + e.getMessage(), e);
+        } finally {
+            isOpen = false;
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public Long reserve() throws IllegalStateException {
+        checkOpen();
+        int shard = (int) (nextShard.getAndIncrement() & shardMask);
+        return globalKey(shards.get(shard).reserve(), shard);
+    }
+
+    @Override
+    public void update(Long key, Value value) throws NoSuchElementException, IllegalStateException {
+        checkOpen();
+        shardFor(key).update(localKey(key), value);
+    }
+
+    @Override
+    public Value get(Long key) throws NoSuchElementException, IllegalStateException {
+        checkOpen();
+        return shardFor(key).get(localKey(key));
+    }
+
+    @Override
+    public void remove(Long key) throws NoSuchElementException, IllegalStateException {
+        checkOpen();
+        shardFor(key).remove(localKey(key));
+    }
+
+    /**
+     * Retrieves the values of all given keys, querying all shards in parallel.
+     * @param keys The keys to look up.
+     * @return The values by key.
+     * @throws NoSuchElementException If no value was stored for one of the keys.
+     * @throws IllegalStateException If this operation is invoked on a closed container.
+     */
+    public Map<Long, Value> getAll(Collection<Long> keys) throws NoSuchElementException, IllegalStateException {
+        checkOpen();
+        List<List<Long>> byShard = groupByShard(keys);
+        List<Map<Long, Value>> results = forEachShard((index, shard) -> {
+            Map<Long, Value> values = new HashMap<>();
+            for (Long key : byShard.get(index)) {
+                values.put(key, shard.get(localKey(key)));
+            }
+            return values;
+        });
+        Map<Long, Value> all = new HashMap<>();
+        results.forEach(all::putAll);
+        return all;
+    }
+
+    /**
+     * Updates the values of all given keys, writing to all shards in parallel.
+     * @param values The new values by key.
+     * @throws NoSuchElementException If one of the keys was not reserved or has been removed.
+     * @throws IllegalStateException If this operation is invoked on a closed container.
+     */
+    public void updateAll(Map<Long, Value> values) throws NoSuchElementException, IllegalStateException {
+        checkOpen();
+        List<List<Long>> byShard = groupByShard(values.keySet());
+        forEachShard((index, shard) -> {
+            for (Long key : byShard.get(index)) {
+                shard.update(localKey(key), values.get(key));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Inserts all given values, spreading them evenly across the shards which are written in parallel.
+     * @param values The values to insert.
+     * @return The keys of the values, in the order of the given values.
+     * @throws IllegalStateException If this operation is invoked on a closed container.
+     */
+    public List<Long> insertAll(List<Value> values) throws IllegalStateException {
+        checkOpen();
+        int first = (int) (nextShard.getAndAdd(values.size()) & shardMask);
+        Long[] keys = new Long[values.size()];
+        forEachShard((index, shard) -> {
+            // value i goes to shard (first + i) mod shardCount
+            for (int i = Math.floorMod(index - first, shards.size()); i < values.size(); i += shards.size()) {
+                keys[i] = globalKey(shard.insert(values.get(i)), index);
+            }
+            return null;
+        });
+        return List.of(keys);
+    }
+
+    /**
+     * Removes all given keys, deleting from all shards in parallel.
+     * @param keys The keys to remove.
+     * @throws NoSuchElementException If no value was stored for one of the keys.
+     * @throws IllegalStateException If this operation is invoked on a closed container.
+     */
+    public void removeAll(Collection<Long> keys) throws NoSuchElementException, IllegalStateException {
+        checkOpen();
+        List<List<Long>> byShard = groupByShard(keys);
+        forEachShard((index, shard) -> {
+            for (Long key : byShard.get(index)) {
+                shard.remove(localKey(key));
+            }
+            return null;
+        });
+    }
+
+    private List<List<Long>> groupByShard(Collection<Long> keys) {
+        List<List<Long>> byShard = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (Long key : keys) {
+            validateKey(key);
+            byShard.get(shardOf(key)).add(key);
+        }
+        return byShard;
+    }
+
+    /**
+     * Runs the given task for every shard in parallel and waits for all of them. If any task fails,
+     * its exception is rethrown after all tasks have finished.
+     */
+    private <R> List<R> forEachShard(BiFunction<Integer, SimpleFileContainer<Value>, R> task) {
+        List<Future<R>> futures = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            int index = i;
+            futures.add(executor.submit(() -> task.apply(index, shards.get(index))));
+        }
+        List<R> results = new ArrayList<>(shards.size());
+        RuntimeException failure = null;
+        for (Future<R> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException runtime ? runtime
+                            : new ContainerRuntimeException("Shard operation failed: " + e.getCause().getMessage(), e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ContainerRuntimeException("Interrupted while waiting for shards", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    private SimpleFileContainer<Value> shardFor(Long key) {
+        validateKey(key);
+        return shards.get(shardOf(key));
+    }
+
+    private long localKey(long key) {
+        return key >>> shardBits;
+    }
+
+    private long globalKey(long localKey, int shard) {
+        return (localKey << shardBits) | shard;
+    }
+
+    private void checkOpen() throws IllegalStateException {
+        if (!isOpen) {
+            throw new IllegalStateException("Container is not open");
+        }
+    }
+
+    private void validateKey(Long key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        if (key < 0) {
+            throw new IllegalArgumentException("Key cannot be negative");
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package container.impl;
+
+import io.LongSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedContainerTest {
+
+    private Path tempDirectory;
+    private ShardedContainer<Long> container;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tempDirectory = Files.createTempDirectory("ShardedContainerTest");
+        container = new ShardedContainer<>(tempDirectory, "sharded", new LongSerializer(), 4);
+        container.open();
+    }
+
+    @AfterEach
+    void tearDown() {
+        container.close();
+        tempDirectory.toFile().deleteOnExit();
+    }
+
+    @Test
+    void testReserveSpreadsAcrossShards() {
+        Set<Integer> used = new HashSet<>();
+        Set<Long> keys = new HashSet<>();
+        for (int i = 0; i < 8; i++) {
+            Long key = container.reserve();
+            assertTrue(keys.add(key));
+            used.add(container.shardOf(key));
+        }
+        assertEquals(4, used.size());
+        assertTrue(Files.exists(tempDirectory.resolve("sharded_shard3_data.dat")));
+    }
+
+    @Test
+    void testSingleOperations() {
+        Long key = container.insert(42L);
+        assertEquals(42L, container.get(key));
+        container.update(key, 43L);
+        assertEquals(43L, container.get(key));
+        container.remove(key);
+        assertThrows(NoSuchElementException.class, () -> container.get(key));
+        assertThrows(NoSuchElementException.class, () -> container.get(1000L));
+        assertThrows(IllegalArgumentException.class, () -> container.get(null));
+    }
+
+    @Test
+    void testBatchOperations() {
+        List<Long> values = new ArrayList<>();
+        for (long i = 0; i < 1000; i++) {
+            values.add(i * 3);
+        }
+        List<Long> keys = container.insertAll(values);
+        assertEquals(1000, new HashSet<>(keys).size());
+
+        Map<Long, Long> fetched = container.getAll(keys);
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(values.get(i), fetched.get(keys.get(i)));
+        }
+
+        Map<Long, Long> updates = new HashMap<>();
+        for (Long key : keys) {
+            updates.put(key, -key);
+        }
+        container.updateAll(updates);
+        assertEquals(-keys.get(17), container.get(keys.get(17)));
+
+        container.removeAll(keys.subList(0, 500));
+        assertThrows(NoSuchElementException.class, () -> container.getAll(keys));
+        assertEquals(500, container.getAll(keys.subList(500, 1000)).size());
+    }
+
+    @Test
+    void testConcurrentInsertsAndPersistence() throws Exception {
+        Map<Long, Long> written = new ConcurrentHashMap<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            long base = t * 1000L;
+            threads.add(new Thread(() -> {
+                for (long i = 0; i < 250; i++) {
+                    written.put(container.insert(base + i), base + i);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1000, written.size());
+
+        container.close();
+        container.open();
+        assertEquals(written, container.getAll(written.keySet()));
+    }
+
+    @Test
+    void testShardCountMustMatch() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ShardedContainer<>(tempDirectory, "bad", new LongSerializer(), 3));
+        ShardedContainer<Long> other = new ShardedContainer<>(tempDirectory, "sharded", new LongSerializer(), 8);
+        assertThrows(IllegalStateException.class, other::open);
+    }
+
+    @Test
+    void testFailedOpenClosesOpenedShards() throws Exception {
+        ShardedContainer<Long> other = new ShardedContainer<>(tempDirectory, "partial", new LongSerializer(), 4);
+        // the data file of one shard cannot be opened
+        Path blocked = Files.createDirectory(tempDirectory.resolve("partial_shard2_data.dat"));
+        assertThrows(IllegalStateException.class, other::open);
+        assertThrows(IllegalStateException.class, other::close);
+
+        Files.delete(blocked);
+        // the shards that did open were closed again, so they can be reopened
+        other.open();
+        assertEquals(7L, other.get(other.insert(7L)));
+        other.close();
+    }
+}
@@ -2,22 +2,80 @@ package container.impl;
 
 import container.Container;
 import io.FixedSizeSerializer;
+import io.PrimitiveDoubleSerializer;
+import io.PrimitiveIntSerializer;
+import io.PrimitiveLongSerializer;
+import util.ChecksumMode;
+import util.ContainerRuntimeException;
 import util.MetaData;
+import util.PageChecksums;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * A container storing fixed-size records in a single data file. By default the record of key <code>k</code>
+ * is stored at offset <code>k * (serializedSize + 1)</code>, preceded by a deletion marker byte; with
+ * {@link #setLayout(FileLayout)} records can instead be packed into aligned pages whose headers hold the
+ * liveness bits, so no record crosses a page (see {@link FileLayout}).
+ * <p>
+ * Optionally, CRC32C checksums of all pages of the data file are maintained in a
+ * <code>_crc.dat</code> file (see {@link #setChecksumMode(ChecksumMode)}).
+ * All public operations are synchronized on the container.
+ * <p>
+ * {@link #openSnapshot()} returns a read-only view pinned to the current state. Writers keep the
+ * superseded images of records visible to open snapshots in memory, so neither side waits for the other
+ * beyond a single operation.
+ * <p>
+ * With {@link #setReadAhead(int)}, sequential and strided key walks of a packed data file are detected and
+ * the following records are prefetched in the background.
+ * <p>
+ * {@link #getRaw(long, ByteBuffer)}, {@link #updateRaw(long, ByteBuffer)} and
+ * {@link #forEachRaw(long, long, RawRecordVisitor)} move serialized values between the data file and the
+ * caller's buffers without running the serializer, e.g. to copy records between containers.
+ * {@link #removeRange(long, long)} and {@link #truncate(long)} remove whole key ranges with bulk writes.
+ * <p>
+ * Which records are active is kept in memory. On {@link #close()} it is saved to a <code>_live.dat</code>
+ * file and the metadata is marked as cleanly closed. If the container was not closed cleanly, {@link #open()}
+ * derives the key counter from the length of the data file, drops a partially written last record and
+ * rebuilds the liveness by scanning the deletion markers or page headers in large chunks in parallel, see
+ * {@link #getRecoveryReport()}.
+ */
 public class SimpleFileContainer<Value> implements Container<Long, Value> {
 
     private static final byte ACTIVE = 1;
     private static final byte DELETED = 0;
+    /** Number of pages verified per scrub step while holding the container lock */
+    private static final int SCRUB_STEP_PAGES = 256;
+    /** Number of bytes read at once per thread when scanning the data file on recovery */
+    private static final int RECOVERY_CHUNK_SIZE = 4 << 20;
+    /** Number of bytes read at once by {@link #forEachRaw(long, long, RawRecordVisitor)} */
+    private static final int RAW_CHUNK_SIZE = 1 << 16;
 
     private final Path dataFilePath;
     private final Path metaFilePath;
+    private final Path checksumFilePath;
+    private final Path livenessFilePath;
     private final FixedSizeSerializer<Value> serializer;
 
     private long recentKey = 0;
@@ -25,6 +83,24 @@ public class SimpleFileContainer<Value> implements Container<Long, Value> {
     private RandomAccessFile dataFile;
     private final MetaData metaData;
     private final int objectSize;
+    private final ByteBuffer valueBuffer;
+    private FileLayout layout = FileLayout.PACKED;
+    /** The positions of the records in the data file, fixed while the container is open */
+    private RecordGeometry geometry;
+
+    private ChecksumMode checksumMode = ChecksumMode.OFF;
+    private Duration scrubInterval = Duration.ofSeconds(10);
+    private PageChecksums checksums;
+    private ScheduledExecutorService scrubber;
+    private final List<Integer> corruptPages = new ArrayList<>();
+    private final VersionStore versions = new VersionStore();
+    private int readAheadWindow = 0;
+    private ReadAhead readAhead;
+    /** Incremented on every open, so snapshots of an earlier open cannot be used after a re-open */
+    private int openGeneration = 0;
+    private final LivenessBitmap liveness = new LivenessBitmap();
+    private int recoveryParallelism = Runtime.getRuntime().availableProcessors();
+    private RecoveryReport recoveryReport;
 
     public SimpleFileContainer(Path directory, String filenamePrefix, FixedSizeSerializer<Value> serializer) {
         if (serializer == null) {
@@ -33,9 +109,12 @@ public class SimpleFileContainer<Value> implements Container<Long, Value> {
 
         this.dataFilePath = directory.resolve(filenamePrefix + "_data.dat");
         this.metaFilePath = directory.resolve(filenamePrefix + "_meta.dat");
+        this.checksumFilePath = directory.resolve(filenamePrefix + "_crc.dat");
+        this.livenessFilePath = directory.resolve(filenamePrefix + "_live.dat");
         this.serializer = serializer;
         this.objectSize = serializer.getSerializedSize() + 1; // +1 for deletion marker byte
         this.metaData = new MetaData();
+        this.valueBuffer = ByteBuffer.allocate(serializer.getSerializedSize());
     }
 
     @Override
@@ -43,8 +122,172 @@ public class SimpleFileContainer<Value> implements Container<Long, Value> {
         return metaData;
     }
 
+    /**
+     * Sets how page checksums are maintained and verified. Takes effect on the next {@link #open()}.
+     * With {@link ChecksumMode#OFF} an existing checksum file is deleted when the container is opened.
+     * @param mode The checksum mode.
+     * @throws IllegalStateException If the container is open.
+     */
+    public synchronized void setChecksumMode(ChecksumMode mode) throws IllegalStateException {
+        if (isOpen) {
+            throw new IllegalStateException("Checksum mode cannot be changed while the container is open");
+        }
+        this.checksumMode = mode;
+    }
+
+    /**
+     * Sets the layout of the records in the data file. Takes effect on the next {@link #open()}; the layout
+     * of an existing data file is recorded in its metadata and must match.
+     * @param layout The layout.
+     * @throws IllegalStateException If the container is open.
+     */
+    public synchronized void setLayout(FileLayout layout) throws IllegalStateException {
+        if (isOpen) {
+            throw new IllegalStateException("Layout cannot be changed while the container is open");
+        }
+        if (layout == null) {
+            throw new IllegalArgumentException("Layout cannot be null");
+        }
+        this.layout = layout;
+    }
+
+    /**
+     * @return the layout of the records in the data file
+     */
+    public synchronized FileLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Sets the delay between two full scrub passes in {@link ChecksumMode#BACKGROUND_SCRUB} mode.
+     * Takes effect on the next {@link #open()}.
+     * @param interval The delay between two passes.
+     */
+    public synchronized void setScrubInterval(Duration interval) {
+        this.scrubInterval = interval;
+    }
+
+    /**
+     * @return the pages found corrupt by the background scrubber or {@link #scrub()} since the container was opened
+     */
+    public synchronized List<Integer> getCorruptPages() {
+        return new ArrayList<>(corruptPages);
+    }
+
+    /**
+     * Verifies the checksums of all pages, independent of the checksum mode's read verification.
+     * The container lock is released between steps, so other operations can proceed during the scrub.
+     * @return the pages whose checksums do not match
+     * @throws IllegalStateException If the container is closed or checksums are disabled.
+     */
+    public List<Integer> scrub() throws IllegalStateException {
+        return scrub(false);
+    }
+
+    private List<Integer> scrub(boolean background) throws IllegalStateException {
+        List<Integer> corrupt = new ArrayList<>();
+        for (int page = 0; ; page += SCRUB_STEP_PAGES) {
+            synchronized (this) {
+                if (background && scrubber == null) {
+                    break; // the container is being closed
+                }
+                checkOpen();
+                if (checksums == null) {
+                    throw new IllegalStateException("Checksums are disabled");
+                }
+                if (page >= checksums.getPageCount()) {
+                    break;
+                }
+                try {
+                    List<Integer> found = checksums.scrub(dataFile.getChannel(), page, SCRUB_STEP_PAGES);
+                    for (Integer p : found) {
+                        if (!corruptPages.contains(p)) {
+                            corruptPages.add(p);
+                        }
+                    }
+                    corrupt.addAll(found);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Failed to scrub container: " + e.getMessage(), e);
+                }
+            }
+        }
+        return corrupt;
+    }
+
+    /**
+     * Enables readahead for sequential and strided key walks: once a stride is detected, the following
+     * records are prefetched asynchronously, in windows growing up to the given number of records.
+     * Takes effect immediately and resets the readahead counters. Has no effect on a {@link FileLayout#PAGED}
+     * data file, whose records are read page by page anyway.
+     * @param maxRecords The maximum number of records prefetched at once, 0 to disable readahead.
+     */
+    public synchronized void setReadAhead(int maxRecords) {
+        if (maxRecords < 0) {
+            throw new IllegalArgumentException("Readahead window cannot be negative");
+        }
+        this.readAheadWindow = maxRecords;
+        if (isOpen) {
+            startReadAhead();
+        }
+    }
+
+    /**
+     * @return the readahead counters since readahead was enabled or the container was opened
+     */
+    public synchronized ReadAheadStats getReadAheadStats() {
+        return readAhead == null ? new ReadAheadStats(0, 0, 0, 0) : readAhead.stats();
+    }
+
+    /**
+     * Sets the number of threads scanning the data file when the container has to be recovered on
+     * {@link #open()}.
+     * @param threads The number of threads, at least 1.
+     */
+    public synchronized void setRecoveryParallelism(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Recovery parallelism must be at least 1");
+        }
+        this.recoveryParallelism = threads;
+    }
+
+    /**
+     * @return how the state of the container was restored by the last {@link #open()}, or null if it has
+     *          not been opened yet
+     */
+    public synchronized RecoveryReport getRecoveryReport() {
+        return recoveryReport;
+    }
+
+    /**
+     * @return the number of active records, i.e. reserved and not removed
+     * @throws IllegalStateException If this operation is invoked on a closed container.
+     */
+    public synchronized long getLiveCount() throws IllegalStateException {
+        checkOpen();
+        return liveness.getLiveCount();
+    }
+
+    /**
+     * Opens a read-only view of this container pinned to its current state. Subsequent updates,
+     * removals and reservations are invisible to the snapshot. The snapshot must be closed to release
+     * the record images kept for it; all snapshots become unusable when the container is closed.
+     * @return the snapshot
+     * @throws IllegalStateException If the container is closed.
+     */
+    public synchronized Snapshot openSnapshot() throws IllegalStateException {
+        checkOpen();
+        return new Snapshot(versions.pin(), recentKey);
+    }
+
+    /**
+     * @return the number of serialized bytes currently retained for open snapshots
+     */
+    public synchronized long getSnapshotRetainedBytes() {
+        return versions.retainedBytes();
+    }
+
     @Override
-    public void open() throws IllegalStateException {
+    public synchronized void open() throws IllegalStateException {
         if (isOpen) {
             throw new IllegalStateException("Container is already open");
         }
@@ -53,19 +296,40 @@ public class SimpleFileContainer<Value> implements Container<Long, Value> {
             Files.createDirectories(dataFilePath.getParent());
             dataFile = new RandomAccessFile(dataFilePath.toFile(), "rw");
 
+            boolean clean = false;
             if (Files.exists(metaFilePath)) {
                 metaData.readFrom(metaFilePath);
                 recentKey = metaData.getLongProperty("recentKey", 0);
+                clean = Boolean.parseBoolean(metaData.getProperty("cleanShutdown", "false"));
 
                 int storedObjectSize = metaData.getIntProperty("objectSize", -1);
                 if (storedObjectSize != objectSize) {
+                    dataFile.close();
                     throw new IllegalStateException("Stored object size does not match current serializer size");
                 }
+                String storedLayout = metaData.getProperty("layout", FileLayout.PACKED.name());
+                if (!storedLayout.equals(layout.name())) {
+                    dataFile.close();
+                    throw new IllegalStateException("Stored layout " + storedLayout + " does not match the configured layout " + layout);
+                }
             } else {
-                metaData.setLongProperty("recentKey", recentKey);
+                recentKey = 0;
+                clean = dataFile.length() == 0;
                 metaData.setIntProperty("objectSize", objectSize);
-                metaData.writeTo(metaFilePath);
+                metaData.setProperty("layout", layout.name());
+            }
+            geometry = new RecordGeometry(layout, serializer.getSerializedSize(), PageChecksums.DEFAULT_PAGE_SIZE);
+            long truncated = recover(clean);
+            // until the next close, the stored liveness and key counter may become stale
+            metaData.setLongProperty("recentKey", recentKey);
+            metaData.setProperty("cleanShutdown", "false");
+            metaData.writeTo(metaFilePath);
+            openChecksums();
+            if (truncated > 0 && checksums != null) {
+                checksums.truncate(dataFile.getChannel());
             }
+            startReadAhead();
+            openGeneration++;
             isOpen = true;
         } catch (IOException e) {
             throw new IllegalStateException("Failed to open container: " + e.getMessage(), e);
@@ -74,13 +338,46 @@ public class SimpleFileContainer<Value> implements Container<Long, Value> {
 
     @Override
     public void close() throws IllegalStateException {
+        ScheduledExecutorService stopped;
+        synchronized (this) {
+            stopped = scrubber;
+            scrubber = null;
+        }
+        if (stopped != null) {
+            // wait outside the lock, a running scrub step may need it to finish; interrupting the
+            // scrubber would close the data file's channel
+            stopped.shutdown();
+            try {
+                stopped.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        closeFiles();
+    }
+
+    private synchronized void closeFiles() throws IllegalStateException {
         if (!isOpen) {
             throw new IllegalStateException("Container is not open");
         }
 
         try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(livenessFilePath), 1 << 16))) {
+                liveness.writeTo(out, recentKey);
+            }
             metaData.setLongProperty("recentKey", recentKey);
+            metaData.setProperty("cleanShutdown", "true");
             metaData.writeTo(metaFilePath);
+            if (checksums != null) {
+                checksums.close();
+                checksums = null;
+            }
+            versions.clear();
+            liveness.reset();
+            if (readAhead != null) {
+                readAhead.close();
+                readAhead = null;
+            }
             dataFile.close();
             isOpen = false;
         } catch (IOException e) {
@@ -89,20 +386,33 @@ public class SimpleFileContainer<Value> implements Container<Long, Value> {
     }
 
     @Override
-    public Long reserve() throws IllegalStateException {
+    public synchronized Long reserve() throws IllegalStateException {
         checkOpen();
 
         long key = recentKey++;
-        long position = key * objectSize;
+        long position = geometry.recordStart(key);
+        int length = geometry.recordLength();
 
         try {
-            if (dataFile.length() < position + objectSize) {
-                dataFile.setLength(position + objectSize);
+            // in the paged layout, the extension may also cover the unused end of the previous page and the
+            // header of a new page
+            long extended = Math.min(position, dataFile.length());
+            if (dataFile.length() < position + length) {
+                dataFile.setLength(position + length);
             }
 
             dataFile.seek(position);
-            dataFile.writeByte(ACTIVE);
-            dataFile.write(new byte[objectSize - 1]);
+            if (geometry.hasMarkerByte()) {
+                dataFile.writeByte(ACTIVE);
+            }
+            // the value buffer doubles as the zero image of a new record
+            Arrays.fill(valueBuffer.array(), (byte) 0);
+            dataFile.write(valueBuffer.array(), 0, valueBuffer.capacity());
+            written(extended, (int) (position + length - extended));
+            liveness.set(key);
+            if (!geometry.hasMarkerByte()) {
+                writeHeaderBits(key);
+            }
 
             return key;
         } catch (IOException e) {
@@ -111,50 +421,620 @@ public class SimpleFileContainer<Value> implements Container<Long, Value> {
     }
 
     @Override
-    public void update(Long key, Value value) throws IllegalArgumentException, IllegalStateException, NoSuchElementException {
+    public synchronized void update(Long key, Value value) throws IllegalArgumentException, IllegalStateException, NoSuchElementException {
         checkOpen();
         validateKey(key);
         if (value == null) {
             throw new IllegalArgumentException("Value cannot be null");
         }
 
-        long position = key * objectSize;
+        valueBuffer.clear();
+        serializer.serialize(value, valueBuffer);
+        writeValue(key);
+    }
+
+    @Override
+    public synchronized Value get(Long key) throws IllegalStateException, NoSuchElementException {
+        checkOpen();
+        validateKey(key);
+
+        return serializer.deserialize(readValue(key));
+    }
+
+    /**
+     * Retrieves a long value without boxing it. Requires the container to use a {@link PrimitiveLongSerializer}.
+     * @param key The key obtained when inserting the value.
+     * @return The value for the given key
+     * @throws NoSuchElementException If no value was stored for the given key.
+     * @throws IllegalStateException If the container is closed or its serializer is not a {@link PrimitiveLongSerializer}.
+     */
+    public synchronized long getLong(long key) throws IllegalStateException, NoSuchElementException {
+        PrimitiveLongSerializer primitive = primitiveSerializer(PrimitiveLongSerializer.class);
+        checkOpen();
+        validateKey(key);
+        return primitive.deserializeLong(readValue(key));
+    }
+
+    /**
+     * Updates a long value without boxing it. Requires the container to use a {@link PrimitiveLongSerializer}.
+     * @param key The key to update the value for.
+     * @param value The new value to store.
+     * @throws NoSuchElementException If the key was not reserved or has been removed.
+     * @throws IllegalStateException If the container is closed or its serializer is not a {@link PrimitiveLongSerializer}.
+     */
+    public synchronized void updateLong(long key, long value) throws IllegalStateException, NoSuchElementException {
+        PrimitiveLongSerializer primitive = primitiveSerializer(PrimitiveLongSerializer.class);
+        checkOpen();
+        validateKey(key);
+        valueBuffer.clear();
+        primitive.serializeLong(value, valueBuffer);
+        writeValue(key);
+    }
+
+    /**
+     * Retrieves an int value without boxing it. Requires the container to use a {@link PrimitiveIntSerializer}.
+     * @param key The key obtained when inserting the value.
+     * @return The value for the given key
+     * @throws NoSuchElementException If no value was stored for the given key.
+     * @throws IllegalStateException If the container is closed or its serializer is not a {@link PrimitiveIntSerializer}.
+     */
+    public synchronized int getInt(long key) throws IllegalStateException, NoSuchElementException {
+        PrimitiveIntSerializer primitive = primitiveSerializer(PrimitiveIntSerializer.class);
+        checkOpen();
+        validateKey(key);
+        return primitive.deserializeInt(readValue(key));
+    }
+
+    /**
+     * Updates an int value without boxing it. Requires the container to use a {@link PrimitiveIntSerializer}.
+     * @param key The key to update the value for.
+     * @param value The new value to store.
+     * @throws NoSuchElementException If the key was not reserved or has been removed.
+     * @throws IllegalStateException If the container is closed or its serializer is not a {@link PrimitiveIntSerializer}.
+     */
+    public synchronized void updateInt(long key, int value) throws IllegalStateException, NoSuchElementException {
+        PrimitiveIntSerializer primitive = primitiveSerializer(PrimitiveIntSerializer.class);
+        checkOpen();
+        validateKey(key);
+        valueBuffer.clear();
+        primitive.serializeInt(value, valueBuffer);
+        writeValue(key);
+    }
+
+    /**
+     * Retrieves a double value without boxing it. Requires the container to use a {@link PrimitiveDoubleSerializer}.
+     * @param key The key obtained when inserting the value.
+     * @return The value for the given key
+     * @throws NoSuchElementException If no value was stored for the given key.
+     * @throws IllegalStateException If the container is closed or its serializer is not a {@link PrimitiveDoubleSerializer}.
+     */
+    public synchronized double getDouble(long key) throws IllegalStateException, NoSuchElementException {
+        PrimitiveDoubleSerializer primitive = primitiveSerializer(PrimitiveDoubleSerializer.class);
+        checkOpen();
+        validateKey(key);
+        return primitive.deserializeDouble(readValue(key));
+    }
+
+    /**
+     * Updates a double value without boxing it. Requires the container to use a {@link PrimitiveDoubleSerializer}.
+     * @param key The key to update the value for.
+     * @param value The new value to store.
+     * @throws NoSuchElementException If the key was not reserved or has been removed.
+     * @throws IllegalStateException If the container is closed or its serializer is not a {@link PrimitiveDoubleSerializer}.
+     */
+    public synchronized void updateDouble(long key, double value) throws IllegalStateException, NoSuchElementException {
+        PrimitiveDoubleSerializer primitive = primitiveSerializer(PrimitiveDoubleSerializer.class);
+        checkOpen();
+        validateKey(key);
+        valueBuffer.clear();
+        primitive.serializeDouble(value, valueBuffer);
+        writeValue(key);
+    }
+
+    /**
+     * Checks whether a value is stored for the given key, i.e. the key has been reserved and not removed.
+     * @param key The key to check.
+     * @return true if a value is stored for the key
+     * @throws IllegalStateException If this operation is invoked on a closed container.
+     */
+    public synchronized boolean contains(long key) throws IllegalStateException {
+        checkOpen();
+        return key < recentKey && liveness.get(key);
+    }
+
+    /**
+     * Updates the values of the consecutive keys <code>firstKey, firstKey + 1, ...</code> with a single
+     * read of the key range and a single write. Keys that have been removed are skipped.
+     * @param firstKey The key to update with the first value.
+     * @param values The new values.
+     * @return The number of values written.
+     * @throws NoSuchElementException If one of the keys has not been reserved.
+     * @throws IllegalStateException If this operation is invoked on a closed container.
+     */
+    public synchronized int updateRun(long firstKey, List<Value> values) throws IllegalStateException, NoSuchElementException {
+        checkOpen();
+        if (values.isEmpty()) {
+            return 0;
+        }
+        validateKey(firstKey);
+        validateKey(firstKey + values.size() - 1);
+
+        long position = geometry.recordStart(firstKey);
+        long end = geometry.recordStart(firstKey + values.size() - 1) + geometry.recordLength();
+        try {
+            int length = (int) Math.min(end - position, dataFile.length() - position);
+            ByteBuffer run = ByteBuffer.allocate(Math.max(length, 0));
+            while (run.hasRemaining()) {
+                if (dataFile.getChannel().read(run, position + run.position()) < 0) {
+                    break;
+                }
+            }
+
+            int available = run.position();
+            int written = 0;
+            for (int i = 0; i < values.size(); i++) {
+                long key = firstKey + i;
+                int offset = (int) (geometry.recordStart(key) - position);
+                if (offset + geometry.recordLength() > available || !liveness.get(key)) {
+                    continue;
+                }
+                preserveImage(key);
+                run.position(offset);
+                if (geometry.hasMarkerByte()) {
+                    run.put(ACTIVE);
+                }
+                serializer.serialize(values.get(i), run);
+                written++;
+            }
+            run.position(0).limit(available);
+            while (run.hasRemaining()) {
+                dataFile.getChannel().write(run, position + run.position());
+            }
+            written(position, length);
+            return written;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to update keys from " + firstKey + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Receives the serialized records of {@link #forEachRaw(long, long, RawRecordVisitor)}.
+     */
+    @FunctionalInterface
+    public interface RawRecordVisitor {
+
+        /**
+         * @param key the key of the record
+         * @param record a read-only view of the serialized value, only valid during the call
+         */
+        void visit(long key, ByteBuffer record);
+    }
+
+    /**
+     * Reads the serialized value of the given key into the buffer, directly from the data file without
+     * deserializing it. A direct buffer avoids copying the bytes through the heap.
+     * @param key The key to read.
+     * @param dst The buffer to read into, with at least {@link FixedSizeSerializer#getSerializedSize()} bytes remaining;
+     *            its position is advanced by that many bytes.
+     * @return the number of bytes read
+     * @throws NoSuchElementException If no value is stored for the key.
+     * @throws IllegalArgumentException If the buffer has too little room.
+     * @throws IllegalStateException If this operation is invoked on a closed container.
+     */
+    public synchronized int getRaw(long key, ByteBuffer dst) throws IllegalStateException, NoSuchElementException {
+        checkOpen();
+        validateKey(key);
+        int size = serializer.getSerializedSize();
+        if (dst.remaining() < size) {
+            throw new IllegalArgumentException("Buffer has room for " + dst.remaining() + " of " + size + " bytes");
+        }
+        if (!liveness.get(key)) {
+            throw new NoSuchElementException("Key " + key + " has been deleted");
+        }
+        long position = geometry.recordStart(key);
+        long valuePosition = geometry.valuePosition(key);
+        try {
+            if (checksumMode == ChecksumMode.VERIFY_ON_READ) {
+                checksums.verify(dataFile.getChannel(), position, position + geometry.recordLength());
+            }
+            int limit = dst.limit();
+            dst.limit(dst.position() + size);
+            try {
+                while (dst.hasRemaining()) {
+                    if (dataFile.getChannel().read(dst, valuePosition + size - dst.remaining()) < 0) {
+                        throw new IllegalStateException("Failed to read complete record for key " + key);
+                    }
+                }
+            } finally {
+                dst.limit(limit);
+            }
+            return size;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read value for key " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Replaces the value of the given key with already serialized bytes, written directly to the data file.
+     * @param key The key to update.
+     * @param src The serialized value; exactly {@link FixedSizeSerializer#getSerializedSize()} bytes must be
+     *            remaining, the position is advanced past them.
+     * @throws NoSuchElementException If the key was not reserved or has been removed.
+     * @throws IllegalArgumentException If the buffer does not hold a serialized value.
+     * @throws IllegalStateException If this operation is invoked on a closed container.
+     */
+    public synchronized void updateRaw(long key, ByteBuffer src) throws IllegalStateException, NoSuchElementException {
+        checkOpen();
+        validateKey(key);
+        int size = serializer.getSerializedSize();
+        if (src.remaining() != size) {
+            throw new IllegalArgumentException("Buffer holds " + src.remaining() + " instead of " + size + " bytes");
+        }
+        if (!liveness.get(key)) {
+            throw new NoSuchElementException("Key " + key + " has been deleted");
+        }
+        long valuePosition = geometry.valuePosition(key);
+        try {
+            preserveImage(key);
+            // the deletion marker of an active record is already set
+            while (src.hasRemaining()) {
+                dataFile.getChannel().write(src, valuePosition + size - src.remaining());
+            }
+            written(geometry.recordStart(key), geometry.recordLength());
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to update value for key " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Passes the serialized values of all active records with keys in the given range to the visitor, in key
+     * order and without deserializing them. The file is read in large chunks; the container lock is released
+     * between chunks, so concurrent writes may or may not be seen.
+     * @param fromKey The first key, inclusive.
+     * @param toKey The last key, exclusive; limited to the reserved keys.
+     * @param visitor The visitor.
+     * @throws IllegalStateException If this operation is invoked on a closed container.
+     */
+    public void forEachRaw(long fromKey, long toKey, RawRecordVisitor visitor) throws IllegalStateException {
+        if (fromKey < 0) {
+            throw new IllegalArgumentException("Key cannot be negative");
+        }
+        int chunkKeys = Math.max(1, RAW_CHUNK_SIZE / objectSize);
+        // a chunk of the paged layout spans the headers and unused tails of its pages, and one page more if its
+        // first key does not start a page
+        ByteBuffer chunk = ByteBuffer.allocate((int) geometry.fileLength(chunkKeys) + geometry.getPageSize());
+        ByteBuffer view = chunk.asReadOnlyBuffer();
+        boolean[] live = new boolean[chunkKeys];
+        int size = serializer.getSerializedSize();
+        for (long first = fromKey; ; first += chunkKeys) {
+            long count;
+            long start;
+            synchronized (this) {
+                checkOpen();
+                count = Math.min(chunkKeys, Math.min(toKey, recentKey) - first);
+                if (count <= 0) {
+                    break;
+                }
+                start = geometry.recordStart(first);
+                long end = geometry.recordStart(first + count - 1) + geometry.recordLength();
+                chunk.clear().limit((int) (end - start));
+                try {
+                    while (chunk.hasRemaining()) {
+                        if (dataFile.getChannel().read(chunk, start + chunk.position()) < 0) {
+                            break;
+                        }
+                    }
+                    if (checksumMode == ChecksumMode.VERIFY_ON_READ) {
+                        checksums.verify(dataFile.getChannel(), start, start + chunk.position());
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException("Failed to read keys from " + first + ": " + e.getMessage(), e);
+                }
+                for (int i = 0; i < count; i++) {
+                    live[i] = liveness.get(first + i)
+                            && geometry.valuePosition(first + i) + size <= start + chunk.position();
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                if (live[i]) {
+                    int offset = (int) (geometry.valuePosition(first + i) - start);
+                    view.limit(offset + size).position(offset);
+                    visitor.visit(first + i, view);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes a record occupies in the data file, including its deletion marker
+     */
+    public int getRecordSize() {
+        return objectSize;
+    }
+
+    @Override
+    public synchronized void remove(Long key) throws IllegalStateException, NoSuchElementException {
+        checkOpen();
+        validateKey(key);
+
+        long position = geometry.recordStart(key);
+        try {
+            if (position >= dataFile.length()) {
+                throw new NoSuchElementException("Key " + key + " does not exist");
+            }
+
+            // Check if already deleted
+            if (!liveness.get(key)) {
+                throw new NoSuchElementException("Key " + key + " has already been deleted");
+            }
+
+            // Mark as deleted
+            preserveImage(key);
+            liveness.clear(key);
+            if (geometry.hasMarkerByte()) {
+                dataFile.seek(position);
+                dataFile.writeByte(DELETED);
+                written(position, 1);
+            } else {
+                writeHeaderBits(key);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to remove key " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Removes the records of all keys in the given range at once: the liveness is cleared a word at a time and
+     * the deletion markers or page headers are rewritten with one large write per chunk. If the range extends to
+     * the last reserved key, the data file is shrunk instead. Removed keys are not reused, and keys in the range
+     * that have already been removed are skipped.
+     * <p>
+     * If the process dies during the call, every record of the range is either intact or removed, so repeating
+     * the call completes it.
+     * @param fromKey The first key to remove.
+     * @param toKey The end (exclusive) of the range.
+     * @return The number of records removed.
+     * @throws IllegalArgumentException If the range is invalid.
+     * @throws IllegalStateException If this operation is invoked on a closed container.
+     */
+    public synchronized long removeRange(long fromKey, long toKey) throws IllegalArgumentException, IllegalStateException {
+        checkOpen();
+        if (fromKey < 0 || toKey < fromKey) {
+            throw new IllegalArgumentException("Invalid key range " + fromKey + " to " + toKey);
+        }
+        long end = Math.min(toKey, recentKey);
+        if (fromKey >= end) {
+            return 0;
+        }
+        try {
+            preserveImages(fromKey, end, false);
+            long removed = liveness.clearRange(fromKey, end);
+            if (end == recentKey) {
+                // persist the key counter first, so that recovery does not hand out the removed keys again
+                metaData.setLongProperty("recentKey", recentKey);
+                metaData.writeTo(metaFilePath);
+                shrink(fromKey);
+            } else {
+                writeDeleted(fromKey, end);
+            }
+            return removed;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to remove keys " + fromKey + " to " + toKey + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Removes the records of all keys from the given one on, shrinks the data file and resets the key counter,
+     * so that {@link #reserve()} hands out the key <code>toKey</code> next. Open snapshots still read the
+     * removed records.
+     * <p>
+     * The data file is shrunk before the key counter is persisted: if the process dies in between, the removed
+     * keys stay reserved but hold no records.
+     * @param toKey The first key to remove.
+     * @return The number of records removed.
+     * @throws IllegalArgumentException If the key is negative.
+     * @throws IllegalStateException If this operation is invoked on a closed container.
+     */
+    public synchronized long truncate(long toKey) throws IllegalArgumentException, IllegalStateException {
+        checkOpen();
+        if (toKey < 0) {
+            throw new IllegalArgumentException("Key cannot be negative");
+        }
+        if (toKey >= recentKey) {
+            return 0;
+        }
+        try {
+            preserveImages(toKey, recentKey, true);
+            long removed = liveness.clearRange(toKey, recentKey);
+            shrink(toKey);
+            recentKey = toKey;
+            metaData.setLongProperty("recentKey", recentKey);
+            metaData.writeTo(metaFilePath);
+            return removed;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to truncate at key " + toKey + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Saves the images of the active records in the given key range for open snapshots; the whole range counts
+     * as a single write.
+     * @param reused Whether the keys will be reserved again, so that open snapshots must also remember the
+     *               records that are already removed.
+     */
+    private void preserveImages(long fromKey, long toKey, boolean reused) throws IOException {
+        if (versions.openSnapshots() > 0) {
+            ByteBuffer image = ByteBuffer.allocate(serializer.getSerializedSize());
+            for (long key = fromKey; key < toKey; key++) {
+                if (!versions.needsPreimage(key)) {
+                    continue;
+                }
+                if (!liveness.get(key)) {
+                    if (reused) {
+                        versions.preserve(key, null);
+                    }
+                } else {
+                    image.clear();
+                    while (image.hasRemaining()) {
+                        if (dataFile.getChannel().read(image, geometry.valuePosition(key) + image.position()) < 0) {
+                            throw new IOException("Unexpected end of data file");
+                        }
+                    }
+                    versions.preserve(key, image.array().clone());
+                }
+            }
+        }
+        versions.advance();
+    }
+
+    /**
+     * Writes the deletion markers or page headers of the keys in the given range, whose liveness has already
+     * been cleared.
+     */
+    private void writeDeleted(long fromKey, long toKey) throws IOException {
+        FileChannel channel = dataFile.getChannel();
+        // keys reserved before a crash may lie beyond the data file
+        toKey = Math.min(toKey, geometry.records(dataFile.length()));
+        if (!geometry.hasMarkerByte()) {
+            int slots = geometry.getSlotsPerPage();
+            for (long page = fromKey / slots; page * slots < toKey; page++) {
+                writePageHeader(page);
+            }
+            return;
+        }
+        // the values are written back unchanged, so a torn write cannot damage an active record
+        int chunkKeys = Math.max(1, RAW_CHUNK_SIZE / objectSize);
+        ByteBuffer chunk = ByteBuffer.allocate(chunkKeys * objectSize);
+        for (long first = fromKey; first < toKey; first += chunkKeys) {
+            int count = (int) Math.min(chunkKeys, toKey - first);
+            long start = geometry.recordStart(first);
+            chunk.clear().limit(count * objectSize);
+            while (chunk.hasRemaining()) {
+                if (channel.read(chunk, start + chunk.position()) < 0) {
+                    throw new IOException("Unexpected end of data file");
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                chunk.put(i * objectSize, DELETED);
+            }
+            chunk.flip();
+            while (chunk.hasRemaining()) {
+                channel.write(chunk, start + chunk.position());
+            }
+            written(start, count * objectSize);
+        }
+    }
+
+    /**
+     * Cuts the data file after the record of the key before the given one. The liveness of the removed keys
+     * must already be cleared.
+     */
+    private void shrink(long fromKey) throws IOException {
+        long length = geometry.fileLength(fromKey);
+        long oldLength = dataFile.length();
+        if (length >= oldLength) {
+            return;
+        }
+        if (!geometry.hasMarkerByte() && fromKey % geometry.getSlotsPerPage() != 0) {
+            // the kept part of the last page must not mark the removed keys active once they are written again
+            writePageHeader(fromKey / geometry.getSlotsPerPage());
+        }
+        dataFile.setLength(length);
+        if (readAhead != null) {
+            readAhead.invalidate(length, oldLength - length);
+        }
+        if (checksums != null) {
+            checksums.truncate(dataFile.getChannel());
+        }
+    }
+
+    /**
+     * Writes the whole header of the given page, rebuilt from the liveness of its keys.
+     */
+    private void writePageHeader(long page) throws IOException {
+        int slots = geometry.getSlotsPerPage();
+        long first = page * slots;
+        byte[] header = new byte[(slots + 7) / 8];
+        for (int i = 0; i < slots && first + i < recentKey; i++) {
+            if (liveness.get(first + i)) {
+                header[i >>> 3] |= (byte) (1 << (i & 7));
+            }
+        }
+        long position = geometry.markerPosition(first);
+        dataFile.seek(position);
+        dataFile.write(header);
+        written(position, header.length);
+    }
+
+    /**
+     * Writes the serialized value held by {@link #valueBuffer} to the record of the given key.
+     */
+    private void writeValue(long key) throws IllegalStateException, NoSuchElementException {
+        long position = geometry.recordStart(key);
         try {
             if (position >= dataFile.length()) {
                 throw new NoSuchElementException("Key " + key + " does not exist");
             }
 
             // First check if the entry is deleted
-            dataFile.seek(position);
-            if (dataFile.read() == DELETED) {
+            if (!liveness.get(key)) {
                 throw new NoSuchElementException("Key " + key + " has been deleted");
             }
 
-            // Create a buffer for just the serialized data (without the deletion marker)
-            ByteBuffer valueBuffer = ByteBuffer.allocate(serializer.getSerializedSize());
-            serializer.serialize(value, valueBuffer);
-            valueBuffer.flip();
-
             // Write the deletion marker and then the serialized data
+            preserveImage(key);
             dataFile.seek(position);
-            dataFile.writeByte(ACTIVE);
-            dataFile.write(valueBuffer.array());
+            if (geometry.hasMarkerByte()) {
+                dataFile.writeByte(ACTIVE);
+            }
+            dataFile.write(valueBuffer.array(), 0, valueBuffer.capacity());
+            written(position, geometry.recordLength());
         } catch (IOException e) {
             throw new IllegalStateException("Failed to update value for key " + key + ": " + e.getMessage(), e);
         }
     }
 
-    @Override
-    public Value get(Long key) throws IllegalStateException, NoSuchElementException {
-        checkOpen();
-        validateKey(key);
-
-        long position = key * objectSize;
+    /**
+     * Reads the serialized value of the given key into {@link #valueBuffer}.
+     * @return {@link #valueBuffer}, positioned at the start of the value
+     */
+    private ByteBuffer readValue(long key) throws IllegalStateException, NoSuchElementException {
+        long position = geometry.recordStart(key);
         try {
             if (position >= dataFile.length()) {
                 throw new NoSuchElementException("Key " + key + " does not exist");
             }
 
+            if (checksumMode == ChecksumMode.VERIFY_ON_READ) {
+                checksums.verify(dataFile.getChannel(), position, position + geometry.recordLength());
+            }
+
+            if (!geometry.hasMarkerByte()) {
+                // the page header is mirrored by the liveness bitmap, only the value is read
+                if (!liveness.get(key)) {
+                    throw new NoSuchElementException("Key " + key + " has been deleted");
+                }
+                valueBuffer.clear();
+                while (valueBuffer.hasRemaining()) {
+                    if (dataFile.getChannel().read(valueBuffer, position + valueBuffer.position()) < 0) {
+                        throw new IllegalStateException("Failed to read complete record for key " + key);
+                    }
+                }
+                valueBuffer.clear();
+                return valueBuffer;
+            }
+
+            if (readAhead != null) {
+                int status = readAhead.read(key, recentKey, valueBuffer);
+                if (status >= 0) {
+                    if (status == DELETED) {
+                        throw new NoSuchElementException("Key " + key + " has been deleted");
+                    }
+                    valueBuffer.clear();
+                    return valueBuffer;
+                }
+            }
+
             // Read the deletion marker first
             dataFile.seek(position);
             byte status = dataFile.readByte();
@@ -164,44 +1044,245 @@ public class SimpleFileContainer<Value> implements Container<Long, Value> {
             }
 
             // Read just the serialized data (without the deletion marker)
-            byte[] valueBytes = new byte[serializer.getSerializedSize()];
-            int bytesRead = dataFile.read(valueBytes);
+            int bytesRead = dataFile.read(valueBuffer.array(), 0, valueBuffer.capacity());
 
             if (bytesRead != serializer.getSerializedSize()) {
                 throw new IllegalStateException("Failed to read complete record for key " + key);
             }
 
-            // Create a buffer with just the serialized data
-            ByteBuffer valueBuffer = ByteBuffer.wrap(valueBytes);
-            return serializer.deserialize(valueBuffer);
+            valueBuffer.clear();
+            return valueBuffer;
         } catch (IOException e) {
             throw new IllegalStateException("Failed to read value for key " + key + ": " + e.getMessage(), e);
         }
     }
 
-    @Override
-    public void remove(Long key) throws IllegalStateException, NoSuchElementException {
-        checkOpen();
-        validateKey(key);
+    /**
+     * Saves the current image of an active record if an open snapshot may still read it, and advances
+     * the version for the write that follows.
+     */
+    private void preserveImage(long key) throws IOException {
+        if (versions.needsPreimage(key)) {
+            long position = geometry.valuePosition(key);
+            ByteBuffer image = ByteBuffer.allocate(serializer.getSerializedSize());
+            while (image.hasRemaining()) {
+                if (dataFile.getChannel().read(image, position + image.position()) < 0) {
+                    throw new IOException("Unexpected end of data file");
+                }
+            }
+            versions.preserve(key, image.array());
+        }
+        versions.advance();
+    }
 
-        long position = key * objectSize;
-        try {
-            if (position >= dataFile.length()) {
-                throw new NoSuchElementException("Key " + key + " does not exist");
+    /**
+     * Restores the key counter and the liveness of the records after the metadata has been read.
+     * @param clean Whether the container was closed cleanly, so the stored liveness can be loaded.
+     * @return the number of bytes of a partial record truncated from the end of the data file
+     */
+    private long recover(boolean clean) throws IOException {
+        long start = System.nanoTime();
+        long storedRecentKey = recentKey;
+        long length = dataFile.length();
+        long records = geometry.records(length);
+        long truncated = length - geometry.fileLength(records);
+        if (truncated > 0) {
+            dataFile.setLength(geometry.fileLength(records));
+        }
+        // keys beyond the stored counter may have been reserved before a crash
+        recentKey = Math.max(recentKey, records);
+
+        liveness.reset();
+        long scanned = 0;
+        if (!clean || !loadLiveness(records)) {
+            clean = false;
+            scanned = scanLiveness(records);
+        }
+        recoveryReport = new RecoveryReport(clean, storedRecentKey, recentKey, truncated, scanned,
+                liveness.getLiveCount(), Duration.ofNanos(System.nanoTime() - start));
+        return truncated;
+    }
+
+    /**
+     * Loads the liveness saved on the last close.
+     * @return false if it is missing or does not cover all records of the data file
+     */
+    private boolean loadLiveness(long records) throws IOException {
+        if (!Files.exists(livenessFilePath) || Files.size(livenessFilePath) < Long.BYTES) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(livenessFilePath), 1 << 16))) {
+            if (liveness.readFrom(in) >= records) {
+                return true;
             }
+        }
+        liveness.reset();
+        return false;
+    }
 
-            // Check if already deleted
-            dataFile.seek(position);
-            if (dataFile.read() == DELETED) {
-                throw new NoSuchElementException("Key " + key + " has already been deleted");
+    /**
+     * Rebuilds the liveness from the deletion markers or page headers of all records. The data file is divided
+     * into chunks of whole bitmap words (and whole pages), which are read and evaluated by
+     * {@link #recoveryParallelism} threads.
+     * @return the number of bytes read
+     */
+    private long scanLiveness(long records) throws IOException {
+        liveness.ensureCapacity(records);
+        long chunkKeys;
+        if (geometry.hasMarkerByte()) {
+            chunkKeys = Math.max(Long.SIZE, (RECOVERY_CHUNK_SIZE / objectSize) & -Long.SIZE);
+        } else {
+            // the smallest number of keys filling both whole words and whole pages
+            int slots = geometry.getSlotsPerPage();
+            long unit = (long) slots * (Long.SIZE / gcd(Long.SIZE, slots));
+            chunkKeys = unit * Math.max(1, RECOVERY_CHUNK_SIZE / (unit / slots * geometry.getPageSize()));
+        }
+        long chunks = (records + chunkKeys - 1) / chunkKeys;
+        AtomicLong nextChunk = new AtomicLong();
+        FileChannel channel = dataFile.getChannel();
+        Runnable scanner = () -> {
+            ByteBuffer buffer = ByteBuffer.allocate((int) geometry.fileLength(chunkKeys));
+            for (long chunk = nextChunk.getAndIncrement(); chunk < chunks; chunk = nextChunk.getAndIncrement()) {
+                long first = chunk * chunkKeys;
+                long count = Math.min(chunkKeys, records - first);
+                // the marker of the first key starts its record or, in the paged layout, its page
+                long start = geometry.markerPosition(first);
+                buffer.clear().limit((int) (geometry.fileLength(first + count) - start));
+                try {
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer, start + buffer.position()) < 0) {
+                            throw new IOException("Unexpected end of data file");
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new ContainerRuntimeException("Failed to scan data file: " + e.getMessage(), e);
+                }
+                for (long w = 0; w < count; w += Long.SIZE) {
+                    long bits = 0;
+                    int end = (int) Math.min(Long.SIZE, count - w);
+                    for (int i = 0; i < end; i++) {
+                        long key = first + w + i;
+                        int marker = (int) (geometry.markerPosition(key) - start);
+                        boolean active = geometry.hasMarkerByte()
+                                ? buffer.get(marker) == ACTIVE
+                                : (buffer.get(marker) & 1 << (key % geometry.getSlotsPerPage() & 7)) != 0;
+                        if (active) {
+                            bits |= 1L << i;
+                        }
+                    }
+                    liveness.setWord((first + w) >>> 6, bits);
+                }
+            }
+        };
+        int threads = (int) Math.min(recoveryParallelism, chunks);
+        if (threads <= 1) {
+            scanner.run();
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "recovery-" + dataFilePath.getFileName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                List<Future<?>> tasks = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    tasks.add(executor.submit(scanner));
+                }
+                for (Future<?> task : tasks) {
+                    task.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while scanning data file", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw new IOException(e.getCause());
+            } finally {
+                // interrupting a scanner would close the data file's channel
+                executor.shutdown();
             }
+        }
+        liveness.recount();
+        return geometry.fileLength(records);
+    }
 
-            // Mark as deleted
-            dataFile.seek(position);
-            dataFile.writeByte(DELETED);
-        } catch (IOException e) {
-            throw new IllegalStateException("Failed to remove key " + key + ": " + e.getMessage(), e);
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    /**
+     * Writes the header byte of the page holding the key's liveness bit, rebuilt from the liveness of the
+     * keys sharing that byte.
+     */
+    private void writeHeaderBits(long key) throws IOException {
+        long group = geometry.markerGroupStart(key);
+        int bits = 0;
+        for (int i = 0, n = geometry.markerGroupSize(group); i < n && group + i < recentKey; i++) {
+            if (liveness.get(group + i)) {
+                bits |= 1 << i;
+            }
+        }
+        long position = geometry.markerPosition(key);
+        dataFile.seek(position);
+        dataFile.writeByte(bits);
+        written(position, 1);
+    }
+
+    private void openChecksums() throws IOException {
+        corruptPages.clear();
+        if (checksumMode == ChecksumMode.OFF) {
+            // checksums would not be maintained by subsequent writes
+            PageChecksums.discard(checksumFilePath);
+            return;
+        }
+        checksums = PageChecksums.open(checksumFilePath, PageChecksums.DEFAULT_PAGE_SIZE, dataFile.getChannel());
+        if (checksumMode == ChecksumMode.BACKGROUND_SCRUB) {
+            scrubber = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "scrubber-" + dataFilePath.getFileName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            long millis = Math.max(1, scrubInterval.toMillis());
+            scrubber.scheduleWithFixedDelay(this::backgroundScrub, millis, millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void startReadAhead() {
+        if (readAhead != null) {
+            readAhead.close();
+        }
+        // the prefetcher reads marker bytes, which only the packed layout has
+        readAhead = readAheadWindow > 0 && geometry.hasMarkerByte()
+                ? new ReadAhead(dataFile.getChannel(), objectSize, readAheadWindow) : null;
+    }
+
+    private void backgroundScrub() {
+        try {
+            scrub(true);
+        } catch (IllegalStateException e) {
+            // the container has been closed in the meantime
+        }
+    }
+
+    /**
+     * Maintains the checksums and drops stale prefetched records after a write to the data file.
+     */
+    private void written(long position, int length) throws IOException {
+        if (readAhead != null) {
+            readAhead.invalidate(position, length);
+        }
+        if (checksums != null) {
+            checksums.update(dataFile.getChannel(), position, position + length);
+        }
+    }
+
+    private <S> S primitiveSerializer(Class<S> type) throws IllegalStateException {
+        if (!type.isInstance(serializer)) {
+            throw new IllegalStateException("Container serializer is not a " + type.getSimpleName());
         }
+        return type.cast(serializer);
     }
 
     private void checkOpen() throws IllegalStateException {
@@ -214,6 +1295,10 @@ public class SimpleFileContainer<Value> implements Container<Long, Value> {
         if (key == null) {
             throw new IllegalArgumentException("Key cannot be null");
         }
+        validateKey(key.longValue());
+    }
+
+    private void validateKey(long key) throws IllegalArgumentException, NoSuchElementException {
         if (key < 0) {
             throw new IllegalArgumentException("Key cannot be negative");
         }
@@ -221,4 +1306,108 @@ public class SimpleFileContainer<Value> implements Container<Long, Value> {
             throw new NoSuchElementException("Key " + key + " has not been reserved");
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * A read-only view of the container pinned to the state at its creation, see {@link #openSnapshot()}.
+     */
+    public class Snapshot implements Container<Long, Value> {
+
+        private final long version;
+        private final long keyLimit;
+        private final int generation;
+        private boolean released = false;
+
+        private Snapshot(long version, long keyLimit) {
+            this.version = version;
+            this.keyLimit = keyLimit;
+            this.generation = openGeneration;
+        }
+
+        /**
+         * @return the number of keys reserved when the snapshot was taken; larger keys are never visible
+         */
+        public long getKeyLimit() {
+            return keyLimit;
+        }
+
+        @Override
+        public MetaData getMetaData() {
+            return metaData;
+        }
+
+        /**
+         * Has no effect, a snapshot is open from its creation until it is closed.
+         * @throws IllegalStateException If the snapshot has been closed.
+         */
+        @Override
+        public void open() throws IllegalStateException {
+            synchronized (SimpleFileContainer.this) {
+                checkSnapshot();
+            }
+        }
+
+        /**
+         * Releases the snapshot. Repeated calls have no effect.
+         */
+        @Override
+        public void close() {
+            synchronized (SimpleFileContainer.this) {
+                if (!released) {
+                    released = true;
+                    if (isOpen && generation == openGeneration) {
+                        versions.unpin(version);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public Long reserve() {
+            throw new UnsupportedOperationException("Snapshots are read-only");
+        }
+
+        @Override
+        public void update(Long key, Value value) {
+            throw new UnsupportedOperationException("Snapshots are read-only");
+        }
+
+        @Override
+        public void remove(Long key) {
+            throw new UnsupportedOperationException("Snapshots are read-only");
+        }
+
+        @Override
+        public Value get(Long key) throws NoSuchElementException, IllegalStateException {
+            synchronized (SimpleFileContainer.this) {
+                checkSnapshot();
+                if (key == null) {
+                    throw new IllegalArgumentException("Key cannot be null");
+                }
+                if (key < 0) {
+                    throw new IllegalArgumentException("Key cannot be negative");
+                }
+                // the container may have been truncated below the key limit since
+                if (key >= keyLimit) {
+                    throw new NoSuchElementException("Key " + key + " has not been reserved");
+                }
+                VersionStore.Version image = versions.lookup(key, version);
+                if (image == null) {
+                    return serializer.deserialize(readValue(key));
+                }
+                if (image.payload() == null) {
+                    throw new NoSuchElementException("Key " + key + " has been deleted");
+                }
+                return serializer.deserialize(ByteBuffer.wrap(image.payload()));
+            }
+        }
+
+        private void checkSnapshot() throws IllegalStateException {
+            if (released) {
+                throw new IllegalStateException("Snapshot has been closed");
+            }
+            if (!isOpen || generation != openGeneration) {
+                throw new IllegalStateException("Container of the snapshot has been closed");
+            }
+        }
+    }
+}
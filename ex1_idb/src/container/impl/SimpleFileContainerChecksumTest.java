@@ -0,0 +1,107 @@
+package container.impl;
+
+import io.LongSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import util.ChecksumMode;
+import util.ContainerRuntimeException;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimpleFileContainerChecksumTest {
+
+    private Path tempDirectory;
+    private SimpleFileContainer<Long> container;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tempDirectory = Files.createTempDirectory("SimpleFileContainerChecksumTest");
+        container = new SimpleFileContainer<>(tempDirectory, "checked", new LongSerializer());
+        container.setChecksumMode(ChecksumMode.VERIFY_ON_READ);
+        container.open();
+        for (long i = 0; i < 2000; i++) {
+            container.insert(i * i);
+        }
+        container.close();
+    }
+
+    @AfterEach
+    void tearDown() {
+        tempDirectory.toFile().deleteOnExit();
+    }
+
+    private void corruptKey(long key) throws Exception {
+        try (RandomAccessFile file = new RandomAccessFile(tempDirectory.resolve("checked_data.dat").toFile(), "rw")) {
+            file.seek(key * 9 + 5);
+            int b = file.read();
+            file.seek(key * 9 + 5);
+            file.write(b ^ 0x10);
+        }
+    }
+
+    @Test
+    void testIntactDataVerifies() {
+        container.open();
+        for (long i = 0; i < 2000; i++) {
+            assertEquals(i * i, container.get(i));
+        }
+        assertTrue(container.scrub().isEmpty());
+        container.close();
+    }
+
+    @Test
+    void testCorruptionDetectedOnRead() throws Exception {
+        corruptKey(1500);
+        container.open();
+        assertEquals(4L, container.get(2L));
+        ContainerRuntimeException e = assertThrows(ContainerRuntimeException.class, () -> container.get(1500L));
+        assertTrue(e.getMessage().contains("page 3"));
+        assertEquals(List.of(3), container.scrub());
+        assertEquals(List.of(3), container.getCorruptPages());
+
+        // rewriting the page repairs its checksum
+        container.update(1500L, 7L);
+        assertEquals(7L, container.get(1500L));
+        container.close();
+    }
+
+    @Test
+    void testBackgroundScrubFindsCorruption() throws Exception {
+        corruptKey(10);
+        container.setChecksumMode(ChecksumMode.BACKGROUND_SCRUB);
+        container.setScrubInterval(Duration.ofMillis(5));
+        container.open();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (container.getCorruptPages().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(List.of(0), container.getCorruptPages());
+        // reads are not verified in this mode
+        assertNotEquals(100L, container.get(10L));
+        container.close();
+    }
+
+    @Test
+    void testChecksumsDiscardedWhenOff() {
+        assertTrue(Files.exists(tempDirectory.resolve("checked_crc.dat")));
+        container.setChecksumMode(ChecksumMode.OFF);
+        container.open();
+        assertFalse(Files.exists(tempDirectory.resolve("checked_crc.dat")));
+        container.update(5L, 1L);
+        container.close();
+
+        // checksums are rebuilt from the current data on the next checked open
+        container.setChecksumMode(ChecksumMode.VERIFY_ON_READ);
+        container.open();
+        assertEquals(1L, container.get(5L));
+        assertThrows(IllegalStateException.class, () -> container.setChecksumMode(ChecksumMode.OFF));
+        container.close();
+    }
+}
@@ -0,0 +1,237 @@
+package container.impl;
+
+import io.FixedSizeSerializer;
+import io.LongSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import util.ChecksumMode;
+import util.ContainerRuntimeException;
+import util.PageChecksums;
+
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimpleFileContainerLayoutTest {
+
+    private static final int PAGE = PageChecksums.DEFAULT_PAGE_SIZE;
+
+    private Path tempDirectory;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tempDirectory = Files.createTempDirectory("SimpleFileContainerLayoutTest");
+    }
+
+    @AfterEach
+    void tearDown() {
+        tempDirectory.toFile().deleteOnExit();
+    }
+
+    private record BlobSerializer(int size) implements FixedSizeSerializer<byte[]> {
+
+        @Override
+        public int getSerializedSize() {
+            return size;
+        }
+
+        @Override
+        public void serialize(byte[] value, ByteBuffer buffer) {
+            buffer.put(value, 0, size);
+        }
+
+        @Override
+        public byte[] deserialize(ByteBuffer buffer) {
+            byte[] value = new byte[size];
+            buffer.get(value);
+            return value;
+        }
+    }
+
+    private SimpleFileContainer<Long> paged(String name) {
+        SimpleFileContainer<Long> container = new SimpleFileContainer<>(tempDirectory, name, new LongSerializer());
+        container.setLayout(FileLayout.PAGED);
+        return container;
+    }
+
+    @Test
+    void testRecordsNeverCrossPages() {
+        for (int size : new int[]{1, 7, 8, 100, 1000, 4000, PAGE - 1}) {
+            RecordGeometry geometry = new RecordGeometry(FileLayout.PAGED, size, PAGE);
+            int slots = geometry.getSlotsPerPage();
+            assertTrue(slots > 0);
+            for (long key = 0; key < 3L * slots; key++) {
+                long start = geometry.valuePosition(key);
+                assertEquals(start / PAGE, (start + size - 1) / PAGE);
+                assertEquals(key / slots, start / PAGE);
+                assertTrue(geometry.markerPosition(key) % PAGE < start % PAGE);
+            }
+            assertEquals(3L * slots, geometry.records(geometry.fileLength(3L * slots)));
+            assertEquals(3L * slots - 1, geometry.records(geometry.fileLength(3L * slots) - 1));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new RecordGeometry(FileLayout.PAGED, PAGE, PAGE));
+    }
+
+    @Test
+    void testPagedCrudAndReopen() {
+        SimpleFileContainer<Long> container = paged("crud");
+        container.open();
+        int slots = new RecordGeometry(FileLayout.PAGED, Long.BYTES, PAGE).getSlotsPerPage();
+        for (long i = 0; i < 3 * slots; i++) {
+            container.insert(i * 11);
+        }
+        container.remove(5L);
+        container.remove((long) slots);
+        container.update(7L, -7L);
+        assertEquals(-7L, container.get(7L));
+        assertEquals(11L * (slots + 1), container.get((long) slots + 1));
+        assertThrows(NoSuchElementException.class, () -> container.get(5L));
+        assertThrows(NoSuchElementException.class, () -> container.remove(5L));
+        assertFalse(container.contains(slots));
+        assertThrows(IllegalStateException.class, () -> container.setLayout(FileLayout.PACKED));
+
+        // values on both sides of a page boundary
+        assertEquals(2, container.updateRun(slots - 1, List.of(1L, 2L, 3L)));
+        assertEquals(1L, container.get((long) slots - 1));
+        assertThrows(NoSuchElementException.class, () -> container.get((long) slots));
+        assertEquals(3L, container.get((long) slots + 1));
+
+        ByteBuffer raw = ByteBuffer.allocate(Long.BYTES);
+        container.getRaw(2, raw);
+        assertEquals(22L, raw.flip().getLong());
+        container.updateRaw(3, ByteBuffer.allocate(Long.BYTES).putLong(33L).flip());
+        assertEquals(33L, container.get(3L));
+
+        List<Long> visited = new ArrayList<>();
+        container.forEachRaw(0, 3L * slots, (key, record) -> visited.add(key));
+        assertEquals(3 * slots - 2, visited.size());
+        assertFalse(visited.contains(5L));
+        assertFalse(visited.contains((long) slots));
+        container.close();
+
+        container.open();
+        assertTrue(container.getRecoveryReport().cleanShutdown());
+        assertEquals(3L * slots - 2, container.getLiveCount());
+        assertEquals(-7L, container.get(7L));
+        assertThrows(NoSuchElementException.class, () -> container.get(5L));
+        container.close();
+    }
+
+    @Test
+    void testRawScanOfWideRecords() {
+        // slots that leave most of a page unused, so a chunk spans far more bytes than its values
+        for (int size : new int[]{1000, 1366, PAGE / 2 + 1}) {
+            SimpleFileContainer<byte[]> container = new SimpleFileContainer<>(tempDirectory, "wide" + size,
+                    new BlobSerializer(size));
+            container.setLayout(FileLayout.PAGED);
+            container.setChecksumMode(ChecksumMode.VERIFY_ON_READ);
+            container.open();
+            int records = 300;
+            for (int i = 0; i < records; i++) {
+                byte[] value = new byte[size];
+                Arrays.fill(value, (byte) i);
+                container.insert(value);
+            }
+            container.remove(100L);
+
+            List<Long> visited = new ArrayList<>();
+            container.forEachRaw(3, records, (key, record) -> {
+                assertEquals(size, record.remaining());
+                for (int i = record.position(); i < record.limit(); i++) {
+                    assertEquals((byte) key, record.get(i), size + " key " + key);
+                }
+                visited.add(key);
+            });
+            assertEquals(records - 4, visited.size());
+            assertEquals(3L, visited.get(0));
+            assertEquals(records - 1L, visited.get(visited.size() - 1));
+            assertFalse(visited.contains(100L));
+            container.close();
+        }
+    }
+
+    @Test
+    void testSnapshotsAndChecksums() throws Exception {
+        SimpleFileContainer<Long> container = paged("checked");
+        container.setChecksumMode(ChecksumMode.VERIFY_ON_READ);
+        container.open();
+        for (long i = 0; i < 2000; i++) {
+            container.insert(i);
+        }
+        SimpleFileContainer<Long>.Snapshot snapshot = container.openSnapshot();
+        container.update(1L, 100L);
+        container.remove(2L);
+        assertEquals(1L, snapshot.get(1L));
+        assertEquals(2L, snapshot.get(2L));
+        snapshot.close();
+        container.close();
+
+        RecordGeometry geometry = new RecordGeometry(FileLayout.PAGED, Long.BYTES, PAGE);
+        try (RandomAccessFile file = new RandomAccessFile(tempDirectory.resolve("checked_data.dat").toFile(), "rw")) {
+            long position = geometry.valuePosition(1500) + 3;
+            file.seek(position);
+            int b = file.read();
+            file.seek(position);
+            file.write(b ^ 0x10);
+        }
+        container.open();
+        assertEquals(100L, container.get(1L));
+        assertThrows(ContainerRuntimeException.class, () -> container.get(1500L));
+        assertEquals(List.of(1500 / geometry.getSlotsPerPage()), container.scrub());
+        container.close();
+    }
+
+    @Test
+    void testCrashRecoveryReadsPageHeaders() throws Exception {
+        SimpleFileContainer<Long> crashed = paged("crash");
+        crashed.open();
+        for (long i = 0; i < 3000; i++) {
+            crashed.insert(i * 3);
+        }
+        for (long i = 0; i < 3000; i += 7) {
+            crashed.remove(i);
+        }
+        // the process dies without closing the container, leaving half a record behind
+        try (RandomAccessFile file = new RandomAccessFile(tempDirectory.resolve("crash_data.dat").toFile(), "rw")) {
+            file.setLength(file.length() + 3);
+        }
+
+        SimpleFileContainer<Long> container = paged("crash");
+        container.setRecoveryParallelism(4);
+        container.open();
+        RecoveryReport report = container.getRecoveryReport();
+        assertFalse(report.cleanShutdown());
+        assertEquals(3000, report.recentKey());
+        assertEquals(3, report.truncatedBytes());
+        assertEquals(3000 - 429, report.liveRecords());
+        for (long i = 0; i < 3000; i++) {
+            assertEquals(i % 7 != 0, container.contains(i));
+        }
+        assertEquals(6L, container.get(2L));
+        assertEquals(3000L, container.reserve());
+        container.close();
+    }
+
+    @Test
+    void testLayoutMismatchIsRejected() {
+        SimpleFileContainer<Long> container = new SimpleFileContainer<>(tempDirectory, "mismatch", new LongSerializer());
+        container.open();
+        container.insert(1L);
+        container.close();
+
+        container.setLayout(FileLayout.PAGED);
+        assertThrows(IllegalStateException.class, container::open);
+        container.setLayout(FileLayout.PACKED);
+        container.open();
+        assertEquals(1L, container.get(0L));
+        container.close();
+    }
+}
@@ -0,0 +1,157 @@
+package container.impl;
+
+import io.LongSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import util.ChecksumMode;
+import util.PageChecksums;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimpleFileContainerRangeTest {
+
+    private static final int KEYS = 3000;
+
+    private Path tempDirectory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDirectory = Files.createTempDirectory("SimpleFileContainerRangeTest");
+    }
+
+    @AfterEach
+    void tearDown() {
+        tempDirectory.toFile().deleteOnExit();
+    }
+
+    private SimpleFileContainer<Long> filled(String name, FileLayout layout) {
+        SimpleFileContainer<Long> container = new SimpleFileContainer<>(tempDirectory, name, new LongSerializer());
+        container.setLayout(layout);
+        container.setChecksumMode(ChecksumMode.VERIFY_ON_READ);
+        container.open();
+        for (long i = 0; i < KEYS; i++) {
+            container.insert(i * 10);
+        }
+        return container;
+    }
+
+    private SimpleFileContainer<Long> reopened(String name, FileLayout layout) {
+        SimpleFileContainer<Long> container = new SimpleFileContainer<>(tempDirectory, name, new LongSerializer());
+        container.setLayout(layout);
+        container.setChecksumMode(ChecksumMode.VERIFY_ON_READ);
+        container.open();
+        return container;
+    }
+
+    private long dataLength(String name) throws IOException {
+        return Files.size(tempDirectory.resolve(name + "_data.dat"));
+    }
+
+    @Test
+    void testRemoveRange() {
+        for (FileLayout layout : FileLayout.values()) {
+            String name = "range" + layout;
+            SimpleFileContainer<Long> container = filled(name, layout);
+            container.remove(600L);
+            assertEquals(999, container.removeRange(500, 1500));
+            assertEquals(0, container.removeRange(500, 1500));
+            assertEquals(0, container.removeRange(10, 10));
+            assertThrows(IllegalArgumentException.class, () -> container.removeRange(20, 10));
+            assertEquals(KEYS - 1000, container.getLiveCount());
+            assertEquals(4990L, container.get(499L));
+            assertEquals(15000L, container.get(1500L));
+            assertThrows(NoSuchElementException.class, () -> container.get(1000L));
+            assertThrows(NoSuchElementException.class, () -> container.update(1499L, 1L));
+            assertEquals((long) KEYS, container.reserve());
+            assertTrue(container.scrub().isEmpty());
+            // the process dies, recovery rebuilds the liveness from the data file
+
+            SimpleFileContainer<Long> recovered = reopened(name, layout);
+            assertFalse(recovered.getRecoveryReport().cleanShutdown());
+            assertEquals(KEYS - 1000 + 1, recovered.getLiveCount());
+            for (long key = 0; key < KEYS; key++) {
+                assertEquals(key < 500 || key >= 1500, recovered.contains(key), layout + " key " + key);
+            }
+            assertTrue(recovered.scrub().isEmpty());
+            recovered.close();
+        }
+    }
+
+    @Test
+    void testRemoveRangeAtTheEndShrinksTheFile() throws IOException {
+        for (FileLayout layout : FileLayout.values()) {
+            String name = "tail" + layout;
+            SimpleFileContainer<Long> container = filled(name, layout);
+            RecordGeometry geometry = new RecordGeometry(layout, Long.BYTES, PageChecksums.DEFAULT_PAGE_SIZE);
+            assertEquals(KEYS - 1000, container.removeRange(1000, Long.MAX_VALUE));
+            assertEquals(geometry.fileLength(1000), dataLength(name));
+            assertFalse(container.contains(1000));
+            assertEquals(9990L, container.get(999L));
+            // the removed keys are not handed out again, not even after a crash
+            assertEquals((long) KEYS, container.reserve());
+            container.update((long) KEYS, 7L);
+
+            SimpleFileContainer<Long> recovered = reopened(name, layout);
+            assertEquals(1001, recovered.getLiveCount());
+            for (long key = 1000; key < KEYS; key++) {
+                assertFalse(recovered.contains(key), layout + " key " + key);
+            }
+            assertEquals(7L, recovered.get((long) KEYS));
+            assertEquals(KEYS + 1L, recovered.reserve());
+            assertTrue(recovered.scrub().isEmpty());
+            recovered.close();
+        }
+    }
+
+    @Test
+    void testTruncate() throws IOException {
+        for (FileLayout layout : FileLayout.values()) {
+            String name = "truncate" + layout;
+            SimpleFileContainer<Long> container = filled(name, layout);
+            RecordGeometry geometry = new RecordGeometry(layout, Long.BYTES, PageChecksums.DEFAULT_PAGE_SIZE);
+            container.remove(2000L);
+            SimpleFileContainer<Long>.Snapshot snapshot = container.openSnapshot();
+
+            assertEquals(KEYS - 1001, container.truncate(1000));
+            assertEquals(0, container.truncate(KEYS));
+            assertThrows(IllegalArgumentException.class, () -> container.truncate(-1));
+            assertEquals(geometry.fileLength(1000), dataLength(name));
+            assertEquals(1000, container.getLiveCount());
+            assertFalse(container.contains(1000));
+
+            // the truncated keys are reused, the snapshot still reads the old records
+            assertEquals(1000L, container.reserve());
+            container.update(1000L, -1L);
+            assertEquals(-1L, container.get(1000L));
+            assertEquals(10000L, snapshot.get(1000L));
+            assertEquals(20010L, snapshot.get(2001L));
+            assertThrows(NoSuchElementException.class, () -> snapshot.get(2000L));
+            snapshot.close();
+            assertTrue(container.scrub().isEmpty());
+            container.close();
+
+            container.open();
+            assertEquals(1001, container.getLiveCount());
+            assertEquals(1001L, container.reserve());
+            assertEquals(0L, container.get(1001L));
+            container.truncate(500);
+            // the process dies
+
+            SimpleFileContainer<Long> recovered = reopened(name, layout);
+            assertFalse(recovered.getRecoveryReport().cleanShutdown());
+            assertEquals(500, recovered.getRecoveryReport().recentKey());
+            assertEquals(500, recovered.getLiveCount());
+            assertEquals(4990L, recovered.get(499L));
+            assertEquals(500L, recovered.reserve());
+            assertEquals(0L, recovered.get(500L));
+            assertTrue(recovered.scrub().isEmpty());
+            recovered.close();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package container.impl;
+
+import io.LongSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimpleFileContainerRawTest {
+
+    private Path tempDirectory;
+    private SimpleFileContainer<Long> container;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tempDirectory = Files.createTempDirectory("SimpleFileContainerRawTest");
+        container = new SimpleFileContainer<>(tempDirectory, "raw", new LongSerializer());
+        container.open();
+        for (long i = 0; i < 20_000; i++) {
+            container.insert(i * 2);
+        }
+        container.remove(3L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        container.close();
+        tempDirectory.toFile().deleteOnExit();
+    }
+
+    @Test
+    void testGetAndUpdateRaw() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(16);
+        buffer.position(4);
+        assertEquals(8, container.getRaw(5, buffer));
+        assertEquals(12, buffer.position());
+        assertEquals(10L, buffer.getLong(4));
+
+        ByteBuffer value = ByteBuffer.allocate(8).putLong(0, 99L);
+        container.updateRaw(5, value);
+        assertFalse(value.hasRemaining());
+        assertEquals(99L, container.get(5L));
+
+        assertThrows(NoSuchElementException.class, () -> container.getRaw(3, ByteBuffer.allocate(8)));
+        assertThrows(NoSuchElementException.class, () -> container.updateRaw(3, ByteBuffer.allocate(8)));
+        assertThrows(IllegalArgumentException.class, () -> container.getRaw(5, ByteBuffer.allocate(7)));
+        assertThrows(IllegalArgumentException.class, () -> container.updateRaw(5, ByteBuffer.allocate(9)));
+    }
+
+    @Test
+    void testCopyRecordsWithoutDeserializing() throws Exception {
+        SimpleFileContainer<Long> copy = new SimpleFileContainer<>(tempDirectory, "copy", new LongSerializer());
+        copy.open();
+        List<Long> keys = new ArrayList<>();
+        container.forEachRaw(0, Long.MAX_VALUE, (key, record) -> {
+            assertTrue(record.isReadOnly());
+            assertThrows(ReadOnlyBufferException.class, () -> record.put((byte) 0));
+            keys.add(key);
+            copy.updateRaw(copy.reserve(), record);
+        });
+        assertEquals(19_999, keys.size());
+        assertFalse(keys.contains(3L));
+        assertEquals(4L, copy.get(2L));
+        assertEquals(8L, copy.get(3L));
+        assertEquals(39_998L, copy.get(19_998L));
+        copy.close();
+
+        List<Long> range = new ArrayList<>();
+        container.forEachRaw(9_998, 10_002, (key, record) -> range.add(record.getLong(record.position())));
+        assertEquals(List.of(19_996L, 19_998L, 20_000L, 20_002L), range);
+    }
+}
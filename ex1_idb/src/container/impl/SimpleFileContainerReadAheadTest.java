@@ -0,0 +1,91 @@
+package container.impl;
+
+import io.LongSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimpleFileContainerReadAheadTest {
+
+    private Path tempDirectory;
+    private SimpleFileContainer<Long> container;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tempDirectory = Files.createTempDirectory("SimpleFileContainerReadAheadTest");
+        container = new SimpleFileContainer<>(tempDirectory, "readahead", new LongSerializer());
+        container.open();
+        for (long i = 0; i < 2000; i++) {
+            container.insert(i * 10);
+        }
+        container.setReadAhead(64);
+    }
+
+    @AfterEach
+    void tearDown() {
+        container.close();
+        tempDirectory.toFile().deleteOnExit();
+    }
+
+    @Test
+    void testSequentialWalkHitsPrefetchedRecords() {
+        for (long i = 0; i < 2000; i++) {
+            assertEquals(i * 10, container.get(i));
+        }
+        ReadAheadStats stats = container.getReadAheadStats();
+        assertTrue(stats.hitRate() > 0.9, stats.toString());
+        assertTrue(stats.wasted() <= 64, stats.toString());
+    }
+
+    @Test
+    void testStridedAndBackwardWalks() {
+        for (long i = 0; i < 2000; i += 7) {
+            assertEquals(i * 10, container.get(i));
+        }
+        for (long i = 1999; i >= 0; i--) {
+            assertEquals(i * 10, container.getLong(i));
+        }
+        assertTrue(container.getReadAheadStats().hitRate() > 0.8, container.getReadAheadStats().toString());
+    }
+
+    @Test
+    void testRandomAccessDoesNotPrefetch() {
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            long key = random.nextInt(2000);
+            assertEquals(key * 10, container.get(key));
+        }
+        ReadAheadStats stats = container.getReadAheadStats();
+        assertTrue(stats.prefetched() < 50, stats.toString());
+    }
+
+    @Test
+    void testWritesInvalidatePrefetchedRecords() {
+        for (long i = 0; i < 10; i++) {
+            container.get(i);
+        }
+        container.update(12L, -1L);
+        container.remove(13L);
+        assertEquals(10 * 10L, container.get(10L));
+        assertEquals(11 * 10L, container.get(11L));
+        assertEquals(-1L, container.get(12L));
+        assertThrows(NoSuchElementException.class, () -> container.get(13L));
+        assertEquals(14 * 10L, container.get(14L));
+    }
+
+    @Test
+    void testDisable() {
+        container.setReadAhead(0);
+        for (long i = 0; i < 100; i++) {
+            container.get(i);
+        }
+        assertEquals(new ReadAheadStats(0, 0, 0, 0), container.getReadAheadStats());
+    }
+}
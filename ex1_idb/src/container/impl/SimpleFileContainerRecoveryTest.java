@@ -0,0 +1,140 @@
+package container.impl;
+
+import io.LongSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimpleFileContainerRecoveryTest {
+
+    private Path tempDirectory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDirectory = Files.createTempDirectory("SimpleFileContainerRecoveryTest");
+    }
+
+    @AfterEach
+    void tearDown() {
+        tempDirectory.toFile().deleteOnExit();
+    }
+
+    @Test
+    void testCleanReopenLoadsLiveness() {
+        SimpleFileContainer<Long> container = new SimpleFileContainer<>(tempDirectory, "clean", new LongSerializer());
+        container.open();
+        for (long i = 0; i < 1000; i++) {
+            container.insert(i);
+        }
+        container.remove(5L);
+        container.close();
+
+        container.open();
+        RecoveryReport report = container.getRecoveryReport();
+        assertTrue(report.cleanShutdown());
+        assertEquals(0, report.scannedBytes());
+        assertEquals(0, report.recoveredKeys());
+        assertEquals(999, report.liveRecords());
+        assertFalse(container.contains(5));
+        assertTrue(container.contains(6));
+        container.close();
+    }
+
+    @Test
+    void testCrashRecoversKeyCounterAndLiveness() {
+        SimpleFileContainer<Long> crashed = new SimpleFileContainer<>(tempDirectory, "crash", new LongSerializer());
+        crashed.open();
+        crashed.insert(-1L);
+        crashed.close();
+        crashed.open();
+        for (long i = 1; i < 1000; i++) {
+            crashed.insert(i * 3);
+        }
+        for (long i = 0; i < 1000; i += 7) {
+            crashed.remove(i);
+        }
+        // the process dies without closing the container; a new instance opens the same files
+
+        SimpleFileContainer<Long> container = new SimpleFileContainer<>(tempDirectory, "crash", new LongSerializer());
+        container.open();
+        RecoveryReport report = container.getRecoveryReport();
+        assertFalse(report.cleanShutdown());
+        assertEquals(1, report.storedRecentKey());
+        assertEquals(1000, report.recentKey());
+        assertEquals(999, report.recoveredKeys());
+        assertEquals(1000 * 9, report.scannedBytes());
+        assertEquals(1000 - 143, report.liveRecords());
+        assertEquals(1000 - 143, container.getLiveCount());
+
+        assertEquals(1000L, container.reserve());
+        assertEquals(6L, container.get(2L));
+        assertThrows(NoSuchElementException.class, () -> container.get(14L));
+        assertThrows(NoSuchElementException.class, () -> container.update(21L, 1L));
+        container.close();
+    }
+
+    @Test
+    void testPartialRecordIsTruncated() throws IOException {
+        SimpleFileContainer<Long> container = new SimpleFileContainer<>(tempDirectory, "partial", new LongSerializer());
+        container.open();
+        for (long i = 0; i < 10; i++) {
+            container.insert(i);
+        }
+        container.close();
+        try (RandomAccessFile file = new RandomAccessFile(tempDirectory.resolve("partial_data.dat").toFile(), "rw")) {
+            file.seek(file.length());
+            file.write(new byte[]{1, 0, 0});
+        }
+        Path meta = tempDirectory.resolve("partial_meta.dat");
+        Files.writeString(meta, Files.readString(meta).replace("cleanShutdown=true", "cleanShutdown=false"));
+
+        container.open();
+        RecoveryReport report = container.getRecoveryReport();
+        assertEquals(3, report.truncatedBytes());
+        assertEquals(10, report.recentKey());
+        assertEquals(90, Files.size(tempDirectory.resolve("partial_data.dat")));
+        assertEquals(10L, container.insert(10L));
+        assertEquals(9L, container.get(9L));
+        container.close();
+    }
+
+    @Test
+    void testParallelScanWithoutMetadata() throws IOException {
+        int records = 1_500_000;
+        ByteBuffer data = ByteBuffer.allocate(records * 9);
+        for (int i = 0; i < records; i++) {
+            data.put(i % 5 == 0 ? (byte) 0 : (byte) 1).putLong(i);
+        }
+        data.flip();
+        try (FileChannel channel = FileChannel.open(tempDirectory.resolve("bulk_data.dat"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+
+        SimpleFileContainer<Long> container = new SimpleFileContainer<>(tempDirectory, "bulk", new LongSerializer());
+        container.setRecoveryParallelism(4);
+        container.open();
+        RecoveryReport report = container.getRecoveryReport();
+        assertFalse(report.cleanShutdown());
+        assertEquals(records, report.recentKey());
+        assertEquals(records - records / 5, report.liveRecords());
+        for (long key : new long[]{0, 1, 63, 64, 65, 466_000, 466_048, 1_000_000, records - 1}) {
+            assertEquals(key % 5 != 0, container.contains(key), "key " + key);
+        }
+        assertEquals(1_234_567L, container.get(1_234_567L));
+        container.close();
+    }
+}
@@ -0,0 +1,123 @@
+package container.impl;
+
+import io.LongSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimpleFileContainerSnapshotTest {
+
+    private Path tempDirectory;
+    private SimpleFileContainer<Long> container;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tempDirectory = Files.createTempDirectory("SimpleFileContainerSnapshotTest");
+        container = new SimpleFileContainer<>(tempDirectory, "mvcc", new LongSerializer());
+        container.open();
+        for (long i = 0; i < 100; i++) {
+            container.insert(i);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        container.close();
+        tempDirectory.toFile().deleteOnExit();
+    }
+
+    @Test
+    void testSnapshotIgnoresLaterWrites() {
+        SimpleFileContainer<Long>.Snapshot snapshot = container.openSnapshot();
+        container.update(1L, 1000L);
+        container.update(1L, 2000L);
+        container.remove(2L);
+        Long added = container.insert(3000L);
+
+        assertEquals(1L, snapshot.get(1L));
+        assertEquals(2L, snapshot.get(2L));
+        assertEquals(5L, snapshot.get(5L));
+        assertThrows(NoSuchElementException.class, () -> snapshot.get(added));
+        assertEquals(100, snapshot.getKeyLimit());
+
+        assertEquals(2000L, container.get(1L));
+        assertThrows(NoSuchElementException.class, () -> container.get(2L));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.update(1L, 5L));
+        assertThrows(UnsupportedOperationException.class, snapshot::reserve);
+
+        snapshot.close();
+        assertThrows(IllegalStateException.class, () -> snapshot.get(1L));
+        assertEquals(0, container.getSnapshotRetainedBytes());
+    }
+
+    @Test
+    void testSnapshotsOfDifferentVersions() {
+        SimpleFileContainer<Long>.Snapshot first = container.openSnapshot();
+        container.update(7L, 70L);
+        SimpleFileContainer<Long>.Snapshot second = container.openSnapshot();
+        container.update(7L, 700L);
+        container.remove(8L);
+        SimpleFileContainer<Long>.Snapshot third = container.openSnapshot();
+        container.update(7L, 7000L);
+
+        assertEquals(7L, first.get(7L));
+        assertEquals(70L, second.get(7L));
+        assertEquals(700L, third.get(7L));
+        assertEquals(8L, second.get(8L));
+        assertThrows(NoSuchElementException.class, () -> third.get(8L));
+
+        first.close();
+        assertEquals(70L, second.get(7L));
+        assertTrue(container.getSnapshotRetainedBytes() > 0);
+        second.close();
+        third.close();
+        assertEquals(0, container.getSnapshotRetainedBytes());
+    }
+
+    @Test
+    void testSnapshotInvalidAfterReopen() {
+        SimpleFileContainer<Long>.Snapshot snapshot = container.openSnapshot();
+        container.close();
+        container.open();
+        assertThrows(IllegalStateException.class, () -> snapshot.get(1L));
+        snapshot.close();
+    }
+
+    @Test
+    void testConcurrentScanSeesConsistentState() throws Exception {
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            long round = 1;
+            while (!stop.get()) {
+                for (long key = 0; key < 100; key++) {
+                    container.update(key, round * 1000 + key);
+                }
+                round++;
+            }
+        });
+        writer.start();
+        try {
+            for (int scan = 0; scan < 50; scan++) {
+                try (SimpleFileContainer<Long>.Snapshot snapshot = container.openSnapshot()) {
+                    long first = snapshot.get(0L);
+                    // the writer updates keys in order, so within a consistent state no key is ahead of key 0
+                    for (long key = 1; key < 100; key++) {
+                        long round = snapshot.get(key) / 1000;
+                        assertTrue(round <= first / 1000 && round >= first / 1000 - 1);
+                    }
+                }
+            }
+        } finally {
+            stop.set(true);
+            writer.join();
+        }
+        assertEquals(0, container.getSnapshotRetainedBytes());
+    }
+}
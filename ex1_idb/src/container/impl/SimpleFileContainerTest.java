@@ -405,4 +405,24 @@ class SimpleFileContainerTest {
         assertThrows(NoSuchElementException.class, () -> container.remove(key));
         assertThrows(NoSuchElementException.class, () -> container.get(key));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testPrimitiveAccess() {
+        Long longKey = longContainer.reserve();
+        longContainer.updateLong(longKey, Long.MIN_VALUE);
+        assertEquals(Long.MIN_VALUE, longContainer.getLong(longKey));
+        assertEquals(Long.MIN_VALUE, longContainer.get(longKey));
+
+        Long intKey = intContainer.reserve();
+        intContainer.update(intKey, 17);
+        assertEquals(17, intContainer.getInt(intKey));
+        intContainer.updateInt(intKey, -3);
+        assertEquals(-3, intContainer.get(intKey));
+
+        assertThrows(IllegalStateException.class, () -> intContainer.getLong(intKey));
+        assertThrows(IllegalStateException.class, () -> container.updateDouble(0, 1.0));
+        assertThrows(NoSuchElementException.class, () -> longContainer.getLong(99));
+        longContainer.remove(longKey);
+        assertThrows(NoSuchElementException.class, () -> longContainer.updateLong(longKey, 1));
+    }
+}
@@ -0,0 +1,347 @@
+package container.impl;
+
+import container.Container;
+import util.ContainerRuntimeException;
+import util.MetaData;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.ToLongFunction;
+
+/**
+ * Keeps frequently used records in an in-memory hot tier in front of a {@link SimpleFileContainer}, which holds
+ * all other records, under a memory budget for the hot tier.
+ * <p>
+ * Keys are reserved in the file-backed cold tier, so every key has a slot there. Inserted and updated values
+ * enter the hot tier without being written; reads of records that are not hot promote them. Every access
+ * increments the access count of the hot record. When the weight of the hot tier exceeds the budget, the
+ * records with the lowest access counts, the least recently used first among equal counts, are spilled until a
+ * quarter of the budget is free again: modified records are written to the cold tier in runs of consecutive
+ * keys (see {@link SimpleFileContainer#updateRun(long, List)}), unmodified ones are just dropped. Every spill
+ * halves the access counts of the remaining records, so records that were popular long ago lose their place to
+ * records that are popular now.
+ * <p>
+ * {@link #flush()} and {@link #close()} write all modified hot records. Values in the hot tier are returned to
+ * all readers and must not be modified.
+ *
+ * @param <Value> The value type
+ */
+public class TieredContainer<Value> implements Container<Long, Value> {
+
+    private static final double SPILL_TARGET = 0.75;
+
+    private final SimpleFileContainer<Value> cold;
+    private final long maxHotWeight;
+    private final ToLongFunction<? super Value> weigher;
+
+    /** The hot records, guarded by this container's monitor */
+    private final Map<Long, Hot<Value>> hot = new HashMap<>();
+    private long hotWeight;
+    private long clock;
+    /** Incremented on every write to the cold tier, so promotions racing with a write do not keep a stale value */
+    private long coldGeneration;
+
+    private long promotions;
+    private long spilledRecords;
+    private long spillWrites;
+
+    private volatile boolean isOpen = false;
+
+    /**
+     * Creates a container keeping up to the given number of records in memory.
+     * @param cold The container of the cold records; opened and closed by this container.
+     * @param maxHotRecords The maximum number of hot records.
+     */
+    public TieredContainer(SimpleFileContainer<Value> cold, long maxHotRecords) {
+        this(cold, maxHotRecords, value -> 1);
+    }
+
+    /**
+     * Creates a container whose hot tier is bounded by the total weight of its values.
+     * @param cold The container of the cold records; opened and closed by this container.
+     * @param maxHotWeight The maximum total weight of the hot records.
+     * @param weigher The weight of a value, e.g. its size in bytes on the heap.
+     */
+    public TieredContainer(SimpleFileContainer<Value> cold, long maxHotWeight, ToLongFunction<? super Value> weigher) {
+        if (cold == null) {
+            throw new IllegalArgumentException("Cold container cannot be null");
+        }
+        if (maxHotWeight <= 0) {
+            throw new IllegalArgumentException("Maximum hot weight must be positive");
+        }
+        this.cold = cold;
+        this.maxHotWeight = maxHotWeight;
+        this.weigher = weigher;
+    }
+
+    @Override
+    public MetaData getMetaData() throws IllegalStateException {
+        return cold.getMetaData();
+    }
+
+    @Override
+    public synchronized void open() throws ContainerRuntimeException {
+        if (isOpen) {
+            throw new IllegalStateException("Container is already open");
+        }
+        cold.open();
+        isOpen = true;
+    }
+
+    @Override
+    public synchronized void close() throws ContainerRuntimeException {
+        checkOpen();
+        isOpen = false;
+        try {
+            writeDirty(new ArrayList<>(hot.entrySet()));
+        } finally {
+            hot.clear();
+            hotWeight = 0;
+            cold.close();
+        }
+    }
+
+    @Override
+    public Long reserve() throws IllegalStateException {
+        checkOpen();
+        return cold.reserve();
+    }
+
+    @Override
+    public synchronized void update(Long key, Value value) throws NoSuchElementException, IllegalStateException {
+        checkOpen();
+        validateKey(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Value cannot be null");
+        }
+        Hot<Value> entry = hot.get(key);
+        if (entry == null && !cold.contains(key)) {
+            throw new NoSuchElementException("Key " + key + " not found");
+        }
+        long weight = weigher.applyAsLong(value);
+        if (weight > maxHotWeight) {
+            // can never be hot
+            if (entry != null) {
+                hot.remove(key);
+                hotWeight -= entry.weight;
+            }
+            coldGeneration++;
+            cold.update(key, value);
+            return;
+        }
+        if (entry == null) {
+            entry = new Hot<>();
+            hot.put(key, entry);
+        } else {
+            hotWeight -= entry.weight;
+        }
+        entry.value = value;
+        entry.weight = weight;
+        entry.dirty = true;
+        touch(entry);
+        hotWeight += weight;
+        if (hotWeight > maxHotWeight) {
+            spill();
+        }
+    }
+
+    @Override
+    public Value get(Long key) throws NoSuchElementException, IllegalStateException {
+        checkOpen();
+        validateKey(key);
+        long generation;
+        synchronized (this) {
+            Hot<Value> entry = hot.get(key);
+            if (entry != null) {
+                touch(entry);
+                return entry.value;
+            }
+            generation = coldGeneration;
+        }
+        // read outside the lock, so misses do not block hits
+        Value value = cold.get(key);
+        if (value != null) {
+            promote(key, value, generation);
+        }
+        return value;
+    }
+
+    @Override
+    public synchronized void remove(Long key) throws NoSuchElementException, IllegalStateException {
+        checkOpen();
+        validateKey(key);
+        coldGeneration++;
+        cold.remove(key);
+        Hot<Value> entry = hot.remove(key);
+        if (entry != null) {
+            hotWeight -= entry.weight;
+        }
+    }
+
+    /**
+     * Writes all modified hot records to the cold tier; they stay hot.
+     * @throws IllegalStateException If this operation is invoked on a closed container.
+     */
+    public synchronized void flush() throws IllegalStateException {
+        checkOpen();
+        writeDirty(new ArrayList<>(hot.entrySet()));
+    }
+
+    /**
+     * @return the number of records in the hot tier
+     */
+    public synchronized int getHotCount() {
+        return hot.size();
+    }
+
+    /**
+     * @return the total weight of the records in the hot tier
+     */
+    public synchronized long getHotWeight() {
+        return hotWeight;
+    }
+
+    /**
+     * @param key A key.
+     * @return true if the record of the key is in the hot tier
+     */
+    public synchronized boolean isHot(long key) {
+        return hot.containsKey(key);
+    }
+
+    /**
+     * @return the number of records read from the cold tier and moved to the hot tier so far
+     */
+    public synchronized long getPromotions() {
+        return promotions;
+    }
+
+    /**
+     * @return the number of records moved from the hot tier to the cold tier so far
+     */
+    public synchronized long getSpilledRecords() {
+        return spilledRecords;
+    }
+
+    /**
+     * @return the number of writes issued by spills and flushes so far, each covering a run of consecutive keys
+     */
+    public synchronized long getSpillWrites() {
+        return spillWrites;
+    }
+
+    private synchronized void promote(Long key, Value value, long generation) {
+        if (!isOpen || coldGeneration != generation || hot.containsKey(key)) {
+            return;
+        }
+        long weight = weigher.applyAsLong(value);
+        if (weight > maxHotWeight) {
+            return;
+        }
+        Hot<Value> entry = new Hot<>();
+        entry.value = value;
+        entry.weight = weight;
+        touch(entry);
+        hot.put(key, entry);
+        hotWeight += weight;
+        promotions++;
+        if (hotWeight > maxHotWeight) {
+            spill();
+        }
+    }
+
+    private void touch(Hot<Value> entry) {
+        entry.accesses++;
+        entry.lastAccess = ++clock;
+    }
+
+    /**
+     * Moves the least frequently used records to the cold tier until the hot tier is below the spill target,
+     * then ages the access counts of the remaining records.
+     */
+    private void spill() {
+        List<Map.Entry<Long, Hot<Value>>> candidates = new ArrayList<>(hot.entrySet());
+        candidates.sort(Comparator.comparingInt((Map.Entry<Long, Hot<Value>> e) -> e.getValue().accesses)
+                .thenComparingLong(e -> e.getValue().lastAccess));
+        long target = (long) (maxHotWeight * SPILL_TARGET);
+        List<Map.Entry<Long, Hot<Value>>> victims = new ArrayList<>();
+        long weight = hotWeight;
+        for (int i = 0; i < candidates.size() && weight > target; i++) {
+            victims.add(candidates.get(i));
+            weight -= candidates.get(i).getValue().weight;
+        }
+        writeDirty(victims);
+        for (Map.Entry<Long, Hot<Value>> victim : victims) {
+            hot.remove(victim.getKey());
+            hotWeight -= victim.getValue().weight;
+        }
+        spilledRecords += victims.size();
+        for (Hot<Value> entry : hot.values()) {
+            entry.accesses >>>= 1;
+        }
+    }
+
+    /**
+     * Writes the modified ones of the given records in runs of consecutive keys and marks them clean.
+     */
+    private void writeDirty(List<Map.Entry<Long, Hot<Value>>> entries) {
+        List<Map.Entry<Long, Hot<Value>>> dirty = new ArrayList<>();
+        for (Map.Entry<Long, Hot<Value>> entry : entries) {
+            if (entry.getValue().dirty) {
+                dirty.add(entry);
+            }
+        }
+        if (dirty.isEmpty()) {
+            return;
+        }
+        coldGeneration++;
+        dirty.sort(Map.Entry.comparingByKey());
+        int start = 0;
+        for (int i = 1; i <= dirty.size(); i++) {
+            if (i == dirty.size() || dirty.get(i - 1).getKey() + 1 != dirty.get(i).getKey()) {
+                List<Value> values = new ArrayList<>(i - start);
+                for (int j = start; j < i; j++) {
+                    values.add(dirty.get(j).getValue().value);
+                }
+                cold.updateRun(dirty.get(start).getKey(), values);
+                spillWrites++;
+                for (int j = start; j < i; j++) {
+                    dirty.get(j).getValue().dirty = false;
+                }
+                start = i;
+            }
+        }
+    }
+
+    private void checkOpen() throws IllegalStateException {
+        if (!isOpen) {
+            throw new IllegalStateException("Container is not open");
+        }
+    }
+
+    private void validateKey(Long key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        if (key < 0) {
+            throw new IllegalArgumentException("Key cannot be negative");
+        }
+    }
+
+    /**
+     * A record of the hot tier. Guarded by the container's monitor.
+     */
+    private static final class Hot<Value> {
+
+        private Value value;
+        private long weight;
+        private int accesses;
+        private long lastAccess;
+        /** Whether the value has not been written to the cold tier yet */
+        private boolean dirty;
+    }
+}
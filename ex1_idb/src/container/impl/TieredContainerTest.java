@@ -0,0 +1,148 @@
+package container.impl;
+
+import io.LongSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TieredContainerTest {
+
+    private Path tempDirectory;
+    private SimpleFileContainer<Long> cold;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tempDirectory = Files.createTempDirectory("TieredContainerTest");
+        cold = new SimpleFileContainer<>(tempDirectory, "tiered", new LongSerializer());
+    }
+
+    @AfterEach
+    void tearDown() {
+        tempDirectory.toFile().deleteOnExit();
+    }
+
+    @Test
+    void testWritesStayHotUntilSpilled() {
+        TieredContainer<Long> container = new TieredContainer<>(cold, 8);
+        container.open();
+        long key = container.insert(42L);
+        assertTrue(container.isHot(key));
+        assertEquals(0L, cold.get(key));
+        assertEquals(42L, container.get(key));
+
+        container.flush();
+        assertEquals(42L, cold.get(key));
+        assertTrue(container.isHot(key));
+        container.close();
+    }
+
+    @Test
+    void testSpillsLeastFrequentlyUsed() {
+        TieredContainer<Long> container = new TieredContainer<>(cold, 8);
+        container.open();
+        for (long i = 0; i < 8; i++) {
+            container.insert(i * 10);
+        }
+        for (int round = 0; round < 5; round++) {
+            container.get(3L);
+            container.get(5L);
+        }
+        container.insert(80L);
+        assertTrue(container.getHotCount() <= 6);
+        assertTrue(container.isHot(3L));
+        assertTrue(container.isHot(5L));
+        assertTrue(container.isHot(8L));
+        // the three oldest records with a single access were spilled with one write
+        assertFalse(container.isHot(0L));
+        assertFalse(container.isHot(2L));
+        assertEquals(20L, cold.get(2L));
+        assertEquals(3, container.getSpilledRecords());
+        assertEquals(1, container.getSpillWrites());
+
+        // promote on read
+        assertEquals(10L, container.get(1L));
+        assertTrue(container.isHot(1L));
+        assertEquals(1, container.getPromotions());
+        container.close();
+    }
+
+    @Test
+    void testRemoveAndCloseFlushes() {
+        TieredContainer<Long> container = new TieredContainer<>(cold, 100);
+        container.open();
+        long kept = container.insert(1L);
+        long removed = container.insert(2L);
+        container.remove(removed);
+        assertThrows(NoSuchElementException.class, () -> container.get(removed));
+        assertThrows(NoSuchElementException.class, () -> container.update(removed, 3L));
+        assertThrows(NoSuchElementException.class, () -> container.update(99L, 3L));
+        assertThrows(IllegalArgumentException.class, () -> container.get(null));
+        container.close();
+        assertThrows(IllegalStateException.class, () -> container.get(kept));
+
+        cold.open();
+        assertEquals(1L, cold.get(kept));
+        assertFalse(cold.contains(removed));
+        cold.close();
+    }
+
+    @Test
+    void testWeightBudget() {
+        TieredContainer<Long> container = new TieredContainer<>(cold, 100, value -> value);
+        container.open();
+        long heavy = container.insert(500L);
+        assertFalse(container.isHot(heavy));
+        assertEquals(500L, cold.get(heavy));
+        for (long i = 0; i < 50; i++) {
+            container.insert(10L);
+            assertTrue(container.getHotWeight() <= 100);
+        }
+        assertEquals(500L, container.get(heavy));
+        container.close();
+    }
+
+    @Test
+    void testConcurrentReadersAndWriters() throws Exception {
+        TieredContainer<Long> container = new TieredContainer<>(cold, 64);
+        container.open();
+        int threads = 4;
+        int perThread = 200;
+        for (long i = 0; i < threads * perThread; i++) {
+            container.insert(i);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int round = 1; round <= 5; round++) {
+                    for (long i = thread; i < threads * perThread; i += threads) {
+                        container.update(i, i + round * 10_000L);
+                        assertEquals(i + round * 10_000L, container.get(i));
+                        container.get((i * 7) % (threads * perThread));
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        for (long i = 0; i < threads * perThread; i++) {
+            assertEquals(i + 50_000L, container.get(i));
+        }
+        assertTrue(container.getHotCount() <= 64);
+        container.close();
+    }
+}
@@ -0,0 +1,148 @@
+package container.impl;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps superseded record images for the read snapshots of a file container.
+ * <p>
+ * Every write advances a version counter. A snapshot pinned at version <code>v</code> sees the state
+ * after all writes up to <code>v</code>. Before a record that is visible to an open snapshot is
+ * overwritten, its old image is stored in the record's version chain, labelled with the version at
+ * which it was superseded. Images no longer visible to any open snapshot are dropped when snapshots
+ * are released. Not thread-safe; callers synchronize on the owning container.
+ */
+class VersionStore {
+
+    /**
+     * A superseded record image.
+     * @param supersededAt the version of the write that replaced the image
+     * @param payload the serialized value, or null if the record was deleted
+     */
+    record Version(long supersededAt, byte[] payload) {
+    }
+
+    private long version;
+    /** Versions pinned by open snapshots and how many snapshots pin each */
+    private final TreeMap<Long, Integer> pinned = new TreeMap<>();
+    /** Per key the superseded images, oldest first */
+    private final Map<Long, ArrayDeque<Version>> chains = new HashMap<>();
+    private long retainedBytes;
+
+    /**
+     * Pins the current version for a new snapshot.
+     * @return the pinned version
+     */
+    long pin() {
+        pinned.merge(version, 1, Integer::sum);
+        return version;
+    }
+
+    /**
+     * Releases a version pinned by {@link #pin()} and drops all images that are no longer visible.
+     * @param pinnedVersion the version to release
+     */
+    void unpin(long pinnedVersion) {
+        pinned.computeIfPresent(pinnedVersion, (v, count) -> count == 1 ? null : count - 1);
+        collectGarbage();
+    }
+
+    /**
+     * @param key the key about to be written
+     * @return true if the current image of the key is visible to an open snapshot and must be preserved
+     */
+    boolean needsPreimage(long key) {
+        if (pinned.isEmpty()) {
+            return false;
+        }
+        ArrayDeque<Version> chain = chains.get(key);
+        // the current image was written by version supersededAt of the newest saved image
+        return chain == null || chain.peekLast().supersededAt() <= pinned.lastKey();
+    }
+
+    /**
+     * Stores the image of the given key that the next write will supersede.
+     * @param key the key about to be written
+     * @param payload the current serialized value, or null if the record is deleted
+     */
+    void preserve(long key, byte[] payload) {
+        chains.computeIfAbsent(key, k -> new ArrayDeque<>()).addLast(new Version(version + 1, payload));
+        retainedBytes += payload == null ? 0 : payload.length;
+    }
+
+    /**
+     * Advances the version, to be called for every write.
+     */
+    void advance() {
+        version++;
+    }
+
+    /**
+     * @param key the key to look up
+     * @param snapshotVersion the version of the reading snapshot
+     * @return the image of the key visible at the given version, or null if the current record is visible
+     */
+    Version lookup(long key, long snapshotVersion) {
+        ArrayDeque<Version> chain = chains.get(key);
+        if (chain == null) {
+            return null;
+        }
+        for (Version v : chain) {
+            if (v.supersededAt() > snapshotVersion) {
+                return v;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of open snapshots
+     */
+    int openSnapshots() {
+        int count = 0;
+        for (int c : pinned.values()) {
+            count += c;
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of payload bytes retained for open snapshots
+     */
+    long retainedBytes() {
+        return retainedBytes;
+    }
+
+    /**
+     * Drops all versions and releases all snapshots.
+     */
+    void clear() {
+        pinned.clear();
+        chains.clear();
+        retainedBytes = 0;
+    }
+
+    private void collectGarbage() {
+        if (pinned.isEmpty()) {
+            chains.clear();
+            retainedBytes = 0;
+            return;
+        }
+        long oldest = pinned.firstKey();
+        Iterator<ArrayDeque<Version>> it = chains.values().iterator();
+        while (it.hasNext()) {
+            ArrayDeque<Version> chain = it.next();
+            // an image superseded at or before the oldest snapshot is invisible to all snapshots
+            while (!chain.isEmpty() && chain.peekFirst().supersededAt() <= oldest) {
+                byte[] payload = chain.removeFirst().payload();
+                retainedBytes -= payload == null ? 0 : payload.length;
+            }
+            if (chain.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package container.impl;
+
+import container.Container;
+import util.ContainerRuntimeException;
+import util.MetaData;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A write-back cache in front of a {@link SimpleFileContainer}. Updates are kept in memory and only the
+ * latest value of every key is written, so repeated updates of hot keys cost a single write per flush.
+ * <p>
+ * A background thread flushes dirty records when their total size exceeds the dirty byte limit or when
+ * they have been dirty for longer than the maximum age. Records are flushed in key order and runs of
+ * consecutive keys are written with a single write (see {@link SimpleFileContainer#updateRun(long, List)}).
+ * Updates exceeding twice the dirty byte limit flush synchronously, so writers cannot outrun the flusher.
+ * {@link #close()} and {@link #flush()} write all dirty records; if the final flush of a close fails, the container
+ * stays open with its dirty records, so that the close can be retried.
+ * <p>
+ * Reservations and removals are written through immediately.
+ *
+ * @param <Value> The value type
+ */
+public class WriteBackContainer<Value> implements Container<Long, Value> {
+
+    private record Dirty<Value>(Value value, long since) {
+    }
+
+    private final SimpleFileContainer<Value> backing;
+    private final long maxDirtyBytes;
+    private final Duration maxAge;
+
+    private final ConcurrentSkipListMap<Long, Dirty<Value>> dirty = new ConcurrentSkipListMap<>();
+    private final AtomicLong dirtyBytes = new AtomicLong();
+    private final AtomicLong flushedRecords = new AtomicLong();
+    private final AtomicLong flushedRuns = new AtomicLong();
+    /** Serializes flushes, so a record is never written by two flushes at once */
+    private final Object flushLock = new Object();
+
+    private volatile boolean isOpen = false;
+    private ScheduledExecutorService flusher;
+
+    /**
+     * @param backing The container to write to; opened and closed by this container.
+     * @param maxDirtyBytes The size of dirty records (in record bytes of the backing container) above which
+     *            the background thread flushes all of them.
+     * @param maxAge The maximum time a record stays dirty before the background thread flushes it.
+     */
+    public WriteBackContainer(SimpleFileContainer<Value> backing, long maxDirtyBytes, Duration maxAge) {
+        if (backing == null) {
+            throw new IllegalArgumentException("Backing container cannot be null");
+        }
+        if (maxDirtyBytes <= 0) {
+            throw new IllegalArgumentException("Dirty byte limit must be positive");
+        }
+        if (maxAge.isNegative() || maxAge.isZero()) {
+            throw new IllegalArgumentException("Maximum age must be positive");
+        }
+        this.backing = backing;
+        this.maxDirtyBytes = maxDirtyBytes;
+        this.maxAge = maxAge;
+    }
+
+    @Override
+    public MetaData getMetaData() throws IllegalStateException {
+        return backing.getMetaData();
+    }
+
+    @Override
+    public synchronized void open() throws ContainerRuntimeException {
+        if (isOpen) {
+            throw new IllegalStateException("Container is already open");
+        }
+        backing.open();
+        startFlusher();
+        isOpen = true;
+    }
+
+    @Override
+    public void close() throws ContainerRuntimeException {
+        ScheduledExecutorService stopped;
+        synchronized (this) {
+            checkOpen();
+            isOpen = false;
+            stopped = flusher;
+        }
+        stopped.shutdown();
+        try {
+            boolean terminated;
+            try {
+                terminated = stopped.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                terminated = false;
+            }
+            if (!terminated) {
+                throw new ContainerRuntimeException("The background flush did not finish");
+            }
+            flushDirty(Long.MAX_VALUE);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                // keep the dirty records and accept a retry; a flusher still running is awaited by it
+                if (stopped.isTerminated()) {
+                    startFlusher();
+                }
+                isOpen = true;
+            }
+            throw e;
+        }
+        synchronized (this) {
+            flusher = null;
+        }
+        backing.close();
+    }
+
+    @Override
+    public Long reserve() throws IllegalStateException {
+        checkOpen();
+        return backing.reserve();
+    }
+
+    @Override
+    public synchronized void update(Long key, Value value) throws NoSuchElementException, IllegalStateException {
+        checkOpen();
+        validateKey(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Value cannot be null");
+        }
+        if (!dirty.containsKey(key) && !backing.contains(key)) {
+            throw new NoSuchElementException("Key " + key + " not found");
+        }
+        if (dirty.put(key, new Dirty<>(value, System.nanoTime())) == null) {
+            dirtyBytes.addAndGet(backing.getRecordSize());
+        }
+        if (dirtyBytes.get() > 2 * maxDirtyBytes) {
+            flush();
+        }
+    }
+
+    @Override
+    public Value get(Long key) throws NoSuchElementException, IllegalStateException {
+        checkOpen();
+        validateKey(key);
+        Dirty<Value> entry = dirty.get(key);
+        return entry != null ? entry.value() : backing.get(key);
+    }
+
+    @Override
+    public synchronized void remove(Long key) throws NoSuchElementException, IllegalStateException {
+        checkOpen();
+        validateKey(key);
+        if (dirty.remove(key) != null) {
+            dirtyBytes.addAndGet(-backing.getRecordSize());
+        }
+        backing.remove(key);
+    }
+
+    /**
+     * Writes all dirty records to the backing container.
+     * @throws IllegalStateException If this operation is invoked on a closed container.
+     */
+    public void flush() throws IllegalStateException {
+        checkOpen();
+        flushDirty(Long.MAX_VALUE);
+    }
+
+    /**
+     * @return the number of dirty records
+     */
+    public int getDirtyCount() {
+        return dirty.size();
+    }
+
+    /**
+     * @return the size of all dirty records in bytes of the backing container
+     */
+    public long getDirtyBytes() {
+        return dirtyBytes.get();
+    }
+
+    /**
+     * @return the number of records written by all flushes so far
+     */
+    public long getFlushedRecords() {
+        return flushedRecords.get();
+    }
+
+    /**
+     * @return the number of writes issued by all flushes so far, each covering a run of consecutive keys
+     */
+    public long getFlushedRuns() {
+        return flushedRuns.get();
+    }
+
+    private void startFlusher() {
+        long interval = Math.max(1, maxAge.toMillis() / 2);
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "write-back-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::backgroundFlush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void backgroundFlush() {
+        try {
+            if (dirtyBytes.get() > maxDirtyBytes) {
+                flushDirty(Long.MAX_VALUE);
+            } else {
+                flushDirty(System.nanoTime() - maxAge.toNanos());
+            }
+        } catch (RuntimeException e) {
+            // the records stay dirty, the next explicit flush or close reports the failure
+        }
+    }
+
+    /**
+     * Writes all records dirty since before the given time, grouped into runs of consecutive keys.
+     * Updates arriving meanwhile are not blocked; a record updated again while being written stays dirty.
+     */
+    private void flushDirty(long dirtySince) {
+        synchronized (flushLock) {
+            List<Map.Entry<Long, Dirty<Value>>> run = new ArrayList<>();
+            for (Map.Entry<Long, Dirty<Value>> entry : dirty.entrySet()) {
+                if (entry.getValue().since() > dirtySince) {
+                    continue;
+                }
+                if (!run.isEmpty() && run.get(run.size() - 1).getKey() + 1 != entry.getKey()) {
+                    writeRun(run);
+                    run.clear();
+                }
+                run.add(entry);
+            }
+            if (!run.isEmpty()) {
+                writeRun(run);
+            }
+        }
+    }
+
+    private void writeRun(List<Map.Entry<Long, Dirty<Value>>> run) {
+        List<Value> values = new ArrayList<>(run.size());
+        for (Map.Entry<Long, Dirty<Value>> entry : run) {
+            values.add(entry.getValue().value());
+        }
+        backing.updateRun(run.get(0).getKey(), values);
+        flushedRuns.incrementAndGet();
+        flushedRecords.addAndGet(run.size());
+        for (Map.Entry<Long, Dirty<Value>> entry : run) {
+            // only drop the exact image written, a newer update must stay dirty
+            if (dirty.remove(entry.getKey(), entry.getValue())) {
+                dirtyBytes.addAndGet(-backing.getRecordSize());
+            }
+        }
+    }
+
+    private void checkOpen() throws IllegalStateException {
+        if (!isOpen) {
+            throw new IllegalStateException("Container is not open");
+        }
+    }
+
+    private void validateKey(Long key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        if (key < 0) {
+            throw new IllegalArgumentException("Key cannot be negative");
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package container.impl;
+
+import io.LongSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBackContainerTest {
+
+    private Path tempDirectory;
+    private SimpleFileContainer<Long> backing;
+    private WriteBackContainer<Long> container;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tempDirectory = Files.createTempDirectory("WriteBackContainerTest");
+        backing = new SimpleFileContainer<>(tempDirectory, "cached", new LongSerializer());
+        container = new WriteBackContainer<>(backing, 1 << 20, Duration.ofHours(1));
+        container.open();
+    }
+
+    @AfterEach
+    void tearDown() {
+        try {
+            container.close();
+        } catch (IllegalStateException e) {
+            // already closed by the test
+        }
+        tempDirectory.toFile().deleteOnExit();
+    }
+
+    @Test
+    void testUpdatesStayInMemoryUntilFlush() {
+        Long key = container.insert(1L);
+        for (long i = 2; i <= 1000; i++) {
+            container.update(key, i);
+        }
+        assertEquals(1000L, container.get(key));
+        assertEquals(0L, backing.get(key));
+        assertEquals(1, container.getDirtyCount());
+        assertEquals(backing.getRecordSize(), container.getDirtyBytes());
+
+        container.flush();
+        assertEquals(1000L, backing.get(key));
+        assertEquals(0, container.getDirtyCount());
+        assertEquals(0, container.getDirtyBytes());
+        assertEquals(1, container.getFlushedRecords());
+    }
+
+    @Test
+    void testFlushCoalescesConsecutiveKeys() {
+        for (long i = 0; i < 20; i++) {
+            container.insert(i);
+        }
+        container.remove(10L);
+        container.flush();
+        assertEquals(2, container.getFlushedRuns());
+        assertEquals(19, container.getFlushedRecords());
+        for (long i = 0; i < 20; i++) {
+            if (i == 10) {
+                assertThrows(NoSuchElementException.class, () -> backing.get(10L));
+            } else {
+                assertEquals(i, backing.get(i));
+            }
+        }
+    }
+
+    @Test
+    void testRemoveDropsDirtyValue() {
+        Long key = container.insert(5L);
+        container.remove(key);
+        assertEquals(0, container.getDirtyCount());
+        assertThrows(NoSuchElementException.class, () -> container.get(key));
+        assertThrows(NoSuchElementException.class, () -> container.update(key, 6L));
+        assertThrows(NoSuchElementException.class, () -> container.update(99L, 6L));
+        assertThrows(IllegalArgumentException.class, () -> container.update(null, 6L));
+    }
+
+    @Test
+    void testCloseDrains() {
+        Long key = container.insert(7L);
+        container.close();
+        assertThrows(IllegalStateException.class, () -> container.get(key));
+        backing.open();
+        assertEquals(7L, backing.get(key));
+        backing.close();
+    }
+
+    @Test
+    void testFailedCloseKeepsDirtyRecords() {
+        Long key = container.insert(7L);
+        container.update(key, 8L);
+        // the final flush fails
+        backing.close();
+        assertThrows(IllegalStateException.class, container::close);
+        assertEquals(1, container.getDirtyCount());
+        assertEquals(8L, container.get(key));
+
+        backing.open();
+        container.close();
+        backing.open();
+        assertEquals(8L, backing.get(key));
+        backing.close();
+    }
+
+    @Test
+    void testBackgroundFlushByAge() throws InterruptedException {
+        container.close();
+        container = new WriteBackContainer<>(backing, 1 << 20, Duration.ofMillis(20));
+        container.open();
+        Long key = container.insert(11L);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (container.getDirtyCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, container.getDirtyCount());
+        assertEquals(11L, backing.get(key));
+    }
+
+    @Test
+    void testDirtyLimitBackpressure() {
+        container.close();
+        container = new WriteBackContainer<>(backing, 4L * backing.getRecordSize(), Duration.ofHours(1));
+        container.open();
+        for (long i = 0; i < 100; i++) {
+            container.insert(i);
+            assertTrue(container.getDirtyBytes() <= 8L * backing.getRecordSize());
+        }
+        container.flush();
+        for (long i = 0; i < 100; i++) {
+            assertEquals(i, container.get(i));
+        }
+    }
+}
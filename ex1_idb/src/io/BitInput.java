@@ -0,0 +1,91 @@
+package io;
+
+/**
+ * MSB-first bit source over a byte array, the counterpart of {@link BitOutput}.
+ */
+public class BitInput {
+
+	private final byte[] data;
+	private final long limitBits;
+	private long position;
+
+	/**
+	 * Creates a new BitInput reading the first <code>length</code> bytes of the given array.
+	 * @param data the encoded bits
+	 * @param length the number of valid bytes
+	 */
+	public BitInput(byte[] data, int length) {
+		this.data = data;
+		this.limitBits = (long) length << 3;
+		this.position = 0;
+	}
+
+	/**
+	 * @return the next bit
+	 * @throws IllegalStateException If the input is exhausted
+	 */
+	public boolean readBit() {
+		return readBits(1) != 0;
+	}
+
+	/**
+	 * Reads <code>count</code> bits and returns them right-aligned.
+	 * @param count the number of bits to read (0 to 64)
+	 * @return the bits read
+	 * @throws IllegalStateException If the input is exhausted
+	 */
+	public long readBits(int count) {
+		if (position + count > limitBits) {
+			throw new IllegalStateException("Unexpected end of bit stream");
+		}
+		long result = 0;
+		while (count > 0) {
+			int index = (int) (position >>> 3);
+			int available = 8 - (int) (position & 7);
+			int n = Math.min(available, count);
+			int bits = (data[index] >>> (available - n)) & ((1 << n) - 1);
+			result = (result << n) | bits;
+			position += n;
+			count -= n;
+		}
+		return result;
+	}
+
+	/**
+	 * @return an unsigned variable length integer written by {@link BitOutput#writeVarLong(long)}
+	 */
+	public long readVarLong() {
+		long result = 0;
+		int shift = 0;
+		while (true) {
+			long b = readBits(8);
+			result |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return result;
+			}
+			shift += 7;
+			if (shift > 63) {
+				throw new IllegalStateException("Malformed variable length integer");
+			}
+		}
+	}
+
+	/**
+	 * @return a signed integer written by {@link BitOutput#writeZigZag(long)}
+	 */
+	public long readZigZag() {
+		long v = readVarLong();
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	/**
+	 * Reads <code>length</code> full bytes into the given array.
+	 * @param dst the destination
+	 * @param length the number of bytes to read
+	 */
+	public void readBytes(byte[] dst, int length) {
+		for (int i = 0; i < length; i++) {
+			dst[i] = (byte) readBits(8);
+		}
+	}
+}
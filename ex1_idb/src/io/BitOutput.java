@@ -0,0 +1,108 @@
+package io;
+
+import java.util.Arrays;
+
+/**
+ * A growable, MSB-first bit sink. Bits are packed into a byte array which can be
+ * written out as a whole once encoding is complete.
+ */
+public class BitOutput {
+
+	/** The backing storage */
+	private byte[] data;
+	/** Number of bits written so far */
+	private long bitCount;
+
+	/**
+	 * Creates a new BitOutput with the given initial capacity.
+	 * @param initialBytes the initial capacity in bytes
+	 */
+	public BitOutput(int initialBytes) {
+		this.data = new byte[Math.max(16, initialBytes)];
+	}
+
+	/**
+	 * Writes a single bit.
+	 * @param bit the bit to write
+	 */
+	public void writeBit(boolean bit) {
+		writeBits(bit ? 1 : 0, 1);
+	}
+
+	/**
+	 * Writes the lowest <code>count</code> bits of the given value, most significant bit first.
+	 * @param value the value holding the bits
+	 * @param count the number of bits to write (0 to 64)
+	 */
+	public void writeBits(long value, int count) {
+		ensureCapacity(count);
+		while (count > 0) {
+			int index = (int) (bitCount >>> 3);
+			int free = 8 - (int) (bitCount & 7);
+			int n = Math.min(free, count);
+			int bits = (int) (value >>> (count - n)) & ((1 << n) - 1);
+			data[index] |= (byte) (bits << (free - n));
+			bitCount += n;
+			count -= n;
+		}
+	}
+
+	/**
+	 * Writes an unsigned variable length integer using groups of 7 bits.
+	 * @param value the value to write, interpreted as unsigned
+	 */
+	public void writeVarLong(long value) {
+		while ((value & ~0x7FL) != 0) {
+			writeBits((value & 0x7F) | 0x80, 8);
+			value >>>= 7;
+		}
+		writeBits(value, 8);
+	}
+
+	/**
+	 * Writes a signed variable length integer using zig-zag encoding.
+	 * @param value the value to write
+	 */
+	public void writeZigZag(long value) {
+		writeVarLong((value << 1) ^ (value >> 63));
+	}
+
+	/**
+	 * Writes the given bytes at full width.
+	 * @param bytes the bytes to write
+	 */
+	public void writeBytes(byte[] bytes) {
+		for (byte b : bytes) {
+			writeBits(b, 8);
+		}
+	}
+
+	/**
+	 * @return the number of bytes required to hold all bits written so far
+	 */
+	public int byteLength() {
+		return (int) ((bitCount + 7) >>> 3);
+	}
+
+	/**
+	 * @return the backing array; only the first {@link #byteLength()} bytes are meaningful
+	 */
+	public byte[] array() {
+		return data;
+	}
+
+	/**
+	 * Discards all bits written so far, keeping the allocated storage.
+	 */
+	public void reset() {
+		Arrays.fill(data, 0, byteLength(), (byte) 0);
+		bitCount = 0;
+	}
+
+	private void ensureCapacity(int additionalBits) {
+		long required = (bitCount + additionalBits + 7) >>> 3;
+		if (required > data.length) {
+			data = Arrays.copyOf(data, (int) Math.max(required, data.length * 2L));
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Simple serializer for Double values
+ */
+public class DoubleSerializer implements PrimitiveDoubleSerializer {
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void serializeDouble(double value, ByteBuffer buffer) {
+		buffer.putDouble(value);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public double deserializeDouble(ByteBuffer buffer) {
+		return buffer.getDouble();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void serializeAll(double[] values, int offset, int length, ByteBuffer buffer) {
+		buffer.asDoubleBuffer().put(values, offset, length);
+		buffer.position(buffer.position() + length * Double.BYTES);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void deserializeAll(ByteBuffer buffer, double[] values, int offset, int length) {
+		buffer.asDoubleBuffer().get(values, offset, length);
+		buffer.position(buffer.position() + length * Double.BYTES);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getSerializedSize() {
+		return 8;
+	}
+
+}
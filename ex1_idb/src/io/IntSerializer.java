@@ -5,13 +5,13 @@ import java.nio.ByteBuffer;
 /**
  * Simple serializer von Integer values
  */
-public class IntSerializer implements FixedSizeSerializer<Integer> {
+public class IntSerializer implements PrimitiveIntSerializer {
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public void serialize(Integer value, ByteBuffer buffer) {
+	public void serializeInt(int value, ByteBuffer buffer) {
 		buffer.putInt(value);
 	}
 
@@ -19,10 +19,28 @@ public class IntSerializer implements FixedSizeSerializer<Integer> {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public Integer deserialize(ByteBuffer buffer) {
+	public int deserializeInt(ByteBuffer buffer) {
 		return buffer.getInt();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void serializeAll(int[] values, int offset, int length, ByteBuffer buffer) {
+		buffer.asIntBuffer().put(values, offset, length);
+		buffer.position(buffer.position() + length * Integer.BYTES);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void deserializeAll(ByteBuffer buffer, int[] values, int offset, int length) {
+		buffer.asIntBuffer().get(values, offset, length);
+		buffer.position(buffer.position() + length * Integer.BYTES);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
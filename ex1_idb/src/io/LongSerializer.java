@@ -2,18 +2,30 @@ package io;
 
 import java.nio.ByteBuffer;
 
-public class LongSerializer implements FixedSizeSerializer<Long> {
+public class LongSerializer implements PrimitiveLongSerializer {
 
     @Override
-    public void serialize(Long value, ByteBuffer buffer) {
+    public void serializeLong(long value, ByteBuffer buffer) {
         buffer.putLong(value);
     }
 
     @Override
-    public Long deserialize(ByteBuffer buffer) {
+    public long deserializeLong(ByteBuffer buffer) {
         return buffer.getLong();
     }
 
+    @Override
+    public void serializeAll(long[] values, int offset, int length, ByteBuffer buffer) {
+        buffer.asLongBuffer().put(values, offset, length);
+        buffer.position(buffer.position() + length * Long.BYTES);
+    }
+
+    @Override
+    public void deserializeAll(ByteBuffer buffer, long[] values, int offset, int length) {
+        buffer.asLongBuffer().get(values, offset, length);
+        buffer.position(buffer.position() + length * Long.BYTES);
+    }
+
     @Override
     public int getSerializedSize() {
         return 8;
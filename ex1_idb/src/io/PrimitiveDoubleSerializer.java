@@ -0,0 +1,77 @@
+package io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link FixedSizeSerializer} specialized for primitive <code>double</code> values. Besides the boxed
+ * single value methods inherited from {@link Serializer}, it (de-)serializes unboxed values and whole
+ * arrays, so primitive columns can be encoded and decoded without allocating wrapper objects.
+ */
+public interface PrimitiveDoubleSerializer extends FixedSizeSerializer<Double> {
+
+	/**
+	 * Serializes the given value into the given byte buffer.
+	 * @param value the value to serialize
+	 * @param buffer the buffer to write to
+	 */
+	void serializeDouble(double value, ByteBuffer buffer);
+
+	/**
+	 * Deserializes a single value.
+	 * @param buffer the buffer holding the serialized form
+	 * @return the deserialized value
+	 */
+	double deserializeDouble(ByteBuffer buffer);
+
+	/**
+	 * Serializes <code>length</code> values of the given array, starting at <code>offset</code>. The caller
+	 * is in charge to ensure, that the buffer provides enough space for serialization.
+	 * @param values the values to serialize
+	 * @param offset the index of the first value
+	 * @param length the number of values
+	 * @param buffer the buffer to write to
+	 */
+	default void serializeAll(double[] values, int offset, int length, ByteBuffer buffer) {
+		for (int i = offset; i < offset + length; i++) {
+			serializeDouble(values[i], buffer);
+		}
+	}
+
+	/**
+	 * Deserializes <code>length</code> values into the given array, starting at <code>offset</code>.
+	 * @param buffer the buffer holding the serialized form
+	 * @param values the array to fill
+	 * @param offset the index of the first value
+	 * @param length the number of values
+	 */
+	default void deserializeAll(ByteBuffer buffer, double[] values, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			values[i] = deserializeDouble(buffer);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	default void serialize(Double value, ByteBuffer buffer) {
+		serializeDouble(value, buffer);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	default Double deserialize(ByteBuffer buffer) {
+		return deserializeDouble(buffer);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	default int getSerializedSize() {
+		return Double.BYTES;
+	}
+
+}
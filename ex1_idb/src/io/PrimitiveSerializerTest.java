@@ -0,0 +1,60 @@
+package io;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrimitiveSerializerTest {
+
+    @Test
+    void bulkLongRoundTrip() {
+        LongSerializer serializer = new LongSerializer();
+        long[] values = {Long.MIN_VALUE, -1, 0, 1, Long.MAX_VALUE};
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+        buffer.putInt(7);
+        serializer.serializeAll(values, 1, 3, buffer);
+        serializer.serializeLong(42, buffer);
+        assertEquals(4 + 4 * 8, buffer.position());
+
+        buffer.flip();
+        assertEquals(7, buffer.getInt());
+        long[] decoded = new long[5];
+        serializer.deserializeAll(buffer, decoded, 2, 3);
+        assertArrayEquals(new long[]{0, 0, -1, 0, 1}, decoded);
+        assertEquals(42L, serializer.deserialize(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void bulkMatchesSingleValueEncoding() {
+        IntSerializer ints = new IntSerializer();
+        DoubleSerializer doubles = new DoubleSerializer();
+        int[] intValues = {3, -5, Integer.MAX_VALUE};
+        double[] doubleValues = {0.5, Double.NaN, -1e10};
+
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            ByteBuffer bulk = ByteBuffer.allocate(36).order(order);
+            ints.serializeAll(intValues, 0, 3, bulk);
+            doubles.serializeAll(doubleValues, 0, 3, bulk);
+            ByteBuffer single = ByteBuffer.allocate(36).order(order);
+            for (int v : intValues) {
+                ints.serialize(v, single);
+            }
+            for (double v : doubleValues) {
+                doubles.serializeDouble(v, single);
+            }
+            assertArrayEquals(single.array(), bulk.array());
+
+            bulk.flip();
+            int[] intsOut = new int[3];
+            double[] doublesOut = new double[3];
+            ints.deserializeAll(bulk, intsOut, 0, 3);
+            doubles.deserializeAll(bulk, doublesOut, 0, 3);
+            assertArrayEquals(intValues, intsOut);
+            assertArrayEquals(doubleValues, doublesOut);
+        }
+    }
+}
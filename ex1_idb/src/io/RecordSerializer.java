@@ -0,0 +1,379 @@
+package io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * A {@link FixedSizeSerializer} composed of fixed-width fields. The offset of every field is computed
+ * once when the serializer is built, so single fields can be read in place from a serialized record
+ * (see {@link #field(String)}) without deserializing the whole record.
+ * <p>
+ * Strings are stored as an unsigned two byte length followed by at most <code>maxBytes</code> UTF-8 bytes,
+ * padded with zeros. Longer strings are truncated at a character boundary.
+ * <pre>
+ * RecordSerializer&lt;Point&gt; s = RecordSerializer.&lt;Point&gt;builder()
+ *     .longField("x", Point::x)
+ *     .longField("y", Point::y)
+ *     .build(r -&gt; new Point(r.getLong(0), r.getLong(1)));
+ * </pre>
+ * @param <T> The type to (de-)serialize
+ */
+public class RecordSerializer<T> implements FixedSizeSerializer<T> {
+
+	private final List<Field<T>> fields;
+	private final Function<Record, T> factory;
+	private final int size;
+
+	private RecordSerializer(List<Field<T>> fields, Function<Record, T> factory, int size) {
+		this.fields = fields;
+		this.factory = factory;
+		this.size = size;
+	}
+
+	/**
+	 * Creates a new builder without any fields.
+	 * @param <T> The type to (de-)serialize
+	 * @return a new builder
+	 */
+	public static <T> Builder<T> builder() {
+		return new Builder<>();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getSerializedSize() {
+		return size;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void serialize(T value, ByteBuffer buffer) {
+		int base = buffer.position();
+		for (Field<T> field : fields) {
+			field.write(value, buffer, base);
+		}
+		buffer.position(base + size);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public T deserialize(ByteBuffer buffer) {
+		int base = buffer.position();
+		T value = factory.apply(new Record(fields, buffer, base));
+		buffer.position(base + size);
+		return value;
+	}
+
+	/**
+	 * @return all fields in layout order
+	 */
+	public List<Field<T>> fields() {
+		return Collections.unmodifiableList(fields);
+	}
+
+	/**
+	 * Returns the field with the given name, which may be used to access the field in place.
+	 * @param name the name of the field
+	 * @return the field
+	 * @throws NoSuchElementException If there is no such field.
+	 */
+	public Field<T> field(String name) {
+		for (Field<T> field : fields) {
+			if (field.name.equals(name)) {
+				return field;
+			}
+		}
+		throw new NoSuchElementException("Field \"" + name + "\" not defined.");
+	}
+
+	/**
+	 * Read access to the fields of a single serialized record, handed to the factory on deserialization.
+	 */
+	public static class Record {
+
+		private final List<? extends Field<?>> fields;
+		private final ByteBuffer buffer;
+		private final int base;
+
+		private Record(List<? extends Field<?>> fields, ByteBuffer buffer, int base) {
+			this.fields = fields;
+			this.buffer = buffer;
+			this.base = base;
+		}
+
+		/**
+		 * @param index the index of a long field
+		 * @return the value of the field
+		 */
+		public long getLong(int index) {
+			return fields.get(index).getLong(buffer, base);
+		}
+
+		/**
+		 * @param index the index of an int field
+		 * @return the value of the field
+		 */
+		public int getInt(int index) {
+			return fields.get(index).getInt(buffer, base);
+		}
+
+		/**
+		 * @param index the index of a double field
+		 * @return the value of the field
+		 */
+		public double getDouble(int index) {
+			return fields.get(index).getDouble(buffer, base);
+		}
+
+		/**
+		 * @param index the index of a string field
+		 * @return the value of the field
+		 */
+		public String getString(int index) {
+			return fields.get(index).getString(buffer, base);
+		}
+	}
+
+	/**
+	 * A single field of a record at a fixed offset. The accessors read the field of the record starting at
+	 * <code>recordStart</code> using absolute reads, i.e. the buffer's position is left untouched.
+	 * @param <T> The type the record is serialized from
+	 */
+	public abstract static class Field<T> {
+
+		private final String name;
+		private final int offset;
+		private final int width;
+
+		Field(String name, int offset, int width) {
+			this.name = name;
+			this.offset = offset;
+			this.width = width;
+		}
+
+		/**
+		 * @return the name of this field
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the offset of this field from the start of the record
+		 */
+		public int getOffset() {
+			return offset;
+		}
+
+		/**
+		 * @return the number of bytes reserved for this field
+		 */
+		public int getWidth() {
+			return width;
+		}
+
+		/**
+		 * @param buffer the buffer holding the record
+		 * @param recordStart the position of the record in the buffer
+		 * @return the value of this long field
+		 * @throws UnsupportedOperationException If this is not a long field
+		 */
+		public long getLong(ByteBuffer buffer, int recordStart) {
+			throw new UnsupportedOperationException("Field " + name + " is not a long field");
+		}
+
+		/**
+		 * @param buffer the buffer holding the record
+		 * @param recordStart the position of the record in the buffer
+		 * @return the value of this int field
+		 * @throws UnsupportedOperationException If this is not an int field
+		 */
+		public int getInt(ByteBuffer buffer, int recordStart) {
+			throw new UnsupportedOperationException("Field " + name + " is not an int field");
+		}
+
+		/**
+		 * @param buffer the buffer holding the record
+		 * @param recordStart the position of the record in the buffer
+		 * @return the value of this double field
+		 * @throws UnsupportedOperationException If this is not a double field
+		 */
+		public double getDouble(ByteBuffer buffer, int recordStart) {
+			throw new UnsupportedOperationException("Field " + name + " is not a double field");
+		}
+
+		/**
+		 * @param buffer the buffer holding the record
+		 * @param recordStart the position of the record in the buffer
+		 * @return the value of this string field
+		 * @throws UnsupportedOperationException If this is not a string field
+		 */
+		public String getString(ByteBuffer buffer, int recordStart) {
+			throw new UnsupportedOperationException("Field " + name + " is not a string field");
+		}
+
+		abstract void write(T value, ByteBuffer buffer, int recordStart);
+	}
+
+	/**
+	 * Collects the fields of a {@link RecordSerializer} in layout order.
+	 * @param <T> The type to (de-)serialize
+	 */
+	public static class Builder<T> {
+
+		private final List<Field<T>> fields = new ArrayList<>();
+		private int size;
+
+		private Builder() {
+		}
+
+		/**
+		 * Appends an eight byte long field.
+		 * @param name the name of the field
+		 * @param getter extracts the field value
+		 * @return this builder
+		 */
+		public Builder<T> longField(String name, ToLongFunction<T> getter) {
+			return add(new Field<T>(name, size, Long.BYTES) {
+				@Override
+				public long getLong(ByteBuffer buffer, int recordStart) {
+					return buffer.getLong(recordStart + getOffset());
+				}
+
+				@Override
+				void write(T value, ByteBuffer buffer, int recordStart) {
+					buffer.putLong(recordStart + getOffset(), getter.applyAsLong(value));
+				}
+			});
+		}
+
+		/**
+		 * Appends a four byte int field.
+		 * @param name the name of the field
+		 * @param getter extracts the field value
+		 * @return this builder
+		 */
+		public Builder<T> intField(String name, ToIntFunction<T> getter) {
+			return add(new Field<T>(name, size, Integer.BYTES) {
+				@Override
+				public int getInt(ByteBuffer buffer, int recordStart) {
+					return buffer.getInt(recordStart + getOffset());
+				}
+
+				@Override
+				void write(T value, ByteBuffer buffer, int recordStart) {
+					buffer.putInt(recordStart + getOffset(), getter.applyAsInt(value));
+				}
+			});
+		}
+
+		/**
+		 * Appends an eight byte double field.
+		 * @param name the name of the field
+		 * @param getter extracts the field value
+		 * @return this builder
+		 */
+		public Builder<T> doubleField(String name, ToDoubleFunction<T> getter) {
+			return add(new Field<T>(name, size, Double.BYTES) {
+				@Override
+				public double getDouble(ByteBuffer buffer, int recordStart) {
+					return buffer.getDouble(recordStart + getOffset());
+				}
+
+				@Override
+				void write(T value, ByteBuffer buffer, int recordStart) {
+					buffer.putDouble(recordStart + getOffset(), getter.applyAsDouble(value));
+				}
+			});
+		}
+
+		/**
+		 * Appends a string field occupying <code>2 + maxBytes</code> bytes.
+		 * @param name the name of the field
+		 * @param maxBytes the maximum number of UTF-8 bytes stored, longer strings are truncated at a character
+		 *                 boundary; serializing fails if not even the first character fits
+		 * @param getter extracts the field value
+		 * @return this builder
+		 */
+		public Builder<T> stringField(String name, int maxBytes, Function<T, String> getter) {
+			if (maxBytes <= 0 || maxBytes > 0xFFFF) {
+				throw new IllegalArgumentException("String width must be between 1 and 65535 bytes");
+			}
+			return add(new Field<T>(name, size, 2 + maxBytes) {
+				@Override
+				public String getString(ByteBuffer buffer, int recordStart) {
+					int start = recordStart + getOffset();
+					int length = Math.min(buffer.getShort(start) & 0xFFFF, maxBytes);
+					byte[] bytes = new byte[length];
+					buffer.get(start + 2, bytes);
+					return new String(bytes, StandardCharsets.UTF_8);
+				}
+
+				@Override
+				void write(T value, ByteBuffer buffer, int recordStart) {
+					byte[] bytes = getter.apply(value).getBytes(StandardCharsets.UTF_8);
+					int length = truncatedLength(bytes, maxBytes);
+					if (length == 0 && bytes.length > 0) {
+						throw new IllegalArgumentException("The first character of field \"" + name + "\" does not fit into "
+								+ maxBytes + " bytes");
+					}
+					int start = recordStart + getOffset();
+					buffer.putShort(start, (short) length);
+					buffer.put(start + 2, bytes, 0, length);
+					for (int i = start + 2 + length; i < start + getWidth(); i++) {
+						buffer.put(i, (byte) 0);
+					}
+				}
+			});
+		}
+
+		/**
+		 * Builds the serializer.
+		 * @param factory creates an instance of T from the fields of a serialized record
+		 * @return the serializer
+		 */
+		public RecordSerializer<T> build(Function<Record, T> factory) {
+			if (fields.isEmpty()) {
+				throw new IllegalStateException("A record needs at least one field");
+			}
+			return new RecordSerializer<>(new ArrayList<>(fields), factory, size);
+		}
+
+		private Builder<T> add(Field<T> field) {
+			for (Field<T> existing : fields) {
+				if (existing.name.equals(field.name)) {
+					throw new IllegalArgumentException("Duplicate field \"" + field.name + "\"");
+				}
+			}
+			fields.add(field);
+			size += field.width;
+			return this;
+		}
+
+		private static int truncatedLength(byte[] utf8, int maxBytes) {
+			if (utf8.length <= maxBytes) {
+				return utf8.length;
+			}
+			int length = maxBytes;
+			// do not cut a multi-byte character in half
+			while (length > 0 && (utf8[length] & 0xC0) == 0x80) {
+				length--;
+			}
+			return length;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package stocks;
+
+import java.util.List;
+
+/**
+ * An aggregate over the market values of a group of stock entries, evaluated by {@link StocksAggregator}.
+ * <p>
+ * The intermediate state of an aggregate is a fixed number of doubles in a shared state array, so the
+ * aggregator can keep the states of all groups in one primitive array. A group may be aggregated in several
+ * partial states (one per file range), which are merged afterwards. Values are added in file order and a
+ * merged partial always covers records following those of the partial it is merged into, so aggregates
+ * depending on order (e.g. {@link StandardAggregates#FIRST}) refer to the order within the file.
+ */
+public interface AggregateFunction {
+
+    /**
+     * @return the names of the result columns, one per value produced by {@link #finish}
+     */
+    List<String> columns();
+
+    /**
+     * @return the number of doubles of the intermediate state
+     */
+    int stateSize();
+
+    /**
+     * Initializes an empty state.
+     *
+     * @param state the state array
+     * @param offset the position of the state in the array
+     */
+    void reset(double[] state, int offset);
+
+    /**
+     * Adds a value to a state.
+     *
+     * @param state the state array
+     * @param offset the position of the state in the array
+     * @param count the number of values added to the state before
+     * @param value the value to add
+     */
+    void add(double[] state, int offset, long count, double value);
+
+    /**
+     * Merges the state of the following records into a state.
+     *
+     * @param state the state array to merge into
+     * @param offset the position of the state in the array
+     * @param count the number of values aggregated in the state
+     * @param other the state array to merge
+     * @param otherOffset the position of the merged state in its array
+     * @param otherCount the number of values aggregated in the merged state
+     */
+    void merge(double[] state, int offset, long count, double[] other, int otherOffset, long otherCount);
+
+    /**
+     * Computes the result values of a state.
+     *
+     * @param state the state array
+     * @param offset the position of the state in the array
+     * @param count the number of values aggregated in the state
+     * @param result receives one value per column
+     * @param resultOffset the position of the first result value
+     */
+    void finish(double[] state, int offset, long count, double[] result, int resultOffset);
+}
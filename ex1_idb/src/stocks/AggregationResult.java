@@ -0,0 +1,80 @@
+package stocks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The groups computed by a {@link StocksAggregator}, sorted by name and bucket.
+ */
+public class AggregationResult {
+
+    /**
+     * The aggregates of one group.
+     *
+     * @param name the name of the group, or null if not grouped by name
+     * @param bucket the first timestamp of the group's time bucket, or 0 if not bucketed
+     * @param count the number of entries in the group
+     * @param values the aggregate values in the order of {@link AggregationResult#getColumns()}
+     */
+    public record Row(String name, long bucket, long count, double[] values) {
+
+        /**
+         * @param column the index of a column
+         * @return the value of the column
+         */
+        public double get(int column) {
+            return values[column];
+        }
+    }
+
+    private final List<String> columns;
+    private final List<Row> rows;
+
+    AggregationResult(List<String> columns, List<Row> rows) {
+        this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+        this.rows = Collections.unmodifiableList(rows);
+    }
+
+    /**
+     * @return the names of the aggregate columns
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @param column the name of a column
+     * @return the index of the column in {@link Row#values()}
+     * @throws IllegalArgumentException if there is no such column
+     */
+    public int indexOf(String column) {
+        int index = columns.indexOf(column);
+        if (index < 0) {
+            throw new IllegalArgumentException("No column " + column);
+        }
+        return index;
+    }
+
+    /**
+     * @return all groups sorted by name and bucket
+     */
+    public List<Row> getRows() {
+        return rows;
+    }
+
+    /**
+     * @param name the name of the group, or null if not grouped by name
+     * @param bucket the first timestamp of the bucket, or 0 if not bucketed
+     * @return the group, or null if no entry fell into it
+     */
+    public Row get(String name, long bucket) {
+        for (Row row : rows) {
+            if (Objects.equals(row.name(), name) && row.bucket() == bucket) {
+                return row;
+            }
+        }
+        return null;
+    }
+}
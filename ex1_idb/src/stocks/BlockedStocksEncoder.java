@@ -0,0 +1,211 @@
+package stocks;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * Streaming encoder for the self-describing blocked stocks format ({@link StocksFormat#BLOCKED}).
+ * <p>
+ * A blocked file consists of
+ * <ul>
+ *     <li>a {@value #HEADER_SIZE} byte header: the magic, a version byte, a flags byte, two reserved bytes, the
+ *     block size as an int and four reserved bytes,</li>
+ *     <li>blocks of exactly the block size, each holding whole records in the raw encoding of
+ *     {@link StockEntry#getBytes()} followed by zero padding,</li>
+ *     <li>the block index with one {@value #BLOCK_ENTRY_SIZE} byte entry per block: <code>int recordCount,
+ *     int usedBytes, int crc</code> (CRC32C of the used bytes), then the minimum and maximum id, timestamp and
+ *     value of its records and</li>
+ *     <li>a {@value #TRAILER_SIZE} byte trailer: <code>long recordCount, int blockCount, int indexCrc</code>
+ *     (CRC32C of the block index) and the magic again.</li>
+ * </ul>
+ * The trailer has a fixed size at the end of the file, so a reader finds the record count and the block index
+ * without scanning, and block <code>i</code> starts at <code>HEADER_SIZE + i * blockSize</code>.
+ */
+public class BlockedStocksEncoder implements AutoCloseable {
+
+    /** Format version written after the magic */
+    static final byte VERSION = 2;
+    /** Flag set if every block index entry holds the checksum of its block */
+    static final int FLAG_BLOCK_CHECKSUMS = 1;
+    static final int HEADER_SIZE = 16;
+    static final int BLOCK_ENTRY_SIZE = 3 * Integer.BYTES + 6 * Long.BYTES;
+    static final int TRAILER_SIZE = Long.BYTES + 2 * Integer.BYTES + 4;
+    /** Default size of a block in bytes */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+    private final DataOutputStream out;
+    private final int blockSize;
+    private final ByteBuffer block;
+    private final CRC32C crc = new CRC32C();
+
+    private final DataOutputStream index;
+    private final ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+    private long recordCount;
+    private int blockCount;
+
+    private int blockRecords;
+    private long minId;
+    private long maxId;
+    private long minTimestamp;
+    private long maxTimestamp;
+    private double minValue;
+    private double maxValue;
+    private boolean closed;
+
+    /**
+     * Creates an encoder with the default block size.
+     *
+     * @param out the stream to write the file to
+     * @throws IOException if the header cannot be written
+     */
+    public BlockedStocksEncoder(OutputStream out) throws IOException {
+        this(out, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates an encoder writing blocks of the given size.
+     *
+     * @param out the stream to write the file to
+     * @param blockSize the size of a block in bytes, which limits the size of a record
+     * @throws IOException if the header cannot be written
+     */
+    public BlockedStocksEncoder(OutputStream out, int blockSize) throws IOException {
+        if (blockSize < Configuration.RECORD_SIZE) {
+            throw new IllegalArgumentException("Block size must hold at least one record");
+        }
+        this.out = new DataOutputStream(out);
+        this.blockSize = blockSize;
+        this.block = ByteBuffer.allocate(blockSize);
+        this.index = new DataOutputStream(indexBytes);
+
+        this.out.write(StocksFormat.BLOCKED.getMagic());
+        this.out.writeByte(VERSION);
+        this.out.writeByte(FLAG_BLOCK_CHECKSUMS);
+        this.out.writeShort(0);
+        this.out.writeInt(blockSize);
+        this.out.writeInt(0);
+    }
+
+    /**
+     * Appends the given entry.
+     *
+     * @param entry the entry to append
+     * @throws IOException if a completed block cannot be written
+     */
+    public void write(StockEntry entry) throws IOException {
+        write(entry.getId(), entry.getName(), entry.getTimeStamp(), entry.getMarketValue());
+    }
+
+    /**
+     * Appends an entry given by its fields.
+     *
+     * @param id the id of the entry
+     * @param name the name of the stock
+     * @param timestamp the timestamp of the entry
+     * @param value the market value
+     * @throws IOException if a completed block cannot be written
+     * @throws IllegalArgumentException if the record does not fit into a block
+     */
+    public void write(long id, String name, long timestamp, double value) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Encoder is closed");
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int size = Configuration.RECORD_SIZE + nameBytes.length;
+        if (size > blockSize || nameBytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Record of " + size + " bytes does not fit into a block");
+        }
+        if (size > block.remaining()) {
+            writeBlock();
+        }
+        block.putLong(id).putShort((short) nameBytes.length).put(nameBytes).putLong(timestamp).putDouble(value);
+        if (blockRecords++ == 0) {
+            minId = maxId = id;
+            minTimestamp = maxTimestamp = timestamp;
+            minValue = maxValue = value;
+        } else {
+            minId = Math.min(minId, id);
+            maxId = Math.max(maxId, id);
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+            minValue = Math.min(minValue, value);
+            maxValue = Math.max(maxValue, value);
+        }
+        recordCount++;
+    }
+
+    /**
+     * Writes the last block, the block index and the trailer and closes the underlying stream. Repeated calls
+     * have no effect.
+     *
+     * @throws IOException if writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (blockRecords > 0) {
+            writeBlock();
+        }
+        index.flush();
+        byte[] entries = indexBytes.toByteArray();
+        crc.reset();
+        crc.update(entries);
+        out.write(entries);
+        out.writeLong(recordCount);
+        out.writeInt(blockCount);
+        out.writeInt((int) crc.getValue());
+        out.write(StocksFormat.BLOCKED.getMagic());
+        out.close();
+    }
+
+    /**
+     * Writes all given entries into a new blocked file, e.g. to convert a raw file.
+     *
+     * @param entries the entries to write, e.g. a {@link Stocks} instance
+     * @param target the file to create or overwrite
+     * @return the size of the written file in bytes
+     * @throws IOException if writing fails
+     */
+    public static long convert(Iterable<StockEntry> entries, Path target) throws IOException {
+        try (BlockedStocksEncoder encoder = new BlockedStocksEncoder(
+                new BufferedOutputStream(Files.newOutputStream(target), 1 << 16))) {
+            for (StockEntry entry : entries) {
+                encoder.write(entry);
+            }
+        }
+        return Files.size(target);
+    }
+
+    private void writeBlock() throws IOException {
+        int used = block.position();
+        crc.reset();
+        crc.update(block.array(), 0, used);
+        index.writeInt(blockRecords);
+        index.writeInt(used);
+        index.writeInt((int) crc.getValue());
+        index.writeLong(minId);
+        index.writeLong(maxId);
+        index.writeLong(minTimestamp);
+        index.writeLong(maxTimestamp);
+        index.writeDouble(minValue);
+        index.writeDouble(maxValue);
+
+        Arrays.fill(block.array(), used, blockSize, (byte) 0);
+        out.write(block.array(), 0, blockSize);
+        block.clear();
+        blockRecords = 0;
+        blockCount++;
+    }
+}
@@ -0,0 +1,282 @@
+package stocks;
+
+import util.ContainerRuntimeException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32C;
+
+/**
+ * Random access to a file in the blocked format written by {@link BlockedStocksEncoder}. Opening reads the header,
+ * the fixed-size trailer and the block index, which takes a constant number of reads regardless of the number of
+ * records; afterwards the record count is known and every block can be read on its own.
+ * <p>
+ * Blocks are checked against their CRC32C checksum whenever they are read. The reader uses positional reads
+ * only, so it may share the channel with other readers.
+ */
+public class BlockedStocksReader {
+
+    /**
+     * The position and statistics of a block.
+     *
+     * @param firstRow the number of the first record of the block in the file
+     * @param recordCount the number of records in the block
+     * @param minId the smallest id in the block
+     * @param maxId the largest id in the block
+     * @param minTimestamp the earliest timestamp in the block
+     * @param maxTimestamp the latest timestamp in the block
+     * @param minValue the smallest market value in the block, NaN if a value is NaN
+     * @param maxValue the largest market value in the block, NaN if a value is NaN
+     */
+    public record BlockInfo(long firstRow, int recordCount, long minId, long maxId, long minTimestamp,
+                            long maxTimestamp, double minValue, double maxValue) {
+    }
+
+    private final FileChannel channel;
+    private final int blockSize;
+    private final boolean checksums;
+    private final long recordCount;
+    private final BlockInfo[] blocks;
+    private final long[] firstRows;
+    private final int[] usedBytes;
+    private final int[] crcs;
+
+    private BlockedStocksReader(FileChannel channel, int blockSize, boolean checksums, long recordCount,
+                                BlockInfo[] blocks, int[] usedBytes, int[] crcs) {
+        this.channel = channel;
+        this.blockSize = blockSize;
+        this.checksums = checksums;
+        this.recordCount = recordCount;
+        this.blocks = blocks;
+        this.usedBytes = usedBytes;
+        this.crcs = crcs;
+        this.firstRows = new long[blocks.length];
+        for (int i = 0; i < blocks.length; i++) {
+            firstRows[i] = blocks[i].firstRow();
+        }
+    }
+
+    /**
+     * Reads the header and footer of a blocked file.
+     *
+     * @param channel the file, which stays open and owned by the caller
+     * @return the reader
+     * @throws IOException if the file cannot be read or is not a complete blocked file of a supported version
+     * @throws ContainerRuntimeException if the block index does not match its checksum
+     */
+    public static BlockedStocksReader open(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < BlockedStocksEncoder.HEADER_SIZE + BlockedStocksEncoder.TRAILER_SIZE) {
+            throw new IOException("Blocked stocks file is truncated");
+        }
+        ByteBuffer header = read(channel, 0, BlockedStocksEncoder.HEADER_SIZE);
+        byte[] magic = new byte[4];
+        header.get(magic);
+        if (!Arrays.equals(magic, StocksFormat.BLOCKED.getMagic())) {
+            throw new IOException("Not a blocked stocks file");
+        }
+        byte version = header.get();
+        if (version != BlockedStocksEncoder.VERSION) {
+            throw new IOException("Unsupported blocked stocks version " + version);
+        }
+        int flags = header.get();
+        header.getShort();
+        int blockSize = header.getInt();
+
+        ByteBuffer trailer = read(channel, size - BlockedStocksEncoder.TRAILER_SIZE, BlockedStocksEncoder.TRAILER_SIZE);
+        long recordCount = trailer.getLong();
+        int blockCount = trailer.getInt();
+        int indexCrc = trailer.getInt();
+        trailer.get(magic);
+        if (!Arrays.equals(magic, StocksFormat.BLOCKED.getMagic())) {
+            throw new IOException("Blocked stocks file has no footer, it was not closed");
+        }
+        long indexStart = BlockedStocksEncoder.HEADER_SIZE + (long) blockCount * blockSize;
+        if (blockSize < Configuration.RECORD_SIZE || blockCount < 0 || indexStart
+                + (long) blockCount * BlockedStocksEncoder.BLOCK_ENTRY_SIZE + BlockedStocksEncoder.TRAILER_SIZE != size) {
+            throw new IOException("Corrupt blocked stocks footer");
+        }
+        ByteBuffer index = read(channel, indexStart, blockCount * BlockedStocksEncoder.BLOCK_ENTRY_SIZE);
+        CRC32C crc = new CRC32C();
+        crc.update(index.duplicate());
+        if ((int) crc.getValue() != indexCrc) {
+            throw new ContainerRuntimeException("Checksum mismatch in the block index of the blocked stocks file");
+        }
+
+        BlockInfo[] blocks = new BlockInfo[blockCount];
+        int[] usedBytes = new int[blockCount];
+        int[] crcs = new int[blockCount];
+        long row = 0;
+        for (int i = 0; i < blockCount; i++) {
+            int count = index.getInt();
+            usedBytes[i] = index.getInt();
+            crcs[i] = index.getInt();
+            blocks[i] = new BlockInfo(row, count, index.getLong(), index.getLong(), index.getLong(), index.getLong(),
+                    index.getDouble(), index.getDouble());
+            row += count;
+        }
+        if (row != recordCount) {
+            throw new IOException("Corrupt blocked stocks footer");
+        }
+        return new BlockedStocksReader(channel, blockSize, (flags & BlockedStocksEncoder.FLAG_BLOCK_CHECKSUMS) != 0,
+                recordCount, blocks, usedBytes, crcs);
+    }
+
+    /**
+     * @return the number of records in the file
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return the number of blocks in the file
+     */
+    public int getBlockCount() {
+        return blocks.length;
+    }
+
+    /**
+     * @return the size of a block in bytes
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @param block the number of a block
+     * @return the position and statistics of the block
+     */
+    public BlockInfo getBlock(int block) {
+        return blocks[block];
+    }
+
+    /**
+     * @param row the number of a record
+     * @return the number of the block holding the record
+     * @throws IndexOutOfBoundsException if there is no such record
+     */
+    public int blockOf(long row) {
+        if (row < 0 || row >= recordCount) {
+            throw new IndexOutOfBoundsException("Record " + row + " of " + recordCount);
+        }
+        int found = Arrays.binarySearch(firstRows, row);
+        if (found >= 0) {
+            // blocks are never empty, so the first block starting at the row holds it
+            return found;
+        }
+        return -found - 2;
+    }
+
+    /**
+     * Reads the records of a block.
+     *
+     * @param block the number of the block
+     * @param buffer a buffer of at least the block size, or null to allocate one
+     * @return the buffer holding the encoded records of the block between position 0 and its limit
+     * @throws IOException if the block cannot be read
+     * @throws ContainerRuntimeException if the block does not match its checksum
+     */
+    public ByteBuffer readBlock(int block, ByteBuffer buffer) throws IOException {
+        ByteBuffer target = buffer != null ? buffer : ByteBuffer.allocate(blockSize);
+        target.clear().limit(usedBytes[block]);
+        long offset = BlockedStocksEncoder.HEADER_SIZE + (long) block * blockSize;
+        while (target.hasRemaining()) {
+            if (channel.read(target, offset + target.position()) < 0) {
+                throw new IOException("Unexpected end of blocked stocks file");
+            }
+        }
+        target.flip();
+        if (checksums) {
+            CRC32C crc = new CRC32C();
+            crc.update(target.duplicate());
+            if ((int) crc.getValue() != crcs[block]) {
+                throw new ContainerRuntimeException("Checksum mismatch in block " + block + " of the blocked stocks file");
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Returns a record by its number, reading only the block holding it.
+     *
+     * @param row the number of the record
+     * @param symbols the symbol table to take the name from
+     * @return the record, or null if there is none with this number
+     * @throws IOException if the block cannot be read
+     */
+    public StockEntry get(long row, SymbolTable symbols) throws IOException {
+        if (row < 0 || row >= recordCount) {
+            return null;
+        }
+        int block = blockOf(row);
+        ByteBuffer records = readBlock(block, null);
+        for (long skip = row - blocks[block].firstRow(); skip > 0; skip--) {
+            records.position(records.position() + Configuration.RECORD_SIZE
+                    + records.getShort(records.position() + Configuration.ID_SIZE));
+        }
+        return decode(records, symbols);
+    }
+
+    /**
+     * Returns an iterator over all records that reads one block at a time.
+     *
+     * @param symbols the symbol table to take the names from
+     * @return the iterator
+     */
+    public Iterator<StockEntry> iterator(SymbolTable symbols) {
+        return new Iterator<>() {
+            private final ByteBuffer buffer = ByteBuffer.allocate(blockSize);
+            private int block = -1;
+            private int remaining;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0 || block + 1 < blocks.length;
+            }
+
+            @Override
+            public StockEntry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (remaining == 0) {
+                    try {
+                        readBlock(++block, buffer);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Error reading blocked stocks file", e);
+                    }
+                    remaining = blocks[block].recordCount();
+                }
+                remaining--;
+                return decode(buffer, symbols);
+            }
+        };
+    }
+
+    /**
+     * Decodes the record at the position of the heap buffer and advances the position past it.
+     */
+    static StockEntry decode(ByteBuffer records, SymbolTable symbols) {
+        long id = records.getLong();
+        int nameLength = records.getShort();
+        String name = symbols.canonical(records.array(), records.arrayOffset() + records.position(), nameLength);
+        records.position(records.position() + nameLength);
+        return new StockEntry(id, name, records.getLong(), records.getDouble());
+    }
+
+    private static ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of blocked stocks file");
+            }
+        }
+        return buffer.flip();
+    }
+}
@@ -0,0 +1,151 @@
+package stocks;
+
+import org.junit.jupiter.api.Test;
+import util.ContainerRuntimeException;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockedStocksTest {
+
+    @Test
+    void roundTripStocksFile() throws IOException {
+        Path target = Files.createTempFile("stocks", ".stk2");
+        try {
+            Stocks raw = new Stocks("stocks.bin");
+            long size = BlockedStocksEncoder.convert(raw, target);
+
+            Stocks blocked = new Stocks(target.toString());
+            assertEquals(StocksFormat.BLOCKED, blocked.getFormat());
+            assertEquals(40000, blocked.size());
+            assertEquals(40000, raw.size());
+            BlockedStocksReader reader = blocked.getBlocked();
+            int blocks = reader.getBlockCount();
+            assertEquals(size, BlockedStocksEncoder.HEADER_SIZE + (long) blocks * BlockedStocksEncoder.DEFAULT_BLOCK_SIZE
+                    + (long) blocks * BlockedStocksEncoder.BLOCK_ENTRY_SIZE + BlockedStocksEncoder.TRAILER_SIZE);
+
+            Iterator<StockEntry> expected = raw.iterator();
+            Iterator<StockEntry> actual = blocked.iterator();
+            while (expected.hasNext()) {
+                assertTrue(actual.hasNext());
+                assertEquals(expected.next(), actual.next());
+            }
+            assertFalse(actual.hasNext());
+
+            assertEquals(new StockEntry(8, "Volvo", 2, 98.99010000000001), blocked.get(8));
+            assertEquals(raw.get(39999), blocked.get(39999));
+            long firstOfSecondBlock = reader.getBlock(1).firstRow();
+            assertEquals(raw.get((int) firstOfSecondBlock), blocked.get((int) firstOfSecondBlock));
+            assertNull(blocked.get(40000));
+            assertEquals(raw.get(23456), blocked.getById(23456));
+            assertNull(blocked.getById(40000));
+        } finally {
+            Files.deleteIfExists(target);
+        }
+    }
+
+    @Test
+    void filterSkipsBlocksOutsideTheRange() throws IOException {
+        Path target = Files.createTempFile("stocks", ".stk2");
+        try {
+            Stocks raw = new Stocks("stocks.bin");
+            BlockedStocksEncoder.convert(raw, target);
+            Stocks blocked = new Stocks(target.toString());
+
+            StocksFilter filter = new StocksFilter().idBetween(1000, 1999).valueAbove(50);
+            Selection expected = filter.select(raw);
+            Selection actual = filter.select(blocked);
+            assertEquals(40000, actual.getRowCount());
+            assertArrayEquals(expected.toBitmap(), actual.toBitmap());
+            assertEquals(filter.collect(raw), filter.collect(blocked));
+            assertEquals(new StocksFilter().name("BMW").count(raw), new StocksFilter().name("BMW").count(blocked));
+        } finally {
+            Files.deleteIfExists(target);
+        }
+    }
+
+    @Test
+    void selectionSpansBlocksNotAlignedToWords() throws IOException {
+        Path target = Files.createTempFile("stocks", ".stk2");
+        try {
+            Stocks raw = new Stocks("stocks.bin");
+            BlockedStocksEncoder.convert(raw, target);
+            Stocks blocked = new Stocks(target.toString());
+            assertNotEquals(0, blocked.getBlocked().getBlock(1).firstRow() % Long.SIZE);
+
+            for (StocksFilter filter : new StocksFilter[]{new StocksFilter(), new StocksFilter().name("BMW")}) {
+                Selection expected = filter.select(raw);
+                Selection actual = filter.select(blocked);
+                assertArrayEquals(expected.positions(), actual.positions());
+                assertEquals(expected.count(), actual.count());
+            }
+            assertTrue(new StocksFilter().select(blocked).contains(39999));
+        } finally {
+            Files.deleteIfExists(target);
+        }
+    }
+
+    @Test
+    void irregularEntriesAndCorruption() throws IOException {
+        List<StockEntry> entries = new ArrayList<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            entries.add(new StockEntry(random.nextLong(), "N\u00e4me" + "x".repeat(random.nextInt(40)),
+                    random.nextLong(), i % 50 == 0 ? Double.NaN : random.nextGaussian()));
+        }
+        Path target = Files.createTempFile("stocks", ".stk2");
+        try {
+            try (BlockedStocksEncoder encoder = new BlockedStocksEncoder(Files.newOutputStream(target), 256)) {
+                for (StockEntry entry : entries) {
+                    encoder.write(entry);
+                }
+                assertThrows(IllegalArgumentException.class, () -> encoder.write(1, "y".repeat(300), 0, 0));
+            }
+            Stocks blocked = new Stocks(target.toString());
+            assertEquals(500, blocked.size());
+            Iterator<StockEntry> read = blocked.iterator();
+            for (StockEntry entry : entries) {
+                assertEntry(entry, read.next());
+            }
+            assertFalse(read.hasNext());
+            for (int i = 0; i < entries.size(); i += 37) {
+                assertEntry(entries.get(i), blocked.get(i));
+                assertEntry(entries.get(i), blocked.getById(entries.get(i).getId()));
+            }
+            // NaN values disable pruning, so the block is still evaluated
+            assertEquals(1, new StocksFilter().idBetween(entries.get(50).getId(), entries.get(50).getId()).count(blocked));
+
+            try (RandomAccessFile file = new RandomAccessFile(target.toFile(), "rw")) {
+                file.seek(BlockedStocksEncoder.HEADER_SIZE + 256 + 3);
+                file.write(file.read() ^ 1);
+            }
+            Stocks corrupted = new Stocks(target.toString());
+            assertEntry(entries.get(0), corrupted.get(0));
+            int second = (int) corrupted.getBlocked().getBlock(1).firstRow();
+            assertThrows(ContainerRuntimeException.class, () -> corrupted.get(second));
+
+            try (RandomAccessFile file = new RandomAccessFile(target.toFile(), "rw")) {
+                file.setLength(file.length() - 1);
+            }
+            assertThrows(UncheckedIOException.class, () -> new Stocks(target.toString()));
+        } finally {
+            Files.deleteIfExists(target);
+        }
+    }
+
+    private static void assertEntry(StockEntry expected, StockEntry actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getTimeStamp(), actual.getTimeStamp());
+        assertEquals(Double.doubleToRawLongBits(expected.getMarketValue()), Double.doubleToRawLongBits(actual.getMarketValue()));
+    }
+}
@@ -0,0 +1,254 @@
+package stocks;
+
+import io.BitInput;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming decoder for files written by {@link CompressedStocksEncoder}. Blocks are decoded
+ * one at a time into primitive arrays, so memory use is bounded by the block size.
+ * The underlying stream is closed once the last record has been returned.
+ */
+public class CompressedStocksDecoder implements Iterator<StockEntry>, AutoCloseable {
+
+    private final DataInputStream in;
+    private final SymbolTable symbols;
+
+    private long[] ids = new long[0];
+    private int[] nameIndexes = new int[0];
+    private long[] timestamps = new long[0];
+    private double[] values = new double[0];
+    private String[] dictionary = new String[0];
+    private byte[] payload = new byte[0];
+    private int payloadLength;
+    private int count;
+    private int next;
+    private boolean exhausted;
+
+    /**
+     * Creates a decoder reading from the given stream, which must be positioned at the start of a compressed file.
+     *
+     * @param in the stream to read from
+     * @throws IOException if the header cannot be read or does not denote a compressed stocks file
+     */
+    public CompressedStocksDecoder(InputStream in) throws IOException {
+        this(in, new SymbolTable());
+    }
+
+    /**
+     * Creates a decoder reading from the given stream that takes the names of all entries
+     * from the given symbol table.
+     *
+     * @param in the stream to read from
+     * @param symbols the symbol table to intern names in
+     * @throws IOException if the header cannot be read or does not denote a compressed stocks file
+     */
+    public CompressedStocksDecoder(InputStream in, SymbolTable symbols) throws IOException {
+        this.in = new DataInputStream(in);
+        this.symbols = symbols;
+        byte[] magic = new byte[4];
+        this.in.readFully(magic);
+        if (!Arrays.equals(magic, StocksFormat.COMPRESSED.getMagic())) {
+            throw new IOException("Not a compressed stocks file");
+        }
+        byte version = this.in.readByte();
+        if (version != CompressedStocksEncoder.VERSION) {
+            throw new IOException("Unsupported compressed stocks version " + version);
+        }
+    }
+
+    /**
+     * Checks if there is another StockEntry in the stream.
+     *
+     * @return true if there is another StockEntry, false otherwise
+     * @throws UncheckedIOException if the next block cannot be read
+     */
+    @Override
+    public boolean hasNext() {
+        if (next < count) {
+            return true;
+        }
+        try {
+            return readBlock(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading compressed stocks block", e);
+        }
+    }
+
+    /**
+     * Retrieves the next StockEntry from the stream.
+     *
+     * @return the next StockEntry
+     * @throws NoSuchElementException if there are no more entries
+     */
+    @Override
+    public StockEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int i = next++;
+        return new StockEntry(ids[i], dictionary[nameIndexes[i]], timestamps[i], values[i]);
+    }
+
+    /**
+     * Skips up to <code>n</code> entries. Whole blocks are skipped without being decoded.
+     *
+     * @param n the number of entries to skip
+     * @return the number of entries actually skipped
+     * @throws UncheckedIOException if the stream cannot be read
+     */
+    public long skip(long n) {
+        long skipped = 0;
+        try {
+            while (skipped < n) {
+                if (next < count) {
+                    int step = (int) Math.min(n - skipped, count - next);
+                    next += step;
+                    skipped += step;
+                } else if (!readBlock(false)) {
+                    break;
+                } else if (count <= n - skipped) {
+                    skipped += count;
+                    next = count;
+                } else {
+                    decodePayload();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error skipping compressed stocks entries", e);
+        }
+        return skipped;
+    }
+
+    /**
+     * Closes the underlying stream.
+     *
+     * @throws IOException if closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        exhausted = true;
+        count = next = 0;
+        in.close();
+    }
+
+    /**
+     * Reads the next block header and payload.
+     *
+     * @param decode whether to decode the payload immediately
+     * @return false if the end of the stream was reached
+     */
+    private boolean readBlock(boolean decode) throws IOException {
+        if (exhausted) {
+            return false;
+        }
+        int blockCount;
+        try {
+            blockCount = in.readInt();
+        } catch (EOFException e) {
+            close();
+            return false;
+        }
+        int length = in.readInt();
+        if (blockCount <= 0 || length < 0) {
+            throw new IOException("Corrupt compressed stocks block header");
+        }
+        if (payload.length < length) {
+            payload = new byte[length];
+        }
+        in.readFully(payload, 0, length);
+        payloadLength = length;
+        count = blockCount;
+        next = 0;
+        if (decode) {
+            decodePayload();
+        }
+        return true;
+    }
+
+    private void decodePayload() {
+        if (ids.length < count) {
+            ids = new long[count];
+            nameIndexes = new int[count];
+            timestamps = new long[count];
+            values = new double[count];
+        }
+        BitInput bits = new BitInput(payload, payloadLength);
+
+        int dictionarySize = (int) bits.readVarLong();
+        dictionary = new String[dictionarySize];
+        byte[] scratch = new byte[64];
+        for (int d = 0; d < dictionarySize; d++) {
+            int nameLength = (int) bits.readVarLong();
+            if (scratch.length < nameLength) {
+                scratch = new byte[nameLength];
+            }
+            bits.readBytes(scratch, nameLength);
+            dictionary[d] = symbols.canonical(scratch, 0, nameLength);
+        }
+        int nameBits = CompressedStocksEncoder.bitsFor(dictionarySize);
+
+        nameIndexes[0] = (int) bits.readBits(nameBits);
+        long id = bits.readZigZag();
+        long ts = bits.readBits(64);
+        long value = bits.readBits(64);
+        long delta = 0;
+        int leading = 0;
+        int trailing = 0;
+        ids[0] = id;
+        timestamps[0] = ts;
+        values[0] = Double.longBitsToDouble(value);
+
+        for (int i = 1; i < count; i++) {
+            nameIndexes[i] = (int) bits.readBits(nameBits);
+
+            id += bits.readZigZag();
+            ids[i] = id;
+
+            delta += readDeltaOfDelta(bits);
+            ts += delta;
+            timestamps[i] = ts;
+
+            if (bits.readBit()) {
+                if (bits.readBit()) {
+                    leading = (int) bits.readBits(5);
+                    int significant = (int) bits.readBits(6);
+                    if (significant == 0) {
+                        significant = 64;
+                    }
+                    trailing = 64 - leading - significant;
+                }
+                value ^= bits.readBits(64 - leading - trailing) << trailing;
+            }
+            values[i] = Double.longBitsToDouble(value);
+        }
+    }
+
+    private static long readDeltaOfDelta(BitInput bits) {
+        if (!bits.readBit()) {
+            return 0;
+        }
+        if (!bits.readBit()) {
+            return signExtend(bits.readBits(7), 7);
+        }
+        if (!bits.readBit()) {
+            return signExtend(bits.readBits(9), 9);
+        }
+        if (!bits.readBit()) {
+            return signExtend(bits.readBits(12), 12);
+        }
+        return bits.readBits(64);
+    }
+
+    private static long signExtend(long bits, int width) {
+        int shift = 64 - width;
+        return (bits << shift) >> shift;
+    }
+}
@@ -0,0 +1,264 @@
+package stocks;
+
+import io.BitOutput;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming encoder for the compressed stocks format.
+ * <p>
+ * A compressed file starts with the {@link StocksFormat#COMPRESSED} magic followed by a version byte.
+ * Records are then grouped into independently decodable blocks, each stored as
+ * <code>int recordCount, int payloadLength, payload</code>. The payload is a bit stream holding
+ * <ul>
+ *     <li>the block's name dictionary (varint count, then varint length and UTF-8 bytes per name),</li>
+ *     <li>per record the dictionary index of its name using the minimal number of bits,</li>
+ *     <li>the zig-zag varint delta of its id to the previous id,</li>
+ *     <li>the delta-of-delta of its timestamp in variable sized buckets and</li>
+ *     <li>the XOR of its value with the previous value (Gorilla encoding).</li>
+ * </ul>
+ * The first record of a block stores its id as a zig-zag varint and its timestamp and value at full width.
+ */
+public class CompressedStocksEncoder implements AutoCloseable {
+
+    /** Format version written after the magic */
+    static final byte VERSION = 1;
+    /** Default number of records per block */
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    private final DataOutputStream out;
+    private final int blockSize;
+
+    private final long[] ids;
+    private final String[] names;
+    private final long[] timestamps;
+    private final double[] values;
+    private int count;
+
+    private final BitOutput bits;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private boolean closed;
+
+    /**
+     * Creates an encoder with the default block size.
+     *
+     * @param out the stream to write the compressed data to
+     * @throws IOException if the header cannot be written
+     */
+    public CompressedStocksEncoder(OutputStream out) throws IOException {
+        this(out, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates an encoder writing blocks of at most <code>blockSize</code> records.
+     *
+     * @param out the stream to write the compressed data to
+     * @param blockSize the maximum number of records per block
+     * @throws IOException if the header cannot be written
+     */
+    public CompressedStocksEncoder(OutputStream out, int blockSize) throws IOException {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        this.out = new DataOutputStream(out);
+        this.blockSize = blockSize;
+        this.ids = new long[blockSize];
+        this.names = new String[blockSize];
+        this.timestamps = new long[blockSize];
+        this.values = new double[blockSize];
+        this.bits = new BitOutput(blockSize * 4);
+
+        this.out.write(StocksFormat.COMPRESSED.getMagic());
+        this.out.writeByte(VERSION);
+    }
+
+    /**
+     * Appends the given entry.
+     *
+     * @param entry the entry to append
+     * @throws IOException if a completed block cannot be written
+     */
+    public void write(StockEntry entry) throws IOException {
+        write(entry.getId(), entry.getName(), entry.getTimeStamp(), entry.getMarketValue());
+    }
+
+    /**
+     * Appends an entry given by its fields.
+     *
+     * @param id the id of the entry
+     * @param name the name of the stock
+     * @param timestamp the timestamp of the entry
+     * @param value the market value
+     * @throws IOException if a completed block cannot be written
+     */
+    public void write(long id, String name, long timestamp, double value) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Encoder is closed");
+        }
+        ids[count] = id;
+        names[count] = name;
+        timestamps[count] = timestamp;
+        values[count] = value;
+        if (++count == blockSize) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Writes all buffered records as a (possibly short) block and flushes the underlying stream.
+     *
+     * @throws IOException if writing fails
+     */
+    public void flush() throws IOException {
+        if (count > 0) {
+            writeBlock();
+        }
+        out.flush();
+    }
+
+    /**
+     * Flushes all buffered records and closes the underlying stream. Repeated calls have no effect.
+     *
+     * @throws IOException if writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            flush();
+            closed = true;
+            out.close();
+        }
+    }
+
+    /**
+     * Compresses all given entries into a new file.
+     *
+     * @param entries the entries to compress, e.g. a {@link Stocks} instance
+     * @param target the file to create or overwrite
+     * @return the size of the written file in bytes
+     * @throws IOException if writing fails
+     */
+    public static long compress(Iterable<StockEntry> entries, Path target) throws IOException {
+        try (CompressedStocksEncoder encoder = new CompressedStocksEncoder(
+                new BufferedOutputStream(Files.newOutputStream(target), 1 << 16))) {
+            for (StockEntry entry : entries) {
+                encoder.write(entry);
+            }
+        }
+        return Files.size(target);
+    }
+
+    private void writeBlock() throws IOException {
+        bits.reset();
+        dictionary.clear();
+
+        int[] nameIndexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            Integer index = dictionary.get(names[i]);
+            if (index == null) {
+                index = dictionary.size();
+                dictionary.put(names[i], index);
+            }
+            nameIndexes[i] = index;
+        }
+        String[] ordered = new String[dictionary.size()];
+        dictionary.forEach((name, index) -> ordered[index] = name);
+
+        bits.writeVarLong(ordered.length);
+        for (String name : ordered) {
+            byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+            bits.writeVarLong(utf8.length);
+            bits.writeBytes(utf8);
+        }
+        int nameBits = bitsFor(ordered.length);
+
+        long prevId = ids[0];
+        long prevTs = timestamps[0];
+        long prevDelta = 0;
+        long prevValue = Double.doubleToRawLongBits(values[0]);
+        int prevLeading = -1;
+        int prevTrailing = 0;
+
+        bits.writeBits(nameIndexes[0], nameBits);
+        bits.writeZigZag(prevId);
+        bits.writeBits(prevTs, 64);
+        bits.writeBits(prevValue, 64);
+
+        for (int i = 1; i < count; i++) {
+            bits.writeBits(nameIndexes[i], nameBits);
+
+            bits.writeZigZag(ids[i] - prevId);
+            prevId = ids[i];
+
+            long delta = timestamps[i] - prevTs;
+            writeDeltaOfDelta(delta - prevDelta);
+            prevDelta = delta;
+            prevTs = timestamps[i];
+
+            long value = Double.doubleToRawLongBits(values[i]);
+            long xor = value ^ prevValue;
+            prevValue = value;
+            if (xor == 0) {
+                bits.writeBit(false);
+                continue;
+            }
+            bits.writeBit(true);
+            int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+                bits.writeBit(false);
+                bits.writeBits(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+            } else {
+                int significant = 64 - leading - trailing;
+                bits.writeBit(true);
+                bits.writeBits(leading, 5);
+                bits.writeBits(significant & 0x3F, 6); // 64 is stored as 0
+                bits.writeBits(xor >>> trailing, significant);
+                prevLeading = leading;
+                prevTrailing = trailing;
+            }
+        }
+
+        out.writeInt(count);
+        out.writeInt(bits.byteLength());
+        out.write(bits.array(), 0, bits.byteLength());
+
+        Arrays.fill(names, 0, count, null);
+        count = 0;
+    }
+
+    private void writeDeltaOfDelta(long dod) {
+        if (dod == 0) {
+            bits.writeBits(0b0, 1);
+        } else if (dod >= -64 && dod <= 63) {
+            bits.writeBits(0b10, 2);
+            bits.writeBits(dod, 7);
+        } else if (dod >= -256 && dod <= 255) {
+            bits.writeBits(0b110, 3);
+            bits.writeBits(dod, 9);
+        } else if (dod >= -2048 && dod <= 2047) {
+            bits.writeBits(0b1110, 4);
+            bits.writeBits(dod, 12);
+        } else {
+            bits.writeBits(0b1111, 4);
+            bits.writeBits(dod, 64);
+        }
+    }
+
+    /**
+     * @param distinct the number of distinct values
+     * @return the number of bits needed to address <code>distinct</code> values
+     */
+    static int bitsFor(int distinct) {
+        return distinct <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(distinct - 1);
+    }
+}
@@ -0,0 +1,95 @@
+package stocks;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressedStocksTest {
+
+    @Test
+    void roundTripStocksFile() throws IOException {
+        Path target = Files.createTempFile("stocks", ".stkz");
+        try {
+            Stocks raw = new Stocks("stocks.bin");
+            long size = CompressedStocksEncoder.compress(raw, target);
+            assertTrue(size < Files.size(Path.of("stocks.bin")) / 2);
+
+            Stocks compressed = new Stocks(target.toString());
+            assertEquals(StocksFormat.COMPRESSED, compressed.getFormat());
+            Iterator<StockEntry> expected = raw.iterator();
+            Iterator<StockEntry> actual = compressed.iterator();
+            int count = 0;
+            while (expected.hasNext()) {
+                assertTrue(actual.hasNext());
+                assertEquals(expected.next(), actual.next());
+                count++;
+            }
+            assertFalse(actual.hasNext());
+            assertEquals(40000, count);
+
+            assertEquals(new StockEntry(8, "Volvo", 2, 98.99010000000001), compressed.get(8));
+            assertEquals(raw.get(39999), compressed.get(39999));
+            assertNull(compressed.get(40000));
+        } finally {
+            Files.deleteIfExists(target);
+        }
+    }
+
+    @Test
+    void roundTripIrregularValues() throws IOException {
+        List<StockEntry> entries = new ArrayList<>();
+        Random random = new Random(42);
+        double[] specials = {0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.MIN_VALUE, -1e300};
+        long ts = Long.MIN_VALUE / 2;
+        for (int i = 0; i < 1000; i++) {
+            ts += random.nextInt(3) == 0 ? random.nextLong() >> 20 : random.nextInt(100);
+            double value = i % 7 == 0 ? specials[i % specials.length] : random.nextGaussian() * 1000;
+            long id = random.nextBoolean() ? i : random.nextLong();
+            entries.add(new StockEntry(id, "Name" + random.nextInt(50) + "\u00e4", ts, value));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CompressedStocksEncoder encoder = new CompressedStocksEncoder(out, 100)) {
+            for (StockEntry entry : entries) {
+                encoder.write(entry);
+            }
+        }
+
+        CompressedStocksDecoder decoder = new CompressedStocksDecoder(new ByteArrayInputStream(out.toByteArray()));
+        for (StockEntry entry : entries) {
+            StockEntry decoded = decoder.next();
+            assertEquals(entry.getId(), decoded.getId());
+            assertEquals(entry.getName(), decoded.getName());
+            assertEquals(entry.getTimeStamp(), decoded.getTimeStamp());
+            assertEquals(Double.doubleToRawLongBits(entry.getMarketValue()), Double.doubleToRawLongBits(decoded.getMarketValue()));
+        }
+        assertFalse(decoder.hasNext());
+    }
+
+    @Test
+    void skipAcrossBlocks() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CompressedStocksEncoder encoder = new CompressedStocksEncoder(out, 10)) {
+            for (int i = 0; i < 95; i++) {
+                encoder.write(i, "A", i, i);
+            }
+        }
+        CompressedStocksDecoder decoder = new CompressedStocksDecoder(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(3, decoder.skip(3));
+        assertEquals(3, decoder.next().getId());
+        assertEquals(40, decoder.skip(40));
+        assertEquals(44, decoder.next().getId());
+        assertEquals(50, decoder.skip(100));
+        assertFalse(decoder.hasNext());
+    }
+}
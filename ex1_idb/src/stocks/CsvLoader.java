@@ -0,0 +1,443 @@
+package stocks;
+
+import container.Container;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads stock entries from CSV files with lines of the form <code>id,name,timestamp,value</code>.
+ * <p>
+ * The file is read in large chunks cut at line ends. Worker threads parse the chunks directly from their
+ * bytes into raw stocks records (see {@link StockEntry#getBytes()}): numbers are parsed without creating
+ * strings and names are copied as UTF-8 bytes. The calling thread writes the parsed chunks in file order,
+ * so the target receives the rows in the order of the file. Names may be enclosed in double quotes, with
+ * <code>""</code> standing for a quote. A first line not starting with a number is skipped as header.
+ * <pre>
+ * try (StocksWriter writer = new StocksWriter("stocks.bin")) {
+ *     CsvLoader.LoadReport report = new CsvLoader().load(Path.of("ticks.csv"), writer);
+ * }
+ * </pre>
+ */
+public class CsvLoader {
+
+    /**
+     * The outcome of a load.
+     *
+     * @param rows the number of rows loaded
+     * @param bytes the number of CSV bytes read
+     * @param elapsed the duration of the load
+     */
+    public record LoadReport(long rows, long bytes, Duration elapsed) {
+
+        /**
+         * @return the number of rows loaded per second
+         */
+        public double rowsPerSecond() {
+            return elapsed.isZero() ? 0 : rows * 1e9 / elapsed.toNanos();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d rows (%d bytes) in %d ms, %.0f rows/s", rows, bytes, elapsed.toMillis(), rowsPerSecond());
+        }
+    }
+
+    /**
+     * Receives the parsed records of one chunk.
+     */
+    private interface ChunkSink {
+        void accept(Chunk chunk) throws IOException;
+    }
+
+    /** Powers of ten exactly representable as doubles */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private byte separator = ',';
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int chunkSize = 4 << 20;
+
+    /**
+     * @param separator the field separator, an ASCII character
+     * @return this loader
+     */
+    public CsvLoader separator(char separator) {
+        if (separator >= 0x80 || separator == '"' || separator == '\n' || separator == '\r') {
+            throw new IllegalArgumentException("Invalid separator");
+        }
+        this.separator = (byte) separator;
+        return this;
+    }
+
+    /**
+     * @param threads the number of threads parsing chunks
+     * @return this loader
+     */
+    public CsvLoader parallelism(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = threads;
+        return this;
+    }
+
+    /**
+     * @param bytes the size of the chunks read and parsed at once; lines must be shorter
+     * @return this loader
+     */
+    public CsvLoader chunkSize(int bytes) {
+        if (bytes < 1024) {
+            throw new IllegalArgumentException("Chunk size must be at least 1024 bytes");
+        }
+        this.chunkSize = bytes;
+        return this;
+    }
+
+    /**
+     * Appends all rows of the CSV file to a stocks file.
+     *
+     * @param csv the CSV file
+     * @param target the writer to append to
+     * @return the load report
+     * @throws IOException if reading or writing fails
+     * @throws IllegalArgumentException if a line is malformed
+     */
+    public LoadReport load(Path csv, StocksWriter target) throws IOException {
+        return load(csv, chunk -> {
+            for (int offset = 0, i = 0; i < chunk.count; i++) {
+                int length = Configuration.RECORD_SIZE + ((chunk.records[offset + 8] & 0xFF) << 8 | (chunk.records[offset + 9] & 0xFF));
+                target.appendEncoded(chunk.records, offset, length);
+                offset += length;
+            }
+        });
+    }
+
+    /**
+     * Inserts all rows of the CSV file into a container, e.g. a {@link container.impl.SimpleFileContainer}
+     * with a {@link StockEntrySerializer}. Names are shared through a symbol table.
+     *
+     * @param csv the CSV file
+     * @param target the container to insert into
+     * @return the load report
+     * @throws IOException if reading fails
+     * @throws IllegalArgumentException if a line is malformed
+     */
+    public LoadReport load(Path csv, Container<Long, StockEntry> target) throws IOException {
+        SymbolTable symbols = new SymbolTable();
+        return load(csv, chunk -> {
+            ByteBuffer records = ByteBuffer.wrap(chunk.records, 0, chunk.size);
+            for (int i = 0; i < chunk.count; i++) {
+                target.insert(new StockEntry(records, symbols));
+            }
+        });
+    }
+
+    private LoadReport load(Path csv, ChunkSink sink) throws IOException {
+        long start = System.nanoTime();
+        long rows = 0;
+        long bytes = 0;
+        ExecutorService parsers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "csv-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ArrayDeque<Future<Chunk>> pending = new ArrayDeque<>();
+        try (InputStream in = Files.newInputStream(csv)) {
+            byte[] carry = new byte[0];
+            boolean first = true;
+            boolean eof = false;
+            while (!eof) {
+                // a chunk starts with the incomplete line left over from the previous one
+                byte[] data = Arrays.copyOf(carry, chunkSize);
+                int length = carry.length + in.readNBytes(data, carry.length, chunkSize - carry.length);
+                eof = length < chunkSize;
+                int end = eof ? length : lastLineEnd(data, length);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Line at byte " + bytes + " is longer than the chunk size");
+                }
+                carry = Arrays.copyOfRange(data, end, length);
+                long offset = bytes;
+                boolean header = first;
+                pending.add(parsers.submit(() -> parse(data, end, offset, header)));
+                bytes += end;
+                first = false;
+
+                while (pending.size() >= 2 * parallelism || (eof && !pending.isEmpty())) {
+                    Chunk chunk = pending.remove().get();
+                    sink.accept(chunk);
+                    rows += chunk.count;
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException("Parsing failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading", e);
+        } finally {
+            parsers.shutdownNow();
+        }
+        return new LoadReport(rows, bytes, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private static int lastLineEnd(byte[] data, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (data[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses all lines in <code>data[0, length)</code> into raw records.
+     */
+    private Chunk parse(byte[] data, int length, long fileOffset, boolean mayHaveHeader) {
+        Chunk chunk = new Chunk(length + length / 2);
+        int position = 0;
+        while (position < length) {
+            int lineEnd = position;
+            while (lineEnd < length && data[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            int contentEnd = lineEnd > position && data[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+            boolean header = mayHaveHeader && position == 0 && (contentEnd == 0 || !isNumberStart(data[0]));
+            if (contentEnd > position && !header) {
+                parseLine(data, position, contentEnd, chunk, fileOffset);
+            }
+            position = lineEnd + 1;
+        }
+        return chunk;
+    }
+
+    private void parseLine(byte[] data, int from, int to, Chunk chunk, long fileOffset) {
+        Cursor cursor = new Cursor(data, from, to, fileOffset);
+        long id = cursor.longField();
+        cursor.separator(separator);
+        int nameStart = chunk.size + Configuration.ID_SIZE + Configuration.NAME_LENGTH_SIZE;
+        chunk.ensure(Configuration.RECORD_SIZE + (to - from));
+        int nameLength = cursor.nameField(chunk.records, nameStart, separator);
+        cursor.separator(separator);
+        long ts = cursor.longField();
+        cursor.separator(separator);
+        double value = cursor.doubleField();
+        cursor.end();
+        if (nameLength == 0 || nameLength > Short.MAX_VALUE) {
+            throw cursor.malformed("invalid name length");
+        }
+
+        ByteBuffer record = ByteBuffer.wrap(chunk.records);
+        record.putLong(chunk.size, id);
+        record.putShort(chunk.size + Configuration.ID_SIZE, (short) nameLength);
+        record.putLong(nameStart + nameLength, ts);
+        record.putDouble(nameStart + nameLength + Configuration.TIMESTAMP_SIZE, value);
+        chunk.size = nameStart + nameLength + Configuration.TIMESTAMP_SIZE + Configuration.VALUE_SIZE;
+        chunk.count++;
+    }
+
+    private static boolean isNumberStart(byte b) {
+        return (b >= '0' && b <= '9') || b == '-' || b == '+';
+    }
+
+    /**
+     * The raw records parsed from one chunk of the CSV file.
+     */
+    private static final class Chunk {
+
+        private byte[] records;
+        private int size;
+        private int count;
+
+        private Chunk(int capacity) {
+            this.records = new byte[Math.max(capacity, 64)];
+        }
+
+        private void ensure(int bytes) {
+            if (size + bytes > records.length) {
+                records = Arrays.copyOf(records, Math.max(records.length * 2, size + bytes));
+            }
+        }
+    }
+
+    /**
+     * Reads the fields of a single line.
+     */
+    private static final class Cursor {
+
+        private final byte[] data;
+        private final int lineStart;
+        private final int end;
+        private final long fileOffset;
+        private int position;
+
+        private Cursor(byte[] data, int from, int to, long fileOffset) {
+            this.data = data;
+            this.lineStart = from;
+            this.position = from;
+            this.end = to;
+            this.fileOffset = fileOffset;
+        }
+
+        private void separator(byte separator) {
+            if (position >= end || data[position] != separator) {
+                throw malformed("expected separator");
+            }
+            position++;
+        }
+
+        private void end() {
+            if (position != end) {
+                throw malformed("unexpected characters at end of line");
+            }
+        }
+
+        private long longField() {
+            boolean negative = false;
+            if (position < end && (data[position] == '-' || data[position] == '+')) {
+                negative = data[position] == '-';
+                position++;
+            }
+            int digits = position;
+            long value = 0;
+            while (position < end && data[position] >= '0' && data[position] <= '9') {
+                int digit = data[position++] - '0';
+                // accumulate negatively, so Long.MIN_VALUE can be parsed
+                if (value < (Long.MIN_VALUE + digit) / 10) {
+                    throw malformed("number out of range");
+                }
+                value = value * 10 - digit;
+            }
+            if (position == digits) {
+                throw malformed("expected a number");
+            }
+            if (!negative) {
+                if (value == Long.MIN_VALUE) {
+                    throw malformed("number out of range");
+                }
+                value = -value;
+            }
+            return value;
+        }
+
+        /**
+         * Parses a decimal number exactly if its significand has at most 15 digits and its decimal exponent is
+         * at most 22 in magnitude: both are then exact doubles and a single multiplication or division is
+         * correctly rounded. Other numbers are parsed by {@link Double#parseDouble(String)}. The value is the
+         * last field, so it extends to the end of the line.
+         */
+        private double doubleField() {
+            int start = position;
+            boolean negative = false;
+            if (position < end && (data[position] == '-' || data[position] == '+')) {
+                negative = data[position] == '-';
+                position++;
+            }
+            long significand = 0;
+            int significantDigits = 0;
+            int exponent = 0;
+            int digits = 0;
+            while (position < end && data[position] >= '0' && data[position] <= '9') {
+                significand = accumulate(significand, significantDigits, data[position++]);
+                significantDigits += significand == 0 ? 0 : 1;
+                digits++;
+            }
+            if (position < end && data[position] == '.') {
+                position++;
+                while (position < end && data[position] >= '0' && data[position] <= '9') {
+                    significand = accumulate(significand, significantDigits, data[position++]);
+                    significantDigits += significand == 0 ? 0 : 1;
+                    exponent--;
+                    digits++;
+                }
+            }
+            if (position < end && (data[position] == 'e' || data[position] == 'E')) {
+                position++;
+                boolean negativeExponent = false;
+                if (position < end && (data[position] == '-' || data[position] == '+')) {
+                    negativeExponent = data[position] == '-';
+                    position++;
+                }
+                int e = 0;
+                int exponentDigits = position;
+                while (position < end && data[position] >= '0' && data[position] <= '9') {
+                    e = Math.min(e * 10 + data[position++] - '0', 100_000);
+                }
+                if (position == exponentDigits) {
+                    return slowDouble(start);
+                }
+                exponent += negativeExponent ? -e : e;
+            }
+            if (digits == 0 || position != end || significantDigits > 15 || exponent < -22 || exponent > 22) {
+                return slowDouble(start);
+            }
+            double value = exponent < 0 ? significand / POWERS_OF_TEN[-exponent] : significand * POWERS_OF_TEN[exponent];
+            return negative ? -value : value;
+        }
+
+        private static long accumulate(long significand, int significantDigits, byte digit) {
+            // beyond 15 significant digits the slow path is taken anyway, stop before overflowing
+            return significantDigits > 15 ? significand : significand * 10 + (digit - '0');
+        }
+
+        private double slowDouble(int start) {
+            try {
+                double value = Double.parseDouble(new String(data, start, end - start, StandardCharsets.ISO_8859_1));
+                position = end;
+                return value;
+            } catch (NumberFormatException e) {
+                throw malformed("invalid number");
+            }
+        }
+
+        /**
+         * Copies the name to <code>target[offset...]</code>, removing enclosing quotes.
+         *
+         * @return the length of the name in bytes
+         */
+        private int nameField(byte[] target, int offset, byte separator) {
+            int length = 0;
+            if (position < end && data[position] == '"') {
+                position++;
+                while (true) {
+                    if (position >= end) {
+                        throw malformed("unterminated quote");
+                    }
+                    byte b = data[position++];
+                    if (b == '"') {
+                        if (position < end && data[position] == '"') {
+                            position++;
+                        } else {
+                            break;
+                        }
+                    }
+                    target[offset + length++] = b;
+                }
+                return length;
+            }
+            while (position < end && data[position] != separator) {
+                target[offset + length++] = data[position++];
+            }
+            return length;
+        }
+
+        private IllegalArgumentException malformed(String reason) {
+            return new IllegalArgumentException("Malformed CSV line at byte " + (fileOffset + lineStart) + ": " + reason);
+        }
+    }
+}
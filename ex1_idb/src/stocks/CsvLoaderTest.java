@@ -0,0 +1,85 @@
+package stocks;
+
+import container.impl.SimpleFileContainer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvLoaderTest {
+
+    @Test
+    void loadIntoStocksFile() throws IOException {
+        Path csv = Files.createTempFile("ticks", ".csv");
+        Path bin = Files.createTempFile("stocks", ".bin");
+        try {
+            List<StockEntry> expected = new ArrayList<>();
+            new Stocks("stocks.bin").forEach(expected::add);
+            try (Writer out = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+                out.write("id,name,timestamp,value\r\n");
+                for (StockEntry e : expected) {
+                    out.write(e.getId() + "," + e.getName() + "," + e.getTimeStamp() + "," + e.getMarketValue() + "\n");
+                }
+            }
+            Files.delete(bin);
+            CsvLoader.LoadReport report;
+            try (StocksWriter writer = new StocksWriter(bin.toString())) {
+                report = new CsvLoader().chunkSize(64 * 1024).parallelism(3).load(csv, writer);
+            }
+            assertEquals(40000, report.rows());
+            assertEquals(Files.size(csv), report.bytes());
+            assertTrue(report.rowsPerSecond() > 0);
+            assertArrayEquals(Files.readAllBytes(Path.of("stocks.bin")), Files.readAllBytes(bin));
+        } finally {
+            Files.deleteIfExists(csv);
+            Files.deleteIfExists(bin);
+        }
+    }
+
+    @Test
+    void loadIntoContainer() throws IOException {
+        Path csv = Files.createTempFile("ticks", ".csv");
+        Path directory = Files.createTempDirectory("CsvLoaderTest");
+        Files.writeString(csv, "1;\"Volvo \"\"AB\"\"\";5;1.5\n"
+                + "-2;G\u00e4vle;-7;-3.25e2\n"
+                + "3;BMW;9;0.1000000000000000055511151231257827\n"
+                + "4;Ford;10;1e300", StandardCharsets.UTF_8);
+        SimpleFileContainer<StockEntry> container = new SimpleFileContainer<>(directory, "csv", StockEntrySerializer.create());
+        container.open();
+        try {
+            CsvLoader.LoadReport report = new CsvLoader().separator(';').load(csv, container);
+            assertEquals(4, report.rows());
+            assertEquals(new StockEntry(1, "Volvo \"AB\"", 5, 1.5), container.get(0L));
+            assertEquals(new StockEntry(-2, "G\u00e4vle", -7, -325.0), container.get(1L));
+            assertEquals(new StockEntry(3, "BMW", 9, 0.1), container.get(2L));
+            assertEquals(new StockEntry(4, "Ford", 10, 1e300), container.get(3L));
+        } finally {
+            container.close();
+            Files.deleteIfExists(csv);
+            directory.toFile().deleteOnExit();
+        }
+    }
+
+    @Test
+    void rejectsMalformedLines() throws IOException {
+        Path csv = Files.createTempFile("ticks", ".csv");
+        Path bin = Files.createTempFile("stocks", ".bin");
+        try {
+            Files.writeString(csv, "1,BMW,2,3.0\n2,BMW,x,3.0\n");
+            try (StocksWriter writer = new StocksWriter(bin.toString())) {
+                IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new CsvLoader().load(csv, writer));
+                assertTrue(e.getMessage().contains("byte 12"), e.getMessage());
+            }
+        } finally {
+            Files.deleteIfExists(csv);
+            Files.deleteIfExists(bin);
+        }
+    }
+}
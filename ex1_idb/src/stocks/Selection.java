@@ -0,0 +1,64 @@
+package stocks;
+
+import java.util.Arrays;
+
+/**
+ * The rows of a stocks file selected by a {@link StocksFilter}, as a bitmap over the record numbers: bit
+ * <code>i % 64</code> of word <code>i / 64</code> is set if record <code>i</code> (see {@link Stocks#get(int)})
+ * matches.
+ */
+public class Selection {
+
+    private final long[] bitmap;
+    private final long rows;
+    private final long count;
+
+    Selection(long[] bitmap, long rows, long count) {
+        this.bitmap = bitmap;
+        this.rows = rows;
+        this.count = count;
+    }
+
+    /**
+     * @return the number of records scanned
+     */
+    public long getRowCount() {
+        return rows;
+    }
+
+    /**
+     * @return the number of selected records
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @param row a record number
+     * @return true if the record is selected
+     */
+    public boolean contains(long row) {
+        return row >= 0 && row < rows && (bitmap[(int) (row >>> 6)] & (1L << row)) != 0;
+    }
+
+    /**
+     * @return a copy of the selection bitmap, with one word per 64 records
+     */
+    public long[] toBitmap() {
+        return Arrays.copyOf(bitmap, (int) ((rows + 63) >>> 6));
+    }
+
+    /**
+     * @return the numbers of the selected records in ascending order
+     */
+    public long[] positions() {
+        long[] positions = new long[(int) count];
+        int next = 0;
+        for (int w = 0; w < (int) ((rows + 63) >>> 6); w++) {
+            for (long bits = bitmap[w]; bits != 0; bits &= bits - 1) {
+                positions[next++] = ((long) w << 6) + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,213 @@
+package stocks;
+
+import java.util.List;
+
+/**
+ * The built-in aggregates. An empty group yields NaN for all aggregates except {@link #COUNT} and {@link #SUM}.
+ */
+public enum StandardAggregates implements AggregateFunction {
+
+    /** The minimum value */
+    MIN("min") {
+        @Override
+        public void add(double[] state, int offset, long count, double value) {
+            state[offset] = Math.min(state[offset], value);
+        }
+
+        @Override
+        public void merge(double[] state, int offset, long count, double[] other, int otherOffset, long otherCount) {
+            state[offset] = Math.min(state[offset], other[otherOffset]);
+        }
+
+        @Override
+        public void reset(double[] state, int offset) {
+            state[offset] = Double.POSITIVE_INFINITY;
+        }
+
+        @Override
+        public void finish(double[] state, int offset, long count, double[] result, int resultOffset) {
+            result[resultOffset] = count == 0 ? Double.NaN : state[offset];
+        }
+    },
+
+    /** The maximum value */
+    MAX("max") {
+        @Override
+        public void add(double[] state, int offset, long count, double value) {
+            state[offset] = Math.max(state[offset], value);
+        }
+
+        @Override
+        public void merge(double[] state, int offset, long count, double[] other, int otherOffset, long otherCount) {
+            state[offset] = Math.max(state[offset], other[otherOffset]);
+        }
+
+        @Override
+        public void reset(double[] state, int offset) {
+            state[offset] = Double.NEGATIVE_INFINITY;
+        }
+
+        @Override
+        public void finish(double[] state, int offset, long count, double[] result, int resultOffset) {
+            result[resultOffset] = count == 0 ? Double.NaN : state[offset];
+        }
+    },
+
+    /** The sum of all values */
+    SUM("sum") {
+        @Override
+        public void add(double[] state, int offset, long count, double value) {
+            state[offset] += value;
+        }
+
+        @Override
+        public void merge(double[] state, int offset, long count, double[] other, int otherOffset, long otherCount) {
+            state[offset] += other[otherOffset];
+        }
+    },
+
+    /** The number of values */
+    COUNT("count") {
+        @Override
+        public int stateSize() {
+            return 0;
+        }
+
+        @Override
+        public void add(double[] state, int offset, long count, double value) {
+        }
+
+        @Override
+        public void merge(double[] state, int offset, long count, double[] other, int otherOffset, long otherCount) {
+        }
+
+        @Override
+        public void reset(double[] state, int offset) {
+        }
+
+        @Override
+        public void finish(double[] state, int offset, long count, double[] result, int resultOffset) {
+            result[resultOffset] = count;
+        }
+    },
+
+    /** The arithmetic mean */
+    AVG("avg") {
+        @Override
+        public void add(double[] state, int offset, long count, double value) {
+            state[offset] += value;
+        }
+
+        @Override
+        public void merge(double[] state, int offset, long count, double[] other, int otherOffset, long otherCount) {
+            state[offset] += other[otherOffset];
+        }
+
+        @Override
+        public void finish(double[] state, int offset, long count, double[] result, int resultOffset) {
+            result[resultOffset] = count == 0 ? Double.NaN : state[offset] / count;
+        }
+    },
+
+    /** The first value in file order */
+    FIRST("first") {
+        @Override
+        public void add(double[] state, int offset, long count, double value) {
+            if (count == 0) {
+                state[offset] = value;
+            }
+        }
+
+        @Override
+        public void merge(double[] state, int offset, long count, double[] other, int otherOffset, long otherCount) {
+            if (count == 0) {
+                state[offset] = other[otherOffset];
+            }
+        }
+
+        @Override
+        public void finish(double[] state, int offset, long count, double[] result, int resultOffset) {
+            result[resultOffset] = count == 0 ? Double.NaN : state[offset];
+        }
+    },
+
+    /** The last value in file order */
+    LAST("last") {
+        @Override
+        public void add(double[] state, int offset, long count, double value) {
+            state[offset] = value;
+        }
+
+        @Override
+        public void merge(double[] state, int offset, long count, double[] other, int otherOffset, long otherCount) {
+            if (otherCount > 0) {
+                state[offset] = other[otherOffset];
+            }
+        }
+
+        @Override
+        public void finish(double[] state, int offset, long count, double[] result, int resultOffset) {
+            result[resultOffset] = count == 0 ? Double.NaN : state[offset];
+        }
+    },
+
+    /** Open, high, low and close, i.e. first, maximum, minimum and last value in file order */
+    OHLC("open", "high", "low", "close") {
+        @Override
+        public void add(double[] state, int offset, long count, double value) {
+            FIRST.add(state, offset, count, value);
+            MAX.add(state, offset + 1, count, value);
+            MIN.add(state, offset + 2, count, value);
+            LAST.add(state, offset + 3, count, value);
+        }
+
+        @Override
+        public void merge(double[] state, int offset, long count, double[] other, int otherOffset, long otherCount) {
+            FIRST.merge(state, offset, count, other, otherOffset, otherCount);
+            MAX.merge(state, offset + 1, count, other, otherOffset + 1, otherCount);
+            MIN.merge(state, offset + 2, count, other, otherOffset + 2, otherCount);
+            LAST.merge(state, offset + 3, count, other, otherOffset + 3, otherCount);
+        }
+
+        @Override
+        public void reset(double[] state, int offset) {
+            FIRST.reset(state, offset);
+            MAX.reset(state, offset + 1);
+            MIN.reset(state, offset + 2);
+            LAST.reset(state, offset + 3);
+        }
+
+        @Override
+        public void finish(double[] state, int offset, long count, double[] result, int resultOffset) {
+            for (int i = 0; i < 4; i++) {
+                result[resultOffset + i] = count == 0 ? Double.NaN : state[offset + i];
+            }
+        }
+    };
+
+    private final List<String> columns;
+
+    StandardAggregates(String... columns) {
+        this.columns = List.of(columns);
+    }
+
+    @Override
+    public List<String> columns() {
+        return columns;
+    }
+
+    @Override
+    public int stateSize() {
+        return columns.size();
+    }
+
+    @Override
+    public void reset(double[] state, int offset) {
+        state[offset] = 0;
+    }
+
+    @Override
+    public void finish(double[] state, int offset, long count, double[] result, int resultOffset) {
+        result[resultOffset] = state[offset];
+    }
+}
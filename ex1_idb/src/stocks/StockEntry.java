@@ -11,6 +11,8 @@ public class StockEntry {
     private final String name;
     private final long ts;
     private final double value;
+    /** Cached result of {@link #getSerializedLength()}, 0 until first computed */
+    private int serializedLength;
 
     /**
      * Constructs a StockEntry with the specified parameters.
@@ -47,6 +49,21 @@ public class StockEntry {
         this.value = bb.getDouble();
     }
 
+    /**
+     * Constructs a StockEntry from the ByteBuffer, taking the name from the given symbol table
+     * instead of decoding a new String for every entry.
+     *
+     * @param bb the ByteBuffer containing the stock entry data
+     * @param symbols the symbol table to intern the name in
+     */
+    public StockEntry(ByteBuffer bb, SymbolTable symbols) {
+        this.id = bb.getLong();
+        short nameLength = bb.getShort();
+        this.name = symbols.name(symbols.intern(bb, nameLength));
+        this.ts = bb.getLong();
+        this.value = bb.getDouble();
+    }
+
     public long getId() {
         return this.id;
     }
@@ -63,8 +80,38 @@ public class StockEntry {
         return this.value;
     }
 
+    /**
+     * Returns the size of the entry in the raw encoding of {@link #getBytes()}. The UTF-8 length of the name
+     * is counted without encoding it and cached.
+     *
+     * @return the serialized length in bytes
+     */
     public int getSerializedLength() {
-        return 3 * 8 + 2 + name.getBytes().length;
+        int length = serializedLength;
+        if (length == 0) {
+            length = Configuration.RECORD_SIZE + utf8Length(name);
+            serializedLength = length;
+        }
+        return length;
+    }
+
+    private static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                // lone surrogates are encoded as '?'
+                length += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        return length;
     }
 
     @Override
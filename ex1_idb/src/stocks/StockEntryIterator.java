@@ -1,5 +1,7 @@
 package stocks;
 
+import util.PageChecksums;
+
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
@@ -12,6 +14,10 @@ public class StockEntryIterator implements Iterator<StockEntry> {
 
     private long pos;
     private final RandomAccessFile file;
+    private final SymbolTable symbols;
+    private final PageChecksums checksums;
+    private final long limit;
+    private byte[] nameBytes = new byte[64];
 
     /**
      * Constructs a StockEntryIterator for the given RandomAccessFile.
@@ -19,8 +25,47 @@ public class StockEntryIterator implements Iterator<StockEntry> {
      * @param file the RandomAccessFile containing StockEntry objects
      */
     public StockEntryIterator(RandomAccessFile file) {
+        this(file, new SymbolTable());
+    }
+
+    /**
+     * Constructs a StockEntryIterator for the given RandomAccessFile that takes
+     * the names of all entries from the given symbol table.
+     *
+     * @param file the RandomAccessFile containing StockEntry objects
+     * @param symbols the symbol table to intern names in
+     */
+    public StockEntryIterator(RandomAccessFile file, SymbolTable symbols) {
+        this(file, symbols, null);
+    }
+
+    /**
+     * Constructs a StockEntryIterator that verifies every block against the given checksums
+     * before reading from it.
+     *
+     * @param file the RandomAccessFile containing StockEntry objects
+     * @param symbols the symbol table to intern names in
+     * @param checksums the block checksums of the file, or null to skip verification
+     */
+    StockEntryIterator(RandomAccessFile file, SymbolTable symbols, PageChecksums checksums) {
+        this(file, symbols, checksums, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a StockEntryIterator that stops at the given file offset, ignoring records appended
+     * beyond it.
+     *
+     * @param file the RandomAccessFile containing StockEntry objects
+     * @param symbols the symbol table to intern names in
+     * @param checksums the block checksums of the file, or null to skip verification
+     * @param limit the end of the records to iterate
+     */
+    StockEntryIterator(RandomAccessFile file, SymbolTable symbols, PageChecksums checksums, long limit) {
         // TODO
         this.file = file;
+        this.symbols = symbols;
+        this.checksums = checksums;
+        this.limit = limit;
         this.pos = 0;
     }
 
@@ -32,7 +77,7 @@ public class StockEntryIterator implements Iterator<StockEntry> {
     public boolean hasNext() {
         // TODO
         try {
-            return pos < file.length(); // checks if the current position is less than the length of the file
+            return pos < Math.min(file.length(), limit); // checks if the current position is less than the length of the file
         } catch (IOException e) {
             System.err.println("Error checking if there is a next element: " + e.getMessage());
         }
@@ -48,13 +93,17 @@ public class StockEntryIterator implements Iterator<StockEntry> {
         // TODO
         try {
             file.seek(pos);
+            verify(pos, Configuration.ID_SIZE + Configuration.NAME_LENGTH_SIZE);
 
             // read id, name length, name, timestamp, and value
             long id = file.readLong();
             short nameLength = file.readShort();
-            byte[] nameBytes = new byte[nameLength];
-            file.read(nameBytes);
-            String name = new String(nameBytes);
+            verify(pos, Configuration.RECORD_SIZE + nameLength);
+            if (nameBytes.length < nameLength) {
+                nameBytes = new byte[nameLength];
+            }
+            file.readFully(nameBytes, 0, nameLength);
+            String name = symbols.canonical(nameBytes, 0, nameLength);
             long ts = file.readLong();
             double value = file.readDouble();
 
@@ -66,4 +115,10 @@ public class StockEntryIterator implements Iterator<StockEntry> {
         }
         return null;
     }
+
+    private void verify(long from, int length) throws IOException {
+        if (checksums != null) {
+            checksums.verify(file.getChannel(), from, from + length);
+        }
+    }
 }
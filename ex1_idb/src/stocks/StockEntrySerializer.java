@@ -0,0 +1,51 @@
+package stocks;
+
+import io.RecordSerializer;
+
+/**
+ * Fixed-size serializer for {@link StockEntry} objects, which allows stock entries to be stored in
+ * file containers such as {@link container.impl.SimpleFileContainer}. Names are stored in a fixed-width
+ * field and truncated if they do not fit.
+ */
+public class StockEntrySerializer {
+
+    /** Default number of UTF-8 bytes reserved for the name */
+    public static final int DEFAULT_NAME_BYTES = 16;
+
+    /** Field names, usable with {@link RecordSerializer#field(String)} for in-place access */
+    public static final String ID = "id";
+    public static final String NAME = "name";
+    public static final String TIMESTAMP = "ts";
+    public static final String VALUE = "value";
+
+    private StockEntrySerializer() {
+    }
+
+    /**
+     * @return a serializer reserving {@link #DEFAULT_NAME_BYTES} bytes for the name
+     */
+    public static RecordSerializer<StockEntry> create() {
+        return create(DEFAULT_NAME_BYTES);
+    }
+
+    /**
+     * Creates a serializer laying out id, timestamp and value followed by the name.
+     *
+     * @param nameBytes the maximum number of UTF-8 bytes stored for the name, at least 4 so that every
+     *                  truncated name keeps its first character
+     * @return the serializer
+     * @throws IllegalArgumentException if the name width is below 4 bytes
+     */
+    public static RecordSerializer<StockEntry> create(int nameBytes) {
+        if (nameBytes < 4) {
+            // a single UTF-8 character takes up to 4 bytes, and names must not be empty
+            throw new IllegalArgumentException("Name width must be at least 4 bytes");
+        }
+        return RecordSerializer.<StockEntry>builder()
+                .longField(ID, StockEntry::getId)
+                .longField(TIMESTAMP, StockEntry::getTimeStamp)
+                .doubleField(VALUE, StockEntry::getMarketValue)
+                .stringField(NAME, nameBytes, StockEntry::getName)
+                .build(r -> new StockEntry(r.getLong(0), r.getString(3), r.getLong(1), r.getDouble(2)));
+    }
+}
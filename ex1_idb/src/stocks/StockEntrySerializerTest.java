@@ -0,0 +1,86 @@
+package stocks;
+
+import container.impl.SimpleFileContainer;
+import io.RecordSerializer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StockEntrySerializerTest {
+
+    @Test
+    void roundTripAndInPlaceAccess() {
+        RecordSerializer<StockEntry> serializer = StockEntrySerializer.create();
+        assertEquals(8 + 8 + 8 + 2 + 16, serializer.getSerializedSize());
+
+        StockEntry entry = new StockEntry(7, "Volvo", 123, 98.5);
+        ByteBuffer buffer = ByteBuffer.allocate(3 + 2 * serializer.getSerializedSize());
+        buffer.position(3);
+        serializer.serialize(new StockEntry(1, "BMW", 2, 3.0), buffer);
+        serializer.serialize(entry, buffer);
+        assertFalse(buffer.hasRemaining());
+
+        int second = 3 + serializer.getSerializedSize();
+        assertEquals(7, serializer.field(StockEntrySerializer.ID).getLong(buffer, second));
+        assertEquals(123, serializer.field(StockEntrySerializer.TIMESTAMP).getLong(buffer, second));
+        assertEquals(98.5, serializer.field(StockEntrySerializer.VALUE).getDouble(buffer, second));
+        assertEquals("Volvo", serializer.field(StockEntrySerializer.NAME).getString(buffer, second));
+        assertThrows(UnsupportedOperationException.class,
+                () -> serializer.field(StockEntrySerializer.NAME).getLong(buffer, second));
+
+        buffer.position(second);
+        assertEquals(entry, serializer.deserialize(buffer));
+    }
+
+    @Test
+    void longNamesAreTruncatedAtCharacterBoundary() {
+        RecordSerializer<StockEntry> serializer = StockEntrySerializer.create(4);
+        ByteBuffer buffer = ByteBuffer.allocate(serializer.getSerializedSize());
+        serializer.serialize(new StockEntry(1, "ab\u00e4\u00e4", 2, 3.0), buffer);
+        buffer.flip();
+        assertEquals("ab\u00e4", serializer.deserialize(buffer).getName());
+
+        RecordSerializer<StockEntry> emoji = StockEntrySerializer.create(4);
+        buffer.clear();
+        emoji.serialize(new StockEntry(1, "\ud83d\udcc8\ud83d\udcc8", 2, 3.0), buffer);
+        buffer.flip();
+        assertEquals("\ud83d\udcc8", emoji.deserialize(buffer).getName());
+        assertThrows(IllegalArgumentException.class, () -> StockEntrySerializer.create(3));
+    }
+
+    @Test
+    void firstCharacterMustFit() {
+        RecordSerializer<StockEntry> serializer = RecordSerializer.<StockEntry>builder()
+                .longField(StockEntrySerializer.ID, StockEntry::getId)
+                .stringField(StockEntrySerializer.NAME, 1, StockEntry::getName)
+                .build(r -> new StockEntry(r.getLong(0), r.getString(1), 0, 0));
+        ByteBuffer buffer = ByteBuffer.allocate(serializer.getSerializedSize());
+        serializer.serialize(new StockEntry(1, "Volvo", 2, 3.0), buffer);
+        buffer.clear();
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> serializer.serialize(new StockEntry(1, "\u00c4bc", 2, 3.0), buffer));
+        assertTrue(e.getMessage().contains("\"name\""));
+    }
+
+    @Test
+    void storeInFileContainer() throws Exception {
+        Path directory = Files.createTempDirectory("StockEntrySerializerTest");
+        SimpleFileContainer<StockEntry> container =
+                new SimpleFileContainer<>(directory, "stocks", StockEntrySerializer.create());
+        container.open();
+        try {
+            Stocks stocks = new Stocks("stocks.bin");
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i, container.insert(stocks.get(i)));
+            }
+            assertEquals(stocks.get(42), container.get(42L));
+        } finally {
+            container.close();
+            directory.toFile().deleteOnExit();
+        }
+    }
+}
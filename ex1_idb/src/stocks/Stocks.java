@@ -1,11 +1,17 @@
 package stocks;
 
+import util.ChecksumMode;
+import util.PageChecksums;
+
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
 
 /**
@@ -13,66 +19,420 @@ import java.util.*;
  */
 public class Stocks implements Iterable<StockEntry> {
 
+    private final String path;
     private final RandomAccessFile file;
+    private final StocksFormat format;
+    private final SymbolTable symbols = new SymbolTable();
+    private final ChecksumMode checksumMode;
+    private final PageChecksums checksums;
+    private final List<Integer> corruptBlocks = Collections.synchronizedList(new ArrayList<>());
+    /** End of the records visible to this reader, see {@link StocksWriter#openReader()} */
+    private final long limit;
+    /** The id index shared by a writer, null if the index is opened for every lookup by id */
+    private StocksIdIndex idIndex;
+    /** The Bloom filters, opened on the first lookup unless shared by a writer */
+    private StocksBloomFilter bloomFilter;
+    private boolean bloomFilterChecked;
+    /** The footer of a blocked file, null for other formats */
+    private final BlockedStocksReader blocked;
+
+    /** Size of the blocks covered by one checksum */
+    public static final int CHECKSUM_BLOCK_SIZE = 1 << 16;
 
     /**
-     * Constructs a Stocks object with the specified file path.
+     * Constructs a Stocks object with the specified file path. The file format
+     * ({@link StocksFormat}) is detected from the first bytes of the file.
      *
      * @param path is a path to the binary file
      * @throws FileNotFoundException if the file is not found or cannot be opened
      */
     Stocks(String path) throws FileNotFoundException {
+        this(path, ChecksumMode.OFF);
+    }
+
+    /**
+     * Constructs a Stocks object with the specified file path that checks the file against per-block
+     * CRC32C checksums stored in <code>path + ".crc"</code>. If that file does not exist yet, it is
+     * created from the current file content.
+     * <ul>
+     *     <li>{@link ChecksumMode#OFF} reads without checking.</li>
+     *     <li>{@link ChecksumMode#VERIFY_ON_READ} verifies every block the first time it is read; compressed
+     *     and blocked files are read in their own blocks and therefore verified completely on construction.</li>
+     *     <li>{@link ChecksumMode#BACKGROUND_SCRUB} verifies the whole file once in a background thread,
+     *     see {@link #getCorruptBlocks()}.</li>
+     * </ul>
+     *
+     * @param path is a path to the binary file
+     * @param checksumMode how the file is checked
+     * @throws FileNotFoundException if the file is not found or cannot be opened
+     * @throws util.ContainerRuntimeException if a compressed file fails verification
+     */
+    Stocks(String path, ChecksumMode checksumMode) throws FileNotFoundException {
+        this(path, checksumMode, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a Stocks object that only reads the raw records in the first <code>limit</code> bytes of the
+     * file, e.g. those committed by a concurrent {@link StocksWriter}.
+     *
+     * @param path is a path to the binary file
+     * @param limit the end of the visible records
+     * @throws FileNotFoundException if the file is not found or cannot be opened
+     */
+    Stocks(String path, long limit) throws FileNotFoundException {
+        this(path, ChecksumMode.OFF, limit);
+    }
+
+    /**
+     * Constructs a Stocks object reading the first <code>limit</code> bytes of the file that looks up ids
+     * and names in the given sidecars, which are maintained by a concurrent {@link StocksWriter}.
+     *
+     * @param path is a path to the binary file
+     * @param limit the end of the visible records
+     * @param idIndex the id index of the file, or null to open it on demand
+     * @param bloomFilter the Bloom filters of the file, or null to open them on demand
+     * @throws FileNotFoundException if the file is not found or cannot be opened
+     */
+    Stocks(String path, long limit, StocksIdIndex idIndex, StocksBloomFilter bloomFilter) throws FileNotFoundException {
+        this(path, ChecksumMode.OFF, limit);
+        this.idIndex = idIndex;
+        this.bloomFilter = bloomFilter;
+        this.bloomFilterChecked = bloomFilter != null;
+    }
+
+    private Stocks(String path, ChecksumMode checksumMode, long limit) throws FileNotFoundException {
         // TODO
+        this.path = path;
+        this.limit = limit;
         this.file = new RandomAccessFile(new File(path), "rw");
+        this.checksumMode = checksumMode;
+        try {
+            this.format = StocksFormat.detect(file);
+            this.blocked = format == StocksFormat.BLOCKED ? BlockedStocksReader.open(file.getChannel()) : null;
+            this.checksums = checksumMode == ChecksumMode.OFF ? null
+                    : PageChecksums.open(Path.of(path + ".crc"), CHECKSUM_BLOCK_SIZE, file.getChannel());
+            if (checksumMode == ChecksumMode.VERIFY_ON_READ && format != StocksFormat.RAW) {
+                checksums.verify(file.getChannel(), 0, file.length());
+            } else if (checksumMode == ChecksumMode.BACKGROUND_SCRUB) {
+                Thread scrubber = new Thread(this::scrub, "scrubber-" + path);
+                scrubber.setDaemon(true);
+                scrubber.start();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error opening stocks file", e);
+        }
     }
 
     /**
-     * Returns a stock entry at the given index.
+     * @return the blocks found corrupt by the background scrubber so far
+     */
+    public List<Integer> getCorruptBlocks() {
+        synchronized (corruptBlocks) {
+            return new ArrayList<>(corruptBlocks);
+        }
+    }
+
+    private void scrub() {
+        try {
+            corruptBlocks.addAll(checksums.scrub(file.getChannel(), 0, Integer.MAX_VALUE));
+        } catch (IOException e) {
+            System.err.println("Error scrubbing stocks file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the symbol table holding the canonical names of all entries read so far
+     */
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * @return the path of the underlying file
+     */
+    String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the end of the records visible to this reader
+     */
+    long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the footer of a blocked file, null for other formats
+     */
+    BlockedStocksReader getBlocked() {
+        return blocked;
+    }
+
+    /**
+     * @return the format of the underlying file
+     */
+    public StocksFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Returns the number of entries. Blocked files store it in their footer; raw and compressed files are
+     * scanned.
+     *
+     * @return the number of entries
+     */
+    public long size() {
+        if (blocked != null) {
+            return blocked.getRecordCount();
+        }
+        long count = 0;
+        for (Iterator<StockEntry> entries = iterator(); entries.hasNext(); entries.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns a stock entry at the given index. Blocked files only read the block holding the entry; raw and
+     * compressed files are read from the start.
      *
      * @param i the index of the stock entry
      * @return the stock entry at the specified index, or null if the entry is not found
      */
     public StockEntry get(int i) {
         // TODO
+        if (blocked != null) {
+            try {
+                return blocked.get(i, symbols);
+            } catch (IOException e) {
+                System.err.println("Error getting stock entry");
+                return null;
+            }
+        }
+        if (format == StocksFormat.COMPRESSED) {
+            try (CompressedStocksDecoder decoder = openDecoder()) {
+                return decoder.skip(i) == i && decoder.hasNext() ? decoder.next() : null;
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Error getting stock entry");
+                return null;
+            }
+        }
         try {
-            file.seek(0);
+            // skipped records only need their name length, so a single buffer serves the whole walk
+            ByteBuffer bb = ByteBuffer.allocate(Configuration.RECORD_SIZE);
+            long position = 0;
+            long end = Math.min(limit, file.length());
 
-            int ind = 0;
+            for (int ind = 0; ind <= i; ind++) {
+                if (position >= end) {
+                    return null;
+                }
+                verifyRecord(position);
+                file.seek(position);
+                file.readFully(bb.array(), 0, Configuration.ID_SIZE + Configuration.NAME_LENGTH_SIZE); // read id and name length
+                short nameLength = bb.getShort(Configuration.ID_SIZE);
+                if (ind < i) {
+                    position += Configuration.RECORD_SIZE + nameLength;
+                    continue;
+                }
 
-            while (ind <= i) {
-                ByteBuffer bb = ByteBuffer.allocate(Configuration.RECORD_SIZE);
-                file.read(bb.array(), 0, Configuration.ID_SIZE + Configuration.NAME_LENGTH_SIZE); // read number of bytes for id and name length
-                bb.position(0); // reset position
+                long id = bb.getLong(0); // read id
+                byte[] nameBytes = new byte[nameLength];
+                file.readFully(nameBytes); // read name
+                String name = symbols.canonical(nameBytes, 0, nameLength);
 
-                long id = bb.getLong(); // read id
-                short nameLength = bb.getShort(); // read name length
+                file.readFully(bb.array(), 0, Configuration.TIMESTAMP_SIZE + Configuration.VALUE_SIZE); // read timestamp and value
+                long ts = bb.getLong(0);
+                double value = bb.getDouble(Configuration.TIMESTAMP_SIZE);
+                return new StockEntry(id, name, ts, value); // if needed stock found return it
+            }
+        } catch (IOException e) {
+            System.err.println("Error getting stock entry");
+        }
 
-                byte[] nameBytes = new byte[nameLength];
-                file.read(nameBytes); // read name
-                String name = new String(nameBytes, StandardCharsets.UTF_8);
+        return null;
+    }
 
-                bb = ByteBuffer.allocate(Configuration.TIMESTAMP_SIZE + Configuration.VALUE_SIZE); // allocate buffer for ts and value
-                file.read(bb.array(), 0, Configuration.TIMESTAMP_SIZE + Configuration.VALUE_SIZE); // read number of bytes for timestamp and value
-                bb.position(0); // reset position
+    /**
+     * Checks whether a record may have the given id using the Bloom filters stored in
+     * <code>path + ".bloom"</code>, which are created or completed on the first call. Only raw files have
+     * filters; for other formats the answer is always true.
+     *
+     * @param id the id
+     * @return false if no record has the id, true if one probably has
+     */
+    public boolean mightContainId(long id) {
+        StocksBloomFilter filter = bloomFilter(true);
+        return filter == null || filter.mightContainId(id);
+    }
 
-                long ts = bb.getLong(); // read timestamp
-                double value = bb.getDouble(); // read value
+    /**
+     * Checks whether a record may have the given name, see {@link #mightContainId(long)}.
+     *
+     * @param name the name of a stock
+     * @return false if no record has the name, true if one probably has
+     */
+    public boolean mightContainName(String name) {
+        StocksBloomFilter filter = bloomFilter(true);
+        return filter == null || filter.mightContainName(name);
+    }
 
-                if (ind == i) {
-                    return new StockEntry(id, name, ts, value); // if needed stock found return it
+    /**
+     * Returns the last stock entry with the given id. Raw files are looked up in the id index stored in
+     * <code>path + ".idx"</code>, which is created or completed as necessary; while a {@link StocksWriter} that
+     * did not open this reader maintains the index, the records are scanned instead. Blocked files only scan the
+     * blocks whose id range contains the id and compressed files are scanned completely. If the file has Bloom
+     * filters (see {@link #mightContainId(long)}), missing ids are rejected by them first.
+     *
+     * @param id the id of the stock entry
+     * @return the last stock entry with the id, or null if there is none
+     */
+    public StockEntry getById(long id) {
+        if (blocked != null) {
+            return getBlockedById(id);
+        }
+        if (format == StocksFormat.COMPRESSED) {
+            StockEntry found = null;
+            for (StockEntry entry : this) {
+                if (entry.getId() == id) {
+                    found = entry;
                 }
-
-                ind++;
+            }
+            return found;
+        }
+        StocksBloomFilter filter = bloomFilter(false);
+        if (filter != null && !filter.mightContainId(id)) {
+            return null;
+        }
+        try {
+            if (idIndex != null) {
+                return getIndexed(idIndex, id);
+            }
+            // held only for this lookup, so that a writer can still take over the index
+            try (StocksIdIndex index = StocksIdIndex.tryOpen(path)) {
+                return index == null ? lastInPrefix(id) : getIndexed(index, id);
             }
         } catch (IOException e) {
-            System.err.println("Error getting stock entry");
+            System.err.println("Error getting stock entry by id");
+            return null;
         }
+    }
 
-        return null;
+    /**
+     * Reads the last visible record with the given id, located with the id index.
+     */
+    private StockEntry getIndexed(StocksIdIndex index, long id) throws IOException {
+        long offset = index.offsetOf(id);
+        if (offset < 0) {
+            return null;
+        }
+        if (offset >= limit) {
+            // the shared index of a writer only knows the last record with the id, which lies beyond the
+            // visible prefix; an older record with the id may still lie inside it
+            return lastInPrefix(id);
+        }
+        verifyRecord(offset);
+        file.seek(offset);
+        long recordId = file.readLong();
+        byte[] nameBytes = new byte[file.readShort()];
+        file.readFully(nameBytes);
+        return new StockEntry(recordId, symbols.canonical(nameBytes, 0, nameBytes.length), file.readLong(), file.readDouble());
+    }
+
+    /**
+     * Scans the visible records for the last one with the given id.
+     */
+    private StockEntry lastInPrefix(long id) {
+        StockEntry found = null;
+        for (StockEntry entry : this) {
+            if (entry.getId() == id) {
+                found = entry;
+            }
+        }
+        return found;
     }
 
+    /**
+     * Returns an iterator over all entries. For compressed files the iterator holds its own
+     * file handle, which is released once the iterator is exhausted.
+     *
+     * @return an iterator over all entries
+     */
     @Override
     public Iterator<StockEntry> iterator() {
-        return new StockEntryIterator(file);
+        if (blocked != null) {
+            return blocked.iterator(symbols);
+        }
+        if (format == StocksFormat.COMPRESSED) {
+            try {
+                return openDecoder();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error opening compressed stocks file", e);
+            }
+        }
+        return new StockEntryIterator(file, symbols, checksumMode == ChecksumMode.VERIFY_ON_READ ? checksums : null, limit);
+    }
+
+    /**
+     * Returns the Bloom filters of a raw file, opening them on the first call.
+     *
+     * @param create whether to create the filters if the file has none yet
+     */
+    private StocksBloomFilter bloomFilter(boolean create) {
+        if (format != StocksFormat.RAW) {
+            return null;
+        }
+        if (bloomFilter == null && (create || !bloomFilterChecked)) {
+            try {
+                bloomFilter = create ? StocksBloomFilter.open(path, StocksBloomFilter.DEFAULT_FALSE_POSITIVE_RATE)
+                        : StocksBloomFilter.openIfExists(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error opening Bloom filters", e);
+            }
+            bloomFilterChecked = true;
+        }
+        return bloomFilter;
+    }
+
+    /**
+     * @return the last entry with the id in the blocks whose id range contains it, or null if there is none
+     */
+    private StockEntry getBlockedById(long id) {
+        try {
+            ByteBuffer buffer = null;
+            for (int b = blocked.getBlockCount() - 1; b >= 0; b--) {
+                BlockedStocksReader.BlockInfo info = blocked.getBlock(b);
+                if (id < info.minId() || id > info.maxId()) {
+                    continue;
+                }
+                buffer = blocked.readBlock(b, buffer);
+                StockEntry found = null;
+                for (int r = 0; r < info.recordCount(); r++) {
+                    if (buffer.getLong(buffer.position()) == id) {
+                        found = BlockedStocksReader.decode(buffer, symbols);
+                    } else {
+                        buffer.position(buffer.position() + Configuration.RECORD_SIZE
+                                + buffer.getShort(buffer.position() + Configuration.ID_SIZE));
+                    }
+                }
+                if (found != null) {
+                    return found;
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            System.err.println("Error getting stock entry by id");
+            return null;
+        }
+    }
+
+    private void verifyRecord(long position) throws IOException {
+        if (checksumMode == ChecksumMode.VERIFY_ON_READ) {
+            checksums.verify(file.getChannel(), position, position + Configuration.RECORD_SIZE + Short.MAX_VALUE);
+        }
+    }
+
+    private CompressedStocksDecoder openDecoder() throws IOException {
+        return new CompressedStocksDecoder(new BufferedInputStream(new FileInputStream(path), 1 << 16), symbols);
     }
 }
\ No newline at end of file
@@ -0,0 +1,436 @@
+package stocks;
+
+import util.LongIntHashMap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes aggregates over the market values of a stocks file, optionally grouped by name and by
+ * time bucket.
+ * <pre>
+ * AggregationResult bars = new StocksAggregator(stocks)
+ *     .groupByName()
+ *     .bucket(60_000)
+ *     .aggregate(StandardAggregates.OHLC, StandardAggregates.COUNT)
+ *     .run();
+ * </pre>
+ * Raw files are split into byte ranges which are aggregated by fork-join tasks, each with its own partial
+ * states, symbol table and primitive hash map, so the tasks share nothing while scanning. Records have no
+ * sync marker, so a range starts at the first position from which a chain of plausible records follows;
+ * after the scan the end of every range is checked against the start of the next, and a range that was
+ * started at a wrong position is aggregated again from the correct one. The partials are finally merged
+ * by name in file order. Compressed and blocked files are aggregated by a single task.
+ */
+public class StocksAggregator {
+
+    /** Records checked to accept a position as the start of a range */
+    private static final int CHAIN_LENGTH = 8;
+    /** Longest name assumed by the boundary scan; longer names only reduce parallelism */
+    private static final int MAX_GUESSED_NAME = 1024;
+    /** Bytes searched for a range start */
+    private static final int BOUNDARY_SCAN = 1 << 16;
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final int NAME_BITS = 24;
+    private static final long MAX_BUCKET = 1L << (63 - NAME_BITS);
+
+    private final Stocks stocks;
+    private final List<AggregateFunction> functions = new ArrayList<>();
+    private boolean groupByName;
+    private long bucketWidth;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private long chunkSize = 16L << 20;
+
+    /**
+     * @param stocks the stocks to aggregate
+     */
+    public StocksAggregator(Stocks stocks) {
+        this.stocks = stocks;
+    }
+
+    /**
+     * Groups the entries by name.
+     *
+     * @return this aggregator
+     */
+    public StocksAggregator groupByName() {
+        this.groupByName = true;
+        return this;
+    }
+
+    /**
+     * Groups the entries into time buckets <code>[k * width, (k + 1) * width)</code> of their timestamps.
+     *
+     * @param width the width of a bucket in timestamp units
+     * @return this aggregator
+     */
+    public StocksAggregator bucket(long width) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("Bucket width must be positive");
+        }
+        this.bucketWidth = width;
+        return this;
+    }
+
+    /**
+     * Adds aggregates to compute for every group.
+     *
+     * @param aggregates the aggregates
+     * @return this aggregator
+     */
+    public StocksAggregator aggregate(AggregateFunction... aggregates) {
+        functions.addAll(Arrays.asList(aggregates));
+        return this;
+    }
+
+    /**
+     * @param threads the number of threads to aggregate with
+     * @return this aggregator
+     */
+    public StocksAggregator parallelism(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = threads;
+        return this;
+    }
+
+    /**
+     * @param bytes the size of the file ranges aggregated by one task
+     * @return this aggregator
+     */
+    public StocksAggregator chunkSize(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.chunkSize = bytes;
+        return this;
+    }
+
+    /**
+     * Aggregates all entries.
+     *
+     * @return the aggregated groups
+     * @throws UncheckedIOException if the file cannot be read
+     */
+    public AggregationResult run() {
+        if (functions.isEmpty()) {
+            throw new IllegalStateException("No aggregates defined");
+        }
+        Partial total = new Partial();
+        if (stocks.getFormat() != StocksFormat.RAW) {
+            for (StockEntry entry : stocks) {
+                total.add(groupByName ? total.symbols.intern(entry.getName()) : 0, entry.getTimeStamp(), entry.getMarketValue());
+            }
+            return total.toResult();
+        }
+
+        try (FileChannel channel = FileChannel.open(Path.of(stocks.getPath()), StandardOpenOption.READ)) {
+            long end = Math.min(channel.size(), stocks.getLimit());
+            long[] starts = boundaries(channel, end);
+            Partial[] partials = new Partial[starts.length - 1];
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(new RangeTask(channel, starts, partials, 0, partials.length));
+            } finally {
+                pool.shutdown();
+            }
+            for (int i = 0; i < partials.length; i++) {
+                if (i > 0 && partials[i - 1].stop != starts[i]) {
+                    // the range was started at a position that is not a record boundary
+                    starts[i] = partials[i - 1].stop;
+                    partials[i] = scan(channel, starts[i], starts[i + 1], end, true);
+                }
+                if (partials[i].failure != null) {
+                    // the range did start at a record, so the error is real
+                    throw partials[i].failure;
+                }
+                total.merge(partials[i]);
+            }
+            return total.toResult();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error aggregating stocks file", e);
+        }
+    }
+
+    /**
+     * Splits the first <code>end</code> bytes into ranges starting at probable record boundaries.
+     *
+     * @return the range starts, followed by <code>end</code>
+     */
+    private long[] boundaries(FileChannel channel, long end) throws IOException {
+        List<Long> starts = new ArrayList<>();
+        starts.add(0L);
+        long chunks = Math.max(1, Math.min(end / chunkSize, parallelism * 4L));
+        ByteBuffer window = ByteBuffer.allocate(BOUNDARY_SCAN + CHAIN_LENGTH * (Configuration.RECORD_SIZE + MAX_GUESSED_NAME));
+        for (long i = 1; i < chunks; i++) {
+            long from = Math.max(end / chunks * i, starts.get(starts.size() - 1) + 1);
+            long start = guessBoundary(channel, window, from, end);
+            if (start > 0 && start < end) {
+                starts.add(start);
+            }
+        }
+        starts.add(end);
+        long[] result = new long[starts.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = starts.get(i);
+        }
+        return result;
+    }
+
+    private long guessBoundary(FileChannel channel, ByteBuffer window, long from, long end) throws IOException {
+        window.clear().limit((int) Math.min(window.capacity(), end - from));
+        while (window.hasRemaining() && channel.read(window, from + window.position()) > 0) {
+            // fill the window
+        }
+        window.flip();
+        boolean reachesEnd = from + window.limit() >= end;
+        for (int p = 0; p < Math.min(BOUNDARY_SCAN, window.limit()); p++) {
+            if (isChain(window, p, reachesEnd)) {
+                return from + p;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isChain(ByteBuffer window, int position, boolean reachesEnd) {
+        int p = position;
+        for (int k = 0; k < CHAIN_LENGTH; k++) {
+            if (reachesEnd && p == window.limit()) {
+                return true;
+            }
+            if (p + Configuration.RECORD_SIZE > window.limit()) {
+                return false;
+            }
+            int nameLength = window.getShort(p + Configuration.ID_SIZE);
+            if (nameLength <= 0 || nameLength > MAX_GUESSED_NAME
+                    || p + Configuration.RECORD_SIZE + nameLength > window.limit()) {
+                return false;
+            }
+            int name = p + Configuration.ID_SIZE + Configuration.NAME_LENGTH_SIZE;
+            for (int i = name; i < name + nameLength; i++) {
+                int b = window.get(i) & 0xFF;
+                if (b < 0x20 || b == 0x7F) {
+                    return false;
+                }
+            }
+            p += Configuration.RECORD_SIZE + nameLength;
+        }
+        return true;
+    }
+
+    /**
+     * Aggregates all records starting in <code>[start, stop)</code>.
+     *
+     * @param verified whether <code>start</code> is known to be a record boundary; otherwise errors caused by
+     *                 the decoded records are held back in the partial until the start has been checked
+     */
+    private Partial scan(FileChannel channel, long start, long stop, long end, boolean verified) throws IOException {
+        Partial partial = new Partial();
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        buffer.limit(0);
+        long bufferStart = start;
+        long position = start;
+        while (position < stop) {
+            int offset = (int) (position - bufferStart);
+            if (offset + Configuration.RECORD_SIZE > buffer.limit()
+                    || offset + Configuration.RECORD_SIZE + buffer.getShort(offset + Configuration.ID_SIZE) > buffer.limit()) {
+                // refill the buffer from the current record on
+                bufferStart = position;
+                offset = 0;
+                buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+                while (buffer.hasRemaining() && channel.read(buffer, bufferStart + buffer.position()) > 0) {
+                    // fill the buffer
+                }
+                buffer.flip();
+                if (Configuration.RECORD_SIZE > buffer.limit()
+                        || Configuration.RECORD_SIZE + buffer.getShort(Configuration.ID_SIZE) > buffer.limit()) {
+                    break; // a partially written record at the end
+                }
+            }
+            int nameLength = buffer.getShort(offset + Configuration.ID_SIZE);
+            if (nameLength < 0) {
+                break; // only possible in a range started at a wrong position, which is aggregated again
+            }
+            int name = offset + Configuration.ID_SIZE + Configuration.NAME_LENGTH_SIZE;
+            int symbol = groupByName ? partial.symbols.intern(buffer.array(), name, nameLength) : 0;
+            long ts = buffer.getLong(name + nameLength);
+            double value = buffer.getDouble(name + nameLength + Configuration.TIMESTAMP_SIZE);
+            try {
+                partial.add(symbol, ts, value);
+            } catch (IllegalStateException e) {
+                if (verified) {
+                    throw e;
+                }
+                partial.failure = e;
+                break;
+            }
+            position += Configuration.RECORD_SIZE + nameLength;
+        }
+        partial.stop = position;
+        return partial;
+    }
+
+    /**
+     * Aggregates the ranges <code>[from, to)</code>, splitting them in halves until a single range is left.
+     */
+    @SuppressWarnings("serial")
+    private final class RangeTask extends RecursiveAction {
+
+        private final FileChannel channel;
+        private final long[] starts;
+        private final Partial[] partials;
+        private final int from;
+        private final int to;
+
+        private RangeTask(FileChannel channel, long[] starts, Partial[] partials, int from, int to) {
+            this.channel = channel;
+            this.starts = starts;
+            this.partials = partials;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RangeTask(channel, starts, partials, from, middle),
+                        new RangeTask(channel, starts, partials, middle, to));
+                return;
+            }
+            try {
+                partials[from] = scan(channel, starts[from], starts[from + 1], starts[starts.length - 1], from == 0);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error aggregating stocks file", e);
+            }
+        }
+    }
+
+    /**
+     * The aggregate states of all groups seen in one range. A group is identified by the symbol of its name
+     * in the partial's own symbol table and its bucket index.
+     */
+    private final class Partial {
+
+        private final SymbolTable symbols = new SymbolTable();
+        private final LongIntHashMap groups = new LongIntHashMap();
+        private final int stateSize;
+        private long[] keys = new long[16];
+        private long[] counts = new long[16];
+        private double[] states;
+        private int size;
+        /** The position of the first record not aggregated */
+        private long stop;
+        /** An error held back by a scan from an unverified range start */
+        private IllegalStateException failure;
+
+        private Partial() {
+            int total = 0;
+            for (AggregateFunction function : functions) {
+                total += function.stateSize();
+            }
+            this.stateSize = total;
+            this.states = new double[16 * stateSize];
+        }
+
+        private void add(int symbol, long ts, double value) {
+            long bucket = bucketWidth == 0 ? 0 : Math.floorDiv(ts, bucketWidth);
+            int group = group(key(symbol, bucket));
+            int offset = group * stateSize;
+            long count = counts[group];
+            for (AggregateFunction function : functions) {
+                function.add(states, offset, count, value);
+                offset += function.stateSize();
+            }
+            counts[group] = count + 1;
+        }
+
+        /**
+         * Merges a partial of the following range into this one.
+         */
+        private void merge(Partial other) {
+            for (int g = 0; g < other.size; g++) {
+                long otherKey = other.keys[g];
+                int symbol = (int) (otherKey & ((1 << NAME_BITS) - 1));
+                if (groupByName) {
+                    symbol = symbols.intern(other.symbols.name(symbol));
+                }
+                int group = group(key(symbol, otherKey >> NAME_BITS));
+                int offset = group * stateSize;
+                int otherOffset = g * stateSize;
+                for (AggregateFunction function : functions) {
+                    function.merge(states, offset, counts[group], other.states, otherOffset, other.counts[g]);
+                    offset += function.stateSize();
+                    otherOffset += function.stateSize();
+                }
+                counts[group] += other.counts[g];
+            }
+        }
+
+        private int group(long key) {
+            int group = groups.get(key, -1);
+            if (group >= 0) {
+                return group;
+            }
+            group = size++;
+            if (group == keys.length) {
+                keys = Arrays.copyOf(keys, group * 2);
+                counts = Arrays.copyOf(counts, group * 2);
+                states = Arrays.copyOf(states, group * 2 * stateSize);
+            }
+            keys[group] = key;
+            int offset = group * stateSize;
+            for (AggregateFunction function : functions) {
+                function.reset(states, offset);
+                offset += function.stateSize();
+            }
+            groups.put(key, group);
+            return group;
+        }
+
+        private long key(int symbol, long bucket) {
+            if (symbol >= 1 << NAME_BITS) {
+                throw new IllegalStateException("Too many distinct names");
+            }
+            if (bucket >= MAX_BUCKET || bucket < -MAX_BUCKET) {
+                throw new IllegalStateException("Bucket index out of range, use a larger bucket width");
+            }
+            return bucket << NAME_BITS | symbol;
+        }
+
+        private AggregationResult toResult() {
+            List<String> columns = new ArrayList<>();
+            for (AggregateFunction function : functions) {
+                columns.addAll(function.columns());
+            }
+            List<AggregationResult.Row> rows = new ArrayList<>(size);
+            for (int g = 0; g < size; g++) {
+                double[] values = new double[columns.size()];
+                int offset = g * stateSize;
+                int column = 0;
+                for (AggregateFunction function : functions) {
+                    function.finish(states, offset, counts[g], values, column);
+                    offset += function.stateSize();
+                    column += function.columns().size();
+                }
+                String name = groupByName ? symbols.name((int) (keys[g] & ((1 << NAME_BITS) - 1))) : null;
+                long bucket = (keys[g] >> NAME_BITS) * bucketWidth;
+                rows.add(new AggregationResult.Row(name, bucket, counts[g], values));
+            }
+            rows.sort(Comparator.comparing(AggregationResult.Row::name, Comparator.nullsFirst(Comparator.naturalOrder()))
+                    .thenComparingLong(AggregationResult.Row::bucket));
+            return new AggregationResult(columns, rows);
+        }
+    }
+}
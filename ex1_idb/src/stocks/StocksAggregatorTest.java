@@ -0,0 +1,147 @@
+package stocks;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StocksAggregatorTest {
+
+    @Test
+    void groupByNameMatchesSequentialLoop() throws FileNotFoundException {
+        Stocks stocks = new Stocks("stocks.bin");
+        Map<String, double[]> expected = new HashMap<>(); // min, max, sum, count, first, last
+        for (StockEntry entry : stocks) {
+            double v = entry.getMarketValue();
+            double[] e = expected.computeIfAbsent(entry.getName(),
+                    n -> new double[]{Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0, 0, v, v});
+            e[0] = Math.min(e[0], v);
+            e[1] = Math.max(e[1], v);
+            e[2] += v;
+            e[3]++;
+            e[5] = v;
+        }
+
+        AggregationResult result = new StocksAggregator(stocks)
+                .groupByName()
+                .aggregate(StandardAggregates.MIN, StandardAggregates.MAX, StandardAggregates.AVG,
+                        StandardAggregates.COUNT, StandardAggregates.FIRST, StandardAggregates.LAST)
+                .chunkSize(4096)
+                .parallelism(4)
+                .run();
+        assertEquals(expected.size(), result.getRows().size());
+        for (AggregationResult.Row row : result.getRows()) {
+            double[] e = expected.get(row.name());
+            assertEquals(e[0], row.get(result.indexOf("min")));
+            assertEquals(e[1], row.get(result.indexOf("max")));
+            assertEquals(e[2] / e[3], row.get(result.indexOf("avg")), 1e-9);
+            assertEquals(e[3], row.get(result.indexOf("count")));
+            assertEquals((long) e[3], row.count());
+            assertEquals(e[4], row.get(result.indexOf("first")));
+            assertEquals(e[5], row.get(result.indexOf("last")));
+        }
+    }
+
+    @Test
+    void ohlcBars() throws FileNotFoundException {
+        Stocks stocks = new Stocks("stocks.bin");
+        AggregationResult bars = new StocksAggregator(stocks)
+                .groupByName()
+                .bucket(1000)
+                .aggregate(StandardAggregates.OHLC)
+                .chunkSize(1000)
+                .run();
+        assertEquals(4 * 10, bars.getRows().size());
+        AggregationResult.Row volvo = bars.get("Volvo", 2000);
+        assertEquals(1000, volvo.count());
+
+        double open = Double.NaN;
+        double high = Double.NEGATIVE_INFINITY;
+        double close = Double.NaN;
+        for (StockEntry entry : stocks) {
+            if (entry.getName().equals("Volvo") && entry.getTimeStamp() >= 2000 && entry.getTimeStamp() < 3000) {
+                if (Double.isNaN(open)) {
+                    open = entry.getMarketValue();
+                }
+                high = Math.max(high, entry.getMarketValue());
+                close = entry.getMarketValue();
+            }
+        }
+        assertEquals(open, volvo.get(bars.indexOf("open")));
+        assertEquals(high, volvo.get(bars.indexOf("high")));
+        assertEquals(close, volvo.get(bars.indexOf("close")));
+    }
+
+    @Test
+    void compressedAndUngrouped() throws IOException {
+        Path compressed = Files.createTempFile("stocks", ".stkz");
+        try {
+            Stocks raw = new Stocks("stocks.bin");
+            CompressedStocksEncoder.compress(raw, compressed);
+            AggregationResult fromRaw = new StocksAggregator(raw)
+                    .aggregate(StandardAggregates.SUM, StandardAggregates.COUNT).chunkSize(10_000).run();
+            AggregationResult fromCompressed = new StocksAggregator(new Stocks(compressed.toString()))
+                    .aggregate(StandardAggregates.SUM, StandardAggregates.COUNT).run();
+            assertEquals(1, fromRaw.getRows().size());
+            AggregationResult.Row row = fromRaw.get(null, 0);
+            assertEquals(40000, row.count());
+            assertEquals(row.get(0), fromCompressed.get(null, 0).get(0), 1e-6);
+        } finally {
+            Files.deleteIfExists(compressed);
+        }
+    }
+
+    @Test
+    void garbageFromWrongRangeStartsIsDiscarded() throws IOException {
+        // a long name made of plausible records whose timestamps lie far outside the bucket range
+        ByteBuffer fake = ByteBuffer.allocate(1000 * (Configuration.RECORD_SIZE + 1));
+        while (fake.hasRemaining()) {
+            fake.putLong(0).putShort((short) 1).put((byte) 'A').putLong(Long.MAX_VALUE / 2).putDouble(0);
+        }
+        Path file = Files.createTempFile("stocks", ".bin");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                for (int i = 0; i < 400; i++) {
+                    if (i == 200) {
+                        out.writeLong(i);
+                        out.writeShort(fake.capacity());
+                        out.write(fake.array());
+                        out.writeLong(i);
+                        out.writeDouble(i);
+                    }
+                    out.writeLong(i);
+                    out.writeShort(3);
+                    out.writeBytes(i % 2 == 0 ? "BMW" : "VW_");
+                    out.writeLong(i);
+                    out.writeDouble(i);
+                }
+            }
+            Stocks stocks = new Stocks(file.toString());
+            AggregationResult sequential = new StocksAggregator(stocks).groupByName().bucket(100)
+                    .aggregate(StandardAggregates.COUNT).chunkSize(1L << 40).run();
+            AggregationResult parallel = new StocksAggregator(stocks).groupByName().bucket(100)
+                    .aggregate(StandardAggregates.COUNT).chunkSize(2048).parallelism(4).run();
+            List<AggregationResult.Row> expected = sequential.getRows();
+            List<AggregationResult.Row> actual = parallel.getRows();
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).name(), actual.get(i).name());
+                assertEquals(expected.get(i).bucket(), actual.get(i).bucket());
+                assertEquals(expected.get(i).count(), actual.get(i).count());
+            }
+            assertEquals(401, sequential.getRows().stream().mapToLong(AggregationResult.Row::count).sum());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package stocks;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Budgets for the heap bytes allocated per stocks operation, measured with the allocation counter of the
+ * current thread, so that an operation allocating per visited record fails like a functional bug.
+ */
+class StocksAllocationTest {
+
+    private static final int OPERATIONS = 2_000;
+
+    @BeforeEach
+    void setUp() {
+        assumeTrue(allocationCounter().isThreadAllocatedMemorySupported());
+        allocationCounter().setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    void getDoesNotAllocatePerSkippedRecord() throws FileNotFoundException {
+        Stocks stocks = new Stocks("stocks.bin");
+        assertEquals(new StockEntry(8, "Volvo", 2, 98.99010000000001), stocks.get(8));
+        // the buffers and the entry of one call, regardless of the number of records walked
+        assertBudget("get(10)", 256, i -> stocks.get(10));
+        assertBudget("get(1000)", 256, i -> stocks.get(1000));
+        assertEquals(1000, stocks.get(1000).getId());
+    }
+
+    @Test
+    void iteratorAllocatesOnlyTheEntries() throws FileNotFoundException {
+        Stocks stocks = new Stocks("stocks.bin");
+        Iterator<StockEntry> entries = stocks.iterator();
+        assertBudget("next", 64, i -> entries.next());
+    }
+
+    @Test
+    void serializedLengthIsCounted() {
+        StockEntry entry = new StockEntry(1, "N\u00e4me \ud83d\udcc8 \u20ac", 2, 3.0);
+        assertEquals(entry.getBytes().remaining(), entry.getSerializedLength());
+        assertBudget("getSerializedLength", 8, i -> entry.getSerializedLength());
+        assertBudget("first getSerializedLength", 64, i -> new StockEntry(i, "Volvo", i, i).getSerializedLength());
+    }
+
+    private static void assertBudget(String operation, long budget, IntConsumer action) {
+        for (int i = 0; i < OPERATIONS; i++) {
+            action.accept(i);
+        }
+        long before = allocationCounter().getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < OPERATIONS; i++) {
+            action.accept(i);
+        }
+        long bytes = (allocationCounter().getCurrentThreadAllocatedBytes() - before) / OPERATIONS;
+        assertTrue(bytes <= budget, operation + " allocated " + bytes + " bytes per call, budget is " + budget);
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        return (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    }
+}
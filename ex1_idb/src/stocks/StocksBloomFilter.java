@@ -0,0 +1,221 @@
+package stocks;
+
+import util.BloomFilter;
+import util.ContainerRuntimeException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Bloom filters over the ids and the names of the records of a raw stocks file, stored in
+ * <code>path + ".bloom"</code>. A negative answer of {@link #mightContainId(long)} or
+ * {@link #mightContainName(String)} is certain and costs a single cache line access; a positive answer is
+ * wrong with about the configured false positive rate.
+ * <p>
+ * Like the {@link StocksIdIndex}, the sidecar remembers up to which offset the stocks file is covered and
+ * indexes records appended since when it is opened. The sidecar is replaced atomically on {@link #force()},
+ * so after a crash the previous version is found and completed. Filters that have received more than twice
+ * the records they were sized for are rebuilt on opening. Registered with a {@link StocksWriter} (see
+ * {@link StocksWriter#maintainBloomFilter(double)}), the filters are updated with every written batch.
+ */
+public class StocksBloomFilter implements StocksWriter.AppendListener, AutoCloseable {
+
+    /** The false positive rate used by {@link Stocks} */
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    private static final int MAGIC = 0x53424C4D; // "SBLM"
+
+    private final Path path;
+    private final BloomFilter ids;
+    private final BloomFilter names;
+    private final byte[] name = new byte[Short.MAX_VALUE];
+    /** End of the records added to the filters */
+    private volatile long indexedLength;
+    private boolean dirty;
+
+    private StocksBloomFilter(Path path, BloomFilter ids, BloomFilter names, long indexedLength) {
+        this.path = path;
+        this.ids = ids;
+        this.names = names;
+        this.indexedLength = indexedLength;
+    }
+
+    /**
+     * Opens the filters of the given raw stocks file, creating or completing them as necessary.
+     *
+     * @param stocksPath the path of the stocks file
+     * @param falsePositiveRate the false positive rate of newly created filters
+     * @return the filters
+     * @throws IOException if either file cannot be read or written
+     */
+    public static StocksBloomFilter open(String stocksPath, double falsePositiveRate) throws IOException {
+        Path path = Path.of(stocksPath + ".bloom");
+        try (FileChannel file = FileChannel.open(Path.of(stocksPath), StandardOpenOption.READ)) {
+            StocksBloomFilter filter = Files.exists(path) ? read(path) : null;
+            if (filter == null || filter.indexedLength > file.size()
+                    || filter.ids.getInsertions() > 2 * filter.ids.getExpectedInsertions()) {
+                // missing, corrupt, for a replaced stocks file or overfull
+                long expected = Math.max(1024, 2 * file.size() / Configuration.RECORD_SIZE);
+                filter = new StocksBloomFilter(path, new BloomFilter(expected, falsePositiveRate),
+                        new BloomFilter(expected, falsePositiveRate), 0);
+                filter.dirty = true;
+            }
+            filter.catchUp(file);
+            filter.force();
+            return filter;
+        }
+    }
+
+    /**
+     * Opens the filters of the given stocks file if they have been created before.
+     *
+     * @param stocksPath the path of the stocks file
+     * @return the filters, or null if there are none
+     * @throws IOException if either file cannot be read or written
+     */
+    static StocksBloomFilter openIfExists(String stocksPath) throws IOException {
+        if (!Files.exists(Path.of(stocksPath + ".bloom"))) {
+            return null;
+        }
+        return open(stocksPath, DEFAULT_FALSE_POSITIVE_RATE);
+    }
+
+    /**
+     * @param id the id
+     * @return false if no record has the id, true if one probably has
+     */
+    public boolean mightContainId(long id) {
+        return ids.mightContain(BloomFilter.hash(id));
+    }
+
+    /**
+     * @param name the name of a stock
+     * @return false if no record has the name, true if one probably has
+     */
+    public boolean mightContainName(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return names.mightContain(BloomFilter.hash(bytes, 0, bytes.length));
+    }
+
+    /**
+     * @return the end of the records covered by the filters
+     */
+    public long getIndexedLength() {
+        return indexedLength;
+    }
+
+    /**
+     * @return the false positive rate expected for ids from the current fill of the filter
+     */
+    public double getExpectedFalsePositiveRate() {
+        return ids.getExpectedFalsePositiveRate();
+    }
+
+    /**
+     * Adds a batch of records written by a {@link StocksWriter}.
+     */
+    @Override
+    public synchronized void appended(FileChannel file, ByteBuffer records, long offset) {
+        if (offset != indexedLength) {
+            throw new IllegalStateException("Records at " + offset + " do not follow the filtered records");
+        }
+        addRecords(records, offset);
+    }
+
+    /**
+     * Replaces the sidecar with the current filters if they have changed.
+     */
+    @Override
+    public synchronized void force() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(12 + ids.getSerializedSize() + names.getSerializedSize());
+        buffer.putInt(MAGIC);
+        buffer.putLong(indexedLength);
+        ids.writeTo(buffer);
+        names.writeTo(buffer);
+        buffer.flip();
+        Path temp = Path.of(path + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dirty = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+    }
+
+    private static StocksBloomFilter read(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        try {
+            if (buffer.remaining() < 12 || buffer.getInt() != MAGIC) {
+                return null;
+            }
+            long indexedLength = buffer.getLong();
+            return new StocksBloomFilter(path, BloomFilter.readFrom(buffer), BloomFilter.readFrom(buffer), indexedLength);
+        } catch (ContainerRuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Adds all records of the file beyond the indexed length.
+     */
+    private synchronized void catchUp(FileChannel file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        long position = indexedLength;
+        long end = file.size();
+        while (position < end) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+            while (buffer.hasRemaining() && file.read(buffer, position + buffer.position()) > 0) {
+                // fill the buffer
+            }
+            buffer.flip();
+            long added = addRecords(buffer, position);
+            if (added == position) {
+                break; // a partially written record at the end
+            }
+            position = added;
+        }
+    }
+
+    /**
+     * Adds the complete records in the buffer, which starts at the given file offset.
+     *
+     * @return the offset following the last added record
+     */
+    private long addRecords(ByteBuffer records, long offset) {
+        int start = records.position();
+        int p = start;
+        while (p + Configuration.RECORD_SIZE <= records.limit()) {
+            int nameLength = records.getShort(p + Configuration.ID_SIZE);
+            int length = Configuration.RECORD_SIZE + nameLength;
+            if (p + length > records.limit()) {
+                break;
+            }
+            ids.add(BloomFilter.hash(records.getLong(p)));
+            records.get(p + Configuration.ID_SIZE + Configuration.NAME_LENGTH_SIZE, name, 0, nameLength);
+            names.add(BloomFilter.hash(name, 0, nameLength));
+            p += length;
+        }
+        if (p > start) {
+            dirty = true;
+        }
+        indexedLength = offset + (p - start);
+        return indexedLength;
+    }
+}
@@ -0,0 +1,76 @@
+package stocks;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StocksBloomFilterTest {
+
+    @Test
+    void rejectsMissingIdsAndNames() throws IOException {
+        Path copy = Files.createTempFile("stocks", ".bin");
+        try {
+            Files.copy(Path.of("stocks.bin"), copy, StandardCopyOption.REPLACE_EXISTING);
+            Stocks stocks = new Stocks(copy.toString());
+            for (long id = 0; id < 40000; id += 97) {
+                assertTrue(stocks.mightContainId(id));
+            }
+            assertTrue(stocks.mightContainName("Ferrari"));
+            assertFalse(stocks.mightContainName("Saab"));
+            int falsePositives = 0;
+            for (long id = 40000; id < 140000; id++) {
+                if (stocks.mightContainId(id)) {
+                    falsePositives++;
+                }
+            }
+            assertTrue(falsePositives < 2000, "false positives: " + falsePositives);
+            assertNull(stocks.getById(1_000_000));
+            assertEquals(stocks.get(17), stocks.getById(17));
+            assertTrue(Files.exists(Path.of(copy + ".bloom")));
+        } finally {
+            deleteWithSidecars(copy);
+        }
+    }
+
+    @Test
+    void writerMaintainsFilters() throws IOException {
+        Path file = Files.createTempFile("stocks", ".bin");
+        try {
+            try (StocksWriter writer = new StocksWriter(file.toString())) {
+                writer.append(1, "BMW", 1, 1.0);
+                writer.maintainBloomFilter(0.001);
+                writer.append(2, "Ford", 2, 2.0);
+                writer.flush();
+                Stocks reader = writer.openReader();
+                assertTrue(reader.mightContainId(1));
+                assertTrue(reader.mightContainId(2));
+                assertTrue(reader.mightContainName("Ford"));
+                assertFalse(reader.mightContainName("Volvo"));
+            }
+            // appended without the filters, added when they are opened next
+            try (StocksWriter writer = new StocksWriter(file.toString())) {
+                writer.append(3, "Volvo", 3, 3.0);
+            }
+            try (StocksBloomFilter filter = StocksBloomFilter.open(file.toString(), 0.001)) {
+                assertEquals(Files.size(file), filter.getIndexedLength());
+                assertTrue(filter.mightContainName("Volvo"));
+                assertTrue(filter.mightContainId(3));
+            }
+        } finally {
+            deleteWithSidecars(file);
+        }
+    }
+
+    private static void deleteWithSidecars(Path file) throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(Path.of(file + ".bloom"));
+        Files.deleteIfExists(Path.of(file + ".idx"));
+        Files.deleteIfExists(Path.of(file + ".idx.ovf"));
+        Files.deleteIfExists(Path.of(file + ".idx.lock"));
+    }
+}
@@ -0,0 +1,480 @@
+package stocks;
+
+import util.SelectionKernels;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Selects the records of a stocks file matching a conjunction of predicates on their fields.
+ * <pre>
+ * Selection spikes = new StocksFilter()
+ *     .timestampBetween(from, to)
+ *     .valueAbove(100)
+ *     .select(stocks);
+ * </pre>
+ * The file is decoded block by block into primitive columns (ids, timestamps, values and name symbols). The
+ * predicates are evaluated over a whole block at a time by the branch-free kernels of {@link SelectionKernels},
+ * each narrowing the block's selection bitmap; once no row of a block is selected, the remaining predicates are
+ * skipped. No {@link StockEntry} is created unless the matching entries are requested with
+ * {@link #collect(Stocks)}. Blocks of a blocked file ({@link StocksFormat#BLOCKED}) whose id, timestamp or value
+ * range in the footer cannot match are skipped without being read.
+ */
+public class StocksFilter {
+
+    /** The default number of records decoded and evaluated at once */
+    public static final int DEFAULT_BLOCK_ROWS = 4096;
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+
+    private long minId = Long.MIN_VALUE;
+    private long maxId = Long.MAX_VALUE;
+    private long minTimestamp = Long.MIN_VALUE;
+    private long maxTimestamp = Long.MAX_VALUE;
+    private double minValue = Double.NEGATIVE_INFINITY;
+    private double maxValue = Double.POSITIVE_INFINITY;
+    private String name;
+    private int blockRows = DEFAULT_BLOCK_ROWS;
+
+    /**
+     * Keeps the records with ids in <code>[min, max]</code>.
+     *
+     * @param min the smallest id
+     * @param max the largest id
+     * @return this filter
+     */
+    public StocksFilter idBetween(long min, long max) {
+        this.minId = Math.max(minId, min);
+        this.maxId = Math.min(maxId, max);
+        return this;
+    }
+
+    /**
+     * Keeps the records with timestamps in <code>[from, to]</code>.
+     *
+     * @param from the earliest timestamp
+     * @param to the latest timestamp
+     * @return this filter
+     */
+    public StocksFilter timestampBetween(long from, long to) {
+        this.minTimestamp = Math.max(minTimestamp, from);
+        this.maxTimestamp = Math.min(maxTimestamp, to);
+        return this;
+    }
+
+    /**
+     * Keeps the records with market values in <code>[min, max]</code>.
+     *
+     * @param min the smallest value
+     * @param max the largest value
+     * @return this filter
+     */
+    public StocksFilter valueBetween(double min, double max) {
+        this.minValue = Math.max(minValue, min);
+        this.maxValue = Math.min(maxValue, max);
+        return this;
+    }
+
+    /**
+     * Keeps the records with market values greater than the given one.
+     *
+     * @param value the exclusive lower bound
+     * @return this filter
+     */
+    public StocksFilter valueAbove(double value) {
+        return valueBetween(Math.nextUp(value), Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Keeps the records with market values less than the given one.
+     *
+     * @param value the exclusive upper bound
+     * @return this filter
+     */
+    public StocksFilter valueBelow(double value) {
+        return valueBetween(Double.NEGATIVE_INFINITY, Math.nextDown(value));
+    }
+
+    /**
+     * Keeps the records of the given stock.
+     *
+     * @param name the name of the stock
+     * @return this filter
+     */
+    public StocksFilter name(String name) {
+        if (this.name != null && !this.name.equals(name)) {
+            throw new IllegalArgumentException("Filter already restricted to " + this.name);
+        }
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * Sets the number of records decoded and evaluated at once.
+     *
+     * @param rows the block size, a positive multiple of 64
+     * @return this filter
+     */
+    public StocksFilter blockRows(int rows) {
+        if (rows <= 0 || rows % Long.SIZE != 0) {
+            throw new IllegalArgumentException("Block size must be a positive multiple of 64");
+        }
+        this.blockRows = rows;
+        return this;
+    }
+
+    /**
+     * Selects the matching records.
+     *
+     * @param stocks the stocks to scan
+     * @return the selected records
+     * @throws UncheckedIOException if the file cannot be read
+     */
+    public Selection select(Stocks stocks) {
+        long[][] bitmap = {new long[64]};
+        long[] count = new long[1];
+        long rows = scan(stocks, false, (block, first) -> {
+            int words = SelectionKernels.words(block.size);
+            int offset = (int) (first >>> 6);
+            // blocks of the blocked format end where its file blocks end, so they need not start on a word
+            int shift = (int) (first & 63);
+            int end = offset + SelectionKernels.words(shift + block.size);
+            if (end > bitmap[0].length) {
+                bitmap[0] = Arrays.copyOf(bitmap[0], Math.max(end, 2 * bitmap[0].length));
+            }
+            if (shift == 0) {
+                System.arraycopy(block.selection, 0, bitmap[0], offset, words);
+            } else {
+                for (int w = 0; w < words; w++) {
+                    long bits = block.selection[w];
+                    bitmap[0][offset + w] |= bits << shift;
+                    if (offset + w + 1 < end) {
+                        bitmap[0][offset + w + 1] |= bits >>> (Long.SIZE - shift);
+                    }
+                }
+            }
+            count[0] += SelectionKernels.count(block.selection, block.size);
+        });
+        return new Selection(bitmap[0], rows, count[0]);
+    }
+
+    /**
+     * Counts the matching records without materializing them.
+     *
+     * @param stocks the stocks to scan
+     * @return the number of matching records
+     * @throws UncheckedIOException if the file cannot be read
+     */
+    public long count(Stocks stocks) {
+        long[] count = new long[1];
+        scan(stocks, false, (block, first) -> count[0] += SelectionKernels.count(block.selection, block.size));
+        return count[0];
+    }
+
+    /**
+     * Returns the matching entries in file order.
+     *
+     * @param stocks the stocks to scan
+     * @return the matching entries
+     * @throws UncheckedIOException if the file cannot be read
+     */
+    public List<StockEntry> collect(Stocks stocks) {
+        List<StockEntry> entries = new ArrayList<>();
+        int[] positions = new int[blockRows];
+        scan(stocks, true, (block, first) -> {
+            int count = SelectionKernels.positions(block.selection, block.size, positions);
+            for (int i = 0; i < count; i++) {
+                int row = positions[i];
+                entries.add(new StockEntry(block.ids[row], block.symbols.name(block.names[row]),
+                        block.timestamps[row], block.values[row]));
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * Receives every evaluated block.
+     */
+    private interface BlockConsumer {
+        void accept(Block block, long firstRow);
+    }
+
+    /**
+     * Decodes all records into blocks, evaluates the predicates and passes the blocks on.
+     *
+     * @param decodeNames whether names are needed for the result even if no predicate is on the name
+     * @return the number of records
+     */
+    private long scan(Stocks stocks, boolean decodeNames, BlockConsumer consumer) {
+        Block block = new Block(blockRows, decodeNames || name != null);
+        int nameSymbol = name == null ? -1 : block.symbols.intern(name);
+        long first = 0;
+        BlockReader reader = switch (stocks.getFormat()) {
+            case RAW -> new RawReader(stocks);
+            case COMPRESSED -> new EntryReader(stocks.iterator());
+            case BLOCKED -> new BlockedReader(stocks);
+        };
+        try {
+            while (reader.fill(block)) {
+                if (block.pruned) {
+                    SelectionKernels.selectAll(block.selection, 0);
+                } else {
+                    evaluate(block, nameSymbol);
+                }
+                consumer.accept(block, first);
+                first += block.size;
+            }
+            return first;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error filtering stocks file", e);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @return false if no record of the block can match the predicates on ids, timestamps and values
+     */
+    private boolean mayMatch(BlockedStocksReader.BlockInfo info) {
+        // comparisons with NaN statistics are false, so such blocks are never skipped
+        return !(info.maxId() < minId || info.minId() > maxId
+                || info.maxTimestamp() < minTimestamp || info.minTimestamp() > maxTimestamp
+                || info.maxValue() < minValue || info.minValue() > maxValue);
+    }
+
+    private void evaluate(Block block, int nameSymbol) {
+        long[] selection = block.selection;
+        int rows = block.size;
+        SelectionKernels.selectAll(selection, rows);
+        if (minTimestamp != Long.MIN_VALUE || maxTimestamp != Long.MAX_VALUE) {
+            SelectionKernels.selectBetween(block.timestamps, rows, minTimestamp, maxTimestamp, selection);
+        }
+        if ((minValue != Double.NEGATIVE_INFINITY || maxValue != Double.POSITIVE_INFINITY)
+                && !SelectionKernels.isEmpty(selection, rows)) {
+            SelectionKernels.selectBetween(block.values, rows, minValue, maxValue, selection);
+        }
+        if ((minId != Long.MIN_VALUE || maxId != Long.MAX_VALUE) && !SelectionKernels.isEmpty(selection, rows)) {
+            SelectionKernels.selectBetween(block.ids, rows, minId, maxId, selection);
+        }
+        if (nameSymbol >= 0 && !SelectionKernels.isEmpty(selection, rows)) {
+            SelectionKernels.selectEqual(block.names, rows, nameSymbol, selection);
+        }
+    }
+
+    /**
+     * The columns of a block of records and their selection.
+     */
+    private static final class Block {
+
+        private final long[] ids;
+        private final long[] timestamps;
+        private final double[] values;
+        private final int[] names;
+        private final long[] selection;
+        private final SymbolTable symbols = new SymbolTable();
+        private final boolean decodeNames;
+        private int size;
+        /** Whether the rows were skipped without being decoded, because none of them can match */
+        private boolean pruned;
+
+        private Block(int capacity, boolean decodeNames) {
+            this.ids = new long[capacity];
+            this.timestamps = new long[capacity];
+            this.values = new double[capacity];
+            this.names = new int[capacity];
+            this.selection = new long[SelectionKernels.words(capacity)];
+            this.decodeNames = decodeNames;
+        }
+    }
+
+    private interface BlockReader {
+
+        /**
+         * Decodes the next records into the block.
+         *
+         * @return false if there are no more records
+         */
+        boolean fill(Block block) throws IOException;
+
+        void close();
+    }
+
+    /**
+     * Decodes raw records from large sequential reads.
+     */
+    private static final class RawReader implements BlockReader {
+
+        private final FileChannel channel;
+        private final long end;
+        private final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private long bufferStart;
+
+        private RawReader(Stocks stocks) {
+            try {
+                this.channel = FileChannel.open(Path.of(stocks.getPath()), StandardOpenOption.READ);
+                this.end = Math.min(channel.size(), stocks.getLimit());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error opening stocks file", e);
+            }
+            buffer.limit(0);
+        }
+
+        @Override
+        public boolean fill(Block block) throws IOException {
+            block.size = 0;
+            block.pruned = false;
+            while (block.size < block.ids.length) {
+                int p = buffer.position();
+                if (p + Configuration.RECORD_SIZE > buffer.limit()
+                        || p + Configuration.RECORD_SIZE + buffer.getShort(p + Configuration.ID_SIZE) > buffer.limit()) {
+                    if (!refill()) {
+                        break;
+                    }
+                    p = 0;
+                }
+                decode(buffer, block);
+            }
+            return block.size > 0;
+        }
+
+        /**
+         * Moves the unread bytes to the front of the buffer and reads on.
+         *
+         * @return false if no complete record is left
+         */
+        private boolean refill() throws IOException {
+            bufferStart += buffer.position();
+            buffer.clear().limit((int) Math.min(buffer.capacity(), end - bufferStart));
+            while (buffer.hasRemaining() && channel.read(buffer, bufferStart + buffer.position()) > 0) {
+                // fill the buffer
+            }
+            buffer.flip();
+            // a partially written record at the end is ignored
+            return Configuration.RECORD_SIZE <= buffer.limit()
+                    && Configuration.RECORD_SIZE + buffer.getShort(Configuration.ID_SIZE) <= buffer.limit();
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing was written
+            }
+        }
+    }
+
+    /**
+     * Decodes the raw record at the position of the heap buffer into the next row of the block and advances the
+     * position past it.
+     */
+    private static void decode(ByteBuffer buffer, Block block) {
+        int p = buffer.position();
+        int nameLength = buffer.getShort(p + Configuration.ID_SIZE);
+        int nameStart = p + Configuration.ID_SIZE + Configuration.NAME_LENGTH_SIZE;
+        int row = block.size++;
+        block.ids[row] = buffer.getLong(p);
+        if (block.decodeNames) {
+            block.names[row] = block.symbols.intern(buffer.array(), nameStart, nameLength);
+        }
+        block.timestamps[row] = buffer.getLong(nameStart + nameLength);
+        block.values[row] = buffer.getDouble(nameStart + nameLength + Configuration.TIMESTAMP_SIZE);
+        buffer.position(nameStart + nameLength + Configuration.TIMESTAMP_SIZE + Configuration.VALUE_SIZE);
+    }
+
+    /**
+     * Decodes the blocks of a blocked file, skipping those that cannot match. Every fill covers rows of a
+     * single file block, so a block of rows is either decoded or pruned as a whole.
+     */
+    private final class BlockedReader implements BlockReader {
+
+        private final BlockedStocksReader file;
+        private ByteBuffer buffer;
+        private int fileBlock = -1;
+        private int remaining;
+        private boolean pruned;
+
+        private BlockedReader(Stocks stocks) {
+            this.file = stocks.getBlocked();
+        }
+
+        @Override
+        public boolean fill(Block block) throws IOException {
+            block.size = 0;
+            if (remaining == 0) {
+                if (fileBlock + 1 >= file.getBlockCount()) {
+                    return false;
+                }
+                BlockedStocksReader.BlockInfo info = file.getBlock(++fileBlock);
+                remaining = info.recordCount();
+                pruned = !mayMatch(info);
+                if (!pruned) {
+                    buffer = file.readBlock(fileBlock, buffer);
+                }
+            }
+            block.pruned = pruned;
+            int rows = Math.min(remaining, block.ids.length);
+            if (pruned) {
+                block.size = rows;
+            } else {
+                while (block.size < rows) {
+                    decode(buffer, block);
+                }
+            }
+            remaining -= rows;
+            return true;
+        }
+
+        @Override
+        public void close() {
+            // the channel belongs to the stocks
+        }
+    }
+
+    /**
+     * Decodes entries of a compressed file into columns.
+     */
+    private static final class EntryReader implements BlockReader {
+
+        private final Iterator<StockEntry> entries;
+
+        private EntryReader(Iterator<StockEntry> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public boolean fill(Block block) {
+            block.size = 0;
+            block.pruned = false;
+            while (block.size < block.ids.length && entries.hasNext()) {
+                StockEntry entry = entries.next();
+                int row = block.size++;
+                block.ids[row] = entry.getId();
+                if (block.decodeNames) {
+                    block.names[row] = block.symbols.intern(entry.getName());
+                }
+                block.timestamps[row] = entry.getTimeStamp();
+                block.values[row] = entry.getMarketValue();
+            }
+            return block.size > 0;
+        }
+
+        @Override
+        public void close() {
+            if (entries instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    // nothing was written
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package stocks;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StocksFilterTest {
+
+    private static List<StockEntry> naive(Stocks stocks, Predicate<StockEntry> predicate) {
+        List<StockEntry> matches = new ArrayList<>();
+        for (StockEntry entry : stocks) {
+            if (predicate.test(entry)) {
+                matches.add(entry);
+            }
+        }
+        return matches;
+    }
+
+    @Test
+    void matchesRecordByRecordEvaluation() throws FileNotFoundException {
+        Stocks stocks = new Stocks("stocks.bin");
+        for (int blockRows : new int[]{64, 192, StocksFilter.DEFAULT_BLOCK_ROWS}) {
+            StocksFilter filter = new StocksFilter()
+                    .timestampBetween(100, 2000)
+                    .valueAbove(98.0)
+                    .name("BMW")
+                    .blockRows(blockRows);
+            List<StockEntry> expected = naive(stocks, e -> e.getTimeStamp() >= 100 && e.getTimeStamp() <= 2000
+                    && e.getMarketValue() > 98.0 && e.getName().equals("BMW"));
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, filter.collect(stocks));
+            assertEquals(expected.size(), filter.count(stocks));
+
+            Selection selection = filter.select(stocks);
+            assertEquals(40000, selection.getRowCount());
+            assertEquals(expected.size(), selection.count());
+            long[] positions = selection.positions();
+            assertEquals(expected.get(0), stocks.get((int) positions[0]));
+            assertEquals(expected.get(expected.size() - 1), stocks.get((int) positions[positions.length - 1]));
+            assertTrue(selection.contains(positions[0]));
+            assertFalse(selection.contains(-1));
+            assertFalse(selection.contains(40000));
+        }
+    }
+
+    @Test
+    void idRangesAndEmptyResults() throws FileNotFoundException {
+        Stocks stocks = new Stocks("stocks.bin");
+        Selection selection = new StocksFilter().idBetween(63, 128).select(stocks);
+        assertEquals(66, selection.count());
+        assertArrayEquals(new long[]{1L << 63, -1L, 1L, 0}, Arrays.copyOf(selection.toBitmap(), 4));
+
+        assertEquals(40000, new StocksFilter().count(stocks));
+        assertEquals(0, new StocksFilter().valueBetween(5, 4).count(stocks));
+        assertEquals(0, new StocksFilter().name("Saab").count(stocks));
+        assertEquals(0, new StocksFilter().idBetween(10, 20).idBetween(30, 40).count(stocks));
+    }
+}
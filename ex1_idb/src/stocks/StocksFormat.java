@@ -0,0 +1,66 @@
+package stocks;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The on-disk formats a stocks file may be stored in.
+ */
+public enum StocksFormat {
+
+    /**
+     * Bare concatenation of records as produced by {@link StockEntry#getBytes()}.
+     */
+    RAW(new byte[0]),
+
+    /**
+     * Block-compressed records as produced by {@link CompressedStocksEncoder}.
+     */
+    COMPRESSED(new byte[]{'S', 'T', 'K', 'Z'}),
+
+    /**
+     * Self-describing fixed-size blocks with a footer holding the record count, a block index with per-block
+     * statistics and checksums, as produced by {@link BlockedStocksEncoder}.
+     */
+    BLOCKED(new byte[]{'S', 'T', 'K', '2'});
+
+    private final byte[] magic;
+
+    StocksFormat(byte[] magic) {
+        this.magic = magic;
+    }
+
+    /**
+     * @return a copy of the magic bytes that start a file of this format
+     */
+    public byte[] getMagic() {
+        return magic.clone();
+    }
+
+    /**
+     * Determines the format of the given file by inspecting its first bytes. A raw file starts
+     * with the big-endian id of its first record, so it could only be mistaken for a tagged
+     * format if that id had one of the magic values in its upper bytes (ids around 6 * 10^18).
+     *
+     * @param file the file to inspect
+     * @return the detected format
+     * @throws IOException if the file cannot be read
+     */
+    public static StocksFormat detect(RandomAccessFile file) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(4);
+        while (head.hasRemaining() && file.getChannel().read(head, head.position()) > 0) {
+            // keep reading until the head is full or the file ends
+        }
+        if (head.hasRemaining()) {
+            return RAW;
+        }
+        for (StocksFormat format : values()) {
+            if (format.magic.length > 0 && Arrays.equals(format.magic, 0, format.magic.length, head.array(), 0, 4)) {
+                return format;
+            }
+        }
+        return RAW;
+    }
+}
@@ -0,0 +1,195 @@
+package stocks;
+
+import util.ContainerRuntimeException;
+import util.LinearHashIndex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A persistent index from the ids of the records of a raw stocks file to their file offsets, stored in
+ * <code>path + ".idx"</code> as a {@link LinearHashIndex}. If an id occurs several times, the index holds
+ * the last record with that id.
+ * <p>
+ * The index remembers up to which offset the stocks file has been indexed. When it is opened, records
+ * appended since are indexed; an index that was not closed cleanly is rebuilt. Registered with a
+ * {@link StocksWriter} (see {@link StocksWriter#maintainIdIndex()}), the index is updated with every
+ * written batch.
+ * <p>
+ * An open index holds an exclusive lock on <code>path + ".idx.lock"</code> until it is closed, because the
+ * mapped index files must not be modified by two users at once. A {@link Stocks} reader not opened by the
+ * writer therefore only opens the index for a single lookup, and scans the records while the index is in use.
+ */
+public class StocksIdIndex implements StocksWriter.AppendListener, AutoCloseable {
+
+    private final LinearHashIndex index;
+    /** The channel holding the lock of the index, closing it releases the lock */
+    private final FileChannel lockFile;
+
+    private StocksIdIndex(LinearHashIndex index, FileChannel lockFile) {
+        this.index = index;
+        this.lockFile = lockFile;
+    }
+
+    /**
+     * Opens the index of the given raw stocks file, creating or completing it as necessary.
+     *
+     * @param stocksPath the path of the stocks file
+     * @return the index
+     * @throws IOException if either file cannot be read or written, or if the index is in use
+     */
+    public static StocksIdIndex open(String stocksPath) throws IOException {
+        StocksIdIndex index = tryOpen(stocksPath);
+        if (index == null) {
+            throw new IOException("The id index of " + stocksPath + " is in use");
+        }
+        return index;
+    }
+
+    /**
+     * Opens the index of the given raw stocks file like {@link #open(String)}, unless it is in use.
+     *
+     * @param stocksPath the path of the stocks file
+     * @return the index, or null if it is held open by another user
+     * @throws IOException if either file cannot be read or written
+     */
+    static StocksIdIndex tryOpen(String stocksPath) throws IOException {
+        FileChannel lockFile = FileChannel.open(Path.of(stocksPath + ".idx.lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            FileLock lock;
+            try {
+                lock = lockFile.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null; // held within this process
+            }
+            if (lock == null) {
+                lockFile.close();
+                return null;
+            }
+            return open(stocksPath, lockFile);
+        } catch (IOException | RuntimeException e) {
+            lockFile.close();
+            throw e;
+        }
+    }
+
+    private static StocksIdIndex open(String stocksPath, FileChannel lockFile) throws IOException {
+        Path indexPath = Path.of(stocksPath + ".idx");
+        LinearHashIndex index;
+        try {
+            index = LinearHashIndex.open(indexPath);
+        } catch (ContainerRuntimeException e) {
+            LinearHashIndex.delete(indexPath);
+            index = LinearHashIndex.open(indexPath);
+        }
+        try (FileChannel file = FileChannel.open(Path.of(stocksPath), StandardOpenOption.READ)) {
+            if (!index.wasCleanlyClosed() || index.getUserValue() > file.size()) {
+                // a crash during an update or a replaced stocks file
+                index.close();
+                LinearHashIndex.delete(indexPath);
+                index = LinearHashIndex.open(indexPath);
+            }
+            StocksIdIndex result = new StocksIdIndex(index, lockFile);
+            result.catchUp(file);
+            index.force();
+            return result;
+        } catch (IOException | RuntimeException e) {
+            index.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param id the id to look up
+     * @return the offset of the last record with the id in the stocks file, or -1 if there is none
+     */
+    public long offsetOf(long id) {
+        return index.get(id, -1);
+    }
+
+    /**
+     * @return the end of the indexed records in the stocks file
+     */
+    public long getIndexedLength() {
+        return index.getUserValue();
+    }
+
+    /**
+     * @return the number of distinct ids
+     */
+    public long size() {
+        return index.size();
+    }
+
+    /**
+     * Indexes a batch of records written by a {@link StocksWriter}.
+     */
+    @Override
+    public void appended(FileChannel file, ByteBuffer records, long offset) throws IOException {
+        if (offset != index.getUserValue()) {
+            throw new IllegalStateException("Records at " + offset + " do not follow the indexed records");
+        }
+        indexRecords(records, offset);
+    }
+
+    @Override
+    public void force() throws IOException {
+        index.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            index.close();
+        } finally {
+            lockFile.close();
+        }
+    }
+
+    /**
+     * Indexes all records of the file beyond the indexed length.
+     */
+    private void catchUp(FileChannel file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        long position = index.getUserValue();
+        long end = file.size();
+        while (position < end) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+            while (buffer.hasRemaining() && file.read(buffer, position + buffer.position()) > 0) {
+                // fill the buffer
+            }
+            buffer.flip();
+            long indexed = indexRecords(buffer, position);
+            if (indexed == position) {
+                break; // a partially written record at the end
+            }
+            position = indexed;
+        }
+    }
+
+    /**
+     * Indexes the complete records in the buffer, which starts at the given file offset.
+     *
+     * @return the offset following the last indexed record
+     */
+    private long indexRecords(ByteBuffer records, long offset) throws IOException {
+        int start = records.position();
+        int p = start;
+        while (p + Configuration.RECORD_SIZE <= records.limit()) {
+            int length = Configuration.RECORD_SIZE + records.getShort(p + Configuration.ID_SIZE);
+            if (p + length > records.limit()) {
+                break;
+            }
+            index.put(records.getLong(p), offset + (p - start));
+            p += length;
+        }
+        index.setUserValue(offset + (p - start));
+        return offset + (p - start);
+    }
+}
@@ -0,0 +1,108 @@
+package stocks;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StocksIdIndexTest {
+
+    @Test
+    void getByIdBuildsIndex() throws IOException {
+        Path copy = Files.createTempFile("stocks", ".bin");
+        try {
+            Files.copy(Path.of("stocks.bin"), copy, StandardCopyOption.REPLACE_EXISTING);
+            Stocks stocks = new Stocks(copy.toString());
+            assertEquals(new StockEntry(8, "Volvo", 2, 98.99010000000001), stocks.getById(8));
+            assertEquals(stocks.get(39999), stocks.getById(39999));
+            assertNull(stocks.getById(40000));
+
+            try (StocksIdIndex index = StocksIdIndex.open(copy.toString())) {
+                assertEquals(40000, index.size());
+                assertEquals(Files.size(copy), index.getIndexedLength());
+            }
+        } finally {
+            Files.deleteIfExists(copy);
+            Files.deleteIfExists(Path.of(copy + ".idx"));
+            Files.deleteIfExists(Path.of(copy + ".idx.ovf"));
+            Files.deleteIfExists(Path.of(copy + ".idx.lock"));
+        }
+    }
+
+    @Test
+    void writerMaintainsIndex() throws IOException {
+        Path file = Files.createTempFile("stocks", ".bin");
+        try {
+            try (StocksWriter writer = new StocksWriter(file.toString())) {
+                writer.append(1, "BMW", 1, 1.0);
+                writer.maintainIdIndex();
+                writer.append(2, "Ford", 2, 2.0);
+                writer.append(1, "BMW", 3, 3.0);
+                writer.flush();
+                Stocks reader = writer.openReader();
+                writer.append(3, "Volvo", 4, 4.0);
+                writer.flush();
+                assertEquals(new StockEntry(1, "BMW", 3, 3.0), reader.getById(1));
+                assertEquals(new StockEntry(2, "Ford", 2, 2.0), reader.getById(2));
+                assertNull(reader.getById(3)); // appended after the reader was opened
+                assertEquals(new StockEntry(3, "Volvo", 4, 4.0), writer.openReader().getById(3));
+
+                // appended again beyond the reader's records, the reader still finds its own last record
+                writer.append(2, "Ford", 6, 6.0);
+                writer.flush();
+                assertEquals(new StockEntry(2, "Ford", 2, 2.0), reader.getById(2));
+                assertEquals(new StockEntry(1, "BMW", 3, 3.0), reader.getById(1));
+                assertEquals(new StockEntry(2, "Ford", 6, 6.0), writer.openReader().getById(2));
+            }
+            // appended without the index, indexed when the index is opened next
+            try (StocksWriter writer = new StocksWriter(file.toString())) {
+                writer.append(4, "Volvo", 5, 5.0);
+            }
+            assertEquals(new StockEntry(4, "Volvo", 5, 5.0), new Stocks(file.toString()).getById(4));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(Path.of(file + ".idx"));
+            Files.deleteIfExists(Path.of(file + ".idx.ovf"));
+            Files.deleteIfExists(Path.of(file + ".idx.lock"));
+        }
+    }
+
+    @Test
+    void plainReaderDoesNotTouchTheIndexOfAWriter() throws IOException {
+        Path file = Files.createTempFile("stocks", ".bin");
+        try {
+            try (StocksWriter writer = new StocksWriter(file.toString())) {
+                writer.maintainIdIndex();
+                writer.append(1, "BMW", 1, 1.0);
+                writer.append(2, "Ford", 2, 2.0);
+                writer.flush();
+                // the writer's index has unforced changes
+                Stocks reader = new Stocks(file.toString());
+                assertEquals(new StockEntry(2, "Ford", 2, 2.0), reader.getById(2));
+                assertNull(reader.getById(3));
+                assertThrows(IOException.class, () -> StocksIdIndex.open(file.toString()));
+
+                writer.append(3, "Volvo", 3, 3.0);
+                writer.append(1, "BMW", 4, 4.0);
+                writer.flush();
+                assertEquals(new StockEntry(1, "BMW", 4, 4.0), reader.getById(1));
+                assertEquals(new StockEntry(3, "Volvo", 3, 3.0), writer.openReader().getById(3));
+            }
+            Stocks reader = new Stocks(file.toString());
+            assertEquals(new StockEntry(1, "BMW", 4, 4.0), reader.getById(1));
+            try (StocksIdIndex index = StocksIdIndex.open(file.toString())) {
+                assertEquals(3, index.size());
+                assertEquals(Files.size(file), index.getIndexedLength());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(Path.of(file + ".idx"));
+            Files.deleteIfExists(Path.of(file + ".idx.ovf"));
+            Files.deleteIfExists(Path.of(file + ".idx.lock"));
+        }
+    }
+}
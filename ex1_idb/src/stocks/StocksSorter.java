@@ -0,0 +1,543 @@
+package stocks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Sorts stocks files larger than memory by timestamp or id (external merge sort).
+ * <p>
+ * The input is read sequentially into batches of raw records. Every batch is sorted and written to a
+ * temporary run file by a worker thread while the next batch is read, with as many batches in memory as
+ * the memory budget allows. The runs are then merged with a loser tree, in several passes if there are
+ * more runs than the fan-in. The sort is stable, and the output is written in the raw format through a
+ * {@link StocksWriter}.
+ * <pre>
+ * long count = new StocksSorter(StocksSorter.Key.TIMESTAMP).memoryBudget(256L &lt;&lt; 20).sort(stocks, "sorted.bin");
+ * </pre>
+ */
+public class StocksSorter {
+
+    /**
+     * The field records are ordered by.
+     */
+    public enum Key {
+        /** Order by timestamp */
+        TIMESTAMP,
+        /** Order by id */
+        ID
+    }
+
+    private static final int MAX_RECORD_SIZE = Configuration.RECORD_SIZE + Short.MAX_VALUE;
+    /** The smallest batch, holding at least one record of any size and usually many more */
+    private static final int MIN_BATCH_SIZE = 2 * MAX_RECORD_SIZE;
+    private static final int MIN_IO_BUFFER = 1 << 16;
+
+    private final Key key;
+    private long memoryBudget = 64L << 20;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int fanIn = 256;
+    private Path tempDirectory;
+    private int runCount;
+
+    /**
+     * @param key the field to order by
+     */
+    public StocksSorter(Key key) {
+        this.key = key;
+    }
+
+    /**
+     * @param bytes the memory used for record batches and merge buffers
+     * @return this sorter
+     */
+    public StocksSorter memoryBudget(long bytes) {
+        if (bytes < 4L * MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("Memory budget must be at least " + 4 * MAX_RECORD_SIZE + " bytes");
+        }
+        this.memoryBudget = bytes;
+        return this;
+    }
+
+    /**
+     * @param threads the number of threads sorting batches; fewer are used if the memory budget does not give
+     *                every batch in flight room for two records of the maximum size
+     * @return this sorter
+     */
+    public StocksSorter parallelism(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = threads;
+        return this;
+    }
+
+    /**
+     * @param runs the maximum number of runs merged at once
+     * @return this sorter
+     */
+    public StocksSorter fanIn(int runs) {
+        if (runs < 2) {
+            throw new IllegalArgumentException("Fan-in must be at least 2");
+        }
+        this.fanIn = runs;
+        return this;
+    }
+
+    /**
+     * @param directory the directory for run files, the default temporary directory if not set
+     * @return this sorter
+     */
+    public StocksSorter tempDirectory(Path directory) {
+        this.tempDirectory = directory;
+        return this;
+    }
+
+    /**
+     * @return the number of runs generated by the last sort
+     */
+    public int getRunCount() {
+        return runCount;
+    }
+
+    /**
+     * Sorts all entries of the input into a new raw stocks file, replacing an existing file.
+     *
+     * @param input the entries to sort
+     * @param output the path of the sorted file, different from the input
+     * @return the number of sorted records
+     * @throws IOException if reading, writing or deleting any file fails
+     */
+    public long sort(Stocks input, String output) throws IOException {
+        if (Path.of(output).toAbsolutePath().normalize().equals(Path.of(input.getPath()).toAbsolutePath().normalize())) {
+            throw new IllegalArgumentException("Cannot sort a file into itself");
+        }
+        List<Path> runs = new ArrayList<>();
+        try {
+            generateRuns(input, runs);
+            runCount = runs.size();
+            while (runs.size() > fanIn) {
+                List<Path> merged = new ArrayList<>();
+                for (int i = 0; i < runs.size(); i += fanIn) {
+                    List<Path> group = runs.subList(i, Math.min(i + fanIn, runs.size()));
+                    Path run = createRunFile();
+                    merged.add(run);
+                    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(run), ioBufferSize(fanIn + 1))) {
+                        merge(group, (record, offset, length) -> out.write(record, offset, length));
+                    }
+                    for (Path p : group) {
+                        Files.delete(p);
+                    }
+                }
+                runs = merged;
+            }
+            Files.deleteIfExists(Path.of(output));
+            try (StocksWriter writer = new StocksWriter(output)) {
+                return merge(runs, writer::appendEncoded);
+            }
+        } finally {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    /**
+     * Reads the input in batches and sorts and spills every batch in a worker thread.
+     */
+    private void generateRuns(Stocks input, List<Path> runs) throws IOException {
+        // one batch is filled while the others are sorted, and every batch must hold the largest record
+        int threads = (int) Math.max(1, Math.min(parallelism, memoryBudget / MIN_BATCH_SIZE - 1));
+        int batchSize = (int) Math.min(Integer.MAX_VALUE - 8, memoryBudget / (threads + 1));
+        Semaphore batches = new Semaphore(threads + 1);
+        ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "sort-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<?>> pending = new ArrayList<>();
+        try (RecordSource source = new RecordSource(input)) {
+            while (true) {
+                batches.acquireUninterruptibly();
+                Batch batch = new Batch(batchSize);
+                if (!source.fill(batch)) {
+                    batches.release();
+                    break;
+                }
+                Path run = createRunFile();
+                runs.add(run);
+                pending.add(workers.submit(() -> {
+                    try {
+                        batch.sortAndWrite(run);
+                        return null;
+                    } finally {
+                        batches.release();
+                    }
+                }));
+            }
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException("Sorting a run failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while sorting runs", e);
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Merges the given sorted runs, passing the records in order to the sink.
+     *
+     * @return the number of records merged
+     */
+    private long merge(List<Path> runs, RecordSink sink) throws IOException {
+        if (runs.isEmpty()) {
+            return 0;
+        }
+        int bufferSize = ioBufferSize(runs.size() + 1);
+        RunReader[] readers = new RunReader[runs.size()];
+        try {
+            for (int i = 0; i < readers.length; i++) {
+                readers[i] = new RunReader(runs.get(i), bufferSize);
+            }
+            LoserTree tree = new LoserTree(readers);
+            long count = 0;
+            for (int winner = tree.winner(); !readers[winner].exhausted; winner = tree.replay()) {
+                RunReader reader = readers[winner];
+                sink.accept(reader.record, 0, reader.length);
+                reader.advance();
+                count++;
+            }
+            return count;
+        } finally {
+            for (RunReader reader : readers) {
+                if (reader != null) {
+                    reader.close();
+                }
+            }
+        }
+    }
+
+    private Path createRunFile() throws IOException {
+        return tempDirectory == null ? Files.createTempFile("stocks-run", ".bin")
+                : Files.createTempFile(tempDirectory, "stocks-run", ".bin");
+    }
+
+    private int ioBufferSize(int streams) {
+        return (int) Math.max(MIN_IO_BUFFER, Math.min(1 << 24, memoryBudget / streams));
+    }
+
+    private long keyOf(byte[] records, int offset) {
+        if (key == Key.ID) {
+            return readLong(records, offset);
+        }
+        int nameLength = ((records[offset + 8] & 0xFF) << 8) | (records[offset + 9] & 0xFF);
+        return readLong(records, offset + Configuration.ID_SIZE + Configuration.NAME_LENGTH_SIZE + nameLength);
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = value << 8 | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Receives merged records.
+     */
+    private interface RecordSink {
+        void accept(byte[] record, int offset, int length) throws IOException;
+    }
+
+    /**
+     * A batch of raw records in one array, sorted through an index of record offsets.
+     */
+    private final class Batch {
+
+        private final byte[] records;
+        private int size;
+        private int[] offsets = new int[1024];
+        private long[] keys = new long[1024];
+        private int count;
+
+        private Batch(int capacity) {
+            this.records = new byte[capacity];
+        }
+
+        private boolean hasRoom() {
+            return records.length - size >= MAX_RECORD_SIZE;
+        }
+
+        /**
+         * Registers the record just copied to <code>records[size, size + length)</code>.
+         */
+        private void added(int length) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                keys = Arrays.copyOf(keys, count * 2);
+            }
+            offsets[count] = size;
+            keys[count] = keyOf(records, size);
+            count++;
+            size += length;
+        }
+
+        private void sortAndWrite(Path run) throws IOException {
+            int[] order = new int[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            mergeSort(order, new int[count], 0, count);
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(run), MIN_IO_BUFFER * 16)) {
+                for (int i : order) {
+                    int end = i + 1 < count ? offsets[i + 1] : size;
+                    out.write(records, offsets[i], end - offsets[i]);
+                }
+            }
+        }
+
+        /**
+         * Stable merge sort of the record indexes in <code>[from, to)</code> by key.
+         */
+        private void mergeSort(int[] order, int[] aux, int from, int to) {
+            if (to - from <= 16) {
+                for (int i = from + 1; i < to; i++) {
+                    int index = order[i];
+                    int j = i - 1;
+                    while (j >= from && keys[order[j]] > keys[index]) {
+                        order[j + 1] = order[j];
+                        j--;
+                    }
+                    order[j + 1] = index;
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            mergeSort(order, aux, from, middle);
+            mergeSort(order, aux, middle, to);
+            if (keys[order[middle - 1]] <= keys[order[middle]]) {
+                return;
+            }
+            System.arraycopy(order, from, aux, from, to - from);
+            int left = from;
+            int right = middle;
+            for (int i = from; i < to; i++) {
+                if (right >= to || (left < middle && keys[aux[left]] <= keys[aux[right]])) {
+                    order[i] = aux[left++];
+                } else {
+                    order[i] = aux[right++];
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the raw records of the input with large sequential reads; compressed and blocked input is re-encoded.
+     */
+    private static final class RecordSource implements AutoCloseable {
+
+        private final DataInputStream in;
+        private final Iterator<StockEntry> entries;
+        private long remaining;
+
+        private RecordSource(Stocks stocks) throws IOException {
+            if (stocks.getFormat() != StocksFormat.RAW) {
+                this.in = null;
+                this.entries = stocks.iterator();
+            } else {
+                this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(stocks.getPath()), 1 << 20));
+                this.entries = null;
+                this.remaining = stocks.getLimit();
+            }
+        }
+
+        /**
+         * Appends records to the batch until it is full or the input ends.
+         *
+         * @return false if the input ended before any record was added
+         */
+        private boolean fill(Batch batch) throws IOException {
+            if (!batch.hasRoom()) {
+                // would end the sort early with a silently empty output
+                throw new IllegalStateException("A batch of " + batch.records.length + " bytes cannot hold a record");
+            }
+            while (batch.hasRoom()) {
+                int length = entries != null ? nextEntry(batch) : nextRecord(batch);
+                if (length < 0) {
+                    break;
+                }
+                batch.added(length);
+            }
+            return batch.count > 0;
+        }
+
+        private int nextEntry(Batch batch) {
+            if (!entries.hasNext()) {
+                return -1;
+            }
+            ByteBuffer bytes = entries.next().getBytes();
+            int length = bytes.remaining();
+            bytes.get(batch.records, batch.size, length);
+            return length;
+        }
+
+        private int nextRecord(Batch batch) throws IOException {
+            int header = Configuration.ID_SIZE + Configuration.NAME_LENGTH_SIZE;
+            if (remaining < Configuration.RECORD_SIZE || read(batch.records, batch.size, header) < header) {
+                return -1;
+            }
+            int nameLength = ((batch.records[batch.size + 8] & 0xFF) << 8) | (batch.records[batch.size + 9] & 0xFF);
+            int length = Configuration.RECORD_SIZE + nameLength;
+            int rest = length - header;
+            if (remaining < length || nameLength > Short.MAX_VALUE || read(batch.records, batch.size + header, rest) < rest) {
+                return -1; // a partially written record at the end
+            }
+            remaining -= length;
+            return length;
+        }
+
+        private int read(byte[] bytes, int offset, int length) throws IOException {
+            int total = 0;
+            while (total < length) {
+                int n = in.read(bytes, offset + total, length - total);
+                if (n < 0) {
+                    break;
+                }
+                total += n;
+            }
+            return total;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the records of a sorted run one by one.
+     */
+    private final class RunReader implements AutoCloseable {
+
+        private final InputStream in;
+        private byte[] record = new byte[256];
+        private int length;
+        private long key;
+        private boolean exhausted;
+
+        private RunReader(Path run, int bufferSize) throws IOException {
+            this.in = new BufferedInputStream(Files.newInputStream(run), bufferSize);
+            advance();
+        }
+
+        private void advance() throws IOException {
+            int header = Configuration.ID_SIZE + Configuration.NAME_LENGTH_SIZE;
+            if (in.readNBytes(record, 0, header) < header) {
+                exhausted = true;
+                return;
+            }
+            int nameLength = ((record[8] & 0xFF) << 8) | (record[9] & 0xFF);
+            length = Configuration.RECORD_SIZE + nameLength;
+            if (record.length < length) {
+                record = Arrays.copyOf(record, length);
+            }
+            if (in.readNBytes(record, header, length - header) < length - header) {
+                throw new IOException("Truncated run file");
+            }
+            key = keyOf(record, 0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * A tournament tree over the current records of all runs. Every inner node holds the loser of the
+     * match played at it, so replacing the winner takes one match per level. Exhausted runs lose every
+     * match, and ties are won by the earlier run, which keeps the merge stable.
+     */
+    private static final class LoserTree {
+
+        private final RunReader[] runs;
+        private final int[] losers;
+        private int winner;
+
+        private LoserTree(RunReader[] runs) {
+            this.runs = runs;
+            int k = runs.length;
+            this.losers = new int[Math.max(1, k)];
+            int[] winners = new int[2 * k];
+            for (int i = 0; i < k; i++) {
+                winners[k + i] = i;
+            }
+            for (int node = k - 1; node >= 1; node--) {
+                int a = winners[2 * node];
+                int b = winners[2 * node + 1];
+                if (beats(a, b)) {
+                    winners[node] = a;
+                    losers[node] = b;
+                } else {
+                    winners[node] = b;
+                    losers[node] = a;
+                }
+            }
+            this.winner = k > 1 ? winners[1] : 0;
+        }
+
+        private int winner() {
+            return winner;
+        }
+
+        /**
+         * Replays the matches of the winner's leaf after its run has advanced.
+         *
+         * @return the new winner
+         */
+        private int replay() {
+            int candidate = winner;
+            for (int node = (candidate + runs.length) / 2; node >= 1; node /= 2) {
+                if (beats(losers[node], candidate)) {
+                    int loser = candidate;
+                    candidate = losers[node];
+                    losers[node] = loser;
+                }
+            }
+            winner = candidate;
+            return winner;
+        }
+
+        private boolean beats(int a, int b) {
+            if (runs[a].exhausted || runs[b].exhausted) {
+                return !runs[a].exhausted || (runs[b].exhausted && a < b);
+            }
+            return runs[a].key != runs[b].key ? runs[a].key < runs[b].key : a < b;
+        }
+    }
+}
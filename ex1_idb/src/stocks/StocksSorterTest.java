@@ -0,0 +1,90 @@
+package stocks;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StocksSorterTest {
+
+    @Test
+    void sortByIdWithManyRuns() throws IOException {
+        Path shuffled = Files.createTempFile("stocks", ".bin");
+        Path sorted = Files.createTempFile("sorted", ".bin");
+        try {
+            List<StockEntry> entries = new ArrayList<>();
+            new Stocks("stocks.bin").forEach(entries::add);
+            List<StockEntry> copy = new ArrayList<>(entries);
+            Collections.shuffle(copy, new Random(7));
+            Files.delete(shuffled);
+            try (StocksWriter writer = new StocksWriter(shuffled.toString())) {
+                writer.appendAll(copy);
+            }
+
+            StocksSorter sorter = new StocksSorter(StocksSorter.Key.ID).memoryBudget(1 << 18).parallelism(2).fanIn(4);
+            assertEquals(40000, sorter.sort(new Stocks(shuffled.toString()), sorted.toString()));
+            assertTrue(sorter.getRunCount() > 4, "runs: " + sorter.getRunCount());
+
+            int i = 0;
+            for (StockEntry entry : new Stocks(sorted.toString())) {
+                assertEquals(entries.get(i++), entry);
+            }
+            assertEquals(40000, i);
+            assertEquals(Files.size(Path.of("stocks.bin")), Files.size(sorted));
+        } finally {
+            Files.deleteIfExists(shuffled);
+            Files.deleteIfExists(sorted);
+        }
+    }
+
+    @Test
+    void smallBudgetLimitsConcurrentBatches() throws IOException {
+        Path sorted = Files.createTempFile("sorted", ".bin");
+        try {
+            StocksSorter sorter = new StocksSorter(StocksSorter.Key.ID).memoryBudget(200_000).parallelism(8);
+            assertEquals(40000, sorter.sort(new Stocks("stocks.bin"), sorted.toString()));
+            assertEquals(Files.size(Path.of("stocks.bin")), Files.size(sorted));
+            long previous = Long.MIN_VALUE;
+            for (StockEntry entry : new Stocks(sorted.toString())) {
+                assertTrue(entry.getId() >= previous);
+                previous = entry.getId();
+            }
+        } finally {
+            Files.deleteIfExists(sorted);
+        }
+    }
+
+    @Test
+    void sortByTimestampIsStable() throws IOException {
+        Path compressed = Files.createTempFile("stocks", ".stkz");
+        Path sorted = Files.createTempFile("sorted", ".bin");
+        try {
+            List<StockEntry> entries = new ArrayList<>();
+            Random random = new Random(3);
+            for (int i = 0; i < 20_000; i++) {
+                entries.add(new StockEntry(i, i % 2 == 0 ? "Volvo" : "BMW", random.nextInt(100), i));
+            }
+            CompressedStocksEncoder.compress(entries, compressed);
+            new StocksSorter(StocksSorter.Key.TIMESTAMP).memoryBudget(1 << 18)
+                    .sort(new Stocks(compressed.toString()), sorted.toString());
+
+            entries.sort(Comparator.comparingLong(StockEntry::getTimeStamp)); // List.sort is stable
+            int i = 0;
+            for (StockEntry entry : new Stocks(sorted.toString())) {
+                assertEquals(entries.get(i++), entry);
+            }
+            assertEquals(entries.size(), i);
+        } finally {
+            Files.deleteIfExists(compressed);
+            Files.deleteIfExists(sorted);
+        }
+    }
+}
@@ -2,8 +2,17 @@ package stocks;
 
 import org.junit.jupiter.api.Test;
 
+import util.ChecksumMode;
+import util.ContainerRuntimeException;
+
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Iterator;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -50,4 +59,38 @@ class StocksTest {
             throw new RuntimeException(e);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void checksumTest() throws IOException, InterruptedException {
+        Path copy = Files.createTempFile("stocks", ".bin");
+        Path crc = Path.of(copy + ".crc");
+        try {
+            Files.copy(Path.of("stocks.bin"), copy, StandardCopyOption.REPLACE_EXISTING);
+            Stocks checked = new Stocks(copy.toString(), ChecksumMode.VERIFY_ON_READ);
+            assertTrue(Files.exists(crc));
+            assertEquals(checked.get(39999), new Stocks("stocks.bin").get(39999));
+
+            try (RandomAccessFile file = new RandomAccessFile(copy.toFile(), "rw")) {
+                file.seek(200_000);
+                file.write(file.read() ^ 1);
+            }
+            Stocks corrupted = new Stocks(copy.toString(), ChecksumMode.VERIFY_ON_READ);
+            assertNotNull(corrupted.get(10));
+            assertThrows(ContainerRuntimeException.class, () -> {
+                for (StockEntry ignored : corrupted) {
+                    // iterate until the corrupt block is reached
+                }
+            });
+
+            Stocks scrubbed = new Stocks(copy.toString(), ChecksumMode.BACKGROUND_SCRUB);
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (scrubbed.getCorruptBlocks().isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(List.of(200_000 / Stocks.CHECKSUM_BLOCK_SIZE), scrubbed.getCorruptBlocks());
+        } finally {
+            Files.deleteIfExists(copy);
+            Files.deleteIfExists(crc);
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package stocks;
+
+import util.PageChecksums;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Appends records in the raw format ({@link StocksFormat#RAW}) to a stocks file.
+ * <p>
+ * Records are encoded into a reusable direct buffer and written with a single write once the buffer is
+ * full or on {@link #flush()}. After every write the registered {@link AppendListener}s (e.g. sidecar
+ * indexes or the checksums, see {@link #maintainChecksums()}) are updated with the new records, then the
+ * committed length is advanced. Readers opened with {@link #openReader()} only see records up to the
+ * committed length at the time they were opened, so they never read a partially written record.
+ * <p>
+ * All methods are synchronized; a single producer does not contend.
+ */
+public class StocksWriter implements AutoCloseable {
+
+    /** Default size of the write buffer */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * When written records are forced to the storage device.
+     */
+    public enum SyncMode {
+        /** Leave syncing to the operating system */
+        NONE,
+        /** Force the file and all sidecars after every write of the buffer */
+        ON_FLUSH,
+        /** Force the file and all sidecars when the writer is closed */
+        ON_CLOSE
+    }
+
+    /**
+     * Receives every batch of records written to the file.
+     */
+    public interface AppendListener {
+
+        /**
+         * Called after a batch of records has been written, before it becomes visible to new readers.
+         *
+         * @param file the stocks file
+         * @param records the written records, positioned at the first record; read-only
+         * @param offset the file offset of the first record
+         * @throws IOException on any error maintaining the sidecar
+         */
+        void appended(FileChannel file, ByteBuffer records, long offset) throws IOException;
+
+        /**
+         * Forces the sidecar to the storage device.
+         *
+         * @throws IOException on any error while syncing
+         */
+        default void force() throws IOException {
+        }
+
+        /**
+         * Called when the writer is closed.
+         *
+         * @throws IOException on any error while closing the sidecar
+         */
+        default void close() throws IOException {
+        }
+    }
+
+    private final String path;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final SyncMode syncMode;
+    private final List<AppendListener> listeners = new ArrayList<>();
+    private StocksIdIndex idIndex;
+    private StocksBloomFilter bloomFilter;
+
+    /** End of the written records */
+    private long length;
+    /** End of the records visible to new readers */
+    private volatile long committedLength;
+    private long count;
+    private boolean closed;
+
+    /**
+     * Opens a writer appending to the given file with the default buffer size and no syncing.
+     *
+     * @param path the stocks file, created if it does not exist
+     * @throws IOException if the file cannot be opened
+     */
+    public StocksWriter(String path) throws IOException {
+        this(path, DEFAULT_BUFFER_SIZE, SyncMode.NONE);
+    }
+
+    /**
+     * Opens a writer appending to the given file.
+     *
+     * @param path the stocks file, created if it does not exist
+     * @param bufferSize the size of the write buffer, at least large enough for a record with the longest name
+     * @param syncMode when written records are forced to the storage device
+     * @throws IOException if the file cannot be opened
+     * @throws IllegalStateException if the file is not in the raw format
+     */
+    public StocksWriter(String path, int bufferSize, SyncMode syncMode) throws IOException {
+        if (bufferSize < Configuration.RECORD_SIZE + Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Buffer must hold at least one record of maximum size");
+        }
+        this.path = path;
+        this.file = new RandomAccessFile(new File(path), "rw");
+        this.channel = file.getChannel();
+        this.syncMode = syncMode;
+        try {
+            if (StocksFormat.detect(file) != StocksFormat.RAW) {
+                throw new IllegalStateException("Cannot append to a " + StocksFormat.detect(file) + " stocks file");
+            }
+            this.length = channel.size();
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        this.committedLength = length;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Registers a listener receiving all records written from now on.
+     *
+     * @param listener the listener
+     */
+    public synchronized void addListener(AppendListener listener) {
+        checkOpen();
+        listeners.add(listener);
+    }
+
+    /**
+     * Maintains the block checksums read by {@link Stocks#Stocks(String, util.ChecksumMode)} while appending.
+     * Missing checksums of existing records are computed first.
+     *
+     * @throws IOException if the checksum file cannot be opened
+     */
+    public synchronized void maintainChecksums() throws IOException {
+        flush();
+        PageChecksums checksums = PageChecksums.open(Path.of(path + ".crc"), Stocks.CHECKSUM_BLOCK_SIZE, channel);
+        addListener(new AppendListener() {
+            @Override
+            public void appended(FileChannel file, ByteBuffer records, long offset) throws IOException {
+                checksums.update(file, offset, offset + records.remaining());
+            }
+
+            @Override
+            public void force() throws IOException {
+                checksums.force();
+            }
+
+            @Override
+            public void close() throws IOException {
+                checksums.close();
+            }
+        });
+    }
+
+    /**
+     * Maintains the id index read by {@link Stocks#getById(long)} while appending. Readers opened with
+     * {@link #openReader()} share the index; other readers scan the records until this writer is closed.
+     *
+     * @throws IOException if the index cannot be opened or is in use
+     */
+    public synchronized void maintainIdIndex() throws IOException {
+        if (idIndex != null) {
+            return;
+        }
+        flush();
+        idIndex = StocksIdIndex.open(path);
+        addListener(idIndex);
+    }
+
+    /**
+     * Maintains the Bloom filters read by {@link Stocks#mightContainId(long)} and
+     * {@link Stocks#mightContainName(String)} while appending. Readers opened with {@link #openReader()} share
+     * the filters.
+     *
+     * @param falsePositiveRate the false positive rate if the filters have to be created
+     * @throws IOException if the filters cannot be opened
+     */
+    public synchronized void maintainBloomFilter(double falsePositiveRate) throws IOException {
+        if (bloomFilter != null) {
+            return;
+        }
+        flush();
+        bloomFilter = StocksBloomFilter.open(path, falsePositiveRate);
+        addListener(bloomFilter);
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @param id the ID of the stock entry
+     * @param name the name of the stock
+     * @param timestamp the timestamp of the stock entry
+     * @param value the market value of the stock
+     * @throws IOException if the buffer had to be written and writing failed
+     */
+    public synchronized void append(long id, String name, long timestamp, double value) throws IOException {
+        checkOpen();
+        int nameLength = encodedLength(name);
+        if (buffer.remaining() < Configuration.RECORD_SIZE + nameLength) {
+            flush();
+        }
+        buffer.putLong(id);
+        buffer.putShort((short) nameLength);
+        if (nameLength == name.length()) {
+            // ASCII names are copied char by char without encoding them into a temporary array
+            for (int i = 0; i < nameLength; i++) {
+                buffer.put((byte) name.charAt(i));
+            }
+        } else {
+            buffer.put(name.getBytes(StandardCharsets.UTF_8));
+        }
+        buffer.putLong(timestamp);
+        buffer.putDouble(value);
+        count++;
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @param entry the entry to append
+     * @throws IOException if the buffer had to be written and writing failed
+     */
+    public synchronized void append(StockEntry entry) throws IOException {
+        append(entry.getId(), entry.getName(), entry.getTimeStamp(), entry.getMarketValue());
+    }
+
+    /**
+     * Appends a record that is already encoded in the raw format, e.g. copied from another stocks file.
+     *
+     * @param record the array holding the record
+     * @param offset the start of the record
+     * @param length the length of the record
+     * @throws IOException if the buffer had to be written and writing failed
+     */
+    synchronized void appendEncoded(byte[] record, int offset, int length) throws IOException {
+        checkOpen();
+        if (buffer.remaining() < length) {
+            flush();
+        }
+        buffer.put(record, offset, length);
+        count++;
+    }
+
+    /**
+     * Appends all given records, acquiring the writer's lock only once.
+     *
+     * @param entries the entries to append
+     * @throws IOException if the buffer had to be written and writing failed
+     */
+    public synchronized void appendAll(Iterable<StockEntry> entries) throws IOException {
+        for (StockEntry entry : entries) {
+            append(entry);
+        }
+    }
+
+    /**
+     * Writes all buffered records, updates the listeners and makes the records visible to new readers.
+     * In {@link SyncMode#ON_FLUSH} the file and the sidecars are forced to the storage device as well.
+     *
+     * @throws IOException if writing fails
+     */
+    public synchronized void flush() throws IOException {
+        checkOpen();
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        long offset = length;
+        while (buffer.hasRemaining()) {
+            length += channel.write(buffer, length);
+        }
+        for (AppendListener listener : listeners) {
+            listener.appended(channel, buffer.duplicate().position(0).asReadOnlyBuffer(), offset);
+        }
+        buffer.clear();
+        if (syncMode == SyncMode.ON_FLUSH) {
+            force();
+        }
+        committedLength = length;
+    }
+
+    /**
+     * Writes all buffered records and forces the file and all sidecars to the storage device.
+     *
+     * @throws IOException if writing or syncing fails
+     */
+    public synchronized void sync() throws IOException {
+        flush();
+        force();
+    }
+
+    /**
+     * @return the length of the file up to which records are visible to new readers
+     */
+    public long getCommittedLength() {
+        return committedLength;
+    }
+
+    /**
+     * @return the number of records appended by this writer, including buffered ones
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Opens a reader for the records committed so far. Records appended later are not visible to it.
+     *
+     * @return the reader
+     * @throws IOException if the file cannot be opened
+     */
+    public Stocks openReader() throws IOException {
+        StocksIdIndex index;
+        StocksBloomFilter filter;
+        synchronized (this) {
+            index = idIndex;
+            filter = bloomFilter;
+        }
+        return new Stocks(path, committedLength, index, filter);
+    }
+
+    /**
+     * Writes all buffered records and closes the file and all listeners. Repeated calls have no effect.
+     *
+     * @throws IOException if writing, syncing or closing fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+            if (syncMode == SyncMode.ON_CLOSE) {
+                force();
+            }
+            for (AppendListener listener : listeners) {
+                listener.close();
+            }
+        } finally {
+            closed = true;
+            file.close();
+        }
+    }
+
+    private void force() throws IOException {
+        channel.force(false);
+        for (AppendListener listener : listeners) {
+            listener.force();
+        }
+    }
+
+    private static int encodedLength(String name) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Name cannot be null or empty");
+        }
+        int length = name.length();
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) >= 0x80) {
+                length = name.getBytes(StandardCharsets.UTF_8).length;
+                break;
+            }
+        }
+        if (length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Name is longer than " + Short.MAX_VALUE + " bytes");
+        }
+        return length;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Writer is closed");
+        }
+    }
+}
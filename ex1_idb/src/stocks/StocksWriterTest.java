@@ -0,0 +1,125 @@
+package stocks;
+
+import org.junit.jupiter.api.Test;
+
+import util.ChecksumMode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StocksWriterTest {
+
+    @Test
+    void appendAndReadBack() throws IOException {
+        Path file = Files.createTempFile("stocks", ".bin");
+        try {
+            List<StockEntry> expected = new ArrayList<>();
+            try (StocksWriter writer = new StocksWriter(file.toString(), 1 << 16, StocksWriter.SyncMode.ON_CLOSE)) {
+                for (int i = 0; i < 10_000; i++) {
+                    StockEntry entry = new StockEntry(i, i % 3 == 0 ? "G\u00e4vle" : "Volvo", i / 4, i * 0.5);
+                    expected.add(entry);
+                    writer.append(entry);
+                }
+                assertEquals(10_000, writer.getCount());
+            }
+            assertEquals(sizeOf(expected), Files.size(file));
+
+            Stocks stocks = new Stocks(file.toString());
+            Iterator<StockEntry> it = stocks.iterator();
+            for (StockEntry entry : expected) {
+                assertEquals(entry, it.next());
+            }
+            assertFalse(it.hasNext());
+            assertEquals(expected.get(9_999), stocks.get(9_999));
+            assertNull(stocks.get(10_000));
+
+            // appending continues at the end of the existing records
+            try (StocksWriter writer = new StocksWriter(file.toString())) {
+                writer.append(10_000, "BMW", 1, 2.0);
+            }
+            assertEquals(new StockEntry(10_000, "BMW", 1, 2.0), new Stocks(file.toString()).get(10_000));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void readersSeeCommittedPrefix() throws IOException {
+        Path file = Files.createTempFile("stocks", ".bin");
+        try (StocksWriter writer = new StocksWriter(file.toString())) {
+            List<Long> offsets = new ArrayList<>();
+            writer.addListener((channel, records, offset) -> offsets.add(offset));
+            writer.append(0, "Volvo", 0, 1.0);
+            writer.append(1, "BMW", 0, 1.0);
+            assertEquals(0, count(writer.openReader()));
+            writer.flush();
+            Stocks prefix = writer.openReader();
+            writer.append(2, "Ford", 1, 1.0);
+            writer.flush();
+            assertEquals(2, count(prefix));
+            assertNull(prefix.get(2));
+            assertEquals(3, count(writer.openReader()));
+            assertEquals(List.of(0L, writer.getCommittedLength() - new StockEntry(2, "Ford", 1, 1.0).getSerializedLength()), offsets);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void maintainsChecksums() throws IOException {
+        Path file = Files.createTempFile("stocks", ".bin");
+        Path crc = Path.of(file + ".crc");
+        try {
+            try (StocksWriter writer = new StocksWriter(file.toString(), 1 << 16, StocksWriter.SyncMode.ON_FLUSH)) {
+                writer.maintainChecksums();
+                for (int i = 0; i < 20_000; i++) {
+                    writer.append(i, "Ferrari", i, i);
+                }
+            }
+            long crcSize = Files.size(crc);
+            Stocks checked = new Stocks(file.toString(), ChecksumMode.VERIFY_ON_READ);
+            assertEquals(crcSize, Files.size(crc));
+            int count = 0;
+            for (StockEntry ignored : checked) {
+                count++;
+            }
+            assertEquals(20_000, count);
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(crc);
+        }
+    }
+
+    @Test
+    void rejectsCompressedFiles() throws IOException {
+        Path file = Files.createTempFile("stocks", ".stkz");
+        try {
+            CompressedStocksEncoder.compress(List.of(new StockEntry(1, "BMW", 1, 1.0)), file);
+            assertThrows(IllegalStateException.class, () -> new StocksWriter(file.toString()));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static long sizeOf(List<StockEntry> entries) {
+        long size = 0;
+        for (StockEntry entry : entries) {
+            size += entry.getBytes().remaining();
+        }
+        return size;
+    }
+
+    private static int count(Stocks stocks) {
+        int count = 0;
+        for (StockEntry ignored : stocks) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,175 @@
+package stocks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns stock names by their UTF-8 bytes. Lookups hash and compare the raw bytes, so a
+ * {@link String} is only created the first time a name is seen; every later occurrence
+ * yields the same canonical instance and a small, dense symbol id.
+ * <p>
+ * All methods are synchronized, so one table may be shared by several readers of a file.
+ */
+public class SymbolTable {
+
+    private static final int NO_SYMBOL = -1;
+
+    /** Open addressing table holding symbol ids, {@link #NO_SYMBOL} marks free slots */
+    private int[] slots;
+    /** Concatenated UTF-8 bytes of all symbols */
+    private byte[] arena;
+    private int arenaSize;
+    /** Per symbol offset into the arena, length and hash */
+    private int[] offsets;
+    private int[] lengths;
+    private int[] hashes;
+    private String[] names;
+    private int size;
+
+    /**
+     * Creates an empty table.
+     */
+    public SymbolTable() {
+        this.slots = new int[64];
+        Arrays.fill(slots, NO_SYMBOL);
+        this.arena = new byte[512];
+        this.offsets = new int[32];
+        this.lengths = new int[32];
+        this.hashes = new int[32];
+        this.names = new String[32];
+    }
+
+    /**
+     * Returns the symbol id of the name given by its UTF-8 bytes, adding it if necessary.
+     *
+     * @param bytes the array holding the name
+     * @param offset the offset of the name in the array
+     * @param length the number of bytes of the name
+     * @return the symbol id of the name
+     */
+    public synchronized int intern(byte[] bytes, int offset, int length) {
+        int hash = hash(bytes, offset, length);
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int symbol = slots[slot];
+            if (symbol == NO_SYMBOL) {
+                symbol = add(bytes, offset, length, hash);
+                slots[slot] = symbol;
+                if (size * 2 > slots.length) {
+                    rehash();
+                }
+                return symbol;
+            }
+            if (hashes[symbol] == hash && lengths[symbol] == length
+                    && Arrays.equals(arena, offsets[symbol], offsets[symbol] + length, bytes, offset, offset + length)) {
+                return symbol;
+            }
+        }
+    }
+
+    /**
+     * Reads a name of the given length from the buffer's current position, advancing the position,
+     * and returns its symbol id.
+     *
+     * @param buffer the buffer holding the name
+     * @param length the number of bytes of the name
+     * @return the symbol id of the name
+     */
+    public int intern(ByteBuffer buffer, int length) {
+        int symbol;
+        if (buffer.hasArray()) {
+            symbol = intern(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(buffer.position(), bytes);
+            symbol = intern(bytes, 0, length);
+        }
+        buffer.position(buffer.position() + length);
+        return symbol;
+    }
+
+    /**
+     * Returns the canonical instance of the name given by its UTF-8 bytes.
+     *
+     * @param bytes the array holding the name
+     * @param offset the offset of the name in the array
+     * @param length the number of bytes of the name
+     * @return the canonical name
+     */
+    public String canonical(byte[] bytes, int offset, int length) {
+        return name(intern(bytes, offset, length));
+    }
+
+    /**
+     * Returns the symbol id of the given name, adding it if necessary.
+     *
+     * @param name the name to look up
+     * @return the symbol id of the name
+     */
+    public int intern(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return intern(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param symbol a symbol id returned by this table
+     * @return the canonical name of the symbol
+     * @throws IndexOutOfBoundsException if the symbol is unknown
+     */
+    public synchronized String name(int symbol) {
+        if (symbol < 0 || symbol >= size) {
+            throw new IndexOutOfBoundsException("Unknown symbol " + symbol);
+        }
+        return names[symbol];
+    }
+
+    /**
+     * @return the number of distinct names in this table
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private int add(byte[] bytes, int offset, int length, int hash) {
+        if (size == names.length) {
+            int capacity = size * 2;
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            names = Arrays.copyOf(names, capacity);
+        }
+        if (arenaSize + length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + length));
+        }
+        System.arraycopy(bytes, offset, arena, arenaSize, length);
+        int symbol = size++;
+        offsets[symbol] = arenaSize;
+        lengths[symbol] = length;
+        hashes[symbol] = hash;
+        names[symbol] = new String(bytes, offset, length, StandardCharsets.UTF_8);
+        arenaSize += length;
+        return symbol;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        Arrays.fill(slots, NO_SYMBOL);
+        int mask = slots.length - 1;
+        for (int symbol = 0; symbol < size; symbol++) {
+            int slot = hashes[symbol] & mask;
+            while (slots[slot] != NO_SYMBOL) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = symbol;
+        }
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int h = 0x811C9DC5;
+        for (int i = offset; i < offset + length; i++) {
+            h = (h ^ bytes[i]) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,61 @@
+package stocks;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SymbolTableTest {
+
+    @Test
+    void internReturnsStableIds() {
+        SymbolTable symbols = new SymbolTable();
+        byte[] bytes = "xxVolvoBMWxx".getBytes(StandardCharsets.UTF_8);
+        int volvo = symbols.intern(bytes, 2, 5);
+        int bmw = symbols.intern(bytes, 7, 3);
+        assertNotEquals(volvo, bmw);
+        assertEquals(volvo, symbols.intern("Volvo"));
+        assertEquals(bmw, symbols.intern("BMW"));
+        assertEquals("Volvo", symbols.name(volvo));
+        assertSame(symbols.name(volvo), symbols.canonical("Volvo".getBytes(StandardCharsets.UTF_8), 0, 5));
+        assertEquals(2, symbols.size());
+        assertThrows(IndexOutOfBoundsException.class, () -> symbols.name(2));
+    }
+
+    @Test
+    void internManySymbols() {
+        SymbolTable symbols = new SymbolTable();
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, symbols.intern("Ticker" + i));
+        }
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, symbols.intern("Ticker" + i));
+            assertEquals("Ticker" + i, symbols.name(i));
+        }
+        assertEquals(5000, symbols.size());
+    }
+
+    @Test
+    void decodingSharesNames() throws FileNotFoundException {
+        SymbolTable symbols = new SymbolTable();
+        StockEntry first = new StockEntry(new StockEntry(1, "dummy", 2, 0.0).getBytes(), symbols);
+        ByteBuffer direct = ByteBuffer.allocateDirect(64);
+        direct.put(new StockEntry(2, "dummy", 3, 1.0).getBytes()).flip();
+        StockEntry second = new StockEntry(direct, symbols);
+        assertSame(first.getName(), second.getName());
+        assertEquals(new StockEntry(2, "dummy", 3, 1.0), second);
+        assertFalse(direct.hasRemaining());
+
+        Stocks stocks = new Stocks("stocks.bin");
+        Iterator<StockEntry> it = stocks.iterator();
+        StockEntry e0 = it.next();
+        for (int i = 1; i < 8; i++) {
+            it.next();
+        }
+        assertSame(e0.getName(), it.next().getName()); // both "Volvo"
+    }
+}
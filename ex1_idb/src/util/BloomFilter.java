@@ -0,0 +1,254 @@
+package util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A blocked Bloom filter over 64-bit hashes.
+ * <p>
+ * The bits are divided into blocks of {@value #BLOCK_BITS} bits, the size of a cache line. A key sets and tests
+ * all of its bits within a single block chosen by its hash, so a lookup touches one cache line instead of
+ * <code>k</code> random ones. Because the keys are not spread evenly over the blocks, the false positive rate is
+ * higher than that of a classic Bloom filter with the same number of bits, so the filter is sized with as many
+ * extra bits per key as the estimated rate of the blocked layout requires.
+ * <p>
+ * Keys are given as hashes, see {@link #hash(long)} and {@link #hash(byte[], int, int)}. Bits are only ever set, so
+ * a filter read concurrently with insertions may miss only the keys being inserted. Not otherwise thread-safe.
+ */
+public class BloomFilter {
+
+	/** The number of bits of a block */
+	public static final int BLOCK_BITS = 512;
+	private static final int BLOCK_LONGS = BLOCK_BITS / Long.SIZE;
+	private static final int MAX_HASHES = 16;
+	/** The number of 9-bit positions within a block taken from one 64-bit hash before it is rehashed */
+	private static final int BITS_PER_HASH = 7;
+	private static final long SEED = 0x9E3779B97F4A7C15L;
+
+	private static final int MAGIC = 0x424C4D46; // "BLMF"
+	private static final int HEADER_SIZE = 32;
+
+	private final long[] bits;
+	private final int blocks;
+	private final int hashes;
+	private final long expectedInsertions;
+	private long insertions;
+
+	/**
+	 * Creates a filter for the given number of keys.
+	 * @param expectedInsertions The number of keys the filter is sized for.
+	 * @param falsePositiveRate The desired probability that a key that was not added is reported as contained,
+	 *                          between 0 and 1 (exclusive).
+	 */
+	public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+		}
+		long n = Math.max(1, expectedInsertions);
+		double bitsPerKey = -Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+		int hashes = (int) Math.max(1, Math.min(MAX_HASHES, Math.round(bitsPerKey * Math.log(2))));
+		while (blockedFalsePositiveRate(bitsPerKey, hashes) > falsePositiveRate) {
+			bitsPerKey *= 1.02;
+		}
+		long blockCount = (long) Math.ceil(n * bitsPerKey / BLOCK_BITS);
+		if (blockCount > Integer.MAX_VALUE / BLOCK_LONGS) {
+			throw new IllegalArgumentException("Filter for " + expectedInsertions + " keys is too large");
+		}
+		this.blocks = (int) Math.max(1, blockCount);
+		this.bits = new long[blocks * BLOCK_LONGS];
+		this.hashes = hashes;
+		this.expectedInsertions = n;
+	}
+
+	private BloomFilter(int blocks, int hashes, long expectedInsertions, long insertions) {
+		this.blocks = blocks;
+		this.bits = new long[blocks * BLOCK_LONGS];
+		this.hashes = hashes;
+		this.expectedInsertions = expectedInsertions;
+		this.insertions = insertions;
+	}
+
+	/**
+	 * Adds a key.
+	 * @param hash The hash of the key.
+	 */
+	public void add(long hash) {
+		int base = blockOf(hash) * BLOCK_LONGS;
+		long g = hash(hash ^ SEED);
+		for (int i = 0; i < hashes; i++) {
+			if (i > 0 && i % BITS_PER_HASH == 0) {
+				g = hash(g ^ SEED);
+			}
+			int bit = (int) (g >>> (i % BITS_PER_HASH) * 9) & (BLOCK_BITS - 1);
+			bits[base + (bit >>> 6)] |= 1L << bit;
+		}
+		insertions++;
+	}
+
+	/**
+	 * @param hash The hash of the key.
+	 * @return false if the key was certainly not added, true if it probably was
+	 */
+	public boolean mightContain(long hash) {
+		int base = blockOf(hash) * BLOCK_LONGS;
+		long g = hash(hash ^ SEED);
+		for (int i = 0; i < hashes; i++) {
+			if (i > 0 && i % BITS_PER_HASH == 0) {
+				g = hash(g ^ SEED);
+			}
+			int bit = (int) (g >>> (i % BITS_PER_HASH) * 9) & (BLOCK_BITS - 1);
+			if ((bits[base + (bit >>> 6)] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of keys added, counting duplicates
+	 */
+	public long getInsertions() {
+		return insertions;
+	}
+
+	/**
+	 * @return the number of keys the filter was sized for
+	 */
+	public long getExpectedInsertions() {
+		return expectedInsertions;
+	}
+
+	/**
+	 * @return the number of hash functions, i.e. bits per key
+	 */
+	public int getHashCount() {
+		return hashes;
+	}
+
+	/**
+	 * @return the size of the bit array in bits
+	 */
+	public long getBitCount() {
+		return (long) bits.length * Long.SIZE;
+	}
+
+	/**
+	 * @return the false positive rate expected from the current fill of the filter
+	 */
+	public double getExpectedFalsePositiveRate() {
+		long set = 0;
+		for (long word : bits) {
+			set += Long.bitCount(word);
+		}
+		return Math.pow((double) set / getBitCount(), hashes);
+	}
+
+	/**
+	 * @return the number of bytes written by {@link #writeTo(ByteBuffer)}
+	 */
+	public int getSerializedSize() {
+		return HEADER_SIZE + bits.length * Long.BYTES;
+	}
+
+	/**
+	 * Writes the filter to the buffer.
+	 * @param buffer The buffer with at least {@link #getSerializedSize()} bytes remaining.
+	 */
+	public void writeTo(ByteBuffer buffer) {
+		buffer.putInt(MAGIC);
+		buffer.putInt(blocks);
+		buffer.putInt(hashes);
+		buffer.putInt(0);
+		buffer.putLong(expectedInsertions);
+		buffer.putLong(insertions);
+		buffer.asLongBuffer().put(bits);
+		buffer.position(buffer.position() + bits.length * Long.BYTES);
+	}
+
+	/**
+	 * Reads a filter written by {@link #writeTo(ByteBuffer)}.
+	 * @param buffer The buffer positioned at the filter.
+	 * @return the filter
+	 * @throws ContainerRuntimeException If the buffer does not hold a filter.
+	 */
+	public static BloomFilter readFrom(ByteBuffer buffer) {
+		if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+			throw new ContainerRuntimeException("Not a Bloom filter");
+		}
+		int blocks = buffer.getInt();
+		int hashes = buffer.getInt();
+		buffer.getInt();
+		long expectedInsertions = buffer.getLong();
+		long insertions = buffer.getLong();
+		if (blocks <= 0 || hashes <= 0 || hashes > MAX_HASHES
+				|| (long) blocks * BLOCK_LONGS * Long.BYTES > buffer.remaining()) {
+			throw new ContainerRuntimeException("Corrupt Bloom filter");
+		}
+		BloomFilter filter = new BloomFilter(blocks, hashes, expectedInsertions, insertions);
+		buffer.asLongBuffer().get(filter.bits);
+		buffer.position(buffer.position() + filter.bits.length * Long.BYTES);
+		return filter;
+	}
+
+	/**
+	 * @param key The key.
+	 * @return a well distributed hash of the key
+	 */
+	public static long hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return key;
+	}
+
+	/**
+	 * @param bytes The array holding the key.
+	 * @param offset The start of the key.
+	 * @param length The length of the key.
+	 * @return a well distributed hash of the key
+	 */
+	public static long hash(byte[] bytes, int offset, int length) {
+		long h = 0xcbf29ce484222325L ^ length;
+		int i = offset;
+		int end = offset + length;
+		for (; i + Long.BYTES <= end; i += Long.BYTES) {
+			long word = 0;
+			for (int j = 0; j < Long.BYTES; j++) {
+				word = word << 8 | (bytes[i + j] & 0xFF);
+			}
+			h = (h ^ hash(word)) * 0x100000001b3L;
+		}
+		long tail = 0;
+		for (; i < end; i++) {
+			tail = tail << 8 | (bytes[i] & 0xFF);
+		}
+		return hash(h ^ hash(tail));
+	}
+
+	/**
+	 * Estimates the false positive rate of a blocked filter: the number of keys in a block is Poisson distributed,
+	 * and each block behaves like a classic filter of {@value #BLOCK_BITS} bits with that many keys.
+	 */
+	private static double blockedFalsePositiveRate(double bitsPerKey, int hashes) {
+		double keysPerBlock = BLOCK_BITS / bitsPerKey;
+		double probability = Math.exp(-keysPerBlock);
+		double rate = 0;
+		int maxKeys = (int) (keysPerBlock + 10 * Math.sqrt(keysPerBlock) + 10);
+		for (int keys = 0; keys <= maxKeys; keys++) {
+			if (keys > 0) {
+				probability *= keysPerBlock / keys;
+			}
+			double unset = Math.pow(1 - 1.0 / BLOCK_BITS, (double) keys * hashes);
+			rate += probability * Math.pow(1 - unset, hashes);
+		}
+		return rate;
+	}
+
+	/**
+	 * Maps the high bits of the hash to a block without a division.
+	 */
+	private int blockOf(long hash) {
+		return (int) (((hash >>> 32) * blocks) >>> 32);
+	}
+}
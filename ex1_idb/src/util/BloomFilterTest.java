@@ -0,0 +1,52 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTest {
+
+	@Test
+	void noFalseNegativesAndConfiguredFalsePositiveRate() {
+		for (double rate : new double[]{0.1, 0.01, 0.001}) {
+			BloomFilter filter = new BloomFilter(100_000, rate);
+			for (long key = 0; key < 100_000; key++) {
+				filter.add(BloomFilter.hash(key));
+			}
+			for (long key = 0; key < 100_000; key++) {
+				assertTrue(filter.mightContain(BloomFilter.hash(key)));
+			}
+			int falsePositives = 0;
+			for (long key = 100_000; key < 1_100_000; key++) {
+				if (filter.mightContain(BloomFilter.hash(key))) {
+					falsePositives++;
+				}
+			}
+			double measured = falsePositives / 1_000_000.0;
+			assertTrue(measured < rate * 1.5, "rate " + rate + " measured " + measured);
+			assertEquals(0, filter.getBitCount() % BloomFilter.BLOCK_BITS);
+		}
+	}
+
+	@Test
+	void serializationRoundTrip() {
+		BloomFilter filter = new BloomFilter(1000, 0.01);
+		byte[] volvo = "Volvo".getBytes(StandardCharsets.UTF_8);
+		filter.add(BloomFilter.hash(volvo, 0, volvo.length));
+		filter.add(BloomFilter.hash(42));
+		ByteBuffer buffer = ByteBuffer.allocate(filter.getSerializedSize());
+		filter.writeTo(buffer);
+		assertFalse(buffer.hasRemaining());
+
+		BloomFilter read = BloomFilter.readFrom(buffer.flip());
+		assertTrue(read.mightContain(BloomFilter.hash(volvo, 0, volvo.length)));
+		assertTrue(read.mightContain(BloomFilter.hash(42)));
+		assertFalse(read.mightContain(BloomFilter.hash(43)));
+		assertEquals(2, read.getInsertions());
+		assertEquals(filter.getHashCount(), read.getHashCount());
+		assertThrows(ContainerRuntimeException.class, () -> BloomFilter.readFrom(ByteBuffer.allocate(64)));
+	}
+}
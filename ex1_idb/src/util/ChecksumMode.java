@@ -0,0 +1,17 @@
+package util;
+
+/**
+ * Controls how page checksums ({@link PageChecksums}) of a file are maintained and verified.
+ */
+public enum ChecksumMode {
+
+	/** No checksums are maintained; an existing checksum file is discarded. */
+	OFF,
+
+	/** Checksums are maintained on write and every page is verified the first time it is read. */
+	VERIFY_ON_READ,
+
+	/** Checksums are maintained on write and verified by a background thread, reads are not checked. */
+	BACKGROUND_SCRUB
+
+}
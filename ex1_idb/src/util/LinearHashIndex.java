@@ -0,0 +1,413 @@
+package util;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A persistent hash index from long keys to long values using linear hashing, memory-mapped for lookups.
+ * <p>
+ * Buckets are pages of {@value #PAGE_SIZE} bytes holding up to {@value #BUCKET_CAPACITY} entries. The primary
+ * page of bucket <code>b</code> is page <code>b + 1</code> of the index file (page 0 is the header), so a
+ * lookup reads a single page unless the bucket has overflowed. Overflow pages are kept in a second file with
+ * the suffix <code>.ovf</code>. Whenever the average fill of the buckets exceeds the load factor, the bucket
+ * at the split pointer is split, so the index grows one bucket at a time without ever rehashing everything.
+ * <p>
+ * The header records whether the index was forced after its last modification; an index that was not
+ * (e.g. after a crash during a split) should be discarded and rebuilt, see {@link #wasCleanlyClosed()}.
+ * All methods are synchronized.
+ */
+public class LinearHashIndex implements AutoCloseable {
+
+	/** The size of a bucket page */
+	public static final int PAGE_SIZE = 4096;
+	private static final int ENTRY_SIZE = 16;
+	private static final int PAGE_HEADER = 16;
+	/** The number of entries per page */
+	public static final int BUCKET_CAPACITY = (PAGE_SIZE - PAGE_HEADER) / ENTRY_SIZE;
+	private static final double LOAD_FACTOR = 0.75;
+
+	private static final int MAGIC = 0x4C484958; // "LHIX"
+	private static final int VERSION = 1;
+	private static final int H_MAGIC = 0;
+	private static final int H_VERSION = 4;
+	private static final int H_LEVEL = 8;
+	private static final int H_SPLIT = 16;
+	private static final int H_SIZE = 24;
+	private static final int H_USER = 32;
+	private static final int H_CLEAN = 40;
+	private static final int H_OVERFLOW_END = 48;
+	private static final int H_FREE = 56;
+
+	private final MappedPages primary;
+	private final MappedPages overflow;
+	private final boolean cleanlyClosed;
+
+	private int level;
+	private long split;
+	private long size;
+	private boolean dirty;
+
+	private LinearHashIndex(MappedPages primary, MappedPages overflow, boolean cleanlyClosed) {
+		this.primary = primary;
+		this.overflow = overflow;
+		this.cleanlyClosed = cleanlyClosed;
+	}
+
+	/**
+	 * Opens or creates the index stored at the given location.
+	 * @param path The index file; overflow pages are stored in <code>path + ".ovf"</code>.
+	 * @return the index
+	 * @throws IOException On any error opening or mapping the files.
+	 * @throws ContainerRuntimeException If the file is not an index of this version.
+	 */
+	public static LinearHashIndex open(Path path) throws IOException {
+		boolean exists = Files.exists(path) && Files.size(path) >= PAGE_SIZE;
+		MappedPages primary = new MappedPages(path);
+		MappedPages overflow;
+		try {
+			overflow = new MappedPages(Path.of(path + ".ovf"));
+		} catch (IOException e) {
+			primary.close();
+			throw e;
+		}
+		LinearHashIndex index;
+		if (exists) {
+			if (primary.getInt(0, H_MAGIC) != MAGIC || primary.getInt(0, H_VERSION) != VERSION) {
+				primary.close();
+				overflow.close();
+				throw new ContainerRuntimeException("Not a hash index: " + path);
+			}
+			index = new LinearHashIndex(primary, overflow, primary.getInt(0, H_CLEAN) == 1);
+			index.level = primary.getInt(0, H_LEVEL);
+			index.split = primary.getLong(0, H_SPLIT);
+			index.size = primary.getLong(0, H_SIZE);
+		} else {
+			index = new LinearHashIndex(primary, overflow, true);
+			primary.putInt(0, H_MAGIC, MAGIC);
+			primary.putInt(0, H_VERSION, VERSION);
+			primary.putLong(0, H_USER, 0);
+			primary.putLong(0, H_OVERFLOW_END, 1);
+			primary.putLong(0, H_FREE, 0);
+			index.clearPage(primary, 1);
+			index.writeHeader();
+			index.force();
+		}
+		return index;
+	}
+
+	/**
+	 * Deletes the files of the index at the given location.
+	 * @param path The index file.
+	 * @throws IOException On any error while deleting.
+	 */
+	public static void delete(Path path) throws IOException {
+		Files.deleteIfExists(path);
+		Files.deleteIfExists(Path.of(path + ".ovf"));
+	}
+
+	/**
+	 * @return false if the index was modified after it was last forced to disk, before it was opened
+	 */
+	public boolean wasCleanlyClosed() {
+		return cleanlyClosed;
+	}
+
+	/**
+	 * @param key The key to look up.
+	 * @param missing The value returned for missing keys.
+	 * @return the value of the key, or <code>missing</code>
+	 */
+	public synchronized long get(long key, long missing) {
+		MappedPages pages = primary;
+		long page = bucketOf(hash(key)) + 1;
+		while (true) {
+			int count = pages.getInt(page, 0);
+			for (int i = 0; i < count; i++) {
+				if (pages.getLong(page, PAGE_HEADER + i * ENTRY_SIZE) == key) {
+					return pages.getLong(page, PAGE_HEADER + i * ENTRY_SIZE + 8);
+				}
+			}
+			long next = pages.getLong(page, 8);
+			if (next == 0) {
+				return missing;
+			}
+			pages = overflow;
+			page = next;
+		}
+	}
+
+	/**
+	 * Associates the key with the given value, replacing a previous value.
+	 * @param key The key.
+	 * @param value The value.
+	 * @throws IOException On any error growing the files.
+	 */
+	public synchronized void put(long key, long value) throws IOException {
+		markDirty();
+		long h = hash(key);
+		if (replace(bucketOf(h) + 1, key, value)) {
+			return;
+		}
+		insert(bucketOf(h) + 1, key, value);
+		size++;
+		if (size > LOAD_FACTOR * BUCKET_CAPACITY * bucketCount()) {
+			splitNext();
+		}
+	}
+
+	/**
+	 * @return the number of entries
+	 */
+	public synchronized long size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of primary buckets
+	 */
+	public synchronized long bucketCount() {
+		return (1L << level) + split;
+	}
+
+	/**
+	 * @return a value stored in the header on behalf of the owner of the index, 0 for a new index
+	 */
+	public synchronized long getUserValue() {
+		return primary.getLong(0, H_USER);
+	}
+
+	/**
+	 * Stores a value in the header on behalf of the owner, e.g. up to where a data file has been indexed.
+	 * @param value The value.
+	 */
+	public synchronized void setUserValue(long value) {
+		markDirty();
+		primary.putLong(0, H_USER, value);
+	}
+
+	/**
+	 * Forces all changes to disk and marks the index as consistent.
+	 * @throws IOException On any error while syncing.
+	 */
+	public synchronized void force() throws IOException {
+		writeHeader();
+		primary.force();
+		overflow.force();
+		primary.putInt(0, H_CLEAN, 1);
+		primary.force();
+		dirty = false;
+	}
+
+	/**
+	 * Forces all changes and closes the index.
+	 * @throws IOException On any error while syncing or closing.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			force();
+		} finally {
+			primary.close();
+			overflow.close();
+		}
+	}
+
+	private void markDirty() {
+		if (!dirty) {
+			dirty = true;
+			primary.putInt(0, H_CLEAN, 0);
+		}
+	}
+
+	private void writeHeader() {
+		primary.putInt(0, H_LEVEL, level);
+		primary.putLong(0, H_SPLIT, split);
+		primary.putLong(0, H_SIZE, size);
+	}
+
+	private static long hash(long key) {
+		// murmur3 finalizer
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return key;
+	}
+
+	private long bucketOf(long hash) {
+		long bucket = hash & ((1L << level) - 1);
+		if (bucket < split) {
+			bucket = hash & ((1L << (level + 1)) - 1);
+		}
+		return bucket;
+	}
+
+	private boolean replace(long page, long key, long value) {
+		MappedPages pages = primary;
+		while (true) {
+			int count = pages.getInt(page, 0);
+			for (int i = 0; i < count; i++) {
+				if (pages.getLong(page, PAGE_HEADER + i * ENTRY_SIZE) == key) {
+					pages.putLong(page, PAGE_HEADER + i * ENTRY_SIZE + 8, value);
+					return true;
+				}
+			}
+			long next = pages.getLong(page, 8);
+			if (next == 0) {
+				return false;
+			}
+			pages = overflow;
+			page = next;
+		}
+	}
+
+	/**
+	 * Appends an entry to the chain starting at the given primary page, adding an overflow page if needed.
+	 */
+	private void insert(long page, long key, long value) throws IOException {
+		MappedPages pages = primary;
+		while (pages.getInt(page, 0) == BUCKET_CAPACITY) {
+			long next = pages.getLong(page, 8);
+			if (next == 0) {
+				next = allocateOverflow();
+				pages.putLong(page, 8, next);
+			}
+			pages = overflow;
+			page = next;
+		}
+		int count = pages.getInt(page, 0);
+		pages.putLong(page, PAGE_HEADER + count * ENTRY_SIZE, key);
+		pages.putLong(page, PAGE_HEADER + count * ENTRY_SIZE + 8, value);
+		pages.putInt(page, 0, count + 1);
+	}
+
+	/**
+	 * Splits the bucket at the split pointer into itself and a new bucket at the end.
+	 */
+	private void splitNext() throws IOException {
+		long source = split;
+		long target = (1L << level) + split;
+		clearPage(primary, target + 1);
+
+		List<long[]> entries = new ArrayList<>();
+		MappedPages pages = primary;
+		long page = source + 1;
+		while (true) {
+			int count = pages.getInt(page, 0);
+			for (int i = 0; i < count; i++) {
+				entries.add(new long[]{pages.getLong(page, PAGE_HEADER + i * ENTRY_SIZE),
+						pages.getLong(page, PAGE_HEADER + i * ENTRY_SIZE + 8)});
+			}
+			long next = pages.getLong(page, 8);
+			if (pages == overflow) {
+				freeOverflow(page);
+			}
+			if (next == 0) {
+				break;
+			}
+			pages = overflow;
+			page = next;
+		}
+		clearPage(primary, source + 1);
+
+		long mask = (1L << (level + 1)) - 1;
+		for (long[] entry : entries) {
+			insert((hash(entry[0]) & mask) + 1, entry[0], entry[1]);
+		}
+		if (++split == 1L << level) {
+			level++;
+			split = 0;
+		}
+	}
+
+	private long allocateOverflow() throws IOException {
+		long page = primary.getLong(0, H_FREE);
+		if (page != 0) {
+			primary.putLong(0, H_FREE, overflow.getLong(page, 8));
+		} else {
+			page = primary.getLong(0, H_OVERFLOW_END);
+			primary.putLong(0, H_OVERFLOW_END, page + 1);
+		}
+		clearPage(overflow, page);
+		return page;
+	}
+
+	private void freeOverflow(long page) {
+		overflow.putInt(page, 0, 0);
+		overflow.putLong(page, 8, primary.getLong(0, H_FREE));
+		primary.putLong(0, H_FREE, page);
+	}
+
+	private void clearPage(MappedPages pages, long page) throws IOException {
+		pages.ensure(page);
+		pages.putInt(page, 0, 0);
+		pages.putLong(page, 8, 0);
+	}
+
+	/**
+	 * A file accessed as pages through memory-mapped segments. Segments are mapped on demand, which grows
+	 * the file; mapped segments stay valid while the file grows.
+	 */
+	private static final class MappedPages {
+
+		private static final int SEGMENT_PAGES = 256;
+		private static final long SEGMENT_SIZE = (long) SEGMENT_PAGES * PAGE_SIZE;
+
+		private final FileChannel channel;
+		private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+		private MappedPages(Path path) throws IOException {
+			this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			long existing = (channel.size() + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+			ensure(Math.max(1, existing) * SEGMENT_PAGES - 1);
+		}
+
+		private void ensure(long page) throws IOException {
+			while (segments.size() <= page / SEGMENT_PAGES) {
+				segments.add(channel.map(FileChannel.MapMode.READ_WRITE, segments.size() * SEGMENT_SIZE, SEGMENT_SIZE));
+			}
+		}
+
+		private MappedByteBuffer segment(long page) {
+			return segments.get((int) (page / SEGMENT_PAGES));
+		}
+
+		private int offset(long page, int offset) {
+			return (int) (page % SEGMENT_PAGES) * PAGE_SIZE + offset;
+		}
+
+		private int getInt(long page, int offset) {
+			return segment(page).getInt(offset(page, offset));
+		}
+
+		private long getLong(long page, int offset) {
+			return segment(page).getLong(offset(page, offset));
+		}
+
+		private void putInt(long page, int offset, int value) {
+			segment(page).putInt(offset(page, offset), value);
+		}
+
+		private void putLong(long page, int offset, long value) {
+			segment(page).putLong(offset(page, offset), value);
+		}
+
+		private void force() {
+			for (MappedByteBuffer segment : segments) {
+				segment.force();
+			}
+		}
+
+		private void close() throws IOException {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LinearHashIndexTest {
+
+	@Test
+	void putGetAndReopen() throws IOException {
+		Path directory = Files.createTempDirectory("LinearHashIndexTest");
+		Path path = directory.resolve("index.idx");
+		try {
+			try (LinearHashIndex index = LinearHashIndex.open(path)) {
+				for (long key = 0; key < 100_000; key++) {
+					index.put(key * 7, key);
+				}
+				index.put(14, -1);
+				assertEquals(100_000, index.size());
+				assertTrue(index.bucketCount() > 100_000 / LinearHashIndex.BUCKET_CAPACITY);
+				index.setUserValue(42);
+			}
+			try (LinearHashIndex index = LinearHashIndex.open(path)) {
+				assertTrue(index.wasCleanlyClosed());
+				assertEquals(42, index.getUserValue());
+				assertEquals(-1, index.get(14, -2));
+				for (long key = 0; key < 100_000; key++) {
+					if (key != 2) {
+						assertEquals(key, index.get(key * 7, -2));
+					}
+				}
+				assertEquals(-2, index.get(3, -2));
+				assertEquals(-2, index.get(Long.MIN_VALUE, -2));
+			}
+		} finally {
+			LinearHashIndex.delete(path);
+			Files.delete(directory);
+		}
+	}
+
+	@Test
+	void collidingKeysOverflow() throws IOException {
+		Path directory = Files.createTempDirectory("LinearHashIndexTest");
+		Path path = directory.resolve("index.idx");
+		try (LinearHashIndex index = LinearHashIndex.open(path)) {
+			Random random = new Random(1);
+			long[] keys = new long[20_000];
+			for (int i = 0; i < keys.length; i++) {
+				keys[i] = random.nextLong();
+				index.put(keys[i], i);
+			}
+			index.setUserValue(1);
+			assertFalse(LinearHashIndex.open(path).wasCleanlyClosed());
+			for (int i = 0; i < keys.length; i++) {
+				assertEquals(i, index.get(keys[i], -1));
+			}
+		} finally {
+			LinearHashIndex.delete(path);
+			Files.delete(directory);
+		}
+	}
+}
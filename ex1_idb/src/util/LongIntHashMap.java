@@ -0,0 +1,150 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from primitive long keys to primitive int values using open addressing with linear probing.
+ * Neither keys nor values are boxed, so lookups and insertions do not allocate. Entries cannot be removed.
+ * Not thread-safe.
+ */
+public class LongIntHashMap {
+
+	private static final long EMPTY = Long.MIN_VALUE;
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private long[] keys;
+	private int[] values;
+	private int mask;
+	private int size;
+	/** The value of the key {@link #EMPTY}, which cannot be stored in the table */
+	private boolean hasEmptyKey;
+	private int emptyKeyValue;
+
+	/**
+	 * Creates a map with a small initial capacity.
+	 */
+	public LongIntHashMap() {
+		this(16);
+	}
+
+	/**
+	 * Creates a map able to hold the given number of entries without growing.
+	 * @param expectedSize The expected number of entries.
+	 */
+	public LongIntHashMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+		allocate(capacity);
+	}
+
+	/**
+	 * @param key The key to look up.
+	 * @param missing The value to return if the key is not contained.
+	 * @return the value of the key, or <code>missing</code>
+	 */
+	public int get(long key, int missing) {
+		if (key == EMPTY) {
+			return hasEmptyKey ? emptyKeyValue : missing;
+		}
+		for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+			long k = keys[slot];
+			if (k == key) {
+				return values[slot];
+			}
+			if (k == EMPTY) {
+				return missing;
+			}
+		}
+	}
+
+	/**
+	 * @param key The key to look up.
+	 * @return true if the key is contained
+	 */
+	public boolean containsKey(long key) {
+		if (key == EMPTY) {
+			return hasEmptyKey;
+		}
+		for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+			long k = keys[slot];
+			if (k == key) {
+				return true;
+			}
+			if (k == EMPTY) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Associates the key with the given value, replacing any previous value.
+	 * @param key The key.
+	 * @param value The value.
+	 */
+	public void put(long key, int value) {
+		if (key == EMPTY) {
+			if (!hasEmptyKey) {
+				hasEmptyKey = true;
+				size++;
+			}
+			emptyKeyValue = value;
+			return;
+		}
+		int slot = slot(key);
+		while (keys[slot] != EMPTY) {
+			if (keys[slot] == key) {
+				values[slot] = value;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		if (++size > keys.length * LOAD_FACTOR) {
+			grow();
+		}
+	}
+
+	/**
+	 * @return the number of entries
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all entries, keeping the current capacity.
+	 */
+	public void clear() {
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+		hasEmptyKey = false;
+	}
+
+	private int slot(long key) {
+		// Fibonacci hashing spreads sequential keys across the table
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		mask = capacity - 1;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(oldKeys.length * 2);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int slot = slot(oldKeys[i]);
+				while (keys[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,287 @@
+package util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Maintains a CRC32C checksum for every page of a data file in a sidecar file.
+ * <p>
+ * The sidecar starts with a magic number and the page size, followed by one checksum per page.
+ * The last page of the data file may be partial; its checksum only covers the existing bytes.
+ * Checksums are kept in memory as well, and pages which have been verified once are remembered,
+ * so repeated reads of the same page are not checked again until the page changes.
+ * Verification reads runs of adjacent unverified pages with a single large read.
+ */
+public class PageChecksums implements AutoCloseable {
+
+	/** The default page size */
+	public static final int DEFAULT_PAGE_SIZE = 4096;
+
+	private static final int MAGIC = 0x43524343; // "CRCC"
+	private static final int HEADER_SIZE = 8;
+	private static final int BATCH_PAGES = 16;
+
+	private final Path path;
+	private final int pageSize;
+	private final FileChannel sidecar;
+	private final CRC32C crc = new CRC32C();
+	private final ByteBuffer pages;
+	private final ByteBuffer entry = ByteBuffer.allocate(4);
+
+	private int[] checksums;
+	private int pageCount;
+	private final BitSet verified = new BitSet();
+
+	private PageChecksums(Path path, int pageSize, FileChannel sidecar) {
+		this.path = path;
+		this.pageSize = pageSize;
+		this.sidecar = sidecar;
+		this.pages = ByteBuffer.allocate(pageSize * BATCH_PAGES);
+		this.checksums = new int[16];
+	}
+
+	/**
+	 * Opens the checksum file of the given data file. If the checksum file does not exist, was written
+	 * with another page size or does not cover the whole data file, the missing checksums are computed
+	 * from the current content of the data file.
+	 * @param path The location of the checksum file.
+	 * @param pageSize The page size in bytes.
+	 * @param data The data file.
+	 * @return the opened checksums
+	 * @throws IOException On any error while reading or writing either file.
+	 */
+	public static PageChecksums open(Path path, int pageSize, FileChannel data) throws IOException {
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("Page size must be positive");
+		}
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		PageChecksums result = new PageChecksums(path, pageSize, channel);
+		try {
+			result.load(data);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+		return result;
+	}
+
+	/**
+	 * Deletes the checksum file at the given location, e.g. because the data file is about to be
+	 * modified without maintaining checksums.
+	 * @param path The location of the checksum file.
+	 * @throws IOException On any error while deleting the file.
+	 */
+	public static void discard(Path path) throws IOException {
+		Files.deleteIfExists(path);
+	}
+
+	/**
+	 * @return the page size in bytes
+	 */
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * @return the number of pages covered by checksums
+	 */
+	public synchronized int getPageCount() {
+		return pageCount;
+	}
+
+	/**
+	 * Recomputes the checksums of all pages overlapping the given byte range of the data file. Must be called
+	 * after the range has been written.
+	 * @param data The data file.
+	 * @param from The first modified byte.
+	 * @param to The end (exclusive) of the modified range.
+	 * @throws IOException On any error while reading the data or writing the checksums.
+	 */
+	public synchronized void update(FileChannel data, long from, long to) throws IOException {
+		long length = data.size();
+		// pages between the last checksum and the written range are covered as well, so there are no gaps
+		int first = (int) Math.min(from / pageSize, pageCount);
+		int last = (int) ((Math.min(to, length) + pageSize - 1) / pageSize);
+		for (int page = first; page < last; page += BATCH_PAGES) {
+			int count = Math.min(BATCH_PAGES, last - page);
+			readPages(data, page, count, length);
+			for (int i = 0; i < count; i++) {
+				setChecksum(page + i, checksumOf(i));
+				verified.set(page + i);
+			}
+		}
+	}
+
+	/**
+	 * Verifies the checksums of all pages overlapping the given byte range of the data file. Pages already
+	 * verified (or written through {@link #update(FileChannel, long, long)}) are skipped.
+	 * @param data The data file.
+	 * @param from The first byte to verify.
+	 * @param to The end (exclusive) of the range.
+	 * @throws IOException On any error while reading the data.
+	 * @throws ContainerRuntimeException If a checksum does not match.
+	 */
+	public synchronized void verify(FileChannel data, long from, long to) throws IOException, ContainerRuntimeException {
+		long length = data.size();
+		int first = (int) (from / pageSize);
+		int last = Math.min((int) ((Math.min(to, length) + pageSize - 1) / pageSize), pageCount);
+		int page = verified.nextClearBit(first);
+		while (page < last) {
+			int nextVerified = verified.nextSetBit(page);
+			int end = Math.min(nextVerified < 0 ? last : Math.min(nextVerified, last), page + BATCH_PAGES);
+			readPages(data, page, end - page, length);
+			for (int i = 0; i < end - page; i++) {
+				if (checksumOf(i) != checksums[page + i]) {
+					throw new ContainerRuntimeException("Checksum mismatch in page " + (page + i) + " of " + path);
+				}
+			}
+			verified.set(page, end);
+			page = verified.nextClearBit(end);
+		}
+	}
+
+	/**
+	 * Verifies up to <code>count</code> pages starting at <code>firstPage</code> regardless of whether they
+	 * have been verified before.
+	 * @param data The data file.
+	 * @param firstPage The first page to check.
+	 * @param count The maximum number of pages to check.
+	 * @return the numbers of all pages whose checksum does not match
+	 * @throws IOException On any error while reading the data.
+	 */
+	public synchronized List<Integer> scrub(FileChannel data, int firstPage, int count) throws IOException {
+		List<Integer> corrupt = new ArrayList<>();
+		long length = data.size();
+		int last = Math.min(firstPage + count, pageCount);
+		for (int page = firstPage; page < last; page += BATCH_PAGES) {
+			int batch = Math.min(BATCH_PAGES, last - page);
+			readPages(data, page, batch, length);
+			for (int i = 0; i < batch; i++) {
+				if (checksumOf(i) != checksums[page + i]) {
+					corrupt.add(page + i);
+					verified.clear(page + i);
+				}
+			}
+		}
+		return corrupt;
+	}
+
+	/**
+	 * Drops the checksums of all pages beyond the given data file length, e.g. after the data file has
+	 * been truncated. The checksum of a resulting partial last page is recomputed.
+	 * @param data The data file, already truncated.
+	 * @throws IOException On any error while reading the data or writing the checksums.
+	 */
+	public synchronized void truncate(FileChannel data) throws IOException {
+		long length = data.size();
+		int pages = (int) ((length + pageSize - 1) / pageSize);
+		if (pages < pageCount) {
+			pageCount = pages;
+			verified.clear(pages, Integer.MAX_VALUE);
+			sidecar.truncate(HEADER_SIZE + 4L * pages);
+		}
+		if (length % pageSize != 0) {
+			update(data, length - 1, length);
+		}
+	}
+
+	/**
+	 * Forces all checksums to the storage device.
+	 * @throws IOException On any error while syncing.
+	 */
+	public synchronized void force() throws IOException {
+		sidecar.force(false);
+	}
+
+	/**
+	 * Closes the checksum file.
+	 * @throws IOException On any error while closing.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		sidecar.close();
+	}
+
+	private void load(FileChannel data) throws IOException {
+		long dataLength = data.size();
+		int dataPages = (int) ((dataLength + pageSize - 1) / pageSize);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		int stored = 0;
+		if (sidecar.size() >= HEADER_SIZE) {
+			sidecar.read(header, 0);
+			header.flip();
+			if (header.getInt() == MAGIC && header.getInt() == pageSize) {
+				stored = (int) Math.min((sidecar.size() - HEADER_SIZE) / 4, dataPages);
+			}
+		}
+		if (stored == 0) {
+			header.clear();
+			header.putInt(MAGIC).putInt(pageSize).flip();
+			sidecar.truncate(0);
+			sidecar.write(header, 0);
+		}
+
+		ensureCapacity(dataPages);
+		ByteBuffer buffer = ByteBuffer.allocate(4 * stored);
+		while (buffer.hasRemaining()) {
+			if (sidecar.read(buffer, HEADER_SIZE + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of checksum file " + path);
+			}
+		}
+		buffer.flip();
+		buffer.asIntBuffer().get(checksums, 0, stored);
+		pageCount = stored;
+		sidecar.truncate(HEADER_SIZE + 4L * stored);
+
+		if (dataPages > stored) {
+			// the data file grew without its checksums being written; the last stored page may have been
+			// partial when its checksum was computed
+			update(data, (long) Math.max(0, stored - 1) * pageSize, dataLength);
+		}
+		verified.clear();
+	}
+
+	private void readPages(FileChannel data, int firstPage, int count, long length) throws IOException {
+		long start = (long) firstPage * pageSize;
+		int bytes = (int) Math.min((long) count * pageSize, length - start);
+		pages.clear().limit(bytes);
+		while (pages.hasRemaining()) {
+			if (data.read(pages, start + pages.position()) < 0) {
+				throw new IOException("Unexpected end of data file");
+			}
+		}
+	}
+
+	private int checksumOf(int pageInBatch) {
+		int from = pageInBatch * pageSize;
+		int to = Math.min(from + pageSize, pages.limit());
+		crc.reset();
+		crc.update(pages.array(), from, to - from);
+		return (int) crc.getValue();
+	}
+
+	private void setChecksum(int page, int checksum) throws IOException {
+		ensureCapacity(page + 1);
+		checksums[page] = checksum;
+		pageCount = Math.max(pageCount, page + 1);
+		entry.clear();
+		entry.putInt(checksum).flip();
+		sidecar.write(entry, HEADER_SIZE + 4L * page);
+	}
+
+	private void ensureCapacity(int pages) {
+		if (pages > checksums.length) {
+			checksums = Arrays.copyOf(checksums, Math.max(pages, checksums.length * 2));
+		}
+	}
+}
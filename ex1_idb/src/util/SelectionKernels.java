@@ -0,0 +1,163 @@
+package util;
+
+/**
+ * Filter kernels over columns of primitive values that maintain selection bitmaps: bit <code>i % 64</code> of
+ * word <code>i / 64</code> is set if row <code>i</code> is selected. Every kernel clears the bits of the rows
+ * that fail its predicate, so applying several kernels to the same selection combines their predicates with
+ * a logical and.
+ * <p>
+ * The loops are free of branches on the data: every comparison yields a bit that is shifted into the word, so
+ * their cost does not depend on the selectivity and the JIT may unroll and vectorize them. Rows beyond the given
+ * length are left unchanged.
+ */
+public final class SelectionKernels {
+
+	private SelectionKernels() {
+	}
+
+	/**
+	 * @param rows The number of rows.
+	 * @return the number of words of a selection bitmap over the rows
+	 */
+	public static int words(int rows) {
+		return (rows + Long.SIZE - 1) >>> 6;
+	}
+
+	/**
+	 * Selects the first rows and clears the remaining bits of the bitmap.
+	 * @param selection The bitmap.
+	 * @param rows The number of rows to select.
+	 */
+	public static void selectAll(long[] selection, int rows) {
+		int full = rows >>> 6;
+		for (int w = 0; w < full; w++) {
+			selection[w] = -1L;
+		}
+		for (int w = full; w < selection.length; w++) {
+			selection[w] = 0;
+		}
+		if ((rows & 63) != 0) {
+			selection[full] = -1L >>> (Long.SIZE - (rows & 63));
+		}
+	}
+
+	/**
+	 * Keeps the rows whose value lies in <code>[min, max]</code>.
+	 * @param column The values.
+	 * @param rows The number of rows.
+	 * @param min The smallest selected value.
+	 * @param max The largest selected value.
+	 * @param selection The bitmap to narrow.
+	 */
+	public static void selectBetween(long[] column, int rows, long min, long max, long[] selection) {
+		if (min > max) {
+			clear(selection, rows);
+			return;
+		}
+		// a single unsigned comparison checks both bounds
+		long range = max - min + Long.MIN_VALUE;
+		for (int w = 0, base = 0; base < rows; w++, base += Long.SIZE) {
+			int end = Math.min(Long.SIZE, rows - base);
+			long bits = 0;
+			for (int j = 0; j < end; j++) {
+				bits |= (column[base + j] - min + Long.MIN_VALUE <= range ? 1L : 0L) << j;
+			}
+			selection[w] &= bits | keepAbove(end);
+		}
+	}
+
+	/**
+	 * Keeps the rows whose value lies in <code>[min, max]</code>; NaN values are never selected.
+	 * @param column The values.
+	 * @param rows The number of rows.
+	 * @param min The smallest selected value.
+	 * @param max The largest selected value.
+	 * @param selection The bitmap to narrow.
+	 */
+	public static void selectBetween(double[] column, int rows, double min, double max, long[] selection) {
+		for (int w = 0, base = 0; base < rows; w++, base += Long.SIZE) {
+			int end = Math.min(Long.SIZE, rows - base);
+			long bits = 0;
+			for (int j = 0; j < end; j++) {
+				double value = column[base + j];
+				bits |= (value >= min & value <= max ? 1L : 0L) << j;
+			}
+			selection[w] &= bits | keepAbove(end);
+		}
+	}
+
+	/**
+	 * Keeps the rows whose value equals the given one.
+	 * @param column The values.
+	 * @param rows The number of rows.
+	 * @param value The selected value.
+	 * @param selection The bitmap to narrow.
+	 */
+	public static void selectEqual(int[] column, int rows, int value, long[] selection) {
+		for (int w = 0, base = 0; base < rows; w++, base += Long.SIZE) {
+			int end = Math.min(Long.SIZE, rows - base);
+			long bits = 0;
+			for (int j = 0; j < end; j++) {
+				bits |= (column[base + j] == value ? 1L : 0L) << j;
+			}
+			selection[w] &= bits | keepAbove(end);
+		}
+	}
+
+	/**
+	 * @param selection The bitmap.
+	 * @param rows The number of rows.
+	 * @return true if no row is selected
+	 */
+	public static boolean isEmpty(long[] selection, int rows) {
+		for (int w = 0, words = words(rows); w < words; w++) {
+			if (selection[w] != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param selection The bitmap.
+	 * @param rows The number of rows.
+	 * @return the number of selected rows
+	 */
+	public static int count(long[] selection, int rows) {
+		int count = 0;
+		for (int w = 0, words = words(rows); w < words; w++) {
+			count += Long.bitCount(selection[w]);
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the indexes of the selected rows in ascending order.
+	 * @param selection The bitmap.
+	 * @param rows The number of rows.
+	 * @param positions The array receiving the indexes, large enough for all selected rows.
+	 * @return the number of selected rows
+	 */
+	public static int positions(long[] selection, int rows, int[] positions) {
+		int count = 0;
+		for (int w = 0, words = words(rows); w < words; w++) {
+			for (long bits = selection[w]; bits != 0; bits &= bits - 1) {
+				positions[count++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+			}
+		}
+		return count;
+	}
+
+	private static void clear(long[] selection, int rows) {
+		for (int w = 0, base = 0; base < rows; w++, base += Long.SIZE) {
+			selection[w] &= keepAbove(Math.min(Long.SIZE, rows - base));
+		}
+	}
+
+	/**
+	 * @return a mask of the bits of a word at and above the given one, which a kernel leaves unchanged
+	 */
+	private static long keepAbove(int bit) {
+		return bit == Long.SIZE ? 0 : -1L << bit;
+	}
+}